@@ -15,6 +15,7 @@ import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
 import project.recognition.AbstractGesture;
+import project.recognition.FrameContext;
 
 public class HandRecognizer extends AbstractGesture {
 
@@ -31,8 +32,6 @@ public class HandRecognizer extends AbstractGesture {
 	 */
 	private static final long serialVersionUID = -4630440503905990319L;
 	
-	private static final Scalar ycrcbMin = new Scalar(0, 136, 85);//new Scalar(0, 131, 80);
-	private static final Scalar ycrcbMax = new Scalar(255, 180, 130);//new Scalar(255, 185, 135);
 	private static final boolean showSkinImg = false;
 	
 	private MatOfInt hull = new MatOfInt();
@@ -48,6 +47,16 @@ public class HandRecognizer extends AbstractGesture {
 	*/
 	private int[] defectsArray = {};
 	MatOfPoint biggestContour = null;
+	
+	// Results of the last detection to be painted onto the published frame.
+	private final Mat skinImg = new Mat();
+	private final Mat skinDisplay = new Mat();
+	private boolean contourFound = false;
+	private List<MatOfPoint> approxContourList = new ArrayList<>();
+	private List<MatOfPoint> hullContourList = new ArrayList<>();
+	private List<Point[]> fingerLines = new ArrayList<>();
+	private List<Point[]> defectPoints = new ArrayList<>();
+	private int fingerNum = 0;
 
 	
 	public HandRecognizer(String name) {
@@ -76,32 +85,85 @@ public class HandRecognizer extends AbstractGesture {
 	
 	@Override
 	public void detect(Mat matrix) {
-		boolean contourFound = false;
+		// Releases the images derived from the frame once it was detected
+		FrameContext frame = new FrameContext(matrix);
+		try {
+			detect(frame);
+		}
+		finally {
+			frame.release();
+		}
+	}
+	
+	
+	@Override
+	public void detect(FrameContext frame) {
+		contourFound = false;
 		
-		// Detects skin pixels in the given Mat (image)
-		Mat skinImg = YCrCbSkinDetector.detectSkin(matrix, ycrcbMin, ycrcbMax);
+		// Copies the frame's shared skin mask, as finding the contours modifies it
+		frame.getSkinMask().copyTo(skinImg);
 		
-		if(showSkinImg)
-			skinImg.copyTo(matrix);
-		else {
-			contourFound = extractContourAndHull(matrix, skinImg);
+		if(!showSkinImg) {
+			contourFound = extractContourAndHull(skinImg);
 			
 			if(contourFound)
-				detectAndCountFingers(matrix);
+				detectAndCountFingers();
 			
 		}
 	}
 	
 	
+	@Override
+	public void paintDetection(Mat matrix) {
+		if(showSkinImg) {
+			// Converts the mask into this gesture's own BGR image first, so the
+			// published frame keeps its size and type
+			if(!skinImg.empty()) {
+				Imgproc.cvtColor(skinImg, skinDisplay, Imgproc.COLOR_GRAY2BGR);
+				if(skinDisplay.cols() != matrix.cols() || skinDisplay.rows() != matrix.rows())
+					Imgproc.resize(skinDisplay, skinDisplay, matrix.size());
+				if(skinDisplay.type() == matrix.type())
+					skinDisplay.copyTo(matrix);
+			}
+			return;
+		}
+		
+		if(!contourFound)
+			return;
+		
+		// Draws the approximated contour using green-colored lines
+		Imgproc.drawContours(matrix, approxContourList, -1, new Scalar(0, 255, 0));
+		
+		// Draws a blue line outlining the convex set
+		Imgproc.drawContours(matrix, hullContourList, -1, new Scalar(200, 125, 75));
+		
+		// Draws a blue circle at the center of the enclosing rectangle
+		Core.circle(matrix, new Point(enclosingRect.center.x, enclosingRect.center.y), 3, new Scalar(200, 125, 75), 2);
+		
+		// Draws a line from the tip of the finger to the "valley" between the two fingers
+		for(Point[] line : fingerLines)
+			Core.line(matrix, line[0], line[1], new Scalar(0, 255, 0));
+		
+		for(Point[] defect : defectPoints) {
+			// Draws a red circle at the tip of the finger
+			Core.circle(matrix, defect[0], 5, new Scalar(255, 0, 0));
+			// Draws a yellow circle at the "valley" between the two fingers
+			Core.circle(matrix, defect[1], 5, new Scalar(255, 255, 0));
+		}
+		
+		// Draws the finger count on the screen
+		Core.putText(matrix, new Integer(fingerNum).toString(), new Point(0, 0), Core.FONT_HERSHEY_DUPLEX, 5, new Scalar(255, 255, 255));
+	}
+	
+	
 	/**
 	 * Obtains the contour and contour hull of the given image
 	 * 
-	 * @param origImg RGB-colored frame from camera feed
 	 * @param skinImg Grayscale image of object
 	 * @throws NullContourException 
 	 * @return Boolean indicating if contour was found or not
 	 */
-	private boolean extractContourAndHull(Mat origImg, Mat skinImg) {
+	private boolean extractContourAndHull(Mat skinImg) {
 		List<MatOfPoint> contours = new ArrayList<>();
 		MatOfPoint2f currentContour = new MatOfPoint2f();
 		//Point[] vertices = {};
@@ -130,10 +192,10 @@ public class HandRecognizer extends AbstractGesture {
 		// Approximates the biggest contour
 		Imgproc.approxPolyDP(contourCpy, currentContour, Imgproc.arcLength(contourCpy, true) * 0.0025, true);
 		
-		// Draws the approximated contour using green-colored lines
+		// Keeps the approximated contour to be drawn using green-colored lines
 		List<MatOfPoint> tempContourList = new ArrayList<>();
 		tempContourList.add(new MatOfPoint(currentContour.toArray()));
-		Imgproc.drawContours(origImg, tempContourList, -1, new Scalar(0, 255, 0));
+		approxContourList = tempContourList;
 		biggestContour = new MatOfPoint(currentContour.toArray());
 		
 		
@@ -163,14 +225,8 @@ public class HandRecognizer extends AbstractGesture {
 		ArrayList<MatOfPoint> hullContour = new ArrayList<MatOfPoint>();
 		hullContour.add(new MatOfPoint(hullPts));
 		
-		// Draws a blue line outlining the convex set
-		Imgproc.drawContours(origImg, hullContour, -1, new Scalar(200, 125, 75));
-		/*for(int i = 0; i < hullPts.length - 1; i++) {
-			Core.line(origImg, hullPts[i], hullPts[i+1], new Scalar(200, 125, 75), 2);
-		}*/
-		
-		// Draws a blue circle at the center of the enclosing rectangle
-		Core.circle(origImg, new Point(enclosingRect.center.x, enclosingRect.center.y), 3, new Scalar(200, 125, 75), 2);
+		// Keeps the convex set to be outlined by a blue line
+		hullContourList = hullContour;
 		
 		// For each point in the smallest convex set that contains the biggest contour
 		for(int i = 0; i < hullPts.length - 1; i++) {
@@ -194,10 +250,10 @@ public class HandRecognizer extends AbstractGesture {
 	
 	/**
 	 * Detects and counts the number of fingers the user is holding up
-	 * 
-	 * @param origImg RGB-colored frame from camera feed
 	 */
-	private void detectAndCountFingers(Mat origImg) {
+	private void detectAndCountFingers() {
+		List<Point[]> lines = new ArrayList<>();
+		List<Point[]> points = new ArrayList<>();
 		int fingerNum = 0;
 		Point[] contourPts = biggestContour.toArray();
 		
@@ -218,17 +274,16 @@ public class HandRecognizer extends AbstractGesture {
             	// Increment finger count
                 fingerNum++;
                 
-                // Draws a line from the tip of the finger to the "valley" between the two fingers
-                Core.line(origImg, startPoint, depthPoint, new Scalar(0, 255, 0));
+                // Keeps the line from the tip of the finger to the "valley" between the two fingers
+                lines.add(new Point[] { startPoint, depthPoint });
             }
 
-            // Draws a red circle at the tip of the finger
-            Core.circle(origImg, startPoint, 5, new Scalar(255, 0, 0));
-            // Draws a yellow circle at the "valley" between the two fingers
-            Core.circle(origImg, depthPoint, 5, new Scalar(255, 255, 0));
+            // Keeps the tip of the finger and the "valley" between the two fingers
+            points.add(new Point[] { startPoint, depthPoint });
 		}
 		
-		// Draws the finger count on the screen
-		Core.putText(origImg, new Integer(fingerNum).toString(), new Point(0, 0), Core.FONT_HERSHEY_DUPLEX, 5, new Scalar(255, 255, 255));
+		fingerLines = lines;
+		defectPoints = points;
+		this.fingerNum = fingerNum;
 	}
 }
@@ -8,31 +8,182 @@ import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
+import project.util.TimingStatistics;
+
+/**
+ * Detects the skin pixels of the frames by their YCrCb color. Each detector
+ * owns the images it works in, which are allocated on the first frame and
+ * only reallocated when the size of the frames changes, and the kernels of
+ * its noise removal; so detecting doesn't allocate any native memory per
+ * frame. The returned skin mask is also owned by the detector and is
+ * overwritten by its next detection.
+ * <p>The time of each step, the color conversion, the range test and the
+ * noise removal, is recorded per call.
+ */
 public class YCrCbSkinDetector {
 	
-	public static Mat detectSkin(Mat img, Scalar min, Scalar max) {
-		Mat ycrcbImg = new Mat();
+	// Anchors of the erosion and dilation kernels
+	private static final Point erodeAnchor = new Point(3, 3);
+	private static final Point dilateAnchor = new Point(1, 1);
+	
+	// Preallocated images, reused from frame to frame
+	private final Mat ycrcbImg = new Mat();
+	private final Mat skinImg = new Mat();
+	private final Mat cbMask = new Mat();
+	
+	// Timings of the detection steps
+	private final TimingStatistics conversionTimes = new TimingStatistics("conversion");
+	private final TimingStatistics inRangeTimes = new TimingStatistics("inRange");
+	private final TimingStatistics morphologyTimes = new TimingStatistics("morphology");
+	
+	// Kernels of the noise removal, created on first use
+	private Mat erodeKernel = null;
+	private Mat dilateKernel = null;
+	
+	
+	/**
+	 * Detects the skin pixels of a BGR image.
+	 * 
+	 * @param img BGR image to detect the skin pixels in
+	 * @param min Lower YCrCb bound of the skin pixels
+	 * @param max Upper YCrCb bound of the skin pixels
+	 * @return Grayscale image where the white pixels are skin pixels, owned by this detector
+	 */
+	public synchronized Mat detectSkin(Mat img, Scalar min, Scalar max) {
+		long start = System.nanoTime();
 		
 		// Converts the given image to a YCrCb image
 		Imgproc.cvtColor(img, ycrcbImg, Imgproc.COLOR_BGR2YCrCb);
+		conversionTimes.add(System.nanoTime() - start);
 		
-		// Creates a grayscale image
-		Mat skinImg = new Mat(ycrcbImg.width(), ycrcbImg.height(), CvType.CV_8UC1);
+		return detectSkinFromYCrCb(ycrcbImg, min, max);
+	}
+	
+	
+	/**
+	 * Detects the skin pixels of an image that was already converted to the
+	 * YCrCb color space, e.g. the frame's shared YCrCb image from
+	 * {@link project.recognition.FrameContext#getYCrCb()}. The given image is
+	 * not modified.
+	 * 
+	 * @param ycrcbImg YCrCb image to detect the skin pixels in
+	 * @param min Lower YCrCb bound of the skin pixels
+	 * @param max Upper YCrCb bound of the skin pixels
+	 * @return Grayscale image where the white pixels are skin pixels, owned by this detector
+	 */
+	public synchronized Mat detectSkinFromYCrCb(Mat ycrcbImg, Scalar min, Scalar max) {
+		long start = System.nanoTime();
+		
+		// Sizes the grayscale image like the given image, only reallocating it when that size changed
+		skinImg.create(ycrcbImg.rows(), ycrcbImg.cols(), CvType.CV_8UC1);
 		
 		// Obtains all the pixels, within a specified range, in ycrcbImg and places them in skinImg
 		Core.inRange(ycrcbImg, min, max, skinImg);
+		inRangeTimes.add(System.nanoTime() - start);
+		
+		return removeNoise(skinImg);
+	}
+	
+	
+	/**
+	 * Detects the skin pixels from only the chroma planes of an image, e.g.
+	 * the frame's shared planes from {@link project.recognition.FrameContext#getCr()}
+	 * and {@link project.recognition.FrameContext#getCb()}, which are taken
+	 * straight from unconverted YUYV frames. The luma bounds are ignored, so
+	 * no YCrCb image is needed. The given planes are not modified.
+	 * 
+	 * @param crImg Cr plane to detect the skin pixels in
+	 * @param cbImg Cb plane to detect the skin pixels in
+	 * @param min Lower YCrCb bound of the skin pixels
+	 * @param max Upper YCrCb bound of the skin pixels
+	 * @return Grayscale image where the white pixels are skin pixels, owned by this detector
+	 */
+	public synchronized Mat detectSkinFromCrCb(Mat crImg, Mat cbImg, Scalar min, Scalar max) {
+		long start = System.nanoTime();
+		
+		// Sizes the masks like the given planes, only reallocating them when that size changed
+		skinImg.create(crImg.rows(), crImg.cols(), CvType.CV_8UC1);
+		cbMask.create(cbImg.rows(), cbImg.cols(), CvType.CV_8UC1);
+		
+		// Obtains the pixels within the Cr range, and within the Cb range, and keeps those in both
+		Core.inRange(crImg, new Scalar(min.val[1]), new Scalar(max.val[1]), skinImg);
+		Core.inRange(cbImg, new Scalar(min.val[2]), new Scalar(max.val[2]), cbMask);
+		Core.bitwise_and(skinImg, cbMask, skinImg);
+		inRangeTimes.add(System.nanoTime() - start);
+		
+		return removeNoise(skinImg);
+	}
+	
+	
+	/**
+	 * Removes the small white noise from the specified skin mask, in place.
+	 * 
+	 * @param skinImg Grayscale image where the white pixels are skin pixels
+	 * @return The given image
+	 */
+	private Mat removeNoise(Mat skinImg) {
+		long start = System.nanoTime();
+		
+		// Creates the rectangular-shaped kernels of the erosion and dilation once
+		if (erodeKernel == null) {
+			erodeKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(6, 6));
+			dilateKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
+		}
 		
-		// Creates a rectangular-shaped kernel to be used in the following image erosion
-		Mat rectKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(6, 6));
 		// Erodes the selected pixels, removing small white noise in skinImg
-		Imgproc.erode(skinImg, skinImg, rectKernel, new Point(3, 3), 2);
+		Imgproc.erode(skinImg, skinImg, erodeKernel, erodeAnchor, 2);
 		
-		// Creates a rectangular-shaped kernel to be used in the following image dilation
-		rectKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
 		// Dilates the selected pixels, enlarging the darker-colored objects since erosion previously shrunk them
-		Imgproc.dilate(skinImg, skinImg, rectKernel, new Point(1, 1), 2);
+		Imgproc.dilate(skinImg, skinImg, dilateKernel, dilateAnchor, 2);
+		morphologyTimes.add(System.nanoTime() - start);
 		
 		// Returns a grayscale image where the white pixels in the image are skin pixels
 		return skinImg;
 	}
+	
+	
+	/**
+	 * Returns the timings of the conversions of BGR images to YCrCb.
+	 * 
+	 * @return The timing statistics of the color conversion
+	 */
+	public final TimingStatistics getConversionStatistics() {
+		return conversionTimes;
+	}
+	
+	
+	/**
+	 * Returns the timings of the range tests of the skin pixels.
+	 * 
+	 * @return The timing statistics of the range test
+	 */
+	public final TimingStatistics getInRangeStatistics() {
+		return inRangeTimes;
+	}
+	
+	
+	/**
+	 * Returns the timings of the erosion and dilation of the skin masks.
+	 * 
+	 * @return The timing statistics of the noise removal
+	 */
+	public final TimingStatistics getMorphologyStatistics() {
+		return morphologyTimes;
+	}
+	
+	
+	/**
+	 * Releases the native memory of the images and kernels of this detector;
+	 * they are reallocated if it is used again.
+	 */
+	public synchronized void release() {
+		ycrcbImg.release();
+		skinImg.release();
+		cbMask.release();
+		if (erodeKernel != null) {
+			erodeKernel.release();
+			dilateKernel.release();
+			erodeKernel = dilateKernel = null;
+		}
+	}
 }
@@ -10,7 +10,10 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedList;
+import java.util.Locale;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -32,6 +35,7 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.opencv.core.Core;
+import org.opencv.core.Size;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -41,6 +45,8 @@ import org.xml.sax.SAXException;
 
 import project.gui.common.GestureDialog;
 import project.recognition.AbstractGesture;
+import project.recognition.types.HaarClassifierGesture;
+import project.util.logger.Log;
 import wizard.gui.ConfigWizard;
 import wizard.gui.StepPanel;
 import custom.javax.swing.layout.TableLayout;
@@ -138,6 +144,247 @@ public class Config implements Runnable {
 	}
 	
 	
+	/**
+	 * Applies the detection parameters configured for the gesture of the
+	 * same name to the specified gesture; the scale factor, the minimum number
+	 * of neighbors and the bounds of the object size, each as far as it is
+	 * configured. The parameters are the attributes of the {@code detection}
+	 * element of the gesture, e.g.
+	 * <pre>&lt;detection scaleFactor="1.2" minNeighbors="3" minSize="32x32" maxSize="160x160"/&gt;</pre>
+	 * 
+	 * @param gesture	the {@link HaarClassifierGesture} to apply the
+	 * 					parameters to.
+	 * 
+	 * @return	{@code true} if detection parameters are configured for the
+	 * 			gesture; otherwise, returns {@code false}.
+	 * 
+	 * @see project.recognition.tools.DetectionParameterTuner
+	 */
+	public final boolean applyDetectionParameters(
+			HaarClassifierGesture gesture)
+	{
+		Element gestureElement = findGestureElement(gesture.getName());
+		Element detection = gestureElement != null
+				? getFirstChildElement(gestureElement, "detection") : null;
+		if (detection == null)
+			return false;
+		
+		try {
+			String value = detection.getAttribute("scaleFactor");
+			if (!value.isEmpty())
+				gesture.setScaleFactor(Double.parseDouble(value));
+			value = detection.getAttribute("minNeighbors");
+			if (!value.isEmpty())
+				gesture.setMinNeighbors(Integer.parseInt(value));
+			value = detection.getAttribute("minSize");
+			if (!value.isEmpty())
+				gesture.setMinObjectSize(parseSize(value));
+			value = detection.getAttribute("maxSize");
+			if (!value.isEmpty())
+				gesture.setMaxObjectSize(parseSize(value));
+		}
+		catch (IllegalArgumentException iae) {
+			Log.warning("Invalid detection parameters for the gesture '"
+					+ gesture.getName() + "': " + iae.getMessage());
+			return false;
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Stores the current detection parameters of the specified gesture as
+	 * the configured parameters of the gesture of the same name, adding the
+	 * gesture to the configuration if it isn't configured yet. The
+	 * configuration file isn't written until it is saved.
+	 * 
+	 * @param gesture	the {@link HaarClassifierGesture} to store the
+	 * 					parameters of.
+	 * 
+	 * @see #applyDetectionParameters(HaarClassifierGesture)
+	 * @see #save()
+	 */
+	public final void setDetectionParameters(HaarClassifierGesture gesture) {
+		if (xmlConfigDoc == null) {
+			xmlConfigDoc = docBuilder.newDocument();
+			xmlConfigDoc.appendChild(
+					xmlConfigDoc.createElement("configuration"));
+		}
+		
+		Element gestureElement = findGestureElement(gesture.getName());
+		if (gestureElement == null) {
+			Node gestures = getFirstNodeByTagName("gestures", xmlConfigDoc);
+			if (gestures == null) {
+				gestures = xmlConfigDoc.createElement("gestures");
+				xmlConfigDoc.getDocumentElement().appendChild(gestures);
+			}
+			
+			gestureElement = xmlConfigDoc.createElement("gesture");
+			Element name = xmlConfigDoc.createElement("name");
+			name.appendChild(xmlConfigDoc.createTextNode(gesture.getName()));
+			gestureElement.appendChild(name);
+			gestures.appendChild(gestureElement);
+		}
+		
+		Element detection = getFirstChildElement(gestureElement, "detection");
+		if (detection != null)
+			gestureElement.removeChild(detection);
+		
+		detection = xmlConfigDoc.createElement("detection");
+		detection.setAttribute("scaleFactor", String.format(Locale.ROOT, "%.3f",
+				gesture.getScaleFactor()));
+		detection.setAttribute("minNeighbors", "" + gesture.getMinNeighbors());
+		Size min = gesture.getMinObjectSize();
+		if (min != null)
+			detection.setAttribute("minSize", formatSize(min));
+		Size max = gesture.getMaxObjectSize();
+		if (max != null)
+			detection.setAttribute("maxSize", formatSize(max));
+		gestureElement.appendChild(detection);
+	}
+	
+	
+	/**
+	 * Writes the configuration, with any changes made to it, to the
+	 * configuration file.
+	 * 
+	 * @return	{@code true} if the configuration file was written; otherwise,
+	 * 			returns {@code false}.
+	 */
+	public final boolean save() {
+		return xmlConfigDoc != null && writeConfigFile(xmlConfigDoc);
+	}
+	
+	
+	/**
+	 * Writes the specified XML document as the configuration file and loads
+	 * it back as the current configuration. The document is written to a
+	 * temporary file next to the configuration file first, which then
+	 * replaces it; if the writing fails, the configuration file is left as
+	 * it was.
+	 * 
+	 * @param doc	the XML {@link Document} to write.
+	 * 
+	 * @return	{@code true} if the configuration file was written; otherwise,
+	 * 			returns {@code false}.
+	 */
+	private final boolean writeConfigFile(Document doc) {
+		try {
+			TransformerFactory transformerFactory =
+					TransformerFactory.newInstance();
+			Transformer transformer = transformerFactory.newTransformer();
+			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			
+			File xmlFile = new File(filePath).getAbsoluteFile();
+			File tmp = File.createTempFile(xmlFile.getName(), ".tmp",
+					xmlFile.getParentFile());
+			try {
+				DOMSource source = new DOMSource(doc);
+				StreamResult result = new StreamResult(tmp);
+				
+				transformer.transform(source, result);
+				Files.move(tmp.toPath(), xmlFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				tmp.delete();
+			}
+			loadConfigFile(xmlFile);
+			return true;
+		}
+		catch (TransformerException | IOException e) {
+			Log.error("Unable to write the configuration file " + filePath
+					+ ": " + e.getMessage());
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Returns the {@code gesture} element of the configuration with the
+	 * specified name, either as its {@code name} child element or its
+	 * {@code name} attribute.
+	 * 
+	 * @param name	the name of the gesture.
+	 * 
+	 * @return	the {@link Element} of the gesture, or {@code null} if the
+	 * 			gesture isn't configured.
+	 */
+	private final Element findGestureElement(String name) {
+		if (xmlConfigDoc == null || name == null)
+			return null;
+		
+		NodeList nodes = xmlConfigDoc.getElementsByTagName("gesture");
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Element gesture = (Element)nodes.item(i);
+			Element nameElement = getFirstChildElement(gesture, "name");
+			String gestureName = nameElement != null
+					? nameElement.getTextContent().trim()
+					: gesture.getAttribute("name");
+			if (name.equals(gestureName))
+				return gesture;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns the first child element of the specified element with the
+	 * tag name.
+	 * 
+	 * @param parent	the {@link Element} to search the children of.
+	 * @param tagName	the XML tag name of the child element.
+	 * 
+	 * @return	the first child {@link Element} with the tag name, or
+	 * 			{@code null} if there is none.
+	 */
+	private static final Element getFirstChildElement(Element parent,
+			String tagName)
+	{
+		for (Node n = parent.getFirstChild(); n != null;
+				n = n.getNextSibling())
+		{
+			if (n instanceof Element && tagName.equals(n.getNodeName()))
+				return (Element)n;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns the size of the specified {@code WIDTHxHEIGHT} form.
+	 * 
+	 * @param value	the {@link String} form of the size.
+	 * 
+	 * @return	the parsed {@link Size}.
+	 * 
+	 * @throws NumberFormatException if the value isn't a size.
+	 */
+	private static final Size parseSize(String value)
+			throws NumberFormatException
+	{
+		int x = value.indexOf('x');
+		if (x < 0)
+			throw new NumberFormatException("Invalid size '" + value + "'");
+		
+		return new Size(Double.parseDouble(value.substring(0, x).trim()),
+				Double.parseDouble(value.substring(x + 1).trim()));
+	}
+	
+	
+	/**
+	 * Returns the {@code WIDTHxHEIGHT} form of the specified size.
+	 * 
+	 * @param size	the {@link Size} to format.
+	 * 
+	 * @return	the {@link String} form of the size.
+	 */
+	private static final String formatSize(Size size) {
+		return Math.round(size.width) + "x" + Math.round(size.height);
+	}
+	
+	
 	/**
 	 * Returns {@code true} if the file path to the configuration file is not
 	 * {@code null}, the file exists, and the path specifies a readable file;
@@ -247,26 +494,7 @@ public class Config implements Runnable {
 		 */
 		@Override
 		public void finished(Document doc) {
-			try {
-				TransformerFactory transformerFactory =
-						TransformerFactory.newInstance();
-				Transformer transformer = transformerFactory.newTransformer();
-				transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-				transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-				
-				File xmlFile = new File(filePath);
-				if (xmlFile.exists())
-					xmlFile.delete();
-				
-				DOMSource source = new DOMSource(doc);
-				StreamResult result = new StreamResult(xmlFile);
-				
-				transformer.transform(source, result);
-				loadConfigFile(xmlFile);
-			}
-			catch (TransformerException e) {
-				e.printStackTrace();
-			}
+			writeConfigFile(doc);
 		}
 		
 		
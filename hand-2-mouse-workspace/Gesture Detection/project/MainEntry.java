@@ -129,6 +129,18 @@ public class MainEntry {
 	}
 	
 	
+	/**
+	 * Returns the configuration of the application, loaded from the
+	 * configuration file on start-up.
+	 * 
+	 * @return	the {@link Config} of the application, or {@code null} if the
+	 * 			application hasn't been started.
+	 */
+	public final static Config getConfig() {
+		return config;
+	}
+	
+	
 	/**
 	 * This method provides the main entry point of the overall application.
 	 * Several command-line parameters may be used in order to specify certain
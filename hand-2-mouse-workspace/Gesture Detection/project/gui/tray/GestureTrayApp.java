@@ -39,6 +39,7 @@ import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.imgproc.Imgproc;
 
+import project.Config;
 import project.MainEntry;
 import project.gui.common.ClassifierDetailsPanel;
 import project.gui.common.LogPanel;
@@ -254,6 +255,15 @@ public class GestureTrayApp implements Runnable {
 		hc.setClassifier(clsRoot + "palm.xml");
 		hc.setHighLightColor(Color.ORANGE);
 		gr.registerGesture(hc);
+		
+		// Apply the tuned detection parameters from the configuration...
+		Config config = MainEntry.getConfig();
+		if (config != null) {
+			for (AbstractGesture g : gr.getGestures()) {
+				if (g instanceof HaarClassifierGesture)
+					config.applyDetectionParameters((HaarClassifierGesture)g);
+			}
+		}
 	}
 	
 	
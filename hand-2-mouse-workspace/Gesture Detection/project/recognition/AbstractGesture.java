@@ -6,6 +6,8 @@ package project.recognition;
 import java.awt.Color;
 import java.io.Serializable;
 
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.EventListenerList;
 
 import org.opencv.core.Mat;
@@ -63,7 +65,9 @@ public abstract class AbstractGesture implements Serializable {
 	private final EventListenerList listenerList = new EventListenerList();
 
 	// Member data.
-	private boolean enabled = true;
+	private transient volatile Clock clock = Clock.SYSTEM;
+	private transient volatile boolean synchronousDispatch = false;
+	private volatile boolean enabled = true;
 	private String name = null;
 	private String desc = "";
 	
@@ -134,12 +138,55 @@ public abstract class AbstractGesture implements Serializable {
 	
 	/**
 	 * Set this instance of the gesture to be enabled or disabled based on the
-	 * parameter specified.
+	 * parameter specified. If the value changes, the registered
+	 * {@link ChangeListener}s are notified.
 	 * 
 	 * @param enabled	whether this gesture is enabled or not.
 	 */
 	public void setEnabled(boolean enabled) {
+		if (this.enabled == enabled)
+			return;
+		
 		this.enabled = enabled;
+		fireStateChanged();
+	}
+	
+	
+	/**
+	 * Registers the specified {@link ChangeListener} to this instance of the
+	 * gesture for notification when the gesture is enabled or disabled.
+	 * 
+	 * @param cl	The new {@link ChangeListener} to register.
+	 * 
+	 * @see javax.swing.event.ChangeListener
+	 */
+	public final void addChangeListener(ChangeListener cl) {
+		listenerList.add(ChangeListener.class, cl);
+	}
+	
+	
+	/**
+	 * Removes the specified {@link ChangeListener} from the registered
+	 * listeners for this instance of the gesture.
+	 * 
+	 * @param cl	The {@link ChangeListener} to remove.
+	 * 
+	 * @see javax.swing.event.ChangeListener
+	 */
+	public final void removeChangeListener(ChangeListener cl) {
+		listenerList.remove(ChangeListener.class, cl);
+	}
+	
+	
+	/**
+	 * Notifies all of the registered {@link ChangeListener}s that this
+	 * instance of the gesture was enabled or disabled. The notification is
+	 * done on the calling thread.
+	 */
+	protected final void fireStateChanged() {
+		ChangeEvent ce = new ChangeEvent(this);
+		for (ChangeListener cl : listenerList.getListeners(ChangeListener.class))
+			cl.stateChanged(ce);
 	}
 	
 	
@@ -147,9 +194,10 @@ public abstract class AbstractGesture implements Serializable {
 	 * <p>Primary means for this implementation of the gesture detection. The 
 	 * matrix parameter is a {@link org.opencv.core.Mat} which should not be
 	 * modified! If there are required modification to the image data, make a
-	 * copy and use the copy to manipulate the data. Otherwise, any changes to
-	 * the original image data will be reflected in the publishing of the image
-	 * from within the {@link GestureRecognizer}
+	 * copy and use the copy to manipulate the data. The same matrix may be
+	 * shared with other gestures detecting concurrently on the same frame, so
+	 * any highlighting of the detected object(s) must be done in
+	 * {@link #paintDetection(Mat)} instead.
 	 * <p>If the implementation detects the appropriate object(s), use the
 	 * {@link #fireGestureDetected(int, int, int)} method to notify the
 	 * registered {@link GestureListener}s.
@@ -164,6 +212,94 @@ public abstract class AbstractGesture implements Serializable {
 	abstract public void detect(final Mat matrix);
 	
 	
+	/**
+	 * <p>Detection entry point used by the {@link GestureRecognizer} for each
+	 * captured frame. The {@link FrameContext} provides the captured frame
+	 * along with its derived images, e.g. grayscale or YCrCb, which are
+	 * computed at most once per frame and shared with all of the other
+	 * enabled gestures; implementations should prefer those over converting
+	 * the frame themselves.
+	 * <p>By default, this calls {@link #detect(Mat)} with the captured frame
+	 * in the BGR color space.
+	 * 
+	 * @param frame	The context of the captured frame; neither the frame nor
+	 * 				any of its derived images may be modified.
+	 * 
+	 * @see project.recognition.FrameContext
+	 * @see #detect(Mat)
+	 */
+	public void detect(final FrameContext frame) {
+		detect(frame.getBGR());
+	}
+	
+	
+	/**
+	 * Paints the highlights for the object(s) found by the last call to
+	 * {@link #detect(Mat)} onto the specified matrix. This is called by the
+	 * {@link GestureRecognizer} once all of the enabled gestures have finished
+	 * detecting on the frame and before the frame is published, one gesture at
+	 * a time. The matrix is the frame shared by all of the gestures, so it
+	 * may only be painted onto; it must keep its size and type, e.g. any
+	 * image of the gesture is converted into a matrix of its own before it is
+	 * copied onto it. By default, nothing is painted.
+	 * 
+	 * @param matrix	The matrix of image data to be published.
+	 * 
+	 * @see #detect(Mat)
+	 */
+	public void paintDetection(Mat matrix) { }
+	
+	
+	/**
+	 * Releases the resources held by this gesture, e.g. a classifier shared
+	 * with other gestures. This is called by the {@link GestureRecognizer}
+	 * once the gesture is unregistered; the gesture may still be finishing the
+	 * detection of the current frame. By default, nothing is released.
+	 * 
+	 * @see project.recognition.GestureRecognizer#unregisterGesture(String)
+	 */
+	public void release() { }
+	
+	
+	/**
+	 * Returns the clock the time stamps of the fired {@link GestureEvent}s are
+	 * taken from.
+	 * 
+	 * @return	the {@link Clock} of this gesture.
+	 */
+	public final Clock getClock() {
+		Clock c = clock;
+		return c != null ? c : Clock.SYSTEM;
+	}
+	
+	
+	/**
+	 * Sets the clock the time stamps of the fired {@link GestureEvent}s are
+	 * taken from; set by the {@link GestureRecognizer} this gesture is
+	 * registered with.
+	 * 
+	 * @param clock	The {@link Clock} of this gesture.
+	 */
+	final void setClock(Clock clock) {
+		this.clock = clock;
+	}
+	
+	
+	/**
+	 * Sets whether the registered {@link GestureListener}s are notified on the
+	 * detecting thread, in the order the gestures are detected, rather than on
+	 * a separate thread per event. This is set by the
+	 * {@link GestureRecognizer} when replaying, so the events are delivered
+	 * deterministically.
+	 * 
+	 * @param synchronous	{@code true} to notify the listeners on the
+	 * 						detecting thread.
+	 */
+	final void setSynchronousDispatch(boolean synchronous) {
+		this.synchronousDispatch = synchronous;
+	}
+	
+	
 	/**
 	 * Returns the name for this particular instance of the gesture as a
 	 * {@link String}.
@@ -254,16 +390,30 @@ public abstract class AbstractGesture implements Serializable {
 	protected synchronized final void fireGestureDetected(int id, int x, int y)
 	{
 		GestureEvent ge = new GestureEvent(this, id,
-				System.currentTimeMillis(), x, y);
+				getClock().currentTimeMillis(), x, y);
 		
 		notifyGestureListeners(ge);
 	}
 	
 	
+	/**
+	 * Notifies all of the registered {@link GestureListener}s with the
+	 * specified {@link GestureEvent}, e.g. an event fired on behalf of this
+	 * gesture by a stage combining the detections of several gestures.
+	 * 
+	 * @param ge	The gesture event to notify the listeners with.
+	 * 
+	 * @see project.recognition.types.DetectionFusion
+	 */
+	protected synchronized final void fireGestureDetected(GestureEvent ge) {
+		notifyGestureListeners(ge);
+	}
+	
+	
 	/**
 	 * Notifies all registered {@link GestureListener}s of this instance of the
 	 * gesture with the specified {@link GestureEvent}. This notification is 
-	 * handled in a separate thread.
+	 * handled in a separate thread, unless the synchronous dispatch is set.
 	 * 
 	 * @param ge	The new gesture event to notify all appropriate registered
 	 * 				listeners with.
@@ -277,6 +427,15 @@ public abstract class AbstractGesture implements Serializable {
 		final GestureListener[] listeners =
 				listenerList.getListeners(GestureListener.class);
 		
+		if (listeners.length == 0)
+			return;
+		
+		if (synchronousDispatch) {
+			for (GestureListener gl : listeners)
+				gl.gestureDetected(ge);
+			return;
+		}
+		
 		new Thread( new Runnable() {
 
 			@Override
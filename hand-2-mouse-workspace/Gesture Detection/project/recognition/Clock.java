@@ -0,0 +1,65 @@
+/**
+ * 
+ */
+package project.recognition;
+
+/**
+ * <p>Provides the source of time used by the gesture recognition for the
+ * frames-per-second calculation and the time stamps of the fired
+ * {@link project.recognition.event.GestureEvent}s. The {@link #SYSTEM} clock
+ * is used for live detection, whereas a {@link VirtualClock} is driven by the
+ * time stamps of the replayed frames, so replaying a recording yields the
+ * same time stamps no matter how fast it is processed.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.VirtualClock
+ */
+public abstract class Clock {
+	
+	
+	/**
+	 * The clock of the system, backed by {@link System#currentTimeMillis()}
+	 * and {@link System#nanoTime()}.
+	 */
+	public static final Clock SYSTEM = new Clock() {
+		
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+		
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+		
+		@Override
+		public String toString() {
+			return "Clock.SYSTEM";
+		}
+		
+	};
+	
+	
+	/**
+	 * Returns the current time of this clock in milliseconds.
+	 * 
+	 * @return	the current time in milliseconds.
+	 * 
+	 * @see System#currentTimeMillis()
+	 */
+	public abstract long currentTimeMillis();
+	
+	
+	/**
+	 * Returns the current time of this clock in nanoseconds, relative to an
+	 * arbitrary but fixed origin; only meant for measuring elapsed time.
+	 * 
+	 * @return	the current time in nanoseconds.
+	 * 
+	 * @see System#nanoTime()
+	 */
+	public abstract long nanoTime();
+	
+}
@@ -0,0 +1,100 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import org.opencv.core.Mat;
+
+import project.recognition.source.FrameSource;
+import project.util.logger.Log;
+
+/**
+ * Provides the dedicated video capture thread which continuously reads the
+ * frames from the {@link FrameSource} into the slots of a
+ * {@link FrameRingBuffer}. Reading a live source on its own thread keeps the
+ * device's internal buffer drained regardless of how long the gesture
+ * detection takes for any single frame. A source that is not live is read in
+ * lock-step with the detection instead, so none of its frames are dropped.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.FrameRingBuffer
+ * @see project.recognition.source.FrameSource
+ */
+class FrameCaptureThread extends Thread {
+	
+	
+	/**
+	 * The delay in milliseconds to wait for the thread to finish reading its
+	 * current frame when shutting down.
+	 */
+	private static final int shutdownDelayInMillis = 2000;
+	
+	
+	// Private member fields.
+	private final FrameSource source;
+	private final FrameRingBuffer ring;
+	
+	// Private member data.
+	private volatile boolean running = true;
+	
+	
+	/**
+	 * Constructor for a new instance of this capture thread with the specified
+	 * source of frames and the ring buffer to write the frames into.
+	 * 
+	 * @param source	The {@link FrameSource} to read from.
+	 * @param ring		The {@link FrameRingBuffer} to write the frames into.
+	 */
+	public FrameCaptureThread(FrameSource source, FrameRingBuffer ring) {
+		super("FrameCaptureThread");
+		setDaemon(true);
+		
+		this.source = source;
+		this.ring = ring;
+		ring.setLossless(!source.isLive());
+	}
+	
+	
+	@Override
+	public void run() {
+		Log.debug(getClass().getSimpleName() + " running...");
+		Mat slot;
+		
+		try {
+			while (running && (slot = ring.beginWrite()) != null) {
+				if (!source.read(slot)) {
+					ring.abortWrite();
+					if (!source.isLive())
+						Log.debug("End of " + source + " reached.");
+					break;
+				}
+				ring.endWrite(System.nanoTime(), source.getFrameTime());
+			}
+		}
+		catch (InterruptedException ignore) { }
+		finally {
+			ring.close();
+			Log.debug(getClass().getSimpleName() + " stopped!");
+		}
+	}
+	
+	
+	/**
+	 * Stops this capture thread after the frame currently being read and waits
+	 * for the thread to finish, so the frame source may be safely released
+	 * afterwards.
+	 */
+	public void shutdown() {
+		running = false;
+		ring.close();
+		interrupt();
+		
+		if (Thread.currentThread() != this) {
+			try {
+				join(shutdownDelayInMillis);
+			} catch (InterruptedException ignore) { }
+		}
+	}
+	
+}
@@ -0,0 +1,569 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import project.recognition.cascade.IntegralImages;
+
+/**
+ * <p>Provides the per-frame context handed to each of the enabled gestures by
+ * the {@link GestureRecognizer}. Besides the captured frame itself, the
+ * context lazily computes the derived images commonly needed by the gestures,
+ * such as the grayscale, YCrCb, equalized and downscaled variants and the
+ * integral images of the latter, on the first request and caches them for the
+ * remainder of the frame. So each of the derived images is computed at most
+ * once per frame no matter how many gestures request it.
+ * <p>The derived images are shared between all of the gestures, which may be
+ * running concurrently, and therefore must not be modified. The matrices are
+ * reused from one frame to the next, so a gesture must not hold on to them
+ * past its {@link AbstractGesture#detect(FrameContext)} call.
+ * <p>The downscaled images and integral images are kept per scale factor
+ * only as long as that factor is requested; the images of a factor which
+ * wasn't requested for the previous frame are released on the next
+ * {@link #reset(Mat)}. So factors varying from frame to frame, e.g. with
+ * adaptive scales, don't accumulate images.
+ * <p>The captured frame is either in the BGR color space or, when the source
+ * delivers unconverted frames, in the packed two channel YUYV (YUV 4:2:2)
+ * format. For YUYV frames the luma and chroma planes are taken straight from
+ * the frame; the grayscale image is the luma plane itself, and the Cr and Cb
+ * planes are merely de-interleaved, so no color space conversion is needed
+ * unless a gesture explicitly asks for the BGR image.
+ * <p>The context also provides the skin mask of the frame and the regions
+ * proposed from it by its {@link SkinRegionProposer}, i.e. for gating the
+ * cascade classifiers to the places a hand could be.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.AbstractGesture#detect(FrameContext)
+ */
+public class FrameContext {
+	
+	
+	// Private member fields.
+	private final Mat gray = new Mat();
+	private final Mat bgr = new Mat();
+	private final Mat chroma = new Mat();
+	private final Mat chromaHalf = new Mat();
+	private final Mat cr = new Mat();
+	private final Mat cb = new Mat();
+	private final Mat ycrcb = new Mat();
+	private final Mat equalized = new Mat();
+	private final Map<Double,Mat> scaled = new HashMap<Double,Mat>();
+	private final Map<Double,Boolean> scaledValid = new HashMap<Double,Boolean>();
+	private final Map<Double,IntegralImages> integrals =
+			new HashMap<Double,IntegralImages>();
+	private final Map<Double,Boolean> integralsValid =
+			new HashMap<Double,Boolean>();
+	private final Object grayLock = new Object();
+	private final Object bgrLock = new Object();
+	private final Object chromaLock = new Object();
+	private final Object ycrcbLock = new Object();
+	private final Object equalizedLock = new Object();
+	private final Object skinLock = new Object();
+	
+	// Private member data.
+	private Mat frame = null;
+	private long frameNumber = -1l;
+	private boolean hasGray = false;
+	private boolean hasBGR = false;
+	private boolean hasChroma = false;
+	private boolean hasYCrCb = false;
+	private boolean hasEqualized = false;
+	private boolean hasSkin = false;
+	private Mat skinMask = null;
+	private Rect[] proposals = new Rect[0];
+	private volatile SkinRegionProposer proposer = new SkinRegionProposer();
+	
+	
+	/**
+	 * Constructor for a new, empty, instance of this frame context to be
+	 * reused for each of the frames through {@link #reset(Mat)}.
+	 */
+	public FrameContext() {
+		super();
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this frame context for the specified
+	 * captured frame.
+	 * 
+	 * @param frame	The captured frame in the BGR color space, or in the YUYV
+	 * 				format.
+	 */
+	public FrameContext(Mat frame) {
+		this();
+		reset(frame);
+	}
+	
+	
+	/**
+	 * Resets this context to the specified newly captured frame; all of the
+	 * previously derived images are invalidated, but their matrices are kept
+	 * to be reused for this frame. The downscaled and integral images of the
+	 * scale factors which weren't requested for the previous frame are
+	 * released.
+	 * 
+	 * @param frame	The captured frame in the BGR color space, or in the YUYV
+	 * 				format.
+	 */
+	public void reset(Mat frame) {
+		synchronized (grayLock) {
+			hasGray = false;
+		}
+		synchronized (bgrLock) {
+			hasBGR = false;
+		}
+		synchronized (chromaLock) {
+			hasChroma = false;
+		}
+		synchronized (ycrcbLock) {
+			hasYCrCb = false;
+		}
+		synchronized (equalizedLock) {
+			hasEqualized = false;
+		}
+		synchronized (skinLock) {
+			hasSkin = false;
+		}
+		synchronized (scaled) {
+			Iterator<Map.Entry<Double,Boolean>> it =
+					scaledValid.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Double,Boolean> entry = it.next();
+				if (entry.getValue().booleanValue())
+					entry.setValue(Boolean.FALSE);
+				else {
+					scaled.remove(entry.getKey()).release();
+					it.remove();
+				}
+			}
+		}
+		synchronized (integrals) {
+			Iterator<Map.Entry<Double,Boolean>> it =
+					integralsValid.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Double,Boolean> entry = it.next();
+				if (entry.getValue().booleanValue())
+					entry.setValue(Boolean.FALSE);
+				else {
+					integrals.remove(entry.getKey());
+					it.remove();
+				}
+			}
+		}
+		
+		this.frame = frame;
+		frameNumber++;
+	}
+	
+	
+	/**
+	 * Returns the captured frame of this context, as delivered by the source;
+	 * either in the BGR color space or in the YUYV format.
+	 * 
+	 * @return	the captured frame.
+	 * 
+	 * @see #isYUYV()
+	 * @see #getBGR()
+	 */
+	public final Mat getImage() {
+		return frame;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the captured frame is in the packed, two
+	 * channel, YUYV format; otherwise, returns {@code false} if it is in the
+	 * BGR color space.
+	 * 
+	 * @return	whether the captured frame is unconverted YUYV.
+	 */
+	public final boolean isYUYV() {
+		return frame != null && frame.channels() == 2;
+	}
+	
+	
+	/**
+	 * Returns the captured frame in the BGR color space. For a BGR frame this
+	 * is the frame itself; a YUYV frame is converted on the first request for
+	 * the current frame.
+	 * 
+	 * @return	the three channel BGR image.
+	 */
+	public Mat getBGR() {
+		if (!isYUYV())
+			return frame;
+		
+		synchronized (bgrLock) {
+			if (!hasBGR) {
+				Imgproc.cvtColor(frame, bgr, Imgproc.COLOR_YUV2BGR_YUYV);
+				hasBGR = true;
+			}
+			return bgr;
+		}
+	}
+	
+	
+	/**
+	 * Returns the sequence number of the current frame of this context,
+	 * starting with zero for the first frame.
+	 * 
+	 * @return	the frame number.
+	 */
+	public final long getFrameNumber() {
+		return frameNumber;
+	}
+	
+	
+	/**
+	 * Returns the grayscale variant of the captured frame, computing it on the
+	 * first request for the current frame. For a YUYV frame this is the luma
+	 * plane, extracted without any conversion.
+	 * 
+	 * @return	the single channel grayscale image.
+	 * 
+	 * @see #getLuma()
+	 */
+	public Mat getGray() {
+		synchronized (grayLock) {
+			if (!hasGray) {
+				if (isYUYV())
+					Core.extractChannel(frame, gray, 0);
+				else
+					Imgproc.cvtColor(frame, gray, Imgproc.COLOR_BGR2GRAY);
+				hasGray = true;
+			}
+			return gray;
+		}
+	}
+	
+	
+	/**
+	 * Returns the luma (Y) plane of the captured frame. The luma is weighted
+	 * the same as the grayscale conversion of a BGR frame, so this is the
+	 * same image as {@link #getGray()}.
+	 * 
+	 * @return	the single channel luma image.
+	 */
+	public Mat getLuma() {
+		return getGray();
+	}
+	
+	
+	/**
+	 * Returns the red-difference chroma (Cr) plane of the captured frame, at
+	 * the full resolution of the frame, computing it on the first request for
+	 * the current frame.
+	 * 
+	 * @return	the single channel Cr image.
+	 */
+	public Mat getCr() {
+		synchronized (chromaLock) {
+			computeChroma();
+			return cr;
+		}
+	}
+	
+	
+	/**
+	 * Returns the blue-difference chroma (Cb) plane of the captured frame, at
+	 * the full resolution of the frame, computing it on the first request for
+	 * the current frame.
+	 * 
+	 * @return	the single channel Cb image.
+	 */
+	public Mat getCb() {
+		synchronized (chromaLock) {
+			computeChroma();
+			return cb;
+		}
+	}
+	
+	
+	/**
+	 * Computes both of the chroma planes, unless already computed for the
+	 * current frame. A YUYV frame interleaves its Cb and Cr samples for each
+	 * pair of pixels, so they are de-interleaved and widened to the full
+	 * resolution by repeating each sample; the planes of a BGR frame are
+	 * extracted from its YCrCb variant. The caller must hold the chroma lock;
+	 * the YCrCb lock is only nested inside it for BGR frames, whereas for YUYV
+	 * frames the chroma lock is nested inside the YCrCb lock instead.
+	 */
+	private final void computeChroma() {
+		if (hasChroma)
+			return;
+		
+		if (isYUYV()) {
+			Size size = frame.size();
+			Core.extractChannel(frame, chroma, 1);
+			Mat pairs = chroma.reshape(2);
+			
+			Core.extractChannel(pairs, chromaHalf, 1);
+			Imgproc.resize(chromaHalf, cr, size, 0, 0, Imgproc.INTER_NEAREST);
+			Core.extractChannel(pairs, chromaHalf, 0);
+			Imgproc.resize(chromaHalf, cb, size, 0, 0, Imgproc.INTER_NEAREST);
+		}
+		else {
+			Mat img = getYCrCb();
+			Core.extractChannel(img, cr, 1);
+			Core.extractChannel(img, cb, 2);
+		}
+		hasChroma = true;
+	}
+	
+	
+	/**
+	 * Returns the YCrCb variant of the captured frame, computing it on the
+	 * first request for the current frame. For a YUYV frame the luma and
+	 * chroma planes are merely merged, without a color space conversion.
+	 * 
+	 * @return	the three channel YCrCb image.
+	 */
+	public Mat getYCrCb() {
+		synchronized (ycrcbLock) {
+			if (!hasYCrCb) {
+				if (isYUYV())
+					Core.merge(Arrays.asList(getLuma(), getCr(), getCb()),
+							ycrcb);
+				else
+					Imgproc.cvtColor(frame, ycrcb, Imgproc.COLOR_BGR2YCrCb);
+				hasYCrCb = true;
+			}
+			return ycrcb;
+		}
+	}
+	
+	
+	/**
+	 * Returns the histogram equalized variant of the grayscale image,
+	 * computing it on the first request for the current frame.
+	 * 
+	 * @return	the single channel equalized grayscale image.
+	 * 
+	 * @see #getGray()
+	 */
+	public Mat getEqualizedGray() {
+		synchronized (equalizedLock) {
+			if (!hasEqualized) {
+				Imgproc.equalizeHist(getGray(), equalized);
+				hasEqualized = true;
+			}
+			return equalized;
+		}
+	}
+	
+	
+	/**
+	 * Returns the skin mask of the captured frame, detected from its chroma
+	 * planes by the {@link SkinRegionProposer} of this context, computing it
+	 * on the first request for the current frame. The mask is owned by the
+	 * skin detector of the proposer; it must not be released.
+	 * 
+	 * @return	the single channel mask where the skin pixels are white.
+	 * 
+	 * @see #getSkinProposals()
+	 */
+	public Mat getSkinMask() {
+		synchronized (skinLock) {
+			computeSkin();
+			return skinMask;
+		}
+	}
+	
+	
+	/**
+	 * Returns the regions of the captured frame where a hand could be; the
+	 * padded and merged bounding boxes of the significant skin blobs,
+	 * computing them on the first request for the current frame. A frame
+	 * without any significant skin blob has no regions.
+	 * 
+	 * @return	a copy of the proposed regions, in frame coordinates.
+	 */
+	public Rect[] getSkinProposals() {
+		synchronized (skinLock) {
+			computeSkin();
+			Rect[] copy = new Rect[proposals.length];
+			for (int i = 0; i < proposals.length; i++)
+				copy[i] = proposals[i].clone();
+			return copy;
+		}
+	}
+	
+	
+	/**
+	 * Computes the skin mask and the region proposals, unless already computed
+	 * for the current frame. The caller must hold the skin lock.
+	 */
+	private final void computeSkin() {
+		if (hasSkin)
+			return;
+		
+		SkinRegionProposer p = proposer;
+		skinMask = p.detectSkin(getCr(), getCb());
+		proposals = p.propose(skinMask);
+		hasSkin = true;
+	}
+	
+	
+	/**
+	 * Returns the proposer of the skin regions of this context.
+	 * 
+	 * @return	the {@link SkinRegionProposer} of this context.
+	 */
+	public SkinRegionProposer getSkinRegionProposer() {
+		return proposer;
+	}
+	
+	
+	/**
+	 * Sets the proposer of the skin regions of this context, taking effect on
+	 * the next frame.
+	 * 
+	 * @param proposer	The {@link SkinRegionProposer} of this context.
+	 */
+	public void setSkinRegionProposer(SkinRegionProposer proposer) {
+		if (proposer == null)
+			throw new NullPointerException("setSkinRegionProposer(null)");
+		
+		this.proposer = proposer;
+	}
+	
+	
+	/**
+	 * Returns the grayscale image downscaled by the specified factor,
+	 * computing it on the first request of that factor for the current frame.
+	 * A factor of one, or more, returns the grayscale image itself. A factor of
+	 * exactly one half uses the Gaussian pyramid ({@code pyrDown}), any other
+	 * factor is resized with area interpolation.
+	 * 
+	 * @param scale	The factor, between zero and one, to scale the grayscale
+	 * 				image by.
+	 * 
+	 * @return	the single channel downscaled grayscale image.
+	 * 
+	 * @throws IllegalArgumentException if the factor is not greater than zero.
+	 * 
+	 * @see #getGray()
+	 */
+	public Mat getScaledGray(double scale) throws IllegalArgumentException {
+		if (!(scale > 0d))
+			throw new IllegalArgumentException("getScaledGray(" + scale
+					+ ") requires a factor greater than zero.");
+		
+		if (scale >= 1d)
+			return getGray();
+		
+		Double key = Double.valueOf(scale);
+		synchronized (scaled) {
+			Mat img = scaled.get(key);
+			if (img == null) {
+				img = new Mat();
+				scaled.put(key, img);
+				scaledValid.put(key, Boolean.FALSE);
+			}
+			
+			if (!Boolean.TRUE.equals(scaledValid.get(key))) {
+				Mat src = getGray();
+				if (scale == 0.5d)
+					Imgproc.pyrDown(src, img);
+				else {
+					Size size = new Size(
+							Math.max(1, Math.round(src.cols() * scale)),
+							Math.max(1, Math.round(src.rows() * scale)));
+					Imgproc.resize(src, img, size, 0, 0, Imgproc.INTER_AREA);
+				}
+				scaledValid.put(key, Boolean.TRUE);
+			}
+			return img;
+		}
+	}
+	
+	
+	/**
+	 * Returns the integral images of the grayscale image downscaled by the
+	 * specified factor, computing them on the first request of that factor for
+	 * the current frame. So all of the cascades evaluated in Java on the same
+	 * scaled image share a single computation of its integral images.
+	 * 
+	 * @param scale	The factor, between zero and one, the grayscale image is
+	 * 				scaled by.
+	 * 
+	 * @return	the {@link IntegralImages} of the scaled grayscale image.
+	 * 
+	 * @throws IllegalArgumentException if the factor is not greater than zero.
+	 * 
+	 * @see #getScaledGray(double)
+	 */
+	public IntegralImages getIntegralImages(double scale)
+			throws IllegalArgumentException
+	{
+		if (!(scale > 0d))
+			throw new IllegalArgumentException("getIntegralImages(" + scale
+					+ ") requires a factor greater than zero.");
+		
+		Double key = Double.valueOf(Math.min(scale, 1d));
+		synchronized (integrals) {
+			IntegralImages ii = integrals.get(key);
+			if (ii == null) {
+				ii = new IntegralImages();
+				integrals.put(key, ii);
+				integralsValid.put(key, Boolean.FALSE);
+			}
+			
+			if (!Boolean.TRUE.equals(integralsValid.get(key))) {
+				ii.compute(getScaledGray(key.doubleValue()));
+				integralsValid.put(key, Boolean.TRUE);
+			}
+			return ii;
+		}
+	}
+	
+	
+	/**
+	 * Releases the native memory of all of the derived images of this context.
+	 */
+	public void release() {
+		gray.release();
+		bgr.release();
+		chroma.release();
+		chromaHalf.release();
+		cr.release();
+		cb.release();
+		ycrcb.release();
+		equalized.release();
+		synchronized (skinLock) {
+			skinMask = null;
+			hasSkin = false;
+		}
+		synchronized (scaled) {
+			for (Mat img : scaled.values())
+				img.release();
+			scaled.clear();
+			scaledValid.clear();
+		}
+		synchronized (integrals) {
+			integrals.clear();
+			integralsValid.clear();
+		}
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[frame=" + getFrameNumber() + ","
+				+ "image=" + frame + "]";
+	}
+	
+}
@@ -0,0 +1,309 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import org.opencv.core.Mat;
+
+/**
+ * <p>Provides a fixed ring of pre-allocated and reused {@link Mat} slots that
+ * are shared between a single producer, the video capture thread, and a single
+ * consumer, the gesture detection worker.
+ * <p>The producer always writes into a slot that is neither held by the
+ * consumer nor holding the newest unconsumed frame, so the capture never waits
+ * on detection. The consumer always receives the newest captured frame; any
+ * older frame that was never consumed is dropped and counted.
+ * <p>In lossless mode, used for sources that are not live such as recorded
+ * video files, the producer instead waits until the consumer has acquired the
+ * newest frame before writing the next one, so no frame is ever dropped.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.FrameCaptureThread
+ * @see project.recognition.GestureRecognizerWorker
+ */
+class FrameRingBuffer {
+	
+	
+	/**
+	 * The default number of slots; one being written, one holding the newest
+	 * frame, and one being read by the consumer.
+	 */
+	public static final int DEFAULT_CAPACITY = 3;
+	
+	
+	// Private member fields.
+	private final Mat[] slots;
+	private final long[] timestamps;
+	private final long[] frameTimes;
+	
+	// Private member data.
+	private int writing = -1;
+	private int latest = -1;
+	private int reading = -1;
+	private int nextSlot = 0;
+	private boolean closed = false;
+	private boolean lossless = false;
+	private long capturedFrames = 0l;
+	private long consumedFrames = 0l;
+	private long droppedFrames = 0l;
+	private long lastQueueAge = 0l;
+	private long totalQueueAge = 0l;
+	private long readTimestamp = 0l;
+	private long readFrameTime = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this ring buffer with the
+	 * {@link #DEFAULT_CAPACITY} number of slots.
+	 */
+	public FrameRingBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this ring buffer with the specified
+	 * number of slots.
+	 * 
+	 * @param capacity	The number of {@link Mat} slots to pre-allocate, which
+	 * 					must be at least {@link #DEFAULT_CAPACITY}.
+	 * 
+	 * @throws IllegalArgumentException if the capacity is less than
+	 * 					{@link #DEFAULT_CAPACITY}.
+	 */
+	public FrameRingBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < DEFAULT_CAPACITY)
+			throw new IllegalArgumentException("FrameRingBuffer(" + capacity
+					+ ") requires at least " + DEFAULT_CAPACITY + " slots.");
+		
+		slots = new Mat[capacity];
+		timestamps = new long[capacity];
+		frameTimes = new long[capacity];
+		for (int i = 0; i < capacity; i++)
+			slots[i] = new Mat();
+	}
+	
+	
+	/**
+	 * Reserves the next free slot for the producer to write the next frame
+	 * into. The returned {@link Mat} is not visible to the consumer until
+	 * {@link #endWrite(long, long)} is called. In lossless mode, this blocks
+	 * until the consumer has acquired the newest frame.
+	 * 
+	 * @return	the {@link Mat} slot to write the next frame into, or
+	 * 			{@code null} if this ring buffer has been closed.
+	 * 
+	 * @throws InterruptedException if the calling thread is interrupted while
+	 * 			waiting for the consumer in lossless mode.
+	 */
+	public synchronized Mat beginWrite() throws InterruptedException {
+		while (lossless && latest >= 0 && !closed)
+			wait();
+		
+		if (closed)
+			return null;
+		
+		while (nextSlot == latest || nextSlot == reading)
+			nextSlot = (nextSlot + 1) % slots.length;
+		
+		writing = nextSlot;
+		nextSlot = (nextSlot + 1) % slots.length;
+		return slots[writing];
+	}
+	
+	
+	/**
+	 * Publishes the slot reserved by {@link #beginWrite()} as the newest frame
+	 * and wakes up the consumer. If the previously newest frame was never
+	 * consumed, it is dropped.
+	 * 
+	 * @param timestamp	The {@link System#nanoTime()} of when the frame was
+	 * 					captured.
+	 * @param frameTime	The time of the frame reported by its source, in
+	 * 					nanoseconds since the epoch.
+	 */
+	public synchronized void endWrite(long timestamp, long frameTime) {
+		if (writing < 0)
+			return;
+		
+		if (latest >= 0)
+			droppedFrames++;
+		
+		timestamps[writing] = timestamp;
+		frameTimes[writing] = frameTime;
+		latest = writing;
+		writing = -1;
+		capturedFrames++;
+		notifyAll();
+	}
+	
+	
+	/**
+	 * Abandons the slot reserved by {@link #beginWrite()} without publishing
+	 * it, i.e. when the capture device failed to deliver a frame.
+	 */
+	public synchronized void abortWrite() {
+		writing = -1;
+	}
+	
+	
+	/**
+	 * Blocks until a frame newer than the last acquired frame is available and
+	 * hands the slot holding it to the consumer. The slot is owned by the
+	 * consumer until {@link #release()} is called.
+	 * 
+	 * @return	the newest captured frame, or {@code null} if this ring buffer
+	 * 			was closed while waiting.
+	 * 
+	 * @throws InterruptedException if the calling thread is interrupted while
+	 * 			waiting for the next frame.
+	 */
+	public synchronized Mat acquire() throws InterruptedException {
+		while (latest < 0 && !closed)
+			wait();
+		
+		if (latest < 0)
+			return null;
+		
+		reading = latest;
+		latest = -1;
+		notifyAll();
+		readTimestamp = timestamps[reading];
+		readFrameTime = frameTimes[reading];
+		lastQueueAge = System.nanoTime() - readTimestamp;
+		totalQueueAge += lastQueueAge;
+		consumedFrames++;
+		return slots[reading];
+	}
+	
+	
+	/**
+	 * Returns the slot handed out by {@link #acquire()} back to the ring so the
+	 * producer may reuse it.
+	 */
+	public synchronized void release() {
+		reading = -1;
+	}
+	
+	
+	/**
+	 * Closes this ring buffer; the producer will no longer be handed slots and
+	 * a waiting consumer is woken up.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+	
+	
+	/**
+	 * Releases the native memory of all of the slots in this ring buffer. This
+	 * should only be called once both the producer and consumer are finished.
+	 */
+	public synchronized void dispose() {
+		close();
+		for (Mat slot : slots)
+			slot.release();
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the producer waits for the consumer rather than
+	 * dropping frames; otherwise, returns {@code false}.
+	 * 
+	 * @return	whether this ring buffer is in lossless mode.
+	 */
+	public synchronized boolean isLossless() {
+		return lossless;
+	}
+	
+	
+	/**
+	 * Sets whether the producer waits for the consumer to acquire the newest
+	 * frame before writing the next one, rather than dropping frames.
+	 * 
+	 * @param lossless	{@code true} to never drop a frame.
+	 */
+	public synchronized void setLossless(boolean lossless) {
+		this.lossless = lossless;
+		notifyAll();
+	}
+	
+	
+	/**
+	 * Returns the {@link System#nanoTime()} of when the currently acquired
+	 * frame was captured.
+	 * 
+	 * @return	the capture time stamp of the acquired frame.
+	 */
+	public synchronized long getAcquiredTimestamp() {
+		return readTimestamp;
+	}
+	
+	
+	/**
+	 * Returns the time of the currently acquired frame as reported by its
+	 * source, in nanoseconds since the epoch.
+	 * 
+	 * @return	the source time of the acquired frame.
+	 * 
+	 * @see project.recognition.source.FrameSource#getFrameTime()
+	 */
+	public synchronized long getAcquiredFrameTime() {
+		return readFrameTime;
+	}
+	
+	
+	/**
+	 * Returns the total number of frames written by the producer.
+	 * 
+	 * @return	the number of captured frames.
+	 */
+	public synchronized long getCapturedFrameCount() {
+		return capturedFrames;
+	}
+	
+	
+	/**
+	 * Returns the total number of frames that were overwritten by a newer
+	 * frame before the consumer had a chance to acquire them.
+	 * 
+	 * @return	the number of dropped frames.
+	 */
+	public synchronized long getDroppedFrameCount() {
+		return droppedFrames;
+	}
+	
+	
+	/**
+	 * Returns the time, in milliseconds, the most recently acquired frame
+	 * waited in this ring buffer between capture and acquisition.
+	 * 
+	 * @return	the queue age of the last acquired frame in milliseconds.
+	 */
+	public synchronized double getLastQueueAge() {
+		return lastQueueAge / 1e6;
+	}
+	
+	
+	/**
+	 * Returns the average time, in milliseconds, frames waited in this ring
+	 * buffer between capture and acquisition.
+	 * 
+	 * @return	the average queue age in milliseconds.
+	 */
+	public synchronized double getAverageQueueAge() {
+		return consumedFrames > 0 ? totalQueueAge / 1e6 / consumedFrames : 0d;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[capacity=" + slots.length + ","
+				+ "captured=" + getCapturedFrameCount() + ","
+				+ "dropped=" + getDroppedFrameCount() + ","
+				+ "avgQueueAge=" + getAverageQueueAge() + "ms]";
+	}
+	
+}
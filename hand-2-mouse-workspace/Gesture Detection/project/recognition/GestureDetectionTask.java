@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import java.util.concurrent.RecursiveAction;
+
+import project.util.logger.Log;
+
+/**
+ * Provides the fork-join task used by the {@link GestureRecognizerWorker} to
+ * fan out the detection of a single frame over all of the enabled gestures.
+ * The range of gestures is split in half until each gesture runs as its own
+ * task; the task completes once every gesture in its range has finished its
+ * {@link AbstractGesture#detect(FrameContext)} call.
+ * <p>The frame is shared between all of the tasks and must be treated as read
+ * only, any highlighting is done afterwards through
+ * {@link AbstractGesture#paintDetection(org.opencv.core.Mat)}.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see java.util.concurrent.RecursiveAction
+ */
+class GestureDetectionTask extends RecursiveAction {
+	
+	/**
+	 * Serial version user id
+	 */
+	private static final long serialVersionUID = -3307391264580313437L;
+	
+	
+	// Private member fields.
+	private final AbstractGesture[] gestures;
+	private final FrameContext frame;
+	private final int from;
+	private final int to;
+	
+	
+	/**
+	 * Constructor for a new instance of this task for all of the specified
+	 * gestures on the specified frame.
+	 * 
+	 * @param gestures	The enabled gestures to detect on the frame.
+	 * @param frame		The context of the shared, read only, frame to detect
+	 * 					on.
+	 */
+	public GestureDetectionTask(AbstractGesture[] gestures,
+			FrameContext frame)
+	{
+		this(gestures, frame, 0, gestures.length);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this task for the range of gestures
+	 * from {@code from}, inclusive, to {@code to}, exclusive.
+	 * 
+	 * @param gestures	The enabled gestures to detect on the frame.
+	 * @param frame		The context of the shared, read only, frame to detect
+	 * 					on.
+	 * @param from		The index of the first gesture of this task.
+	 * @param to		The index after the last gesture of this task.
+	 */
+	private GestureDetectionTask(AbstractGesture[] gestures, FrameContext frame,
+			int from, int to)
+	{
+		this.gestures = gestures;
+		this.frame = frame;
+		this.from = from;
+		this.to = to;
+	}
+	
+	
+	@Override
+	protected void compute() {
+		if (to - from > 1) {
+			int mid = (from + to) >>> 1;
+			invokeAll(new GestureDetectionTask(gestures, frame, from, mid),
+					new GestureDetectionTask(gestures, frame, mid, to));
+		}
+		else if (to > from) {
+			detect(gestures[from], frame);
+		}
+	}
+	
+	
+	/**
+	 * Runs the detection of the specified gesture on the frame. Any exception
+	 * thrown by the gesture is logged rather than cancelling the detection of
+	 * the remaining gestures.
+	 * 
+	 * @param gesture	The gesture to detect.
+	 * @param frame		The context of the frame to detect the gesture on.
+	 */
+	static final void detect(AbstractGesture gesture, FrameContext frame) {
+		try {
+			gesture.detect(frame);
+		}
+		catch (RuntimeException ex) {
+			Log.error("Exception caught detecting " + gesture + ": " + ex);
+		}
+	}
+	
+}
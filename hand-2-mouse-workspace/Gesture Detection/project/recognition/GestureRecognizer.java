@@ -6,15 +6,21 @@ package project.recognition;
 import java.awt.Component;
 import java.awt.Image;
 import java.awt.image.ImageObserver;
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.ImageIcon;
 
+import org.opencv.core.Size;
 import org.opencv.highgui.VideoCapture;
 import project.recognition.GestureRecognizerWorker;
+import project.recognition.session.SessionRecorder;
+import project.recognition.source.CameraFrameSource;
+import project.recognition.source.FrameSource;
+import project.recognition.types.DetectionFusion;
 import project.util.logger.Log;
 
 /**
@@ -26,20 +32,57 @@ public class GestureRecognizer {
 
 	// Private member data.
 	private ImageIcon vcImage = null;
-	private VideoCapture vcDevice = null;
+	private final FrameSource frameSource;
 	private GestureRecognizerWorker grProcessor = null;
-	private final Map<String,AbstractGesture> gestures =
-			Collections.synchronizedMap(new HashMap<String,AbstractGesture>());
+	private int detectionParallelism = 1;
+	private double previewFrameRate = PreviewPublisherThread.DEFAULT_FRAME_RATE;
+	private Size previewSize = null;
+	private SessionRecorder recorder = null;
+	private boolean replayMode = false;
+	private Clock clock = Clock.SYSTEM;
+	private final SkinRegionProposer proposer = new SkinRegionProposer();
+	private final DetectionFusion fusion = new DetectionFusion();
+	private final GestureRegistry gestures = new GestureRegistry();
 	
 
 	/**
-	 * Constructor for a new instance of a gesture recognizer with the specified
+	 * Constructor for a new instance of a gesture recognizer with the default
 	 * video capture device.
-	 * 
-	 * @param camera
 	 */
 	public GestureRecognizer() {
+		this(new CameraFrameSource());
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of a gesture recognizer with the specified
+	 * source of frames, such as a live camera, a recorded video file, or a
+	 * directory of numbered images.
+	 * 
+	 * @param source	The {@link FrameSource} to detect the gestures on.
+	 */
+	public GestureRecognizer(FrameSource source) {
+		this(source, true);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of a gesture recognizer with the specified
+	 * source of frames, which is only started right away if {@code start} is
+	 * {@code true}. Otherwise, the gestures may be registered and the replay
+	 * mode set before calling {@link #start()}, so that no frame is detected
+	 * without them.
+	 * 
+	 * @param source	The {@link FrameSource} to detect the gestures on.
+	 * @param start		Whether to start the recognizer right away.
+	 */
+	public GestureRecognizer(FrameSource source, boolean start) {
 		super();
+		
+		if (source == null)
+			throw new NullPointerException("GestureRecognizer(null)");
+		
+		frameSource = source;
 
 		vcImage = new ImageIcon() {
 			
@@ -55,7 +98,8 @@ public class GestureRecognizer {
 			}
 			
 		};
-		start();
+		if (start)
+			start();
 	}
 	
 	
@@ -69,11 +113,26 @@ public class GestureRecognizer {
 	
 	
 	/**
+	 * Returns the video capture device of the camera this recognizer is
+	 * detecting on.
 	 * 
-	 * @return
+	 * @return	the {@link VideoCapture} device, or {@code null} if the source
+	 * 			of frames is not a camera.
 	 */
 	public final VideoCapture getVideoCaptureDevice() {
-		return vcDevice;
+		if (frameSource instanceof CameraFrameSource)
+			return ((CameraFrameSource)frameSource).getVideoCapture();
+		return null;
+	}
+	
+	
+	/**
+	 * Returns the source of the frames this recognizer is detecting on.
+	 * 
+	 * @return	the {@link FrameSource} of this recognizer.
+	 */
+	public final FrameSource getFrameSource() {
+		return frameSource;
 	}
 	
 	
@@ -84,10 +143,48 @@ public class GestureRecognizer {
 	 * @return 
 	 */
 	public final AbstractGesture registerGesture(AbstractGesture gesture) {
-		if (gesture == null || gestures.containsKey(gesture.getName()))
+		if (gestures.register(gesture) == null)
+			return null;
+		
+		synchronized (this) {
+			gesture.setClock(clock);
+			gesture.setSynchronousDispatch(replayMode);
+		}
+		return gesture;
+	}
+	
+	
+	/**
+	 * Unregisters the specified gesture; the gesture is no longer detected
+	 * starting with the next frame, and its resources are released.
+	 * 
+	 * @param gesture	The gesture to unregister.
+	 * 
+	 * @return	the unregistered gesture, or {@code null} if the gesture was
+	 * 			not registered.
+	 */
+	public final AbstractGesture unregisterGesture(AbstractGesture gesture) {
+		if (gesture == null || gestures.get(gesture.getName()) != gesture)
 			return null;
 		
-		gestures.put(gesture.getName(), gesture);
+		return unregisterGesture(gesture.getName());
+	}
+	
+	
+	/**
+	 * Unregisters the gesture with the specified name; the gesture is no
+	 * longer detected starting with the next frame, and its resources are
+	 * released.
+	 * 
+	 * @param name	The name of the gesture to unregister.
+	 * 
+	 * @return	the unregistered gesture, or {@code null} if no gesture was
+	 * 			registered with the specified name.
+	 */
+	public final AbstractGesture unregisterGesture(String name) {
+		AbstractGesture gesture = gestures.unregister(name);
+		if (gesture != null)
+			gesture.release();
 		return gesture;
 	}
 	
@@ -101,24 +198,309 @@ public class GestureRecognizer {
 	}
 	
 	
+	/**
+	 * Returns the total number of captured frames that were dropped because
+	 * the gesture detection was still busy with a previous frame.
+	 * 
+	 * @return	the number of dropped frames.
+	 */
+	public long getDroppedFrameCount() {
+		return grProcessor != null ? grProcessor.getDroppedFrameCount() : 0l;
+	}
+	
+	
+	/**
+	 * Returns the time, in milliseconds, the most recently processed frame
+	 * waited between its capture and the start of its detection.
+	 * 
+	 * @return	the queue age of the last processed frame in milliseconds.
+	 */
+	public double getLastFrameQueueAge() {
+		return grProcessor != null ? grProcessor.getLastFrameQueueAge() : 0d;
+	}
+	
+	
+	/**
+	 * Returns the average time, in milliseconds, frames waited between their
+	 * capture and the start of their detection.
+	 * 
+	 * @return	the average queue age in milliseconds.
+	 */
+	public double getAverageFrameQueueAge() {
+		return grProcessor != null ? grProcessor.getAverageFrameQueueAge() : 0d;
+	}
+	
+	
+	/**
+	 * Returns the number of enabled gestures that are detected concurrently on
+	 * each frame. A value of one, the default, detects all of the gestures
+	 * sequentially.
+	 * 
+	 * @return	the parallelism level of the gesture detection.
+	 */
+	public int getDetectionParallelism() {
+		return detectionParallelism;
+	}
+	
+	
+	/**
+	 * Sets the number of enabled gestures that are detected concurrently on
+	 * each frame, each gesture as its own task on a fork-join pool of the
+	 * specified parallelism. A value of one detects all of the gestures
+	 * sequentially.
+	 * 
+	 * @param parallelism	The parallelism level of the gesture detection.
+	 * 
+	 * @throws IllegalArgumentException if the parallelism is less than one.
+	 */
+	public void setDetectionParallelism(int parallelism)
+			throws IllegalArgumentException
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("setDetectionParallelism("
+					+ parallelism + ") must be at least one.");
+		
+		detectionParallelism = parallelism;
+		if (grProcessor != null)
+			grProcessor.setParallelism(parallelism);
+	}
+	
+	
+	/**
+	 * Returns the target frame rate of the video capture preview.
+	 * 
+	 * @return	the target preview frames-per-second.
+	 */
+	public double getPreviewFrameRate() {
+		return previewFrameRate;
+	}
+	
+	
+	/**
+	 * Sets the target frame rate of the video capture preview. The preview is
+	 * published on its own thread, independent of the detection frame rate.
+	 * 
+	 * @param fps	The target preview frames-per-second.
+	 * 
+	 * @throws IllegalArgumentException if the frame rate is not greater than
+	 * 			zero.
+	 */
+	public void setPreviewFrameRate(double fps) throws IllegalArgumentException {
+		if (!(fps > 0d))
+			throw new IllegalArgumentException("setPreviewFrameRate(" + fps
+					+ ") must be greater than zero.");
+		
+		previewFrameRate = fps;
+		if (grProcessor != null)
+			grProcessor.getPreview().setFrameRate(fps);
+	}
+	
+	
+	/**
+	 * Returns the output resolution of the video capture preview, or
+	 * {@code null} if the preview uses the resolution of the captured frames.
+	 * 
+	 * @return	the output resolution of the preview.
+	 */
+	public Size getPreviewSize() {
+		return previewSize;
+	}
+	
+	
+	/**
+	 * Sets the output resolution of the video capture preview; {@code null}
+	 * uses the resolution of the captured frames.
+	 * 
+	 * @param size	The output resolution of the preview.
+	 */
+	public void setPreviewSize(Size size) {
+		previewSize = size;
+		if (grProcessor != null)
+			grProcessor.getPreview().setOutputSize(size);
+	}
+	
+	
+	/**
+	 * Returns the proposer of the skin regions the gestures with skin gating
+	 * enabled are limited to; its settings and metrics are shared by every
+	 * frame detected by this recognizer.
+	 * 
+	 * @return	the {@link SkinRegionProposer} of this recognizer.
+	 * 
+	 * @see project.recognition.types.HaarClassifierGesture#setSkinGating(boolean)
+	 */
+	public final SkinRegionProposer getSkinRegionProposer() {
+		return proposer;
+	}
+	
+	
+	/**
+	 * Returns the fusion of the detections of the fused gestures; once all of
+	 * the gestures have been detected on a frame, it fires one event per
+	 * object detected by any of the fused gestures.
+	 * 
+	 * @return	the {@link DetectionFusion} of this recognizer.
+	 * 
+	 * @see project.recognition.types.HaarClassifierGesture#setFused(boolean)
+	 */
+	public final DetectionFusion getDetectionFusion() {
+		return fusion;
+	}
+	
+	
+	/**
+	 * Starts recording the raw captured frames, with their capture time
+	 * stamps, to the specified session container. Any recording already in
+	 * progress is finished first. The frames are written on their own thread
+	 * and are dropped from the recording, rather than slowing the detection,
+	 * when the disk cannot keep up.
+	 * 
+	 * @param file	The session container to write.
+	 * 
+	 * @return	the {@link SessionRecorder} of the recording.
+	 * 
+	 * @throws IOException if the session container could not be created.
+	 * 
+	 * @see project.recognition.session.SessionReader
+	 */
+	public synchronized SessionRecorder startRecording(File file)
+			throws IOException
+	{
+		stopRecording();
+		
+		SessionRecorder rec = new SessionRecorder(file);
+		rec.start();
+		recorder = rec;
+		if (grProcessor != null)
+			grProcessor.setRecorder(rec);
+		
+		Log.print("Recording session to " + file);
+		return rec;
+	}
+	
+	
+	/**
+	 * Stops the recording in progress, if any, and waits for all of its frames
+	 * and its index to be written.
+	 * 
+	 * @throws IOException if the recording failed.
+	 */
+	public synchronized void stopRecording() throws IOException {
+		SessionRecorder rec = recorder;
+		if (rec == null)
+			return;
+		
+		recorder = null;
+		if (grProcessor != null)
+			grProcessor.setRecorder(null);
+		
+		rec.close();
+		Log.print("Recorded session " + rec);
+	}
+	
+	
+	/**
+	 * Returns the recording in progress.
+	 * 
+	 * @return	the {@link SessionRecorder} of the recording, or {@code null} if
+	 * 			no recording is in progress.
+	 */
+	public synchronized SessionRecorder getRecorder() {
+		return recorder;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if this recognizer replays its source in replay
+	 * mode; otherwise, returns {@code false}.
+	 * 
+	 * @return	whether this recognizer is in replay mode.
+	 */
+	public synchronized boolean isReplayMode() {
+		return replayMode;
+	}
+	
+	
+	/**
+	 * <p>Sets whether this recognizer runs in replay mode, which takes effect
+	 * on the next {@link #start()}. In replay mode the time stamps of the
+	 * fired {@link project.recognition.event.GestureEvent}s and the
+	 * frames-per-second are taken from a {@link VirtualClock} that follows the
+	 * time of each frame as reported by the source, rather than from the
+	 * system clock. The gestures are detected sequentially and their listeners
+	 * are notified on the detecting thread.
+	 * <p>Combined with a source that is not live, such as a
+	 * {@link project.recognition.source.SessionFrameSource}, the frames are
+	 * detected as fast as the detection allows, and a replay yields the same
+	 * events, with the same time stamps, every time.
+	 * 
+	 * @param replayMode	{@code true} for replay mode.
+	 */
+	public synchronized void setReplayMode(boolean replayMode) {
+		this.replayMode = replayMode;
+	}
+	
+	
+	/**
+	 * Returns the clock the time stamps of the gesture events and the
+	 * frames-per-second are currently taken from.
+	 * 
+	 * @return	the {@link Clock} of this recognizer.
+	 */
+	public synchronized Clock getClock() {
+		return clock;
+	}
+	
+	
+	/**
+	 * Waits for the current run of this recognizer to finish, i.e. once all of
+	 * the frames of a source that is not live have been detected.
+	 * 
+	 * @throws InterruptedException if the calling thread was interrupted while
+	 * 			waiting.
+	 */
+	public void waitForCompletion() throws InterruptedException {
+		GestureRecognizerWorker worker = grProcessor;
+		if (worker == null)
+			return;
+		
+		try {
+			worker.get();
+		}
+		catch (ExecutionException | CancellationException ignore) { }
+	}
+	
+	
 	/**
 	 * 
 	 */
 	public void start() {
 		stop();
 		Log.debug("Starting the GestureRecognizer...");
-		if (vcDevice == null) {
-			vcDevice = new VideoCapture(0);
-			if (!vcDevice.isOpened())
-				vcDevice.open(0);
-		}
-		
-		if(!vcDevice.isOpened()) {
-			Log.error("Default device not opened for video capture!");
+		if (!frameSource.open()) {
+			Log.error(frameSource + " not opened for video capture!");
 			return;
 		}
 		
-		grProcessor = new GestureRecognizerWorker(vcDevice, vcImage, gestures);
+		Log.debug("Opened " + frameSource + " at " + frameSource.getFrameRate()
+				+ " fps, " + frameSource.getFrameCount() + " frame(s).");
+		grProcessor = new GestureRecognizerWorker(frameSource, vcImage,
+				gestures);
+		grProcessor.setParallelism(detectionParallelism);
+		grProcessor.getPreview().setFrameRate(previewFrameRate);
+		grProcessor.getPreview().setOutputSize(previewSize);
+		grProcessor.setRecorder(recorder);
+		grProcessor.setSkinRegionProposer(proposer);
+		grProcessor.setDetectionFusion(fusion);
+		synchronized (this) {
+			clock = replayMode ? new VirtualClock() : Clock.SYSTEM;
+			for (AbstractGesture gesture : gestures.getGestures()) {
+				gesture.setClock(clock);
+				gesture.setSynchronousDispatch(replayMode);
+			}
+			grProcessor.setClock(clock);
+			grProcessor.setReplayMode(replayMode);
+		}
 		grProcessor.execute();
 	}
 	
@@ -129,17 +511,16 @@ public class GestureRecognizer {
 	public void stop() {
 		if (grProcessor != null) {
 			grProcessor.cancel(true);
+			grProcessor.stopCapture();
 		}
-		if (vcDevice != null) {
-			vcDevice.release();
-		}
+		frameSource.release();
 	}
 	
 	
 	@Override
 	public String toString() {
 		return getClass().getSimpleName()
-				+ "[device=" + vcDevice + ", gesture(s)='"
+				+ "[source=" + frameSource + ", gesture(s)='"
 				+ Arrays.toString(getGestureNames())
 				+ "']";
 	}
@@ -149,8 +530,7 @@ public class GestureRecognizer {
 	 * @return
 	 */
 	public String[] getGestureNames() {
-		String[] tmp = new String[1];
-		return gestures.keySet().toArray(tmp);
+		return gestures.getGestureNames();
 	}
 	
 	
@@ -159,8 +539,7 @@ public class GestureRecognizer {
 	 * @return
 	 */
 	public final AbstractGesture[] getGestures() {
-		AbstractGesture[] tmp = new AbstractGesture[1];
-		return gestures.values().toArray(tmp);
+		return gestures.getGestures();
 	}
 
 
@@ -3,24 +3,17 @@
  */
 package project.recognition;
 
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
-import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.SwingWorker;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.highgui.Highgui;
-import org.opencv.highgui.VideoCapture;
 
+import project.recognition.session.SessionRecorder;
+import project.recognition.source.FrameSource;
+import project.recognition.types.DetectionFusion;
 import project.util.logger.Log;
 
 /**
@@ -32,178 +25,201 @@ import project.util.logger.Log;
 public class GestureRecognizerWorker extends SwingWorker<Void, Long> {
 
 	
-	/**
-	 * The publish format for the image buffer.
-	 */
-	private static final String publishImageFormat = ".jpg";
-	
-	
-	/**
-	 * The maximum number of re-connect attempts before error'ing out.
-	 */
-	private static final int maxReconnectAttempts = 5;
-	
-	
-	/**
-	 * The delay in milliseconds between re-connect attempts on the video
-	 * device.
-	 */
-	private static final int delayInMillis = 2000;
-	
-	
 	// Private member fields.
 	private final int frameAvg = 8;
-	private final ImageIcon imgIcon;
-	private final Map<String,AbstractGesture> gestures;
-	private final MatOfByte matrixBuffer = new MatOfByte();
-	private final AffineTransform tx = AffineTransform.getScaleInstance(-1, 1);
+	private final PreviewPublisherThread preview;
+	private final GestureRegistry gestures;
+	private final FrameContext frameContext = new FrameContext();
 	
 	// Private member data.
 	private double fps = 0d;
-	private VideoCapture camera;
-	private AffineTransformOp op = null;
+	private FrameSource source;
+	private volatile FrameRingBuffer frameRing = null;
+	private volatile FrameCaptureThread captureThread = null;
+	private volatile int parallelism = 1;
+	private ForkJoinPool detectionPool = null;
+	private volatile SessionRecorder recorder = null;
+	private volatile DetectionFusion fusion = null;
+	private volatile Clock clock = Clock.SYSTEM;
+	private volatile boolean replayMode = false;
 	
 	
 	/**
-	 * Constructor for a new instance with the specified video capture device,
-	 * image holder to publish the received frames, and the map containing the
-	 * registered gestures that are currently loaded.
+	 * Constructor for a new instance with the specified source of frames,
+	 * image holder to publish the received frames, and the registry containing
+	 * the registered gestures that are currently loaded.
 	 * 
-	 * @param camera
+	 * @param source
 	 * @param imgIcon
-	 * @param gestures2
+	 * @param gestures
 	 */
-	public GestureRecognizerWorker(VideoCapture camera, ImageIcon imgIcon,
-			Map<String, AbstractGesture> gestures)
+	public GestureRecognizerWorker(FrameSource source, ImageIcon imgIcon,
+			GestureRegistry gestures)
 	{
 		super();
 		
-		this.camera = camera;
-		this.imgIcon = imgIcon;
+		this.source = source;
+		this.preview = new PreviewPublisherThread(imgIcon);
 		this.gestures = gestures;
 		
 		Log.debug("Initializing " + getClass().getSimpleName());
 	}
 	
 	
-	/**
-	 * Verifies that the camera device is available and retrieve the next frame
-	 * from the video camera to store into the specified {@link Mat} buffer.
-	 * 
-	 * @param buffer	The buffer to store the next frame to.
-	 * @return			{@code true} if the device is available and successfully
-	 * 					retrieved an image for the next frame; otherwise,
-	 * 					returns {@code false}.
-	 */
-	private final synchronized boolean readNextVideoFrame(Mat buffer) {
-		int reconnectAttempt = 1;
-		
-		if (camera == null) {
-			Log.error("No camera device connected.");
-			return false;
-		}
-		
-		// To retrieve various properties of the camera device.
-		//camera.get(propId);
-		if (!camera.isOpened())
-			Log.warning("Camera device is NOT opened at this time.");
-		
-		while (!camera.read(buffer) || buffer.empty()) {
-			if (reconnectAttempt > maxReconnectAttempts) {
-				Log.error("After " + reconnectAttempt + " attempts to "
-						+ "re-connect to the device, it was unable to retireve "
-						+ "an image. Please verify the web camera is connected "
-						+ "and functioning properly.");
-				return false;
-			}
-			
-			Log.warning("Couldn't retrive image from video. "
-					+ "Re-attempting in " + (delayInMillis / 1000.0)
-					+ " seconds...");
-			
-			try {
-				Thread.sleep(delayInMillis);
-			} catch (Exception ignore) { }
-			
-			reconnectAttempt++;
-			if (!camera.isOpened())
-				camera.open(0);
-		}
-		return true;
-	}
-	
-	
 	/**
 	 * @see javax.swing.SwingWorker#doInBackground()
 	 */
 	@Override
 	protected Void doInBackground() throws Exception {
 		Log.debug("Worker " + getClass().getSimpleName() + " running...");
-		Mat img = new Mat();
+		Mat img;
 		
 		int frameCount = 0;
-		long time, startTime = 0l;
+		long time, startTime = clock.currentTimeMillis();
+		
+		frameRing = new FrameRingBuffer();
+		captureThread = new FrameCaptureThread(source, frameRing);
+		captureThread.start();
+		preview.start();
 		
 		try {
-			while (!isCancelled() && readNextVideoFrame(img)) {
+			while (!isCancelled() && (img = frameRing.acquire()) != null) {
+				if (clock instanceof VirtualClock)
+					((VirtualClock)clock).setTime(
+							frameRing.getAcquiredFrameTime());
+				
 				if (++frameCount == frameAvg) {
-					time = System.currentTimeMillis();
+					time = clock.currentTimeMillis();
 					publish(time - startTime);
 					frameCount = 0;
 					startTime = time;
 				}
-				synchronized(gestures) {
-					for (AbstractGesture gesture : gestures.values()) {
-						if (gesture != null && gesture.isEnabled())
-							gesture.detect(img);
-					}
-				}
-				
-				publishImage(img);
+				recordFrame(img);
+				publishImage(detectGestures(img));
+				frameRing.release();
 			}
 			
 			Log.debug("Worker " + getClass().getSimpleName() + " canceled!");
 		}
+		catch (InterruptedException ie) {
+			Log.debug("Worker " + getClass().getSimpleName() + " interrupted!");
+		}
 		catch (Exception ex) {
 			Log.error("Exception caught in " + getClass().getSimpleName() + ": " + ex);
 		}
+		finally {
+			stopCapture();
+			preview.shutdown();
+			if (detectionPool != null)
+				detectionPool.shutdown();
+		}
 		return null;
 	}
 	
 	
 	/**
+	 * Offers the specified raw frame, before any highlights are painted onto
+	 * it, to the session recorder of this worker, if any. The recorder only
+	 * copies the frame; compressing and writing it is done on its own thread.
+	 * 
+	 * @param img	The frame to record.
+	 */
+	private final void recordFrame(Mat img) {
+		SessionRecorder rec = recorder;
+		if (rec != null)
+			rec.offer(img, frameRing.getAcquiredTimestamp());
+	}
+	
+	
+	/**
+	 * Runs the detection of all of the enabled gestures on the specified frame
+	 * and then lets each of them paint its highlights onto the BGR image of
+	 * the frame, which is the frame itself unless it is unconverted YUYV.
+	 * When the parallelism of this worker is greater than one, the gestures
+	 * are run as individual tasks on a fork-join pool and joined before any
+	 * painting is done; so the frame is never modified while a gesture is
+	 * detecting on it.
+	 * <p>The enabled gestures are taken from the current snapshot of the
+	 * registry without any locking, so changes to the registry take effect
+	 * on the next frame.
+	 * <p>In replay mode the gestures are always detected sequentially, in
+	 * registration order, so their events are fired deterministically.
+	 * <p>Once all of the gestures have been detected, the detections of the
+	 * fused gestures are fused into one event per object, if this worker has
+	 * a detection fusion.
+	 * 
+	 * @param img	The frame to detect the gestures on.
 	 * 
-	 * @param in
+	 * @return	the BGR image of the frame with the highlights painted onto it.
 	 */
-	private final synchronized void publishImage(Mat img) {
-		InputStream in = null;
+	private final Mat detectGestures(Mat img) {
+		final AbstractGesture[] enabled = gestures.getEnabledGestures();
 		
-		Highgui.imencode(publishImageFormat, img, matrixBuffer);
+		frameContext.reset(img);
+		if (parallelism > 1 && enabled.length > 1 && !replayMode)
+			getDetectionPool().invoke(
+					new GestureDetectionTask(enabled, frameContext));
+		else {
+			for (AbstractGesture gesture : enabled)
+				GestureDetectionTask.detect(gesture, frameContext);
+		}
 		
-		try {
-			in = new ByteArrayInputStream(matrixBuffer.toArray());
+		DetectionFusion f = fusion;
+		if (f != null)
+			f.fuse(enabled);
 		
-			BufferedImage bufferImg = ImageIO.read(in);
-			
-			if (op == null) {
-				tx.translate(-bufferImg.getWidth(null), 0);
-				op = new AffineTransformOp(tx, 
-						AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-			}
-			
-			imgIcon.setImage(op.filter(bufferImg, null));
-		}
-		catch(IOException ex) {
-			if (!isCancelled())
-				cancel(true);
+		Mat display = frameContext.getBGR();
+		for (AbstractGesture gesture : enabled)
+			gesture.paintDetection(display);
+		return display;
+	}
+	
+	
+	/**
+	 * Returns the fork-join pool for the parallel detection, (re)creating it
+	 * whenever the parallelism of this worker was changed.
+	 * 
+	 * @return	the {@link ForkJoinPool} to run the detection tasks on.
+	 */
+	private final ForkJoinPool getDetectionPool() {
+		int level = parallelism;
+		if (detectionPool == null || detectionPool.getParallelism() != level) {
+			if (detectionPool != null)
+				detectionPool.shutdown();
+			detectionPool = new ForkJoinPool(level);
 		}
+		return detectionPool;
+	}
+	
+	
+	/**
+	 * Offers the specified frame, with the highlights of the detected gestures
+	 * painted onto it, to the preview stage. The frame is only copied when the
+	 * preview is visible and due for its next image.
+	 * 
+	 * @param img	The frame to publish.
+	 */
+	private final void publishImage(Mat img) {
+		preview.offer(img);
+	}
+	
+	
+	/**
+	 * Returns the preview stage of this worker, which runs on its own thread
+	 * with its own target frame rate and output resolution.
+	 * 
+	 * @return	the preview stage of this worker.
+	 */
+	final PreviewPublisherThread getPreview() {
+		return preview;
 	}
 	
 	
 	@Override
 	protected void process(List<Long> times) {
 		for (long milli : times) {
-			fps = frameAvg * 1000.0 / milli;
+			if (milli > 0l)
+				fps = frameAvg * 1000.0 / milli;
 		}
 	}
 
@@ -211,11 +227,16 @@ public class GestureRecognizerWorker extends SwingWorker<Void, Long> {
 	@Override
 	protected void done() {
 		Log.warning(getClass().getSimpleName() + " has completed!");
+		stopCapture();
 
 		try {
-			camera.release();
-			Log.debug("Video device released!");
+			source.release();
+			Log.debug("Frame source released!");
 		} catch(Exception ignore) { }
+		
+		if (frameRing != null)
+			frameRing.dispose();
+		frameContext.release();
 	}
 
 
@@ -227,5 +248,194 @@ public class GestureRecognizerWorker extends SwingWorker<Void, Long> {
 	public double getFPS() {
 		return fps;
 	}
+	
+	
+	/**
+	 * Returns the number of gestures this worker detects concurrently on each
+	 * frame; a value of one detects all of the gestures sequentially.
+	 * 
+	 * @return	the parallelism level of the gesture detection.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+	
+	
+	/**
+	 * Sets the number of gestures this worker detects concurrently on each
+	 * frame. A value of one detects all of the gestures sequentially on the
+	 * worker thread; the change takes effect on the next frame.
+	 * 
+	 * @param parallelism	The parallelism level of the gesture detection.
+	 * 
+	 * @throws IllegalArgumentException if the parallelism is less than one.
+	 */
+	public void setParallelism(int parallelism)
+			throws IllegalArgumentException
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("setParallelism("
+					+ parallelism + ") must be at least one.");
+		
+		this.parallelism = parallelism;
+	}
+	
+	
+	/**
+	 * Sets the proposer of the skin regions of the frames detected by this
+	 * worker.
+	 * 
+	 * @param proposer	The {@link SkinRegionProposer} of the frames.
+	 * 
+	 * @see FrameContext#setSkinRegionProposer(SkinRegionProposer)
+	 */
+	public void setSkinRegionProposer(SkinRegionProposer proposer) {
+		frameContext.setSkinRegionProposer(proposer);
+	}
+	
+	
+	/**
+	 * Returns the fusion of the detections of the fused gestures of this
+	 * worker.
+	 * 
+	 * @return	the {@link DetectionFusion}, or {@code null} if the detections
+	 * 			are not fused.
+	 */
+	public DetectionFusion getDetectionFusion() {
+		return fusion;
+	}
+	
+	
+	/**
+	 * Sets the fusion of the detections of the fused gestures of this worker,
+	 * starting with the next frame; {@code null} stops fusing them.
+	 * 
+	 * @param fusion	The {@link DetectionFusion} of the detections.
+	 * 
+	 * @see project.recognition.types.HaarClassifierGesture#setFused(boolean)
+	 */
+	public void setDetectionFusion(DetectionFusion fusion) {
+		this.fusion = fusion;
+	}
+	
+	
+	/**
+	 * Returns the clock the frames-per-second of this worker are measured
+	 * with.
+	 * 
+	 * @return	the {@link Clock} of this worker.
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+	
+	
+	/**
+	 * Sets the clock the frames-per-second of this worker are measured with.
+	 * A {@link VirtualClock} is set to the time of each frame, as reported by
+	 * its source, before the frame is detected. This must be set before the
+	 * worker is executed.
+	 * 
+	 * @param clock	The {@link Clock} of this worker.
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock != null ? clock : Clock.SYSTEM;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if this worker detects the gestures of each frame
+	 * sequentially, regardless of its parallelism, for deterministic replays;
+	 * otherwise, returns {@code false}.
+	 * 
+	 * @return	whether this worker is in replay mode.
+	 */
+	public boolean isReplayMode() {
+		return replayMode;
+	}
+	
+	
+	/**
+	 * Sets whether this worker detects the gestures of each frame
+	 * sequentially, regardless of its parallelism, for deterministic replays.
+	 * 
+	 * @param replayMode	{@code true} for replay mode.
+	 */
+	public void setReplayMode(boolean replayMode) {
+		this.replayMode = replayMode;
+	}
+	
+	
+	/**
+	 * Returns the session recorder the raw frames of this worker are offered
+	 * to.
+	 * 
+	 * @return	the {@link SessionRecorder}, or {@code null} if the frames are
+	 * 			not being recorded.
+	 */
+	public SessionRecorder getRecorder() {
+		return recorder;
+	}
+	
+	
+	/**
+	 * Sets the session recorder the raw frames of this worker are offered to,
+	 * starting with the next frame; {@code null} stops offering the frames.
+	 * The recorder must already be started and is not closed by this worker.
+	 * 
+	 * @param recorder	The {@link SessionRecorder} to record the frames with.
+	 */
+	public void setRecorder(SessionRecorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	
+	/**
+	 * Stops the dedicated video capture thread of this worker and waits for it
+	 * to finish reading its current frame, so the frame source may be safely
+	 * released afterwards.
+	 */
+	final void stopCapture() {
+		FrameCaptureThread thread = captureThread;
+		if (thread != null)
+			thread.shutdown();
+	}
+	
+	
+	/**
+	 * Returns the total number of captured frames that were dropped in favor
+	 * of a newer frame because the detection was still busy with a previous
+	 * frame.
+	 * 
+	 * @return	the number of dropped frames.
+	 */
+	public long getDroppedFrameCount() {
+		FrameRingBuffer ring = frameRing;
+		return ring != null ? ring.getDroppedFrameCount() : 0l;
+	}
+	
+	
+	/**
+	 * Returns the time, in milliseconds, the most recently processed frame
+	 * waited between its capture and the start of its detection.
+	 * 
+	 * @return	the queue age of the last processed frame in milliseconds.
+	 */
+	public double getLastFrameQueueAge() {
+		FrameRingBuffer ring = frameRing;
+		return ring != null ? ring.getLastQueueAge() : 0d;
+	}
+	
+	
+	/**
+	 * Returns the average time, in milliseconds, frames waited between their
+	 * capture and the start of their detection.
+	 * 
+	 * @return	the average queue age in milliseconds.
+	 */
+	public double getAverageFrameQueueAge() {
+		FrameRingBuffer ring = frameRing;
+		return ring != null ? ring.getAverageQueueAge() : 0d;
+	}
 
 }
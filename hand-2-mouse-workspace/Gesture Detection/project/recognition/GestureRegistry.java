@@ -0,0 +1,191 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import java.util.Arrays;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * <p>Provides the copy-on-write registry of the gestures known to the
+ * {@link GestureRecognizer}. The registered gestures, and the subset of them
+ * which are enabled, are held in an immutable snapshot that is replaced as a
+ * whole whenever a gesture is registered, unregistered, enabled or disabled.
+ * <p>Readers, most importantly the detection loop of the
+ * {@link GestureRecognizerWorker}, only read the current snapshot and iterate
+ * its plain array without taking any lock; a change made while a frame is
+ * being detected takes effect on the next frame.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.AbstractGesture
+ */
+public class GestureRegistry implements ChangeListener {
+	
+	
+	/**
+	 * Immutable snapshot of all of the registered gestures, in registration
+	 * order, and of the enabled gestures among them.
+	 */
+	private static final class Snapshot {
+		
+		private final AbstractGesture[] all;
+		private final AbstractGesture[] enabled;
+		
+		private Snapshot(AbstractGesture[] all) {
+			int count = 0;
+			AbstractGesture[] tmp = new AbstractGesture[all.length];
+			for (AbstractGesture gesture : all) {
+				if (gesture.isEnabled())
+					tmp[count++] = gesture;
+			}
+			
+			this.all = all;
+			this.enabled = Arrays.copyOf(tmp, count);
+		}
+		
+	}
+	
+	
+	// Private member data.
+	private volatile Snapshot snapshot = new Snapshot(new AbstractGesture[0]);
+	
+	
+	/**
+	 * Registers the specified gesture, unless it is {@code null} or another
+	 * gesture with the same name is already registered.
+	 * 
+	 * @param gesture	The gesture to register.
+	 * 
+	 * @return	the registered gesture, or {@code null} if it could not be
+	 * 			registered.
+	 */
+	public synchronized AbstractGesture register(AbstractGesture gesture) {
+		if (gesture == null || get(gesture.getName()) != null)
+			return null;
+		
+		AbstractGesture[] all = snapshot.all;
+		AbstractGesture[] tmp = Arrays.copyOf(all, all.length + 1);
+		tmp[all.length] = gesture;
+		
+		gesture.addChangeListener(this);
+		snapshot = new Snapshot(tmp);
+		return gesture;
+	}
+	
+	
+	/**
+	 * Unregisters the gesture with the specified name.
+	 * 
+	 * @param name	The name of the gesture to unregister.
+	 * 
+	 * @return	the unregistered gesture, or {@code null} if no gesture was
+	 * 			registered with the specified name.
+	 */
+	public synchronized AbstractGesture unregister(String name) {
+		AbstractGesture[] all = snapshot.all;
+		for (int i = 0; i < all.length; i++) {
+			if (all[i].getName() == null ? name == null
+					: all[i].getName().equals(name))
+			{
+				AbstractGesture gesture = all[i];
+				AbstractGesture[] tmp = new AbstractGesture[all.length - 1];
+				System.arraycopy(all, 0, tmp, 0, i);
+				System.arraycopy(all, i + 1, tmp, i, tmp.length - i);
+				
+				gesture.removeChangeListener(this);
+				snapshot = new Snapshot(tmp);
+				return gesture;
+			}
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns the registered gesture with the specified name.
+	 * 
+	 * @param name	The name of the gesture.
+	 * 
+	 * @return	the registered gesture, or {@code null} if no gesture is
+	 * 			registered with the specified name.
+	 */
+	public AbstractGesture get(String name) {
+		for (AbstractGesture gesture : snapshot.all) {
+			if (gesture.getName() == null ? name == null
+					: gesture.getName().equals(name))
+				return gesture;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns a copy of all of the registered gestures in the order they were
+	 * registered.
+	 * 
+	 * @return	an array of the registered gestures.
+	 */
+	public AbstractGesture[] getGestures() {
+		return snapshot.all.clone();
+	}
+	
+	
+	/**
+	 * Returns the names of all of the registered gestures in the order they
+	 * were registered.
+	 * 
+	 * @return	an array of the registered gesture names.
+	 */
+	public String[] getGestureNames() {
+		AbstractGesture[] all = snapshot.all;
+		String[] names = new String[all.length];
+		for (int i = 0; i < all.length; i++)
+			names[i] = all[i].getName();
+		return names;
+	}
+	
+	
+	/**
+	 * Returns the enabled gestures of the current snapshot. The returned array
+	 * is shared and must not be modified; it is only meant for iterating in
+	 * the detection loop.
+	 * 
+	 * @return	the enabled gestures of the current snapshot.
+	 */
+	final AbstractGesture[] getEnabledGestures() {
+		return snapshot.enabled;
+	}
+	
+	
+	/**
+	 * Returns the number of registered gestures.
+	 * 
+	 * @return	the number of registered gestures.
+	 */
+	public int size() {
+		return snapshot.all.length;
+	}
+	
+	
+	/**
+	 * Rebuilds the snapshot when one of the registered gestures was enabled or
+	 * disabled.
+	 * 
+	 * @see javax.swing.event.ChangeListener#stateChanged(ChangeEvent)
+	 */
+	@Override
+	public synchronized void stateChanged(ChangeEvent ce) {
+		snapshot = new Snapshot(snapshot.all);
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[gesture(s)='"
+				+ Arrays.toString(getGestureNames()) + "']";
+	}
+	
+}
@@ -0,0 +1,504 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the classification of the skin pixels of BGR images through a
+ * lookup table, in pure Java. Whenever the YCrCb bounds of the skin pixels
+ * change, every 24 bit BGR color is converted to YCrCb exactly as OpenCV's
+ * {@code cvtColor} does and tested against the bounds once, and the results
+ * are packed into a table of 2<sup>24</sup> bits, about 2 MB. Each pixel is
+ * then classified straight from its BGR bytes with a single table lookup,
+ * without the YCrCb image and the separate range test of the OpenCV path.
+ * <p>The rows of an image are classified in stripes, in parallel on a fork
+ * join pool. The resulting mask matches the mask of {@code inRange} on the
+ * converted image; white for skin pixels, black otherwise. Unlike the
+ * {@link gestures.YCrCbSkinDetector}, no noise is removed from the mask.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see SkinRegionProposer
+ * @see gestures.YCrCbSkinDetector
+ */
+public class LutSkinClassifier {
+	
+	
+	/**
+	 * The default minimum number of rows of a stripe classified by a single
+	 * task.
+	 */
+	public static final int DEFAULT_MIN_STRIPE_ROWS = 16;
+	
+	
+	// The number of 64 bit words of the table of all 24 bit colors
+	private static final int TABLE_WORDS = 1 << 18;
+	
+	// The fixed point coefficients of OpenCV's 8 bit BGR to YCrCb conversion
+	private static final int SHIFT = 14;
+	private static final int HALF = 1 << (SHIFT - 1);
+	private static final int DELTA = 128 << SHIFT;
+	private static final int R2Y = 4899;
+	private static final int G2Y = 9617;
+	private static final int B2Y = 1868;
+	private static final int CR = 11682;
+	private static final int CB = 9241;
+	
+	// The minimum number of blue values of the table built by a single task
+	private static final int MIN_TABLE_BLUES = 16;
+	
+	// The pool shared by the classifiers created without a pool
+	private static final ForkJoinPool sharedPool = new ForkJoinPool();
+	
+	
+	// Private member fields.
+	private final ForkJoinPool pool;
+	private final TimingStatistics buildTimes =
+			new TimingStatistics("table build");
+	private final TimingStatistics classifyTimes =
+			new TimingStatistics("classification");
+	
+	// Private member data.
+	private volatile long[] table = null;
+	private volatile Scalar skinMin = null;
+	private volatile Scalar skinMax = null;
+	private volatile int minStripeRows = DEFAULT_MIN_STRIPE_ROWS;
+	private byte[] pixels = new byte[0];
+	private byte[] values = new byte[0];
+	
+	
+	/**
+	 * Constructor for a new instance of a skin classifier with the default
+	 * skin bounds of the {@link SkinRegionProposer}, classifying on a pool
+	 * shared by all such classifiers.
+	 */
+	public LutSkinClassifier() {
+		this(SkinRegionProposer.DEFAULT_SKIN_MIN,
+				SkinRegionProposer.DEFAULT_SKIN_MAX, sharedPool);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of a skin classifier with the specified
+	 * skin bounds, classifying on the specified pool.
+	 * 
+	 * @param min	The lower YCrCb bound of the skin pixels.
+	 * @param max	The upper YCrCb bound of the skin pixels.
+	 * @param pool	The pool classifying the stripes of the images.
+	 * 
+	 * @throws IllegalArgumentException if a bound doesn't have three values.
+	 * @throws NullPointerException if the pool is {@code null}.
+	 */
+	public LutSkinClassifier(Scalar min, Scalar max, ForkJoinPool pool)
+			throws IllegalArgumentException, NullPointerException
+	{
+		if (pool == null)
+			throw new NullPointerException("pool must not be null.");
+		
+		this.pool = pool;
+		setSkinBounds(min, max);
+	}
+	
+	
+	/**
+	 * Sets the YCrCb bounds of the skin pixels and rebuilds the lookup table
+	 * if they changed. The images being classified meanwhile are classified
+	 * with the previous table.
+	 * 
+	 * @param min	The lower YCrCb bound of the skin pixels.
+	 * @param max	The upper YCrCb bound of the skin pixels.
+	 * 
+	 * @throws IllegalArgumentException if a bound doesn't have three values.
+	 */
+	public synchronized void setSkinBounds(Scalar min, Scalar max)
+			throws IllegalArgumentException
+	{
+		if (min == null || min.val.length < 3 || max == null
+				|| max.val.length < 3)
+			throw new IllegalArgumentException("setSkinBounds(" + min + ", "
+					+ max + ") requires three values per bound.");
+		
+		if (table != null && equals(min, skinMin) && equals(max, skinMax))
+			return;
+		
+		int[] lo = new int[3];
+		int[] hi = new int[3];
+		for (int c = 0; c < 3; c++) {
+			lo[c] = (int)Math.ceil(min.val[c]);
+			hi[c] = (int)Math.floor(max.val[c]);
+		}
+		
+		long start = System.nanoTime();
+		long[] t = new long[TABLE_WORDS];
+		pool.invoke(new TableTask(t, lo, hi, 0, 256));
+		buildTimes.add(System.nanoTime() - start);
+		
+		skinMin = min;
+		skinMax = max;
+		table = t;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the specified bounds have the same YCrCb values;
+	 * otherwise, returns {@code false}.
+	 * 
+	 * @param a	The first bound.
+	 * @param b	The second bound.
+	 * 
+	 * @return	whether the bounds are equal.
+	 */
+	private static final boolean equals(Scalar a, Scalar b) {
+		for (int c = 0; c < 3; c++) {
+			if (a.val[c] != b.val[c])
+				return false;
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Returns the lower YCrCb bound of the skin pixels.
+	 * 
+	 * @return	the lower bound of the skin pixels.
+	 */
+	public Scalar getSkinMin() {
+		return skinMin;
+	}
+	
+	
+	/**
+	 * Returns the upper YCrCb bound of the skin pixels.
+	 * 
+	 * @return	the upper bound of the skin pixels.
+	 */
+	public Scalar getSkinMax() {
+		return skinMax;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the specified BGR color is a skin color;
+	 * otherwise, returns {@code false}.
+	 * 
+	 * @param b	The blue value, between 0 and 255.
+	 * @param g	The green value, between 0 and 255.
+	 * @param r	The red value, between 0 and 255.
+	 * 
+	 * @return	whether the color is a skin color.
+	 */
+	public boolean isSkin(int b, int g, int r) {
+		int i = (b & 0xff) << 16 | (g & 0xff) << 8 | (r & 0xff);
+		return (table[i >>> 6] >>> i & 1l) != 0l;
+	}
+	
+	
+	/**
+	 * Classifies the pixels of the specified packed BGR image; three bytes
+	 * per pixel, in rows without any padding. The stripes of rows are
+	 * classified in parallel.
+	 * 
+	 * @param bgr		The bytes of the BGR image.
+	 * @param width		The width of the image.
+	 * @param height	The height of the image.
+	 * @param mask		The bytes of the mask to write, one per pixel; 255 for
+	 * 					skin pixels and zero otherwise.
+	 * 
+	 * @throws IllegalArgumentException if an array is smaller than the image.
+	 */
+	public void classify(byte[] bgr, int width, int height, byte[] mask)
+			throws IllegalArgumentException
+	{
+		if (width < 0 || height < 0 || bgr.length < 3 * width * height
+				|| mask.length < width * height)
+			throw new IllegalArgumentException("classify(" + bgr.length + ", "
+					+ width + ", " + height + ", " + mask.length + ") requires "
+					+ "arrays as large as the image.");
+		
+		long start = System.nanoTime();
+		int rows = Math.max(1, minStripeRows);
+		if (height <= rows)
+			classify(table, bgr, mask, 0, width * height);
+		else
+			pool.invoke(new StripeTask(table, bgr, mask, width, rows, 0,
+					height));
+		classifyTimes.add(System.nanoTime() - start);
+	}
+	
+	
+	/**
+	 * Classifies the pixels of the specified BGR image into the specified
+	 * mask, which is allocated, or reallocated, as a single channel image of
+	 * the same size. The pixels are copied to and from arrays owned by this
+	 * classifier, so the images are classified one at a time.
+	 * 
+	 * @param bgr	The three channel BGR image; it is not modified.
+	 * @param mask	The single channel mask to write; white for skin pixels
+	 * 				and black otherwise.
+	 * 
+	 * @return	the given mask.
+	 * 
+	 * @throws IllegalArgumentException if the image isn't a three channel
+	 * 			image of bytes.
+	 */
+	public synchronized Mat classify(Mat bgr, Mat mask)
+			throws IllegalArgumentException
+	{
+		if (bgr.type() != CvType.CV_8UC3)
+			throw new IllegalArgumentException("classify(" + bgr + ", " + mask
+					+ ") requires a three channel image of bytes.");
+		
+		int width = bgr.cols();
+		int height = bgr.rows();
+		int n = width * height;
+		if (pixels.length != 3 * n) {
+			pixels = new byte[3 * n];
+			values = new byte[n];
+		}
+		
+		bgr.get(0, 0, pixels);
+		classify(pixels, width, height, values);
+		mask.create(height, width, CvType.CV_8UC1);
+		mask.put(0, 0, values);
+		return mask;
+	}
+	
+	
+	/**
+	 * Classifies the specified range of pixels of a packed BGR image.
+	 * 
+	 * @param t		The lookup table of the skin colors.
+	 * @param bgr	The bytes of the BGR image.
+	 * @param mask	The bytes of the mask to write.
+	 * @param from	The index of the first pixel, inclusive.
+	 * @param to	The index of the last pixel, exclusive.
+	 */
+	private static final void classify(long[] t, byte[] bgr, byte[] mask,
+			int from, int to)
+	{
+		for (int p = from, i = 3 * from; p < to; p++, i += 3) {
+			int c = (bgr[i] & 0xff) << 16 | (bgr[i + 1] & 0xff) << 8
+					| (bgr[i + 2] & 0xff);
+			mask[p] = (byte)-(int)(t[c >>> 6] >>> c & 1l);
+		}
+	}
+	
+	
+	/**
+	 * Returns the minimum number of rows of a stripe classified by a single
+	 * task.
+	 * 
+	 * @return	the minimum rows per stripe.
+	 */
+	public int getMinStripeRows() {
+		return minStripeRows;
+	}
+	
+	
+	/**
+	 * Sets the minimum number of rows of a stripe classified by a single
+	 * task; images with at most as many rows are classified by the calling
+	 * thread alone.
+	 * 
+	 * @param rows	The minimum rows per stripe, at least one.
+	 * 
+	 * @throws IllegalArgumentException if the number of rows is less than
+	 * 			one.
+	 */
+	public void setMinStripeRows(int rows) throws IllegalArgumentException {
+		if (rows < 1)
+			throw new IllegalArgumentException("setMinStripeRows(" + rows
+					+ ") must be at least one.");
+		
+		minStripeRows = rows;
+	}
+	
+	
+	/**
+	 * Returns the timings of the builds of the lookup table.
+	 * 
+	 * @return	the timing statistics of the table builds.
+	 */
+	public final TimingStatistics getBuildStatistics() {
+		return buildTimes;
+	}
+	
+	
+	/**
+	 * Returns the timings of the classifications of the images, excluding
+	 * the copies of the pixels of {@link #classify(Mat, Mat)}.
+	 * 
+	 * @return	the timing statistics of the classifications.
+	 */
+	public final TimingStatistics getClassifyStatistics() {
+		return classifyTimes;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[min=" + getSkinMin() + ",max="
+				+ getSkinMax() + ",minStripeRows=" + getMinStripeRows()
+				+ ",parallelism=" + pool.getParallelism() + "]";
+	}
+	
+	
+	/**
+	 * Classifies a stripe of rows of an image, splitting it in halves while
+	 * it is larger than the minimum stripe.
+	 */
+	private static final class StripeTask extends RecursiveAction {
+		
+		
+		/**
+		 * serial version user id
+		 */
+		private static final long serialVersionUID = -2390853447601786392L;
+		
+		
+		// Private member fields.
+		private final long[] t;
+		private final byte[] bgr;
+		private final byte[] mask;
+		private final int width;
+		private final int minRows;
+		private final int fromRow;
+		private final int toRow;
+		
+		
+		/**
+		 * Constructor for a new instance of a task classifying the specified
+		 * stripe of rows.
+		 * 
+		 * @param t			The lookup table of the skin colors.
+		 * @param bgr		The bytes of the BGR image.
+		 * @param mask		The bytes of the mask to write.
+		 * @param width		The width of the image.
+		 * @param minRows	The minimum rows per stripe.
+		 * @param fromRow	The first row of the stripe, inclusive.
+		 * @param toRow		The last row of the stripe, exclusive.
+		 */
+		StripeTask(long[] t, byte[] bgr, byte[] mask, int width, int minRows,
+				int fromRow, int toRow)
+		{
+			this.t = t;
+			this.bgr = bgr;
+			this.mask = mask;
+			this.width = width;
+			this.minRows = minRows;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+		
+		
+		@Override
+		protected void compute() {
+			if (toRow - fromRow <= minRows) {
+				classify(t, bgr, mask, fromRow * width, toRow * width);
+				return;
+			}
+			
+			int mid = (fromRow + toRow) >>> 1;
+			invokeAll(new StripeTask(t, bgr, mask, width, minRows, fromRow,
+					mid), new StripeTask(t, bgr, mask, width, minRows, mid,
+					toRow));
+		}
+		
+	}
+	
+	
+	/**
+	 * Builds the part of the lookup table of a range of blue values,
+	 * splitting it in halves while it is larger than the minimum range. The
+	 * 65,536 colors of each blue value fill their own 1,024 words of the
+	 * table.
+	 */
+	private static final class TableTask extends RecursiveAction {
+		
+		
+		/**
+		 * serial version user id
+		 */
+		private static final long serialVersionUID = 6038127149528440251L;
+		
+		
+		// Private member fields.
+		private final long[] t;
+		private final int[] lo;
+		private final int[] hi;
+		private final int fromBlue;
+		private final int toBlue;
+		
+		
+		/**
+		 * Constructor for a new instance of a task building the part of the
+		 * table of the specified range of blue values.
+		 * 
+		 * @param t			The lookup table to fill.
+		 * @param lo		The lower Y, Cr and Cb bounds, inclusive.
+		 * @param hi		The upper Y, Cr and Cb bounds, inclusive.
+		 * @param fromBlue	The first blue value, inclusive.
+		 * @param toBlue	The last blue value, exclusive.
+		 */
+		TableTask(long[] t, int[] lo, int[] hi, int fromBlue, int toBlue) {
+			this.t = t;
+			this.lo = lo;
+			this.hi = hi;
+			this.fromBlue = fromBlue;
+			this.toBlue = toBlue;
+		}
+		
+		
+		@Override
+		protected void compute() {
+			if (toBlue - fromBlue > MIN_TABLE_BLUES) {
+				int mid = (fromBlue + toBlue) >>> 1;
+				invokeAll(new TableTask(t, lo, hi, fromBlue, mid),
+						new TableTask(t, lo, hi, mid, toBlue));
+				return;
+			}
+			
+			for (int b = fromBlue; b < toBlue; b++) {
+				for (int g = 0; g < 256; g++) {
+					int base = b << 16 | g << 8;
+					for (int r = 0; r < 256; r++) {
+						int y = (b * B2Y + g * G2Y + r * R2Y + HALF) >> SHIFT;
+						int cr = saturate(((r - y) * CR + DELTA + HALF)
+								>> SHIFT);
+						int cb = saturate(((b - y) * CB + DELTA + HALF)
+								>> SHIFT);
+						if (y >= lo[0] && y <= hi[0] && cr >= lo[1]
+								&& cr <= hi[1] && cb >= lo[2] && cb <= hi[2])
+						{
+							int i = base | r;
+							t[i >>> 6] |= 1l << i;
+						}
+					}
+				}
+			}
+		}
+		
+		
+		/**
+		 * Returns the specified value clamped to the range of a byte.
+		 * 
+		 * @param v	The value to clamp.
+		 * 
+		 * @return	the value between 0 and 255.
+		 */
+		private static final int saturate(int v) {
+			return v < 0 ? 0 : v > 255 ? 255 : v;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,122 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * <p>Provides the double buffered preview of the captured frames shown through
+ * an {@link ImageIcon}. Each frame is mirrored in place and its pixels are
+ * copied straight into the raster of one of two reused
+ * {@link BufferedImage}s; the {@link BufferedImage#TYPE_3BYTE_BGR} layout
+ * matches the layout of the OpenCV frames, so no encoding or conversion is
+ * needed.
+ * <p>The image being shown on the event dispatch thread (EDT) is never
+ * written to. The frame is written into the back image, which is then handed
+ * to the EDT to become the front image; if the EDT has not yet taken the back
+ * image when the next frame arrives, that frame simply replaces it. Once the
+ * images are allocated, publishing a frame does not allocate any image
+ * memory.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see javax.swing.ImageIcon
+ */
+class PreviewImageBuffer {
+	
+	
+	// Private member fields.
+	private final ImageIcon imgIcon;
+	private final BufferedImage[] images = new BufferedImage[2];
+	private final Object swapLock = new Object();
+	private final Runnable swapTask = new Runnable() {
+		
+		@Override
+		public void run() {
+			BufferedImage img;
+			synchronized (swapLock) {
+				front = 1 - front;
+				pending = false;
+				img = images[front];
+			}
+			imgIcon.setImage(img);
+		}
+		
+	};
+	
+	// Private member data.
+	private int front = 0;
+	private boolean pending = false;
+	
+	
+	/**
+	 * Constructor for a new instance of this preview buffer which shows the
+	 * published frames through the specified {@link ImageIcon}.
+	 * 
+	 * @param imgIcon	The image holder to show the published frames with.
+	 */
+	public PreviewImageBuffer(ImageIcon imgIcon) {
+		this.imgIcon = imgIcon;
+	}
+	
+	
+	/**
+	 * Mirrors the specified frame horizontally, in place, and publishes it as
+	 * the next preview image.
+	 * 
+	 * @param frame	The frame to publish; either a three channel BGR or a
+	 * 				single channel grayscale image of 8-bit depth.
+	 */
+	public void publish(Mat frame) {
+		if (frame == null || frame.empty())
+			return;
+		
+		Core.flip(frame, frame, 1);
+		
+		synchronized (swapLock) {
+			int back = 1 - front;
+			BufferedImage img = ensureImage(back, frame);
+			byte[] data = ((DataBufferByte)img.getRaster().getDataBuffer())
+					.getData();
+			frame.get(0, 0, data);
+			
+			if (!pending) {
+				pending = true;
+				SwingUtilities.invokeLater(swapTask);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the image at the specified index, (re)allocating it only if the
+	 * dimensions or the number of channels of the frame have changed.
+	 * 
+	 * @param index	The index of the image.
+	 * @param frame	The frame to be copied into the image.
+	 * 
+	 * @return	the image to copy the frame into.
+	 */
+	private final BufferedImage ensureImage(int index, Mat frame) {
+		int type = frame.channels() == 1 ? BufferedImage.TYPE_BYTE_GRAY
+				: BufferedImage.TYPE_3BYTE_BGR;
+		BufferedImage img = images[index];
+		
+		if (img == null || img.getWidth() != frame.cols()
+				|| img.getHeight() != frame.rows() || img.getType() != type)
+		{
+			img = new BufferedImage(frame.cols(), frame.rows(), type);
+			images[index] = img;
+		}
+		return img;
+	}
+	
+}
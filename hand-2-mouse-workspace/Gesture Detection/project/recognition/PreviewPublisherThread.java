@@ -0,0 +1,235 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import java.awt.Component;
+import java.awt.image.ImageObserver;
+
+import javax.swing.ImageIcon;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the preview stage of the gesture recognition, which runs on its
+ * own thread with its own target frame rate and output resolution. The
+ * detection worker merely offers each of its frames; a frame is only taken,
+ * by copying or resizing it into a staging matrix, when the preview is
+ * actually visible and the target frame rate allows for another preview
+ * image. All of the remaining work, mirroring and converting the frame into
+ * the preview image, happens on this thread.
+ * <p>The preview is considered visible when the {@link ImageObserver} of the
+ * {@link ImageIcon} is a {@link Component} that is currently showing on
+ * screen. When no such observer is attached, offering a frame does no work at
+ * all, so the detection throughput does not depend on whether someone has
+ * the preview open.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.PreviewImageBuffer
+ */
+class PreviewPublisherThread extends Thread {
+	
+	
+	/**
+	 * The default target frame rate of the preview.
+	 */
+	public static final double DEFAULT_FRAME_RATE = 15d;
+	
+	
+	// Private member fields.
+	private final ImageIcon imgIcon;
+	private final PreviewImageBuffer preview;
+	private final Object frameLock = new Object();
+	
+	// Private member data.
+	private Mat staging = new Mat();
+	private Mat working = new Mat();
+	private boolean hasFrame = false;
+	private volatile boolean running = true;
+	private volatile long frameIntervalNanos;
+	private volatile Size outputSize = null;
+	private long lastOfferTime = 0l;
+	private long publishedFrames = 0l;
+	private long skippedFrames = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this preview stage which shows the
+	 * offered frames through the specified {@link ImageIcon}.
+	 * 
+	 * @param imgIcon	The image holder to show the preview with.
+	 */
+	public PreviewPublisherThread(ImageIcon imgIcon) {
+		super("PreviewPublisherThread");
+		setDaemon(true);
+		
+		this.imgIcon = imgIcon;
+		this.preview = new PreviewImageBuffer(imgIcon);
+		setFrameRate(DEFAULT_FRAME_RATE);
+	}
+	
+	
+	/**
+	 * Offers the specified frame, with the highlights of the detected gestures
+	 * painted onto it, to the preview. This is called by the detection worker
+	 * for each frame; the frame is only copied when the preview is visible
+	 * and is due for another image, otherwise this returns immediately.
+	 * 
+	 * @param frame	The frame to offer to the preview.
+	 * 
+	 * @return	{@code true} if the frame was taken for the preview; otherwise,
+	 * 			{@code false}.
+	 */
+	public boolean offer(Mat frame) {
+		long now = System.nanoTime();
+		
+		if (!isPreviewVisible() || now - lastOfferTime < frameIntervalNanos
+				|| frame == null || frame.empty())
+		{
+			skippedFrames++;
+			return false;
+		}
+		lastOfferTime = now;
+		
+		synchronized (frameLock) {
+			Size size = outputSize;
+			if (size == null || (size.width == frame.cols()
+					&& size.height == frame.rows()))
+				frame.copyTo(staging);
+			else
+				Imgproc.resize(frame, staging, size, 0, 0, Imgproc.INTER_AREA);
+			
+			hasFrame = true;
+			frameLock.notifyAll();
+		}
+		return true;
+	}
+	
+	
+	@Override
+	public void run() {
+		Log.debug(getClass().getSimpleName() + " running...");
+		Mat tmp;
+		
+		try {
+			while (running) {
+				synchronized (frameLock) {
+					while (!hasFrame && running)
+						frameLock.wait();
+					
+					if (!running)
+						break;
+					
+					tmp = working;
+					working = staging;
+					staging = tmp;
+					hasFrame = false;
+				}
+				
+				preview.publish(working);
+				publishedFrames++;
+			}
+		}
+		catch (InterruptedException ignore) { }
+		finally {
+			Log.debug(getClass().getSimpleName() + " stopped!");
+		}
+	}
+	
+	
+	/**
+	 * Stops this preview stage and waits for it to finish the preview image
+	 * it is currently publishing.
+	 */
+	public void shutdown() {
+		running = false;
+		synchronized (frameLock) {
+			frameLock.notifyAll();
+		}
+		
+		if (Thread.currentThread() != this) {
+			try {
+				join(1000);
+			} catch (InterruptedException ignore) { }
+		}
+		staging.release();
+		working.release();
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the image observer of the preview's
+	 * {@link ImageIcon} is a {@link Component} currently showing on screen;
+	 * otherwise, returns {@code false}.
+	 * 
+	 * @return	whether the preview is currently visible.
+	 */
+	public boolean isPreviewVisible() {
+		ImageObserver iob = imgIcon.getImageObserver();
+		return iob instanceof Component && ((Component)iob).isShowing();
+	}
+	
+	
+	/**
+	 * Returns the target frame rate of the preview.
+	 * 
+	 * @return	the target preview frames-per-second.
+	 */
+	public double getFrameRate() {
+		return 1e9 / frameIntervalNanos;
+	}
+	
+	
+	/**
+	 * Sets the target frame rate of the preview.
+	 * 
+	 * @param fps	The target preview frames-per-second.
+	 * 
+	 * @throws IllegalArgumentException if the frame rate is not greater than
+	 * 			zero.
+	 */
+	public void setFrameRate(double fps) throws IllegalArgumentException {
+		if (!(fps > 0d))
+			throw new IllegalArgumentException("setFrameRate(" + fps
+					+ ") must be greater than zero.");
+		
+		frameIntervalNanos = (long)(1e9 / fps);
+	}
+	
+	
+	/**
+	 * Returns the output resolution of the preview, or {@code null} if the
+	 * preview uses the resolution of the captured frames.
+	 * 
+	 * @return	the output resolution of the preview.
+	 */
+	public Size getOutputSize() {
+		return outputSize;
+	}
+	
+	
+	/**
+	 * Sets the output resolution of the preview; {@code null} uses the
+	 * resolution of the captured frames.
+	 * 
+	 * @param size	The output resolution of the preview.
+	 */
+	public void setOutputSize(Size size) {
+		outputSize = size;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[fps=" + getFrameRate() + ","
+				+ "size=" + getOutputSize() + ","
+				+ "published=" + publishedFrames + ","
+				+ "skipped=" + skippedFrames + "]";
+	}
+	
+}
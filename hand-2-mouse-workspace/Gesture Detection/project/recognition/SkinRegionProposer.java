@@ -0,0 +1,263 @@
+/**
+ * 
+ */
+package project.recognition;
+
+import gestures.YCrCbSkinDetector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import project.recognition.types.Detections;
+
+/**
+ * <p>Provides the region proposals of a frame; the places a hand could be,
+ * taken from the skin mask of the frame. The bounding box of each significant
+ * skin blob is padded, since the detected object is usually larger than its
+ * visible skin, and the overlapping boxes are merged, so the gestures scan
+ * each pixel at most once. A frame without any significant skin blob has no
+ * proposals at all.
+ * <p>The proposals are computed at most once per frame by the
+ * {@link FrameContext} and shared with all of the gestures requesting them.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.FrameContext#getSkinProposals()
+ * @see gestures.YCrCbSkinDetector
+ */
+public class SkinRegionProposer {
+	
+	
+	/**
+	 * The default lower YCrCb bound of the skin pixels.
+	 */
+	public static final Scalar DEFAULT_SKIN_MIN = new Scalar(0, 136, 85);
+	
+	
+	/**
+	 * The default upper YCrCb bound of the skin pixels.
+	 */
+	public static final Scalar DEFAULT_SKIN_MAX = new Scalar(255, 180, 130);
+	
+	
+	/**
+	 * The default minimum area of a skin blob, relative to the frame area.
+	 */
+	public static final double DEFAULT_MIN_BLOB_AREA = 0.002d;
+	
+	
+	/**
+	 * The default padding on each side of a skin blob's bounding box,
+	 * relative to the larger dimension of the box.
+	 */
+	public static final double DEFAULT_PADDING = 0.25d;
+	
+	
+	// Private member fields.
+	private final YCrCbSkinDetector detector = new YCrCbSkinDetector();
+	
+	// Private member data.
+	private volatile Scalar skinMin = DEFAULT_SKIN_MIN;
+	private volatile Scalar skinMax = DEFAULT_SKIN_MAX;
+	private volatile double minBlobArea = DEFAULT_MIN_BLOB_AREA;
+	private volatile double padding = DEFAULT_PADDING;
+	private long frames = 0l;
+	private long framesWithoutProposals = 0l;
+	private long proposals = 0l;
+	private long proposedPixels = 0l;
+	private long framePixels = 0l;
+	
+	
+	/**
+	 * Detects the skin pixels of the frame from its chroma planes. The mask is
+	 * owned by the skin detector of this proposer and is overwritten by its
+	 * next detection; it must not be released by the caller.
+	 * 
+	 * @param cr	The Cr plane of the frame.
+	 * @param cb	The Cb plane of the frame.
+	 * 
+	 * @return	the single channel mask where the skin pixels are white.
+	 */
+	public Mat detectSkin(Mat cr, Mat cb) {
+		return detector.detectSkinFromCrCb(cr, cb, skinMin, skinMax);
+	}
+	
+	
+	/**
+	 * Returns the skin detector of this proposer, e.g. for the timings of its
+	 * detection steps.
+	 * 
+	 * @return	the {@link YCrCbSkinDetector} of this proposer.
+	 */
+	public YCrCbSkinDetector getSkinDetector() {
+		return detector;
+	}
+	
+	
+	/**
+	 * Returns the padded and merged bounding boxes of the significant skin
+	 * blobs of the specified skin mask.
+	 * 
+	 * @param skinMask	The skin mask of the frame; it is not modified.
+	 * 
+	 * @return	the proposed regions, in the coordinates of the frame.
+	 */
+	public Rect[] propose(Mat skinMask) {
+		int cols = skinMask.cols();
+		int rows = skinMask.rows();
+		double minArea = minBlobArea * cols * rows;
+		double pad = padding;
+		
+		List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
+		Mat tmp = skinMask.clone();
+		Mat hierarchy = new Mat();
+		Imgproc.findContours(tmp, contours, hierarchy, Imgproc.RETR_EXTERNAL,
+				Imgproc.CHAIN_APPROX_SIMPLE);
+		tmp.release();
+		hierarchy.release();
+		
+		List<Rect> boxes = new ArrayList<Rect>();
+		for (MatOfPoint contour : contours) {
+			if (Imgproc.contourArea(contour) >= minArea) {
+				Rect r = Imgproc.boundingRect(contour);
+				int p = (int)Math.ceil(Math.max(r.width, r.height) * pad);
+				int x0 = Math.max(0, r.x - p);
+				int y0 = Math.max(0, r.y - p);
+				int x1 = Math.min(cols, r.x + r.width + p);
+				int y1 = Math.min(rows, r.y + r.height + p);
+				boxes.add(new Rect(x0, y0, x1 - x0, y1 - y0));
+			}
+			contour.release();
+		}
+		
+		Rect[] regions = Detections.merge(boxes);
+		
+		long pixels = 0l;
+		for (Rect r : regions)
+			pixels += (long)r.width * r.height;
+		
+		synchronized (this) {
+			frames++;
+			if (regions.length == 0)
+				framesWithoutProposals++;
+			proposals += regions.length;
+			proposedPixels += pixels;
+			framePixels += (long)cols * rows;
+		}
+		return regions;
+	}
+	
+	
+	/**
+	 * Sets the YCrCb bounds of the skin pixels.
+	 * 
+	 * @param min	The lower YCrCb bound of the skin pixels.
+	 * @param max	The upper YCrCb bound of the skin pixels.
+	 */
+	public void setSkinBounds(Scalar min, Scalar max) {
+		skinMin = min;
+		skinMax = max;
+	}
+	
+	
+	/**
+	 * Returns the minimum area of a significant skin blob, relative to the
+	 * frame area.
+	 * 
+	 * @return	the minimum blob area between zero and one.
+	 */
+	public double getMinBlobArea() {
+		return minBlobArea;
+	}
+	
+	
+	/**
+	 * Sets the minimum area of a significant skin blob, relative to the frame
+	 * area.
+	 * 
+	 * @param area	The minimum blob area between zero and one.
+	 */
+	public void setMinBlobArea(double area) {
+		minBlobArea = area;
+	}
+	
+	
+	/**
+	 * Returns the padding on each side of a skin blob's bounding box,
+	 * relative to the larger dimension of the box.
+	 * 
+	 * @return	the padding of the proposals.
+	 */
+	public double getPadding() {
+		return padding;
+	}
+	
+	
+	/**
+	 * Sets the padding on each side of a skin blob's bounding box, relative
+	 * to the larger dimension of the box.
+	 * 
+	 * @param padding	The padding of the proposals.
+	 */
+	public void setPadding(double padding) {
+		this.padding = padding;
+	}
+	
+	
+	/**
+	 * Returns the total number of regions proposed so far.
+	 * 
+	 * @return	the number of proposals.
+	 */
+	public synchronized long getProposalCount() {
+		return proposals;
+	}
+	
+	
+	/**
+	 * Returns the number of frames without any region proposal, on which the
+	 * gated gestures did no cascade work at all.
+	 * 
+	 * @return	the number of frames without proposals.
+	 */
+	public synchronized long getFramesWithoutProposals() {
+		return framesWithoutProposals;
+	}
+	
+	
+	/**
+	 * Returns the total number of pixels within the regions proposed so far.
+	 * 
+	 * @return	the number of proposed pixels.
+	 */
+	public synchronized long getProposedPixelCount() {
+		return proposedPixels;
+	}
+	
+	
+	/**
+	 * Returns the fraction of the frame pixels within the proposed regions,
+	 * over all of the frames so far.
+	 * 
+	 * @return	the proposed fraction of the frames, between zero and one.
+	 */
+	public synchronized double getProposedFraction() {
+		return framePixels > 0l ? proposedPixels / (double)framePixels : 0d;
+	}
+	
+	
+	@Override
+	public synchronized String toString() {
+		return getClass().getSimpleName() + "[frames=" + frames + ","
+				+ "proposals=" + proposals + ","
+				+ "empty=" + framesWithoutProposals + ","
+				+ "fraction=" + getProposedFraction() + "]";
+	}
+	
+}
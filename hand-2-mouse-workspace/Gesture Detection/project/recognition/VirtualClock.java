@@ -0,0 +1,78 @@
+/**
+ * 
+ */
+package project.recognition;
+
+/**
+ * Provides a {@link Clock} which only moves when it is set, i.e. by the
+ * {@link GestureRecognizerWorker} to the time stamp of each replayed frame
+ * before its detection. The time is kept in nanoseconds since the epoch.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.source.FrameSource#getFrameTime()
+ */
+public class VirtualClock extends Clock {
+	
+	
+	// Private member data.
+	private volatile long time = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this clock starting at the epoch.
+	 */
+	public VirtualClock() {
+		this(0l);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this clock starting at the specified
+	 * time.
+	 * 
+	 * @param nanos	The time in nanoseconds since the epoch.
+	 */
+	public VirtualClock(long nanos) {
+		this.time = nanos;
+	}
+	
+	
+	@Override
+	public long currentTimeMillis() {
+		return time / 1000000l;
+	}
+	
+	
+	@Override
+	public long nanoTime() {
+		return time;
+	}
+	
+	
+	/**
+	 * Sets the current time of this clock.
+	 * 
+	 * @param nanos	The time in nanoseconds since the epoch.
+	 */
+	public synchronized void setTime(long nanos) {
+		time = nanos;
+	}
+	
+	
+	/**
+	 * Advances the current time of this clock by the specified amount.
+	 * 
+	 * @param nanos	The number of nanoseconds to advance by.
+	 */
+	public synchronized void advance(long nanos) {
+		time += nanos;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[time=" + time + "ns]";
+	}
+	
+}
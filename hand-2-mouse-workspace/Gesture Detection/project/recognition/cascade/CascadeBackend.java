@@ -0,0 +1,33 @@
+/**
+ * 
+ */
+package project.recognition.cascade;
+
+/**
+ * The implementation a cascade classifier is evaluated with. The native
+ * backend calls the OpenCV classifier through JNI; the Java backend evaluates
+ * the parsed cascade with the {@link JavaCascadeDetector} on the integral
+ * images shared by all of the cascades of the frame.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.cascade.JavaCascadeDetector
+ */
+public enum CascadeBackend {
+	
+	NATIVE("native"),
+	JAVA("Java");
+	
+	private final String name;
+	
+	private CascadeBackend(String name) {
+		this.name = name;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
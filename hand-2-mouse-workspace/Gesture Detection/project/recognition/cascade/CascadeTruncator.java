@@ -0,0 +1,213 @@
+/**
+ * 
+ */
+package project.recognition.cascade;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>Provides the static helpers for truncating a cascade classifier XML file
+ * to its first stages. Most of the windows of a frame are rejected by the
+ * first few stages of a cascade, so a cascade truncated to those stages is a
+ * cheap pre-filter of the windows the whole cascade still has to evaluate.
+ * <p>Both the old and the new cascade format are supported; only the stages
+ * are dropped, so the features of the new format are kept even if no longer
+ * used, and the stage count of the new format is updated.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.TwoTierCascadeDetector
+ */
+public final class CascadeTruncator {
+	
+	
+	/**
+	 * This class only provides static methods.
+	 */
+	private CascadeTruncator() { }
+	
+	
+	/**
+	 * Returns the number of stages of the cascade classifier file at the
+	 * specified path.
+	 * 
+	 * @param path	The path of the classifier XML file.
+	 * 
+	 * @return	the number of stages of the cascade.
+	 * 
+	 * @throws IOException if the file could not be read, or is not a cascade.
+	 */
+	public static int getStageCount(String path) throws IOException {
+		return stages(cascade(parse(path), path)).size();
+	}
+	
+	
+	/**
+	 * Writes the cascade classifier file at the specified path, truncated to
+	 * its first stages, to the specified file.
+	 * 
+	 * @param path		The path of the classifier XML file.
+	 * @param stages	The number of stages to keep.
+	 * @param out		The file to write the truncated cascade to.
+	 * 
+	 * @throws IOException if the file could not be read, is not a cascade, or
+	 * 			the truncated cascade could not be written.
+	 * @throws IllegalArgumentException if the number of stages is less than
+	 * 			one.
+	 */
+	public static void truncate(String path, int stages, File out)
+			throws IOException, IllegalArgumentException
+	{
+		if (stages < 1)
+			throw new IllegalArgumentException("truncate(" + stages
+					+ ") must keep at least one stage.");
+		
+		Document doc = parse(path);
+		Element cascade = cascade(doc, path);
+		List<Element> list = stages(cascade);
+		for (int i = stages; i < list.size(); i++)
+			list.get(i).getParentNode().removeChild(list.get(i));
+		
+		Element stageNum = firstChild(cascade, "stageNum");
+		if (stageNum != null)
+			stageNum.setTextContent(Integer.toString(
+					Math.min(stages, list.size())));
+		
+		try {
+			TransformerFactory.newInstance().newTransformer().transform(
+					new DOMSource(doc), new StreamResult(out));
+		}
+		catch (TransformerException ex) {
+			throw new IOException("Unable to write " + out + ": " + ex, ex);
+		}
+	}
+	
+	
+	/**
+	 * Writes the cascade classifier file at the specified path, truncated to
+	 * its first stages, to a new temporary file, which is deleted when the
+	 * virtual machine exits unless deleted before.
+	 * 
+	 * @param path		The path of the classifier XML file.
+	 * @param stages	The number of stages to keep.
+	 * 
+	 * @return	the temporary file of the truncated cascade.
+	 * 
+	 * @throws IOException if the file could not be read, is not a cascade, or
+	 * 			the truncated cascade could not be written.
+	 * @throws IllegalArgumentException if the number of stages is less than
+	 * 			one.
+	 */
+	public static File truncateToTemp(String path, int stages)
+			throws IOException, IllegalArgumentException
+	{
+		File out = File.createTempFile("cascade-" + stages + "-", ".xml");
+		out.deleteOnExit();
+		try {
+			truncate(path, stages, out);
+		}
+		catch (IOException | RuntimeException ex) {
+			out.delete();
+			throw ex;
+		}
+		return out;
+	}
+	
+	
+	/**
+	 * Parses the XML file at the specified path.
+	 * 
+	 * @param path	The path of the XML file.
+	 * 
+	 * @return	the parsed document.
+	 * 
+	 * @throws IOException if the file could not be read or parsed.
+	 */
+	private static Document parse(String path) throws IOException {
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.parse(new File(path));
+		}
+		catch (ParserConfigurationException | SAXException ex) {
+			throw new IOException("Unable to parse " + path + ": " + ex, ex);
+		}
+	}
+	
+	
+	/**
+	 * Returns the element of the cascade, the first child of the root
+	 * element in either format.
+	 * 
+	 * @param doc	The parsed classifier file.
+	 * @param path	The path of the classifier file.
+	 * 
+	 * @return	the element of the cascade.
+	 * 
+	 * @throws IOException if the file is not a cascade.
+	 */
+	private static Element cascade(Document doc, String path)
+			throws IOException
+	{
+		Element cascade = firstChild(doc.getDocumentElement(), null);
+		if (cascade == null || firstChild(cascade, "stages") == null)
+			throw new IOException(path + " is not a cascade classifier.");
+		return cascade;
+	}
+	
+	
+	/**
+	 * Returns the elements of the stages of the cascade.
+	 * 
+	 * @param cascade	The element of the cascade.
+	 * 
+	 * @return	the elements of the stages, in order.
+	 */
+	private static List<Element> stages(Element cascade) {
+		List<Element> list = new ArrayList<Element>();
+		Node stages = firstChild(cascade, "stages");
+		for (Node n = stages.getFirstChild(); n != null;
+				n = n.getNextSibling())
+		{
+			if (n instanceof Element)
+				list.add((Element)n);
+		}
+		return list;
+	}
+	
+	
+	/**
+	 * Returns the first child element of the specified element with the
+	 * specified name.
+	 * 
+	 * @param parent	The parent element.
+	 * @param name		The name of the child, or {@code null} for any child.
+	 * 
+	 * @return	the child element, or {@code null} if there is none.
+	 */
+	private static Element firstChild(Element parent, String name) {
+		for (Node n = parent.getFirstChild(); n != null;
+				n = n.getNextSibling())
+		{
+			if (n instanceof Element
+					&& (name == null || name.equals(n.getNodeName())))
+				return (Element)n;
+		}
+		return null;
+	}
+	
+}
@@ -0,0 +1,271 @@
+/**
+ * 
+ */
+package project.recognition.cascade;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import project.recognition.types.ClassifierCache;
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the static helpers for the compiled, binary, form of the
+ * cascades, so that a cascade is only parsed from its XML once. The compiled
+ * form is cached next to the XML file, with the extension {@value #EXTENSION}
+ * appended, or in the temporary directory if that directory isn't writable.
+ * It is memory-mapped when loaded, and read straight into the arrays of the
+ * {@link HaarCascade}.
+ * <p>The header of the compiled form records the length and the modification
+ * time of the XML file it was compiled from, and the hash of its normalized
+ * content, see {@link ClassifierCache#hash(byte[])}. The compiled form is used
+ * if the length and the modification time still match, or otherwise if the
+ * hash does; else the XML is parsed and compiled again.
+ * <p>A cascade packaged as a resource in a jar is extracted to the
+ * {@link #getCacheDirectory() cache directory} first, by the gesture loading
+ * it, and its compiled form is cached next to the extracted file.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.cascade.HaarCascade
+ */
+public final class CompiledCascades {
+	
+	
+	/**
+	 * The extension appended to the name of the XML file of a cascade for the
+	 * file of its compiled form.
+	 */
+	public static final String EXTENSION = ".hcc";
+	
+	
+	/**
+	 * The magic number at the start of a compiled cascade, {@code HCC1}.
+	 */
+	private static final int magic = 0x48434331;
+	
+	
+	/**
+	 * The version of the compiled form.
+	 */
+	private static final int version = 1;
+	
+	
+	/**
+	 * The number of bytes of the hash in the header.
+	 */
+	private static final int hashLength = 64;
+	
+	
+	/**
+	 * This class only provides static methods.
+	 */
+	private CompiledCascades() { }
+	
+	
+	/**
+	 * Loads the cascade of the XML file at the specified path from its
+	 * compiled form, compiling it first if it isn't compiled yet or the XML
+	 * file has changed since.
+	 * 
+	 * @param path	The path of the classifier XML file.
+	 * 
+	 * @return	the loaded cascade.
+	 * 
+	 * @throws IOException if the XML file could not be read, or is not a
+	 * 			cascade of the old Haar-like format.
+	 */
+	public static HaarCascade load(String path) throws IOException {
+		File xml = new File(path);
+		File compiled = getCompiledFile(xml);
+		if (compiled.isFile()) {
+			try {
+				HaarCascade cascade = map(compiled, xml);
+				if (cascade != null)
+					return cascade;
+			}
+			catch (IOException ex) {
+				Log.warning("Recompiling " + path + ": " + ex.getMessage());
+			}
+		}
+		
+		HaarCascade cascade = HaarCascade.load(path);
+		try {
+			write(cascade, xml, compiled);
+		}
+		catch (IOException ex) {
+			Log.warning("Unable to cache the compiled cascade " + compiled
+					+ ": " + ex.getMessage());
+		}
+		return cascade;
+	}
+	
+	
+	/**
+	 * Compiles the cascade of the XML file at the specified path, replacing
+	 * its compiled form if there is one.
+	 * 
+	 * @param path	The path of the classifier XML file.
+	 * 
+	 * @return	the file of the compiled form.
+	 * 
+	 * @throws IOException if the XML file could not be read, is not a cascade
+	 * 			of the old Haar-like format, or the compiled form could not
+	 * 			be written.
+	 */
+	public static File compile(String path) throws IOException {
+		File xml = new File(path);
+		File compiled = getCompiledFile(xml);
+		write(HaarCascade.load(path), xml, compiled);
+		return compiled;
+	}
+	
+	
+	/**
+	 * Returns the file the compiled form of the specified XML file is cached
+	 * in; next to the XML file, or in the temporary directory if its
+	 * directory isn't writable.
+	 * 
+	 * @param xml	The classifier XML file.
+	 * 
+	 * @return	the file of the compiled form.
+	 */
+	public static File getCompiledFile(File xml) {
+		File sibling = new File(xml.getPath() + EXTENSION);
+		File dir = xml.getAbsoluteFile().getParentFile();
+		if (sibling.exists() || (dir != null && dir.canWrite()))
+			return sibling;
+		
+		return new File(getCacheDirectory(), xml.getName() + "-"
+				+ Integer.toHexString(xml.getAbsolutePath().hashCode())
+				+ EXTENSION);
+	}
+	
+	
+	/**
+	 * Returns the directory within the temporary directory the compiled forms
+	 * are cached in when they can't be cached next to their XML files, and
+	 * the classifiers packaged in a jar are extracted to.
+	 * 
+	 * @return	the cache directory; it may not exist yet.
+	 */
+	public static File getCacheDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"),
+				"hand-to-mouse-cascades");
+	}
+	
+	
+	/**
+	 * Memory-maps the compiled form of the specified XML file and reads the
+	 * cascade from it, if it is still up to date.
+	 * 
+	 * @param compiled	The file of the compiled form.
+	 * @param xml		The classifier XML file it was compiled from.
+	 * 
+	 * @return	the read cascade, or {@code null} if the XML file changed.
+	 * 
+	 * @throws IOException if the compiled form could not be read, or is of
+	 * 			another version.
+	 */
+	private static HaarCascade map(File compiled, File xml)
+			throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(compiled, "r");
+				FileChannel channel = raf.getChannel())
+		{
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			String hash = readHeader(buf, xml);
+			if (hash == null)
+				return null;
+			if (!hash.isEmpty()
+					&& !hash.equals(ClassifierCache.hash(
+							Files.readAllBytes(xml.toPath()))))
+				return null;
+			return HaarCascade.read(buf);
+		}
+	}
+	
+	
+	/**
+	 * Reads the header of a compiled cascade. If the XML file is specified
+	 * and its length and modification time match the header, the hash needs
+	 * no checking and an empty string is returned.
+	 * 
+	 * @param buf	The buffer positioned at the header; it is left positioned
+	 * 				after the header.
+	 * @param xml	The classifier XML file, or {@code null} if unknown.
+	 * 
+	 * @return	the hash of the normalized XML, an empty string if the XML
+	 * 			file is unchanged, or {@code null} if the buffer doesn't start
+	 * 			with a header of the current version.
+	 */
+	private static String readHeader(ByteBuffer buf, File xml) {
+		if (buf.remaining() < 24 + hashLength || buf.getInt() != magic
+				|| buf.getInt() != version)
+			return null;
+		
+		long length = buf.getLong();
+		long modified = buf.getLong();
+		byte[] hash = new byte[hashLength];
+		buf.get(hash);
+		if (xml != null && xml.length() == length
+				&& xml.lastModified() == modified)
+			return "";
+		return new String(hash, StandardCharsets.US_ASCII);
+	}
+	
+	
+	/**
+	 * Writes the compiled form of the specified cascade, with the header of
+	 * the XML file it was parsed from. The compiled form is written to a
+	 * temporary file first, which is then renamed, so that no other process
+	 * reads a partially written file.
+	 * 
+	 * @param cascade	The parsed cascade.
+	 * @param xml		The classifier XML file it was parsed from.
+	 * @param compiled	The file of the compiled form.
+	 * 
+	 * @throws IOException if the compiled form could not be written.
+	 */
+	private static void write(HaarCascade cascade, File xml, File compiled)
+			throws IOException
+	{
+		byte[] content = Files.readAllBytes(xml.toPath());
+		File dir = compiled.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create " + dir);
+		
+		File tmp = File.createTempFile(compiled.getName(), ".tmp", dir);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp))))
+			{
+				out.writeInt(magic);
+				out.writeInt(version);
+				out.writeLong(content.length);
+				out.writeLong(xml.lastModified());
+				out.write(ClassifierCache.hash(content).getBytes(
+						StandardCharsets.US_ASCII));
+				cascade.write(out);
+			}
+			if (compiled.exists() && !compiled.delete())
+				throw new IOException("Unable to replace " + compiled);
+			if (!tmp.renameTo(compiled))
+				throw new IOException("Unable to write " + compiled);
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+	
+}
@@ -0,0 +1,619 @@
+/**
+ * 
+ */
+package project.recognition.cascade;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>Provides a Haar-like cascade classifier parsed from the old OpenCV XML
+ * format, the format of all of the bundled classifiers, into compact arrays
+ * of primitives for the {@link JavaCascadeDetector}.
+ * <p>The cascade is a chain of stages, each of a number of trees, each of a
+ * number of nodes. A node compares the weighted sum of the rectangles of its
+ * feature, upright or tilted by 45 degrees, against its threshold and goes to
+ * its left or right child; a child is either another node of the same tree,
+ * stored as its index, or a leaf value, stored as the complement of its
+ * index. The instance is immutable once parsed and may be shared between
+ * threads.
+ * <p>The parsed arrays may also be written in a compact binary form and read
+ * back without parsing any XML, see {@link CompiledCascades}.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.cascade.JavaCascadeDetector
+ */
+public class HaarCascade {
+	
+	
+	/**
+	 * The type of the root element of the old cascade format.
+	 */
+	private static final String haarTypeId = "opencv-haar-classifier";
+	
+	
+	// Private member fields.
+	private final int windowWidth;
+	private final int windowHeight;
+	private final boolean hasTilted;
+	
+	// Package member fields, read directly by the detector, never modified.
+	final float[] stageThreshold;
+	final int[] stageTreeEnd;
+	final int[] treeRoot;
+	final float[] nodeThreshold;
+	final int[] nodeLeft;
+	final int[] nodeRight;
+	final float[] leafValue;
+	final boolean[] nodeTilted;
+	final int[] nodeRectEnd;
+	final int[] rectX;
+	final int[] rectY;
+	final int[] rectWidth;
+	final int[] rectHeight;
+	final float[] rectWeight;
+	
+	
+	/**
+	 * Constructor for a new instance of this cascade from the parsed arrays.
+	 * 
+	 * @param builder	The builder holding the parsed arrays.
+	 */
+	private HaarCascade(Builder builder) {
+		this.windowWidth = builder.windowWidth;
+		this.windowHeight = builder.windowHeight;
+		this.stageThreshold = builder.stageThreshold.toArray();
+		this.stageTreeEnd = builder.stageTreeEnd.toArray();
+		this.treeRoot = builder.treeRoot.toArray();
+		this.nodeThreshold = builder.nodeThreshold.toArray();
+		this.nodeLeft = builder.nodeLeft.toArray();
+		this.nodeRight = builder.nodeRight.toArray();
+		this.leafValue = builder.leafValue.toArray();
+		this.nodeRectEnd = builder.nodeRectEnd.toArray();
+		this.rectX = builder.rectX.toArray();
+		this.rectY = builder.rectY.toArray();
+		this.rectWidth = builder.rectWidth.toArray();
+		this.rectHeight = builder.rectHeight.toArray();
+		this.rectWeight = builder.rectWeight.toArray();
+		
+		this.nodeTilted = new boolean[builder.nodeTilted.size()];
+		boolean tilted = false;
+		for (int i = 0; i < nodeTilted.length; i++) {
+			nodeTilted[i] = builder.nodeTilted.get(i);
+			tilted |= nodeTilted[i];
+		}
+		this.hasTilted = tilted;
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this cascade read from its binary
+	 * form, as written by {@link #write(DataOutputStream)}.
+	 * 
+	 * @param buf	The buffer positioned at the binary form of the cascade.
+	 * 
+	 * @throws BufferUnderflowException if the buffer ends before the cascade.
+	 * @throws IllegalArgumentException if an array length is negative.
+	 */
+	private HaarCascade(ByteBuffer buf)
+			throws BufferUnderflowException, IllegalArgumentException
+	{
+		this.windowWidth = buf.getInt();
+		this.windowHeight = buf.getInt();
+		this.stageThreshold = readFloats(buf);
+		this.stageTreeEnd = readInts(buf);
+		this.treeRoot = readInts(buf);
+		this.nodeThreshold = readFloats(buf);
+		this.nodeLeft = readInts(buf);
+		this.nodeRight = readInts(buf);
+		this.leafValue = readFloats(buf);
+		this.nodeRectEnd = readInts(buf);
+		this.rectX = readInts(buf);
+		this.rectY = readInts(buf);
+		this.rectWidth = readInts(buf);
+		this.rectHeight = readInts(buf);
+		this.rectWeight = readFloats(buf);
+		
+		this.nodeTilted = new boolean[readLength(buf, 1)];
+		boolean tilted = false;
+		for (int i = 0; i < nodeTilted.length; i++) {
+			nodeTilted[i] = buf.get() != 0;
+			tilted |= nodeTilted[i];
+		}
+		this.hasTilted = tilted;
+	}
+	
+	
+	/**
+	 * Parses the cascade classifier XML file at the specified path.
+	 * 
+	 * @param path	The path of the classifier XML file.
+	 * 
+	 * @return	the parsed cascade.
+	 * 
+	 * @throws IOException if the file could not be read, or is not a cascade
+	 * 			of the old Haar-like format.
+	 */
+	public static HaarCascade load(String path) throws IOException {
+		Document doc;
+		try {
+			doc = newDocumentBuilder(path).parse(new File(path));
+		}
+		catch (SAXException ex) {
+			throw new IOException("Unable to parse " + path + ": " + ex, ex);
+		}
+		return parse(doc, path);
+	}
+	
+	
+	/**
+	 * Reads the cascade from its binary form, as written by
+	 * {@link #write(DataOutputStream)}.
+	 * 
+	 * @param buf	The buffer positioned at the binary form of the cascade.
+	 * 
+	 * @return	the read cascade.
+	 * 
+	 * @throws IOException if the buffer doesn't hold a whole cascade.
+	 */
+	public static HaarCascade read(ByteBuffer buf) throws IOException {
+		try {
+			return new HaarCascade(buf);
+		}
+		catch (BufferUnderflowException | IllegalArgumentException ex) {
+			throw new IOException("Truncated or corrupt compiled cascade", ex);
+		}
+	}
+	
+	
+	/**
+	 * Writes the binary form of this cascade; the window size followed by
+	 * each of the arrays, prefixed by its length.
+	 * 
+	 * @param out	The stream to write to.
+	 * 
+	 * @throws IOException if the stream could not be written.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(windowWidth);
+		out.writeInt(windowHeight);
+		writeFloats(out, stageThreshold);
+		writeInts(out, stageTreeEnd);
+		writeInts(out, treeRoot);
+		writeFloats(out, nodeThreshold);
+		writeInts(out, nodeLeft);
+		writeInts(out, nodeRight);
+		writeFloats(out, leafValue);
+		writeInts(out, nodeRectEnd);
+		writeInts(out, rectX);
+		writeInts(out, rectY);
+		writeInts(out, rectWidth);
+		writeInts(out, rectHeight);
+		writeFloats(out, rectWeight);
+		out.writeInt(nodeTilted.length);
+		for (boolean tilted : nodeTilted)
+			out.writeByte(tilted ? 1 : 0);
+	}
+	
+	
+	/**
+	 * Returns a new document builder.
+	 * 
+	 * @param name	The name of the classifier, for the error messages.
+	 * 
+	 * @return	the document builder.
+	 * 
+	 * @throws IOException if no document builder is available.
+	 */
+	private static DocumentBuilder newDocumentBuilder(String name)
+			throws IOException
+	{
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		}
+		catch (ParserConfigurationException ex) {
+			throw new IOException("Unable to parse " + name + ": " + ex, ex);
+		}
+	}
+	
+	
+	/**
+	 * Parses the XML document of an old format cascade.
+	 * 
+	 * @param doc	The parsed classifier XML.
+	 * @param path	The path or name of the classifier, for the messages.
+	 * 
+	 * @return	the parsed cascade.
+	 * 
+	 * @throws IOException if the document is not a cascade of the old
+	 * 			Haar-like format.
+	 */
+	private static HaarCascade parse(Document doc, String path)
+			throws IOException
+	{
+		Element cascade = firstChild(doc.getDocumentElement(), null);
+		if (cascade == null
+				|| !haarTypeId.equals(cascade.getAttribute("type_id")))
+			throw new IOException(path + " is not an old format Haar-like "
+					+ "cascade.");
+		
+		try {
+			return parse(cascade);
+		}
+		catch (RuntimeException ex) {
+			throw new IOException("Malformed cascade " + path + ": " + ex, ex);
+		}
+	}
+	
+	
+	/**
+	 * Parses the root element of an old format cascade.
+	 * 
+	 * @param cascade	The root element of the cascade.
+	 * 
+	 * @return	the parsed cascade.
+	 */
+	private static HaarCascade parse(Element cascade) {
+		Builder b = new Builder();
+		String[] size = text(firstChild(cascade, "size")).split("\\s+");
+		b.windowWidth = Integer.parseInt(size[0]);
+		b.windowHeight = Integer.parseInt(size[1]);
+		
+		for (Element stage : children(firstChild(cascade, "stages"))) {
+			for (Element tree : children(firstChild(stage, "trees"))) {
+				int root = b.nodeThreshold.size();
+				b.treeRoot.add(root);
+				for (Element node : children(tree))
+					parseNode(b, node, root);
+			}
+			b.stageTreeEnd.add(b.treeRoot.size());
+			b.stageThreshold.add(Float.parseFloat(
+					text(firstChild(stage, "stage_threshold"))));
+		}
+		return new HaarCascade(b);
+	}
+	
+	
+	/**
+	 * Parses a single node of a tree, with its feature and its children.
+	 * 
+	 * @param b		The builder of the arrays.
+	 * @param node	The element of the node.
+	 * @param root	The index of the root node of the tree.
+	 */
+	private static void parseNode(Builder b, Element node, int root) {
+		Element feature = firstChild(node, "feature");
+		for (Element rect : children(firstChild(feature, "rects"))) {
+			String[] v = text(rect).split("\\s+");
+			b.rectX.add(Integer.parseInt(v[0]));
+			b.rectY.add(Integer.parseInt(v[1]));
+			b.rectWidth.add(Integer.parseInt(v[2]));
+			b.rectHeight.add(Integer.parseInt(v[3]));
+			b.rectWeight.add(Float.parseFloat(v[4]));
+		}
+		b.nodeRectEnd.add(b.rectX.size());
+		Element tilted = firstChild(feature, "tilted");
+		b.nodeTilted.add(tilted != null && Integer.parseInt(text(tilted)) != 0);
+		b.nodeThreshold.add(
+				Float.parseFloat(text(firstChild(node, "threshold"))));
+		b.nodeLeft.add(parseChild(b, node, "left", root));
+		b.nodeRight.add(parseChild(b, node, "right", root));
+	}
+	
+	
+	/**
+	 * Parses the left or right child of a node; either the index of a node
+	 * of the same tree, or the complement of the index of a leaf value.
+	 * 
+	 * @param b		The builder of the arrays.
+	 * @param node	The element of the node.
+	 * @param side	Either {@code "left"} or {@code "right"}.
+	 * @param root	The index of the root node of the tree.
+	 * 
+	 * @return	the encoded child.
+	 */
+	private static int parseChild(Builder b, Element node, String side,
+			int root)
+	{
+		Element child = firstChild(node, side + "_node");
+		if (child != null)
+			return root + Integer.parseInt(text(child));
+		
+		Element leaf = firstChild(node, side + "_val");
+		b.leafValue.add(Float.parseFloat(text(leaf)));
+		return ~(b.leafValue.size() - 1);
+	}
+	
+	
+	/**
+	 * Returns the first child element of the specified element with the
+	 * specified name.
+	 * 
+	 * @param parent	The parent element.
+	 * @param name		The name of the child, or {@code null} for any child.
+	 * 
+	 * @return	the child element, or {@code null} if there is none.
+	 */
+	private static Element firstChild(Element parent, String name) {
+		for (Node n = parent.getFirstChild(); n != null;
+				n = n.getNextSibling())
+		{
+			if (n instanceof Element
+					&& (name == null || name.equals(n.getNodeName())))
+				return (Element)n;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns all of the child elements of the specified element.
+	 * 
+	 * @param parent	The parent element.
+	 * 
+	 * @return	the child elements.
+	 */
+	private static List<Element> children(Element parent) {
+		List<Element> list = new ArrayList<Element>();
+		for (Node n = parent.getFirstChild(); n != null;
+				n = n.getNextSibling())
+		{
+			if (n instanceof Element)
+				list.add((Element)n);
+		}
+		return list;
+	}
+	
+	
+	/**
+	 * Reads the length of an array, checking that the buffer holds that many
+	 * elements of the specified size.
+	 * 
+	 * @param buf	The buffer positioned at the length.
+	 * @param size	The size of an element in bytes.
+	 * 
+	 * @return	the length of the array.
+	 * 
+	 * @throws IllegalArgumentException if the length is negative.
+	 * @throws BufferUnderflowException if the buffer doesn't hold the array.
+	 */
+	private static int readLength(ByteBuffer buf, int size)
+			throws IllegalArgumentException, BufferUnderflowException
+	{
+		int length = buf.getInt();
+		if (length < 0)
+			throw new IllegalArgumentException("Negative array length "
+					+ length);
+		if ((long)length * size > buf.remaining())
+			throw new BufferUnderflowException();
+		return length;
+	}
+	
+	
+	/**
+	 * Reads an array of {@code int} primitives prefixed by its length.
+	 * 
+	 * @param buf	The buffer positioned at the array.
+	 * 
+	 * @return	the read array.
+	 */
+	private static int[] readInts(ByteBuffer buf) {
+		int[] values = new int[readLength(buf, 4)];
+		buf.asIntBuffer().get(values);
+		buf.position(buf.position() + values.length * 4);
+		return values;
+	}
+	
+	
+	/**
+	 * Reads an array of {@code float} primitives prefixed by its length.
+	 * 
+	 * @param buf	The buffer positioned at the array.
+	 * 
+	 * @return	the read array.
+	 */
+	private static float[] readFloats(ByteBuffer buf) {
+		float[] values = new float[readLength(buf, 4)];
+		buf.asFloatBuffer().get(values);
+		buf.position(buf.position() + values.length * 4);
+		return values;
+	}
+	
+	
+	/**
+	 * Writes an array of {@code int} primitives prefixed by its length.
+	 * 
+	 * @param out		The stream to write to.
+	 * @param values	The array to write.
+	 * 
+	 * @throws IOException if the stream could not be written.
+	 */
+	private static void writeInts(DataOutputStream out, int[] values)
+			throws IOException
+	{
+		out.writeInt(values.length);
+		for (int v : values)
+			out.writeInt(v);
+	}
+	
+	
+	/**
+	 * Writes an array of {@code float} primitives prefixed by its length.
+	 * 
+	 * @param out		The stream to write to.
+	 * @param values	The array to write.
+	 * 
+	 * @throws IOException if the stream could not be written.
+	 */
+	private static void writeFloats(DataOutputStream out, float[] values)
+			throws IOException
+	{
+		out.writeInt(values.length);
+		for (float v : values)
+			out.writeFloat(v);
+	}
+	
+	
+	/**
+	 * Returns the trimmed text content of the specified element.
+	 * 
+	 * @param e	The element.
+	 * 
+	 * @return	the text of the element.
+	 */
+	private static String text(Element e) {
+		return e.getTextContent().trim();
+	}
+	
+	
+	/**
+	 * Returns the width of the detection window, the size of the smallest
+	 * object the cascade detects.
+	 * 
+	 * @return	the window width.
+	 */
+	public int getWindowWidth() {
+		return windowWidth;
+	}
+	
+	
+	/**
+	 * Returns the height of the detection window.
+	 * 
+	 * @return	the window height.
+	 */
+	public int getWindowHeight() {
+		return windowHeight;
+	}
+	
+	
+	/**
+	 * Returns the number of stages of the cascade.
+	 * 
+	 * @return	the number of stages.
+	 */
+	public int getStageCount() {
+		return stageThreshold.length;
+	}
+	
+	
+	/**
+	 * Returns the number of nodes, each of a single feature, of the cascade.
+	 * 
+	 * @return	the number of nodes.
+	 */
+	public int getNodeCount() {
+		return nodeThreshold.length;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if any of the features is tilted, so the tilted
+	 * integral image is needed; otherwise, returns {@code false}.
+	 * 
+	 * @return	whether the cascade has tilted features.
+	 */
+	public boolean hasTiltedFeatures() {
+		return hasTilted;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[window=" + windowWidth + "x"
+				+ windowHeight + ",stages=" + getStageCount() + ",nodes="
+				+ getNodeCount() + ",tilted=" + hasTilted + "]";
+	}
+	
+	
+	/**
+	 * Collects the arrays of the cascade while it is being parsed.
+	 */
+	private static final class Builder {
+		
+		private int windowWidth;
+		private int windowHeight;
+		private final FloatList stageThreshold = new FloatList();
+		private final IntList stageTreeEnd = new IntList();
+		private final IntList treeRoot = new IntList();
+		private final FloatList nodeThreshold = new FloatList();
+		private final IntList nodeLeft = new IntList();
+		private final IntList nodeRight = new IntList();
+		private final FloatList leafValue = new FloatList();
+		private final List<Boolean> nodeTilted = new ArrayList<Boolean>();
+		private final IntList nodeRectEnd = new IntList();
+		private final IntList rectX = new IntList();
+		private final IntList rectY = new IntList();
+		private final IntList rectWidth = new IntList();
+		private final IntList rectHeight = new IntList();
+		private final FloatList rectWeight = new FloatList();
+		
+	}
+	
+	
+	/**
+	 * Growable array of {@code int} primitives.
+	 */
+	private static final class IntList {
+		
+		private int[] data = new int[64];
+		private int size = 0;
+		
+		private void add(int value) {
+			if (size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+		
+		private int size() {
+			return size;
+		}
+		
+		private int[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+		
+	}
+	
+	
+	/**
+	 * Growable array of {@code float} primitives.
+	 */
+	private static final class FloatList {
+		
+		private float[] data = new float[64];
+		private int size = 0;
+		
+		private void add(float value) {
+			if (size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+		
+		private int size() {
+			return size;
+		}
+		
+		private float[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,201 @@
+/**
+ * 
+ */
+package project.recognition.cascade;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * <p>Provides the integral images of a single channel 8-bit image for the
+ * evaluation of cascade classifiers; the sum, the squared sum and, only when
+ * first requested, the sum tilted by 45 degrees. Each of them is one row and
+ * one column larger than the image, with the first row and column zero, the
+ * same layout as {@code Imgproc.integral3}.
+ * <p>The images are computed once per frame and shared by all of the cascades
+ * detecting on it. The arrays are reused from frame to frame while the size
+ * of the image doesn't change; they must not be modified by the readers.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.FrameContext#getIntegralImages(double)
+ */
+public class IntegralImages {
+	
+	
+	// Private member data.
+	private int width = 0;
+	private int height = 0;
+	private byte[] pixels = new byte[0];
+	private int[] sum = new int[1];
+	private double[] squaredSum = new double[1];
+	private int[] tilted = null;
+	private boolean hasTilted = false;
+	
+	
+	/**
+	 * Computes the sum and the squared sum integral images of the specified
+	 * image, replacing those of the previous image.
+	 * 
+	 * @param gray	The single channel 8-bit image.
+	 * 
+	 * @throws IllegalArgumentException if the image isn't of a single channel
+	 * 			of 8-bit depth.
+	 */
+	public synchronized void compute(Mat gray) throws IllegalArgumentException {
+		if (gray.type() != CvType.CV_8UC1)
+			throw new IllegalArgumentException("compute(" + gray
+					+ ") requires a single channel 8-bit image.");
+		
+		width = gray.cols();
+		height = gray.rows();
+		int stride = width + 1;
+		int area = width * height;
+		int size = stride * (height + 1);
+		
+		if (pixels.length != area)
+			pixels = new byte[area];
+		if (sum.length != size) {
+			sum = new int[size];
+			squaredSum = new double[size];
+			tilted = null;
+		}
+		gray.get(0, 0, pixels);
+		hasTilted = false;
+		
+		for (int y = 0; y < height; y++) {
+			int rowSum = 0;
+			double rowSquared = 0d;
+			int src = y * width;
+			int dst = (y + 1) * stride + 1;
+			for (int x = 0; x < width; x++) {
+				int v = pixels[src + x] & 0xff;
+				rowSum += v;
+				rowSquared += v * v;
+				sum[dst + x] = sum[dst + x - stride] + rowSum;
+				squaredSum[dst + x] = squaredSum[dst + x - stride] + rowSquared;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Computes the tilted integral image, the sum of the pixels within the
+	 * triangle above each point, {@code tilted(X,Y)} being the sum of the
+	 * pixels {@code (x,y)} where {@code y < Y} and
+	 * {@code |x - X + 1| <= Y - y - 1}. Each row only depends on the two rows
+	 * above it, which are kept over a range of columns wide enough that the
+	 * columns beyond it are zero.
+	 */
+	private final void computeTilted() {
+		int stride = width + 1;
+		if (tilted == null || tilted.length != stride * (height + 1))
+			tilted = new int[stride * (height + 1)];
+		
+		int offset = height + 1;
+		int ext = width + 2 * offset + 1;
+		int[] prev2 = new int[ext];
+		int[] prev1 = new int[ext];
+		int[] cur = new int[ext];
+		
+		for (int x = 0; x < stride; x++)
+			tilted[x] = 0;
+		
+		for (int y = 1; y <= height; y++) {
+			int row1 = (y - 1) * width;
+			int row2 = (y - 2) * width;
+			for (int e = 1; e < ext - 1; e++) {
+				int x = e - offset - 1;
+				int t = 0;
+				if (x >= 0 && x < width) {
+					t = pixels[row1 + x] & 0xff;
+					if (y >= 2)
+						t += pixels[row2 + x] & 0xff;
+				}
+				if (y >= 2)
+					t += prev1[e - 1] + prev1[e + 1] - prev2[e];
+				cur[e] = t;
+			}
+			
+			System.arraycopy(cur, offset, tilted, y * stride, stride);
+			
+			int[] tmp = prev2;
+			prev2 = prev1;
+			prev1 = cur;
+			cur = tmp;
+		}
+		hasTilted = true;
+	}
+	
+	
+	/**
+	 * Returns the width of the image.
+	 * 
+	 * @return	the width of the image.
+	 */
+	public synchronized int getWidth() {
+		return width;
+	}
+	
+	
+	/**
+	 * Returns the height of the image.
+	 * 
+	 * @return	the height of the image.
+	 */
+	public synchronized int getHeight() {
+		return height;
+	}
+	
+	
+	/**
+	 * Returns the number of elements of a row of the integral images, one
+	 * more than the width of the image.
+	 * 
+	 * @return	the row stride of the integral images.
+	 */
+	public synchronized int getStride() {
+		return width + 1;
+	}
+	
+	
+	/**
+	 * Returns the sum integral image.
+	 * 
+	 * @return	the sums of the pixels above and left of each point.
+	 */
+	public synchronized int[] getSum() {
+		return sum;
+	}
+	
+	
+	/**
+	 * Returns the squared sum integral image.
+	 * 
+	 * @return	the sums of the squared pixels above and left of each point.
+	 */
+	public synchronized double[] getSquaredSum() {
+		return squaredSum;
+	}
+	
+	
+	/**
+	 * Returns the tilted integral image, computing it on the first request
+	 * for the current image.
+	 * 
+	 * @return	the sums of the pixels within the triangle above each point.
+	 */
+	public synchronized int[] getTiltedSum() {
+		if (!hasTilted)
+			computeTilted();
+		return tilted;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + getWidth() + "x"
+				+ getHeight() + "]";
+	}
+	
+}
@@ -0,0 +1,444 @@
+/**
+ * 
+ */
+package project.recognition.cascade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+import project.recognition.types.Detections;
+
+/**
+ * <p>Provides the evaluation of a {@link HaarCascade} in plain Java, without
+ * a JNI call per detection, on the shared {@link IntegralImages} of a frame.
+ * The detection follows the one of OpenCV for the old cascade format; the
+ * window is scaled up by the scale factor from the window size of the
+ * cascade until it no longer fits, each scale is scanned with a step of the
+ * larger of two pixels and the scale, the variance of each window normalizes
+ * the feature thresholds, and the candidates are finally grouped by their
+ * number of neighbors.
+ * <p>The scales are scanned in parallel on a fork-join pool, each scale as
+ * its own task. The scaled features of a scale are only computed by its task,
+ * so the detector itself holds no state and may be used by several threads
+ * at once.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.cascade.HaarCascade
+ */
+public class JavaCascadeDetector {
+	
+	
+	/**
+	 * The default factor the window grows by from one scale to the next.
+	 */
+	public static final double DEFAULT_SCALE_FACTOR = 1.1d;
+	
+	
+	/**
+	 * The default number of neighboring candidates an object needs to exceed
+	 * to be detected.
+	 */
+	public static final int DEFAULT_MIN_NEIGHBORS = 3;
+	
+	
+	/**
+	 * The relative tolerance of candidates to be grouped as the same object.
+	 */
+	private static final double groupEps = 0.2d;
+	
+	
+	/**
+	 * The fork-join pool shared by the detectors not given their own.
+	 */
+	private static final ForkJoinPool sharedPool = new ForkJoinPool();
+	
+	
+	// Private member fields.
+	private final HaarCascade cascade;
+	private final ForkJoinPool pool;
+	
+	
+	/**
+	 * Constructor for a new instance of this detector of the specified
+	 * cascade, scanning on the shared fork-join pool of one thread per
+	 * available processor.
+	 * 
+	 * @param cascade	The cascade to detect with.
+	 */
+	public JavaCascadeDetector(HaarCascade cascade) {
+		this(cascade, sharedPool);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this detector of the specified
+	 * cascade, scanning on the specified fork-join pool.
+	 * 
+	 * @param cascade	The cascade to detect with.
+	 * @param pool		The fork-join pool to scan the scales on.
+	 */
+	public JavaCascadeDetector(HaarCascade cascade, ForkJoinPool pool) {
+		this.cascade = cascade;
+		this.pool = pool;
+	}
+	
+	
+	/**
+	 * Detects the objects within the specified window of the image, with the
+	 * default scale factor and number of neighbors.
+	 * 
+	 * @param ii		The integral images of the image.
+	 * @param window	The window of the image to search, or {@code null} for
+	 * 					the whole image.
+	 * @param minSize	The smallest object size; an empty size detects down to
+	 * 					the window size of the cascade.
+	 * @param maxSize	The largest object size; an empty size is unbounded.
+	 * 
+	 * @return	the detected objects in the coordinates of the window.
+	 */
+	public Rect[] detect(IntegralImages ii, Rect window, Size minSize,
+			Size maxSize)
+	{
+		return detect(ii, window, minSize, maxSize, DEFAULT_SCALE_FACTOR,
+				DEFAULT_MIN_NEIGHBORS);
+	}
+	
+	
+	/**
+	 * Detects the objects within the specified window of the image.
+	 * 
+	 * @param ii			The integral images of the image.
+	 * @param window		The window of the image to search, or {@code null}
+	 * 						for the whole image.
+	 * @param minSize		The smallest object size; an empty size detects
+	 * 						down to the window size of the cascade.
+	 * @param maxSize		The largest object size; an empty size is
+	 * 						unbounded.
+	 * @param scaleFactor	The factor the window grows by per scale, greater
+	 * 						than one.
+	 * @param minNeighbors	The number of neighboring candidates an object
+	 * 						needs to exceed to be detected, or zero for all
+	 * 						of the candidates ungrouped.
+	 * 
+	 * @return	the detected objects in the coordinates of the window.
+	 * 
+	 * @throws IllegalArgumentException if the scale factor is not greater
+	 * 			than one.
+	 */
+	public Rect[] detect(IntegralImages ii, Rect window, Size minSize,
+			Size maxSize, double scaleFactor, int minNeighbors)
+			throws IllegalArgumentException
+	{
+		if (!(scaleFactor > 1d))
+			throw new IllegalArgumentException("detect(" + scaleFactor
+					+ ") requires a scale factor greater than one.");
+		
+		Frame frame = new Frame(ii, window, cascade.hasTiltedFeatures());
+		List<Double> factors = new ArrayList<Double>();
+		int ww = cascade.getWindowWidth();
+		int wh = cascade.getWindowHeight();
+		for (double factor = 1d; factor * ww < frame.cols - 10
+				&& factor * wh < frame.rows - 10; factor *= scaleFactor)
+		{
+			long winW = Math.round(ww * factor);
+			long winH = Math.round(wh * factor);
+			if (winW < minSize.width || winH < minSize.height)
+				continue;
+			if ((maxSize.width > 0 && winW > maxSize.width)
+					|| (maxSize.height > 0 && winH > maxSize.height))
+				break;
+			factors.add(factor);
+		}
+		
+		@SuppressWarnings("unchecked")
+		List<Rect>[] results = (List<Rect>[])new List<?>[factors.size()];
+		if (factors.size() == 1)
+			results[0] = scan(frame, factors.get(0));
+		else if (factors.size() > 1)
+			pool.invoke(new ScaleTask(frame, factors, results, 0,
+					factors.size()));
+		
+		List<Rect> candidates = new ArrayList<Rect>();
+		for (List<Rect> list : results)
+			candidates.addAll(list);
+		return Detections.group(candidates.toArray(new Rect[candidates.size()]),
+				minNeighbors, groupEps);
+	}
+	
+	
+	/**
+	 * Scans all of the windows of the specified scale.
+	 * 
+	 * @param frame		The integral images and the window to scan.
+	 * @param factor	The scale of the window relative to the cascade.
+	 * 
+	 * @return	the candidate windows, in the coordinates of the window.
+	 */
+	private final List<Rect> scan(Frame frame, double factor) {
+		ScaledCascade sc = new ScaledCascade(cascade, factor, frame.stride);
+		List<Rect> found = new ArrayList<Rect>();
+		double ystep = Math.max(2d, factor);
+		long endX = Math.round((frame.cols - sc.winW) / ystep);
+		long endY = Math.round((frame.rows - sc.winH) / ystep);
+		
+		for (int iy = 0; iy < endY; iy++) {
+			int y = (int)Math.round(iy * ystep);
+			if (frame.y + y + sc.extentH > frame.height)
+				break;
+			
+			int ixstep = 1;
+			for (int ix = 0; ix < endX; ix += ixstep) {
+				int x = (int)Math.round(ix * ystep);
+				if (frame.x + x + sc.extentW > frame.width)
+					break;
+				
+				int result = sc.evaluate(frame,
+						(frame.y + y) * frame.stride + frame.x + x);
+				if (result > 0)
+					found.add(new Rect(x, y, sc.winW, sc.winH));
+				ixstep = result != 0 ? 1 : 2;
+			}
+		}
+		return found;
+	}
+	
+	
+	/**
+	 * Returns the cascade of this detector.
+	 * 
+	 * @return	the {@link HaarCascade} of this detector.
+	 */
+	public HaarCascade getCascade() {
+		return cascade;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + cascade + "]";
+	}
+	
+	
+	/**
+	 * Holds the integral images read once per detection, and the window of
+	 * the image to scan.
+	 */
+	private static final class Frame {
+		
+		private final int[] sum;
+		private final double[] squaredSum;
+		private final int[] tilted;
+		private final int stride;
+		private final int width;
+		private final int height;
+		private final int x;
+		private final int y;
+		private final int cols;
+		private final int rows;
+		
+		private Frame(IntegralImages ii, Rect window, boolean needTilted) {
+			synchronized (ii) {
+				this.sum = ii.getSum();
+				this.squaredSum = ii.getSquaredSum();
+				this.tilted = needTilted ? ii.getTiltedSum() : null;
+				this.stride = ii.getStride();
+				this.width = ii.getWidth();
+				this.height = ii.getHeight();
+			}
+			this.x = window != null ? window.x : 0;
+			this.y = window != null ? window.y : 0;
+			this.cols = window != null ? window.width : width;
+			this.rows = window != null ? window.height : height;
+		}
+		
+	}
+	
+	
+	/**
+	 * Holds the features of the cascade scaled to a single scale, as the
+	 * offsets of the corners of their rectangles into the integral images
+	 * and their weights corrected for the rounding of the scaled rectangles.
+	 */
+	private static final class ScaledCascade {
+		
+		private final HaarCascade c;
+		private final int winW;
+		private final int winH;
+		private final int extentW;
+		private final int extentH;
+		private final int[] varOffset = new int[4];
+		private final double invArea;
+		private final int[] offset0;
+		private final int[] offset1;
+		private final int[] offset2;
+		private final int[] offset3;
+		private final double[] weight;
+		
+		private ScaledCascade(HaarCascade c, double factor, int stride) {
+			this.c = c;
+			this.winW = (int)Math.round(c.getWindowWidth() * factor);
+			this.winH = (int)Math.round(c.getWindowHeight() * factor);
+			
+			int ex = (int)Math.round(factor);
+			int ew = (int)Math.round((c.getWindowWidth() - 2) * factor);
+			int eh = (int)Math.round((c.getWindowHeight() - 2) * factor);
+			varOffset[0] = ex * stride + ex;
+			varOffset[1] = ex * stride + ex + ew;
+			varOffset[2] = (ex + eh) * stride + ex;
+			varOffset[3] = (ex + eh) * stride + ex + ew;
+			invArea = 1d / ((double)ew * eh);
+			
+			int n = c.rectX.length;
+			offset0 = new int[n];
+			offset1 = new int[n];
+			offset2 = new int[n];
+			offset3 = new int[n];
+			weight = new double[n];
+			
+			int maxW = Math.max(winW, ex + ew);
+			int maxH = Math.max(winH, ex + eh);
+			int start = 0;
+			for (int node = 0; node < c.nodeRectEnd.length; node++) {
+				int end = c.nodeRectEnd[node];
+				boolean tilted = c.nodeTilted[node];
+				double correction = invArea * (tilted ? 0.5d : 1d);
+				double sum0 = 0d;
+				double area0 = 1d;
+				
+				for (int r = start; r < end; r++) {
+					int x = (int)Math.round(c.rectX[r] * factor);
+					int y = (int)Math.round(c.rectY[r] * factor);
+					int w = (int)Math.round(c.rectWidth[r] * factor);
+					int h = (int)Math.round(c.rectHeight[r] * factor);
+					
+					if (!tilted) {
+						offset0[r] = y * stride + x;
+						offset1[r] = y * stride + x + w;
+						offset2[r] = (y + h) * stride + x;
+						offset3[r] = (y + h) * stride + x + w;
+						maxW = Math.max(maxW, x + w);
+						maxH = Math.max(maxH, y + h);
+					}
+					else {
+						offset0[r] = y * stride + x;
+						offset1[r] = (y + h) * stride + x - h;
+						offset2[r] = (y + w) * stride + x + w;
+						offset3[r] = (y + w + h) * stride + x + w - h;
+						maxW = Math.max(maxW, x + w);
+						maxH = Math.max(maxH, y + w + h);
+					}
+					
+					weight[r] = (float)(c.rectWeight[r] * correction);
+					if (r == start)
+						area0 = (double)w * h;
+					else
+						sum0 += weight[r] * w * h;
+				}
+				if (end > start)
+					weight[start] = (float)(-sum0 / area0);
+				start = end;
+			}
+			this.extentW = maxW;
+			this.extentH = maxH;
+		}
+		
+		/**
+		 * Evaluates the cascade on the window at the specified offset into
+		 * the integral images.
+		 * 
+		 * @return	one if the window passed all of the stages; otherwise,
+		 * 			the negated index of the stage it was rejected by.
+		 */
+		private int evaluate(Frame f, int p) {
+			int[] s = f.sum;
+			double[] sq = f.squaredSum;
+			int[] t = f.tilted;
+			
+			double mean = (s[p + varOffset[0]] - s[p + varOffset[1]]
+					- s[p + varOffset[2]] + s[p + varOffset[3]]) * invArea;
+			double norm = (sq[p + varOffset[0]] - sq[p + varOffset[1]]
+					- sq[p + varOffset[2]] + sq[p + varOffset[3]]) * invArea
+					- mean * mean;
+			norm = norm >= 0d ? Math.sqrt(norm) : 1d;
+			
+			int tree = 0;
+			for (int stage = 0; stage < c.stageThreshold.length; stage++) {
+				double stageSum = 0d;
+				int treeEnd = c.stageTreeEnd[stage];
+				for (; tree < treeEnd; tree++) {
+					int node = c.treeRoot[tree];
+					while (true) {
+						int[] img = c.nodeTilted[node] ? t : s;
+						int rectEnd = c.nodeRectEnd[node];
+						double value = 0d;
+						for (int r = node > 0 ? c.nodeRectEnd[node - 1] : 0;
+								r < rectEnd; r++)
+						{
+							value += (img[p + offset0[r]] - img[p + offset1[r]]
+									- img[p + offset2[r]] + img[p + offset3[r]])
+									* weight[r];
+						}
+						
+						int next = value < c.nodeThreshold[node] * norm
+								? c.nodeLeft[node] : c.nodeRight[node];
+						if (next < 0) {
+							stageSum += c.leafValue[~next];
+							break;
+						}
+						node = next;
+					}
+				}
+				if (stageSum < c.stageThreshold[stage])
+					return -stage;
+			}
+			return 1;
+		}
+		
+	}
+	
+	
+	/**
+	 * Provides the fork-join task scanning a range of the scales, splitting
+	 * the range in half until each scale is scanned as its own task.
+	 */
+	private final class ScaleTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 6183372207419651826L;
+		
+		private final Frame frame;
+		private final List<Double> factors;
+		private final List<Rect>[] results;
+		private final int from;
+		private final int to;
+		
+		private ScaleTask(Frame frame, List<Double> factors,
+				List<Rect>[] results, int from, int to)
+		{
+			this.frame = frame;
+			this.factors = factors;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ScaleTask(frame, factors, results, from, mid),
+						new ScaleTask(frame, factors, results, mid, to));
+			}
+			else if (to > from) {
+				results[from] = scan(frame, factors.get(from));
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package project.recognition.event;
+
+import java.awt.Rectangle;
+
+/**
+ * The FusedGestureEvent is used to notify interested parties that one object,
+ * e.g. a hand, was detected within a video capture frame by one or more of
+ * the fused gestures. Only the gesture detecting the object with the highest
+ * confidence, the source of this event, notifies its listeners.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.DetectionFusion
+ */
+public class FusedGestureEvent extends GestureEvent {
+	
+	
+	/**
+	 * serial version user id
+	 */
+	private static final long serialVersionUID = 4327818054924318206L;
+	
+	
+	// Member data.
+	private final Rectangle bounds;
+	private final double confidence;
+	private final int support;
+	
+	
+	/**
+	 * Constructor for a new instance of a fused gesture event with the
+	 * specified parameters of the source gesture, the event id type, when the
+	 * event occurred, the bounds of the detected object, the confidence of
+	 * the source gesture and the number of fused detections.
+	 * 
+	 * @param source		The gesture which detected the object with the
+	 * 						highest confidence.
+	 * @param id			The identification of which type of gesture event
+	 * 						this instance represents.
+	 * @param when			The time, in milliseconds, of when this event
+	 * 						occurred.
+	 * @param bounds		The bounds of the detected object.
+	 * @param confidence	The confidence of the source gesture's detection.
+	 * @param support		The number of detections, of all of the fused
+	 * 						gestures, which were fused into this event.
+	 */
+	public FusedGestureEvent(Object source, int id, long when,
+			Rectangle bounds, double confidence, int support)
+	{
+		super(source, id, when, bounds.x + bounds.width / 2,
+				bounds.y + bounds.height / 2);
+		
+		this.bounds = new Rectangle(bounds);
+		this.confidence = confidence;
+		this.support = support;
+	}
+	
+	
+	/**
+	 * Returns the bounds of the detected object.
+	 * 
+	 * @return	the bounds of the detected object.
+	 */
+	public final Rectangle getBounds() {
+		return new Rectangle(bounds);
+	}
+	
+	
+	/**
+	 * Returns the confidence of the source gesture's detection of the object;
+	 * the weight of the last stage of its cascade classifier.
+	 * 
+	 * @return	the confidence of the detection.
+	 */
+	public final double getConfidence() {
+		return confidence;
+	}
+	
+	
+	/**
+	 * Returns the number of detections, of all of the fused gestures, which
+	 * were fused into this event.
+	 * 
+	 * @return	the number of fused detections.
+	 */
+	public final int getSupport() {
+		return support;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "["
+				+ "source=" + getSource() + ","
+				+ "id=" + getID() + ","
+				+ "when=" + getWhen() + ","
+				+ "bounds=" + getBounds() + ","
+				+ "confidence=" + getConfidence() + ","
+				+ "support=" + getSupport() + "]";
+	}
+	
+}
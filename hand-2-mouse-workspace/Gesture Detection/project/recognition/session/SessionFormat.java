@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package project.recognition.session;
+
+/**
+ * <p>Provides the constants of the session container written by the
+ * {@link SessionRecorder} and read by the {@link SessionReader}. All values
+ * are stored in big-endian order, as written by a
+ * {@link java.io.DataOutputStream}.
+ * <p>The container consists of:
+ * <ol>
+ * <li>the header; the {@link #MAGIC} number, the {@link #VERSION}, the width,
+ * height, OpenCV type and byte size of the frames, the key frame interval,
+ * and the wall clock time, in milliseconds, the recording started at.</li>
+ * <li>the frame records, appended one after the other; the capture time stamp
+ * in nanoseconds, the flags, the length of the compressed data, and the
+ * compressed data itself. A {@link #FLAG_KEY} frame holds the deflated raw
+ * pixels, any other frame holds the deflated XOR of its pixels with those of
+ * the previous frame.</li>
+ * <li>the index footer; the {@link #INDEX_MAGIC} number, the number of frames,
+ * and the file offset, time stamp and flags of each frame record.</li>
+ * <li>the trailer; the file offset of the index footer and the
+ * {@link #END_MAGIC} number.</li>
+ * </ol>
+ * A container without a valid trailer, i.e. of a recording that was never
+ * closed, can still be read by scanning its frame records.
+ * 
+ * @author Chris Hartley
+ */
+final class SessionFormat {
+	
+	
+	/**
+	 * The magic number at the start of a session container, {@code H2MS}.
+	 */
+	static final int MAGIC = 0x48324D53;
+	
+	
+	/**
+	 * The version of the session container format.
+	 */
+	static final int VERSION = 1;
+	
+	
+	/**
+	 * The magic number at the start of the index footer, {@code H2MI}.
+	 */
+	static final int INDEX_MAGIC = 0x48324D49;
+	
+	
+	/**
+	 * The magic number at the very end of a closed session container,
+	 * {@code H2ME}.
+	 */
+	static final int END_MAGIC = 0x48324D45;
+	
+	
+	/**
+	 * The flag of a key frame, which is stored without a delta.
+	 */
+	static final byte FLAG_KEY = 0x01;
+	
+	
+	/**
+	 * The size, in bytes, of the header.
+	 */
+	static final int HEADER_SIZE = 4 + 4 + 4 * 5 + 8;
+	
+	
+	/**
+	 * The size, in bytes, of the header of each frame record.
+	 */
+	static final int RECORD_HEADER_SIZE = 8 + 1 + 4;
+	
+	
+	/**
+	 * The size, in bytes, of the trailer.
+	 */
+	static final int TRAILER_SIZE = 8 + 4;
+	
+	
+	/**
+	 * This class only provides constants.
+	 */
+	private SessionFormat() { }
+	
+}
@@ -0,0 +1,444 @@
+/**
+ * 
+ */
+package project.recognition.session;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.opencv.core.Mat;
+
+import project.util.logger.Log;
+
+/**
+ * <p>Provides random access to the frames of a session container written by
+ * the {@link SessionRecorder}. Only the header and the index footer are read
+ * when opening the container; each frame is read and decompressed on request,
+ * starting from its closest preceding key frame, or continuing from the last
+ * frame read when reading sequentially. So opening and seeking through a
+ * multi-gigabyte session is cheap.
+ * <p>A container that was never closed, and therefore has no index footer, is
+ * indexed by scanning its frame records instead; any incomplete frame record
+ * at its end is ignored.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.session.SessionFormat
+ */
+public class SessionReader implements Closeable {
+	
+	
+	// Private member fields.
+	private final File file;
+	private final RandomAccessFile raf;
+	private final Inflater inflater = new Inflater();
+	
+	// Private member data.
+	private int cols;
+	private int rows;
+	private int type;
+	private int frameBytes;
+	private int keyFrameInterval;
+	private long startTime;
+	private int frameCount = 0;
+	private long[] offsets;
+	private long[] timestamps;
+	private byte[] flags;
+	private byte[] compressed = new byte[64 * 1024];
+	private byte[] current;
+	private byte[] delta;
+	private int currentFrame = -1;
+	
+	
+	/**
+	 * Constructor for a new instance of this reader for the specified session
+	 * container, reading its header and index.
+	 * 
+	 * @param file	The session container to read.
+	 * 
+	 * @throws IOException if the file could not be read or is not a session
+	 * 			container.
+	 */
+	public SessionReader(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		
+		try {
+			readHeader();
+			if (!readIndex())
+				scanIndex();
+		}
+		catch (IOException ioe) {
+			raf.close();
+			throw ioe;
+		}
+		
+		current = new byte[frameBytes];
+		delta = new byte[frameBytes];
+	}
+	
+	
+	/**
+	 * Reads and verifies the header of the session container.
+	 * 
+	 * @throws IOException if the header is invalid.
+	 */
+	private final void readHeader() throws IOException {
+		raf.seek(0l);
+		if (raf.length() < SessionFormat.HEADER_SIZE
+				|| raf.readInt() != SessionFormat.MAGIC)
+			throw new IOException(file + " is not a session container.");
+		
+		int version = raf.readInt();
+		if (version != SessionFormat.VERSION)
+			throw new IOException(file + " has the unsupported version "
+					+ version + ".");
+		
+		cols = raf.readInt();
+		rows = raf.readInt();
+		type = raf.readInt();
+		frameBytes = raf.readInt();
+		keyFrameInterval = raf.readInt();
+		startTime = raf.readLong();
+		
+		if (cols <= 0 || rows <= 0 || frameBytes <= 0)
+			throw new IOException(file + " has an invalid frame size.");
+	}
+	
+	
+	/**
+	 * Reads the index footer located through the trailer of the session
+	 * container.
+	 * 
+	 * @return	{@code true} if the index was read; otherwise, returns
+	 * 			{@code false} if the container has no valid trailer.
+	 * 
+	 * @throws IOException if the file could not be read.
+	 */
+	private final boolean readIndex() throws IOException {
+		long length = raf.length();
+		if (length < SessionFormat.HEADER_SIZE + SessionFormat.TRAILER_SIZE)
+			return false;
+		
+		raf.seek(length - SessionFormat.TRAILER_SIZE);
+		long indexOffset = raf.readLong();
+		if (raf.readInt() != SessionFormat.END_MAGIC
+				|| indexOffset < SessionFormat.HEADER_SIZE
+				|| indexOffset >= length)
+			return false;
+		
+		raf.seek(indexOffset);
+		if (raf.readInt() != SessionFormat.INDEX_MAGIC)
+			return false;
+		
+		int count = raf.readInt();
+		byte[] index = new byte[count * 17];
+		raf.readFully(index);
+		
+		allocateIndex(count);
+		for (int i = 0, p = 0; i < count; i++, p += 17) {
+			offsets[i] = getLong(index, p);
+			timestamps[i] = getLong(index, p + 8);
+			flags[i] = index[p + 16];
+		}
+		frameCount = count;
+		return true;
+	}
+	
+	
+	/**
+	 * Indexes the session container by scanning all of its frame records, for
+	 * a container without an index footer.
+	 * 
+	 * @throws IOException if the file could not be read.
+	 */
+	private final void scanIndex() throws IOException {
+		Log.warning(file + " has no index, scanning its frames...");
+		long length = raf.length();
+		long position = SessionFormat.HEADER_SIZE;
+		int count = 0;
+		
+		allocateIndex(1024);
+		while (position + SessionFormat.RECORD_HEADER_SIZE <= length) {
+			raf.seek(position);
+			long timestamp = raf.readLong();
+			byte flag = raf.readByte();
+			int size = raf.readInt();
+			
+			long next = position + SessionFormat.RECORD_HEADER_SIZE + size;
+			if (size < 0 || next > length)
+				break;
+			
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+				timestamps = Arrays.copyOf(timestamps, count * 2);
+				flags = Arrays.copyOf(flags, count * 2);
+			}
+			offsets[count] = position;
+			timestamps[count] = timestamp;
+			flags[count] = flag;
+			count++;
+			position = next;
+		}
+		frameCount = count;
+	}
+	
+	
+	/**
+	 * Allocates the in-memory index for the specified number of frames.
+	 * 
+	 * @param count	The number of frames.
+	 */
+	private final void allocateIndex(int count) {
+		offsets = new long[count];
+		timestamps = new long[count];
+		flags = new byte[count];
+	}
+	
+	
+	/**
+	 * Reads the frame at the specified index into the specified {@link Mat}
+	 * buffer, (re)allocating it only when its size or type differs.
+	 * 
+	 * @param index		The index of the frame, starting with zero.
+	 * @param buffer	The buffer to store the frame to.
+	 * 
+	 * @throws IOException if the frame could not be read or decompressed.
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 */
+	public synchronized void read(int index, Mat buffer) throws IOException {
+		decode(index);
+		buffer.create(rows, cols, type);
+		buffer.put(0, 0, current);
+	}
+	
+	
+	/**
+	 * Decodes the frame at the specified index into the current frame buffer,
+	 * starting from the closest preceding key frame, or continuing from the
+	 * current frame if it is between that key frame and the index.
+	 * 
+	 * @param index	The index of the frame.
+	 * 
+	 * @throws IOException if a frame could not be read or decompressed.
+	 */
+	private final void decode(int index) throws IOException {
+		if (index < 0 || index >= frameCount)
+			throw new IndexOutOfBoundsException("Frame " + index + " of "
+					+ frameCount);
+		
+		if (index == currentFrame)
+			return;
+		
+		int key = index;
+		while (key > 0 && (flags[key] & SessionFormat.FLAG_KEY) == 0)
+			key--;
+		
+		int from = currentFrame >= key && currentFrame < index
+				? currentFrame + 1 : key;
+		
+		currentFrame = -1;
+		for (int i = from; i <= index; i++) {
+			boolean isKey = (flags[i] & SessionFormat.FLAG_KEY) != 0;
+			inflate(i, isKey ? current : delta);
+			
+			if (!isKey) {
+				for (int j = 0; j < frameBytes; j++)
+					current[j] ^= delta[j];
+			}
+		}
+		currentFrame = index;
+	}
+	
+	
+	/**
+	 * Reads and decompresses the data of the specified frame record into the
+	 * specified buffer.
+	 * 
+	 * @param index		The index of the frame record.
+	 * @param output	The buffer to decompress the data into.
+	 * 
+	 * @throws IOException if the frame record could not be read or
+	 * 			decompressed.
+	 */
+	private final void inflate(int index, byte[] output) throws IOException {
+		raf.seek(offsets[index] + 8 + 1);
+		int length = raf.readInt();
+		if (length > compressed.length)
+			compressed = new byte[length];
+		raf.readFully(compressed, 0, length);
+		
+		inflater.reset();
+		inflater.setInput(compressed, 0, length);
+		try {
+			int size = 0;
+			while (size < frameBytes && !inflater.finished()) {
+				int n = inflater.inflate(output, size, frameBytes - size);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				size += n;
+			}
+			
+			if (size != frameBytes)
+				throw new IOException("Frame " + index + " of " + file
+						+ " is truncated.");
+		}
+		catch (DataFormatException dfe) {
+			throw new IOException("Frame " + index + " of " + file
+					+ " is corrupt: " + dfe.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Returns the index of the last frame captured at, or before, the
+	 * specified time stamp.
+	 * 
+	 * @param timestamp	The capture time stamp in nanoseconds.
+	 * 
+	 * @return	the index of the frame, or {@code -1} if all of the frames were
+	 * 			captured after the time stamp.
+	 */
+	public int findFrame(long timestamp) {
+		int i = Arrays.binarySearch(timestamps, 0, frameCount, timestamp);
+		return i >= 0 ? i : -i - 2;
+	}
+	
+	
+	/**
+	 * Returns the number of frames in the session container.
+	 * 
+	 * @return	the number of frames.
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+	
+	
+	/**
+	 * Returns the capture time stamp of the specified frame.
+	 * 
+	 * @param index	The index of the frame.
+	 * 
+	 * @return	the {@link System#nanoTime()} of when the frame was captured.
+	 */
+	public long getTimestamp(int index) {
+		if (index < 0 || index >= frameCount)
+			throw new IndexOutOfBoundsException("Frame " + index + " of "
+					+ frameCount);
+		return timestamps[index];
+	}
+	
+	
+	/**
+	 * Returns the average frame rate the session was recorded at, derived from
+	 * the capture time stamps of its first and last frames.
+	 * 
+	 * @return	the recorded frames-per-second, or zero if unknown.
+	 */
+	public double getFrameRate() {
+		if (frameCount < 2)
+			return 0d;
+		
+		long span = timestamps[frameCount - 1] - timestamps[0];
+		return span > 0l ? (frameCount - 1) * 1e9 / span : 0d;
+	}
+	
+	
+	/**
+	 * Returns the width of the frames.
+	 * 
+	 * @return	the frame width in pixels.
+	 */
+	public int getWidth() {
+		return cols;
+	}
+	
+	
+	/**
+	 * Returns the height of the frames.
+	 * 
+	 * @return	the frame height in pixels.
+	 */
+	public int getHeight() {
+		return rows;
+	}
+	
+	
+	/**
+	 * Returns the OpenCV type of the frames.
+	 * 
+	 * @return	the {@link org.opencv.core.CvType} of the frames.
+	 */
+	public int getType() {
+		return type;
+	}
+	
+	
+	/**
+	 * Returns the number of frames between key frames.
+	 * 
+	 * @return	the key frame interval.
+	 */
+	public int getKeyFrameInterval() {
+		return keyFrameInterval;
+	}
+	
+	
+	/**
+	 * Returns the wall clock time the recording was started at.
+	 * 
+	 * @return	the start time in milliseconds since the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	
+	/**
+	 * Returns the session container of this reader.
+	 * 
+	 * @return	the file of the session container.
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	
+	@Override
+	public synchronized void close() throws IOException {
+		inflater.end();
+		raf.close();
+	}
+	
+	
+	/**
+	 * Returns the big-endian long stored at the specified offset.
+	 * 
+	 * @param b		The bytes to read from.
+	 * @param off	The offset of the long.
+	 * 
+	 * @return	the long value.
+	 */
+	private static final long getLong(byte[] b, int off) {
+		long v = 0l;
+		for (int i = 0; i < 8; i++)
+			v = (v << 8) | (b[off + i] & 0xffl);
+		return v;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file=" + file + ","
+				+ "size=" + cols + "x" + rows + ","
+				+ "frames=" + frameCount + ","
+				+ "fps=" + getFrameRate() + "]";
+	}
+	
+}
@@ -0,0 +1,475 @@
+/**
+ * 
+ */
+package project.recognition.session;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the session recording stage, which writes the raw captured
+ * frames, with their capture time stamps, to an append-only and indexed
+ * session container on its own thread. The container format is described by
+ * {@link SessionFormat}.
+ * <p>Offering a frame only copies its pixels into one of a bounded number of
+ * reused buffers and queues it; the compression and writing are done by this
+ * thread. When all of the buffers are still queued, because the disk cannot
+ * keep up, the offered frame is dropped from the recording and counted rather
+ * than blocking the caller, so recording never lowers the detection frame
+ * rate.
+ * <p>Every {@link #getKeyFrameInterval()}th frame is a key frame; all other
+ * frames are stored as the XOR with their previous frame, which is mostly
+ * zeros for a static camera and deflates very well. The index footer is
+ * written when the recorder is {@link #close() closed}.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.session.SessionReader
+ */
+public class SessionRecorder extends Thread {
+	
+	
+	/**
+	 * The conventional file name extension of the session containers.
+	 */
+	public static final String FILE_EXTENSION = ".h2ms";
+	
+	
+	/**
+	 * The default number of frames that may be queued for writing.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8;
+	
+	
+	/**
+	 * The default number of frames between key frames.
+	 */
+	public static final int DEFAULT_KEY_FRAME_INTERVAL = 30;
+	
+	
+	/**
+	 * A queued frame; the copied pixels and the capture time stamp.
+	 */
+	private static final class QueuedFrame {
+		
+		private final byte[] data;
+		private long timestamp;
+		
+		private QueuedFrame(int size) {
+			this.data = new byte[size];
+		}
+		
+	}
+	
+	
+	/**
+	 * The queued marker telling the writer there are no more frames.
+	 */
+	private static final QueuedFrame endOfRecording = new QueuedFrame(0);
+	
+	
+	// Private member fields.
+	private final File file;
+	private final DataOutputStream out;
+	private final int queueCapacity;
+	private final int keyFrameInterval;
+	private final BlockingQueue<QueuedFrame> pending;
+	private final BlockingQueue<QueuedFrame> free;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Object offerLock = new Object();
+	
+	// Private member data.
+	private volatile boolean closed = false;
+	private boolean finishing = false;
+	private int allocated = 0;
+	private int cols = -1;
+	private int rows = -1;
+	private int type = -1;
+	private int frameBytes = -1;
+	private byte[] previous = null;
+	private byte[] delta = null;
+	private byte[] compressed = new byte[64 * 1024];
+	private long position = 0l;
+	private long[] offsets = new long[1024];
+	private long[] timestamps = new long[1024];
+	private byte[] flags = new byte[1024];
+	private volatile int recordedFrames = 0;
+	private volatile long droppedFrames = 0l;
+	private volatile long bytesWritten = 0l;
+	private IOException failure = null;
+	
+	
+	/**
+	 * Constructor for a new instance of this recorder writing to the specified
+	 * file, with the {@link #DEFAULT_QUEUE_CAPACITY} and
+	 * {@link #DEFAULT_KEY_FRAME_INTERVAL}.
+	 * 
+	 * @param file	The session container to write; it is overwritten if it
+	 * 				already exists.
+	 * 
+	 * @throws IOException if the file could not be created.
+	 */
+	public SessionRecorder(File file) throws IOException {
+		this(file, DEFAULT_QUEUE_CAPACITY, DEFAULT_KEY_FRAME_INTERVAL);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this recorder writing to the specified
+	 * file.
+	 * 
+	 * @param file				The session container to write; it is
+	 * 							overwritten if it already exists.
+	 * @param queueCapacity		The maximum number of frames queued for
+	 * 							writing before frames are dropped.
+	 * @param keyFrameInterval	The number of frames between key frames.
+	 * 
+	 * @throws IOException if the file could not be created.
+	 * @throws IllegalArgumentException if the capacity or the interval is
+	 * 			less than one.
+	 */
+	public SessionRecorder(File file, int queueCapacity, int keyFrameInterval)
+			throws IOException, IllegalArgumentException
+	{
+		super("SessionRecorder");
+		setDaemon(true);
+		
+		if (queueCapacity < 1 || keyFrameInterval < 1)
+			throw new IllegalArgumentException("SessionRecorder(" + file + ", "
+					+ queueCapacity + ", " + keyFrameInterval + ") requires a "
+					+ "capacity and interval of at least one.");
+		
+		this.file = file;
+		this.queueCapacity = queueCapacity;
+		this.keyFrameInterval = keyFrameInterval;
+		this.pending = new ArrayBlockingQueue<QueuedFrame>(queueCapacity + 1);
+		this.free = new ArrayBlockingQueue<QueuedFrame>(queueCapacity);
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 256 * 1024));
+	}
+	
+	
+	/**
+	 * Offers the specified raw frame to be recorded. The pixels are copied, so
+	 * the frame may be modified as soon as this returns. The frame is dropped
+	 * if this recorder was closed, if all of the buffers are still queued for
+	 * writing, or if its size or type differs from the first recorded frame.
+	 * 
+	 * @param frame		The raw captured frame, of 8-bit depth.
+	 * @param timestamp	The {@link System#nanoTime()} of when the frame was
+	 * 					captured.
+	 * 
+	 * @return	{@code true} if the frame was queued for recording; otherwise,
+	 * 			{@code false}.
+	 */
+	public boolean offer(Mat frame, long timestamp) {
+		if (closed || frame == null || frame.empty())
+			return false;
+		
+		synchronized (offerLock) {
+			if (frameBytes < 0) {
+				if (CvType.depth(frame.type()) != CvType.CV_8U
+						|| !frame.isContinuous())
+				{
+					Log.error(getClass().getSimpleName() + " can only record "
+							+ "continuous frames of 8-bit depth.");
+					closed = true;
+					return false;
+				}
+				cols = frame.cols();
+				rows = frame.rows();
+				type = frame.type();
+				frameBytes = (int)(frame.total() * frame.elemSize());
+			}
+			else if (frame.cols() != cols || frame.rows() != rows
+					|| frame.type() != type)
+			{
+				droppedFrames++;
+				return false;
+			}
+			
+			QueuedFrame qf = free.poll();
+			if (qf == null) {
+				if (allocated >= queueCapacity) {
+					droppedFrames++;
+					return false;
+				}
+				qf = new QueuedFrame(frameBytes);
+				allocated++;
+			}
+			
+			frame.get(0, 0, qf.data);
+			qf.timestamp = timestamp;
+			pending.add(qf);
+			return true;
+		}
+	}
+	
+	
+	@Override
+	public void run() {
+		Log.debug(getClass().getSimpleName() + " recording to " + file);
+		QueuedFrame qf;
+		
+		try {
+			while ((qf = pending.take()) != endOfRecording) {
+				if (failure == null) {
+					try {
+						writeFrame(qf);
+					}
+					catch (IOException ioe) {
+						failure = ioe;
+						Log.error("Unable to record to " + file + ": " + ioe);
+					}
+				}
+				free.offer(qf);
+			}
+			
+			if (failure == null)
+				writeIndex();
+		}
+		catch (InterruptedException ignore) { }
+		catch (IOException ioe) {
+			failure = ioe;
+			Log.error("Unable to write the index of " + file + ": " + ioe);
+		}
+		finally {
+			try {
+				out.close();
+			} catch (IOException ignore) { }
+			deflater.end();
+			Log.debug(getClass().getSimpleName() + " stopped with "
+					+ recordedFrames + " frame(s) recorded, " + droppedFrames
+					+ " dropped.");
+		}
+	}
+	
+	
+	/**
+	 * Stops accepting frames, waits for all of the queued frames to be written
+	 * and writes the index footer, finishing the session container. If this
+	 * recorder was never started, the queued frames are written on the calling
+	 * thread instead. Closing it again has no effect.
+	 * 
+	 * @throws IOException if the recording failed.
+	 */
+	public void close() throws IOException {
+		boolean started;
+		synchronized (offerLock) {
+			if (finishing)
+				return;
+			finishing = true;
+			closed = true;
+			started = getState() != Thread.State.NEW;
+			pending.add(endOfRecording);
+		}
+		
+		if (!started)
+			run();
+		else if (Thread.currentThread() != this) {
+			try {
+				join();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		if (failure != null)
+			throw failure;
+	}
+	
+	
+	/**
+	 * Compresses and appends the specified frame as the next frame record.
+	 * 
+	 * @param qf	The queued frame to write.
+	 * 
+	 * @throws IOException if the frame record could not be written.
+	 */
+	private final void writeFrame(QueuedFrame qf) throws IOException {
+		if (position == 0l)
+			writeHeader();
+		
+		byte[] data = qf.data;
+		boolean key = recordedFrames % keyFrameInterval == 0;
+		byte[] input = data;
+		
+		if (!key) {
+			for (int i = 0; i < frameBytes; i++)
+				delta[i] = (byte)(data[i] ^ previous[i]);
+			input = delta;
+		}
+		System.arraycopy(data, 0, previous, 0, frameBytes);
+		
+		deflater.reset();
+		deflater.setInput(input, 0, frameBytes);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			length += deflater.deflate(compressed, length,
+					compressed.length - length);
+		}
+		
+		addIndexEntry(position, qf.timestamp, key ? SessionFormat.FLAG_KEY : 0);
+		out.writeLong(qf.timestamp);
+		out.writeByte(key ? SessionFormat.FLAG_KEY : 0);
+		out.writeInt(length);
+		out.write(compressed, 0, length);
+		position += SessionFormat.RECORD_HEADER_SIZE + length;
+		bytesWritten = position;
+		recordedFrames++;
+	}
+	
+	
+	/**
+	 * Writes the header of the session container.
+	 * 
+	 * @throws IOException if the header could not be written.
+	 */
+	private final void writeHeader() throws IOException {
+		previous = new byte[frameBytes];
+		delta = new byte[frameBytes];
+		
+		out.writeInt(SessionFormat.MAGIC);
+		out.writeInt(SessionFormat.VERSION);
+		out.writeInt(cols);
+		out.writeInt(rows);
+		out.writeInt(type);
+		out.writeInt(frameBytes);
+		out.writeInt(keyFrameInterval);
+		out.writeLong(System.currentTimeMillis());
+		position = SessionFormat.HEADER_SIZE;
+	}
+	
+	
+	/**
+	 * Adds the entry of the next frame record to the in-memory index.
+	 * 
+	 * @param offset	The file offset of the frame record.
+	 * @param timestamp	The capture time stamp of the frame.
+	 * @param flag		The flags of the frame record.
+	 */
+	private final void addIndexEntry(long offset, long timestamp, byte flag) {
+		int n = recordedFrames;
+		if (n == offsets.length) {
+			offsets = Arrays.copyOf(offsets, n * 2);
+			timestamps = Arrays.copyOf(timestamps, n * 2);
+			flags = Arrays.copyOf(flags, n * 2);
+		}
+		offsets[n] = offset;
+		timestamps[n] = timestamp;
+		flags[n] = flag;
+	}
+	
+	
+	/**
+	 * Writes the index footer and the trailer of the session container.
+	 * 
+	 * @throws IOException if the index could not be written.
+	 */
+	private final void writeIndex() throws IOException {
+		if (position == 0l)
+			return;
+		
+		long indexOffset = position;
+		out.writeInt(SessionFormat.INDEX_MAGIC);
+		out.writeInt(recordedFrames);
+		for (int i = 0; i < recordedFrames; i++) {
+			out.writeLong(offsets[i]);
+			out.writeLong(timestamps[i]);
+			out.writeByte(flags[i]);
+		}
+		out.writeLong(indexOffset);
+		out.writeInt(SessionFormat.END_MAGIC);
+		out.flush();
+		
+		position += 8 + recordedFrames * 17l + SessionFormat.TRAILER_SIZE;
+		bytesWritten = position;
+	}
+	
+	
+	/**
+	 * Returns the session container this recorder writes to.
+	 * 
+	 * @return	the file of the session container.
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	
+	/**
+	 * Returns the number of frames between key frames.
+	 * 
+	 * @return	the key frame interval.
+	 */
+	public int getKeyFrameInterval() {
+		return keyFrameInterval;
+	}
+	
+	
+	/**
+	 * Returns the number of frames written to the session container so far.
+	 * 
+	 * @return	the number of recorded frames.
+	 */
+	public int getRecordedFrameCount() {
+		return recordedFrames;
+	}
+	
+	
+	/**
+	 * Returns the number of offered frames that were dropped from the
+	 * recording because the writer could not keep up.
+	 * 
+	 * @return	the number of dropped frames.
+	 */
+	public long getDroppedFrameCount() {
+		return droppedFrames;
+	}
+	
+	
+	/**
+	 * Returns the number of bytes written to the session container so far.
+	 * 
+	 * @return	the size of the session container in bytes.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if this recorder no longer accepts frames;
+	 * otherwise, returns {@code false}.
+	 * 
+	 * @return	whether this recorder was closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file=" + file + ","
+				+ "recorded=" + getRecordedFrameCount() + ","
+				+ "dropped=" + getDroppedFrameCount() + ","
+				+ "bytes=" + getBytesWritten() + "]";
+	}
+	
+}
@@ -0,0 +1,248 @@
+/**
+ * 
+ */
+package project.recognition.source;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+import org.opencv.highgui.VideoCapture;
+
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the {@link FrameSource} of a live video capture device, such as a
+ * web camera. A failed read is retried a few times, re-opening the device in
+ * between, before the source gives up.
+ * <p>In raw capture mode the device is asked not to convert its frames to BGR,
+ * so a camera delivering YUYV natively hands over its packed two channel
+ * frames as is and the gestures work on the luma and chroma planes directly.
+ * A capture backend that does not support this keeps delivering BGR frames,
+ * which are handled just the same.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see org.opencv.highgui.VideoCapture
+ */
+public class CameraFrameSource implements FrameSource {
+	
+	
+	/**
+	 * The maximum number of re-connect attempts before error'ing out.
+	 */
+	private static final int maxReconnectAttempts = 5;
+	
+	
+	/**
+	 * The delay in milliseconds between re-connect attempts on the video
+	 * device.
+	 */
+	private static final int delayInMillis = 2000;
+	
+	
+	// Private member fields.
+	private final int device;
+	
+	// Private member data.
+	private VideoCapture camera = null;
+	private volatile boolean released = false;
+	private boolean rawCapture = false;
+	private long frameTime = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this source with the default video
+	 * capture device.
+	 */
+	public CameraFrameSource() {
+		this(0);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this source with the specified video
+	 * capture device.
+	 * 
+	 * @param device	The index of the video capture device.
+	 */
+	public CameraFrameSource(int device) {
+		this(device, false);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this source with the specified video
+	 * capture device and whether to capture unconverted frames.
+	 * 
+	 * @param device		The index of the video capture device.
+	 * @param rawCapture	{@code true} to capture unconverted YUYV frames.
+	 */
+	public CameraFrameSource(int device, boolean rawCapture) {
+		this.device = device;
+		this.rawCapture = rawCapture;
+	}
+	
+	
+	@Override
+	public synchronized boolean open() {
+		released = false;
+		if (camera == null)
+			camera = new VideoCapture(device);
+		
+		if (!camera.isOpened())
+			camera.open(device);
+		
+		if (!camera.isOpened())
+			return false;
+		
+		applyCaptureMode();
+		return true;
+	}
+	
+	
+	/**
+	 * Requests the opened device to convert, or not, its frames to BGR
+	 * according to the raw capture mode.
+	 */
+	private final void applyCaptureMode() {
+		if (!camera.set(Highgui.CV_CAP_PROP_CONVERT_RGB, rawCapture ? 0d : 1d)
+				&& rawCapture)
+			Log.warning("Camera device " + device + " does not support raw "
+					+ "capture; frames are converted to BGR.");
+	}
+	
+	
+	/**
+	 * Returns {@code true} if this source asks the device for unconverted
+	 * frames; otherwise, returns {@code false}.
+	 * 
+	 * @return	whether this source is in raw capture mode.
+	 */
+	public synchronized boolean isRawCapture() {
+		return rawCapture;
+	}
+	
+	
+	/**
+	 * Sets whether this source asks the device for unconverted, YUYV, frames
+	 * rather than frames converted to BGR. This is applied right away when
+	 * the device is opened, and otherwise the next time it is opened.
+	 * 
+	 * @param rawCapture	{@code true} to capture unconverted frames.
+	 */
+	public synchronized void setRawCapture(boolean rawCapture) {
+		this.rawCapture = rawCapture;
+		if (isOpened())
+			applyCaptureMode();
+	}
+	
+	
+	@Override
+	public synchronized boolean isOpened() {
+		return camera != null && camera.isOpened();
+	}
+	
+	
+	/**
+	 * Verifies that the camera device is available and retrieve the next frame
+	 * from the video camera to store into the specified {@link Mat} buffer.
+	 * 
+	 * @param buffer	The buffer to store the next frame to.
+	 * @return			{@code true} if the device is available and successfully
+	 * 					retrieved an image for the next frame; otherwise,
+	 * 					returns {@code false}.
+	 */
+	@Override
+	public boolean read(Mat buffer) {
+		int reconnectAttempt = 1;
+		VideoCapture camera = this.camera;
+		
+		if (camera == null) {
+			Log.error("No camera device connected.");
+			return false;
+		}
+		
+		if (!camera.isOpened())
+			Log.warning("Camera device is NOT opened at this time.");
+		
+		while (!camera.read(buffer) || buffer.empty()) {
+			if (released)
+				return false;
+			
+			if (reconnectAttempt > maxReconnectAttempts) {
+				Log.error("After " + reconnectAttempt + " attempts to "
+						+ "re-connect to the device, it was unable to retireve "
+						+ "an image. Please verify the web camera is connected "
+						+ "and functioning properly.");
+				return false;
+			}
+			
+			Log.warning("Couldn't retrive image from video. "
+					+ "Re-attempting in " + (delayInMillis / 1000.0)
+					+ " seconds...");
+			
+			try {
+				Thread.sleep(delayInMillis);
+			} catch (InterruptedException ie) {
+				return false;
+			}
+			
+			reconnectAttempt++;
+			if (!camera.isOpened() && !released)
+				open();
+		}
+		frameTime = System.currentTimeMillis() * 1000000l;
+		return true;
+	}
+	
+	
+	@Override
+	public long getFrameTime() {
+		return frameTime;
+	}
+	
+	
+	@Override
+	public synchronized void release() {
+		released = true;
+		if (camera != null)
+			camera.release();
+	}
+	
+	
+	@Override
+	public synchronized double getFrameRate() {
+		return camera != null ? camera.get(Highgui.CV_CAP_PROP_FPS) : 0d;
+	}
+	
+	
+	@Override
+	public long getFrameCount() {
+		return -1l;
+	}
+	
+	
+	@Override
+	public boolean isLive() {
+		return true;
+	}
+	
+	
+	/**
+	 * Returns the underlying video capture device of this source.
+	 * 
+	 * @return	the {@link VideoCapture} device, or {@code null} if this source
+	 * 			was never opened.
+	 */
+	public synchronized VideoCapture getVideoCapture() {
+		return camera;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[device=" + device + ","
+				+ "raw=" + isRawCapture() + ","
+				+ "opened=" + isOpened() + "]";
+	}
+	
+}
@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package project.recognition.source;
+
+import org.opencv.core.Mat;
+
+/**
+ * <p>Provides the required methods for any source of frames the
+ * {@link project.recognition.GestureRecognizer} may detect gestures on, such
+ * as a live camera, a recorded video file, or a directory of numbered images.
+ * <p>A source is read from a single thread, the video capture thread of the
+ * recognizer, one frame at a time into a reused {@link Mat}. A live source
+ * delivers frames at its own pace and any frame the detection has no time for
+ * is dropped; a recorded source is read no faster than the detection can
+ * process it, so every one of its frames is detected exactly once and the
+ * same recording may be benchmarked repeatably.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.GestureRecognizer
+ */
+public interface FrameSource {
+	
+	
+	/**
+	 * Opens this source, if it is not already opened.
+	 * 
+	 * @return	{@code true} if this source is opened; otherwise, returns
+	 * 			{@code false}.
+	 */
+	public boolean open();
+	
+	
+	/**
+	 * Returns {@code true} if this source is currently opened; otherwise,
+	 * returns {@code false}.
+	 * 
+	 * @return	whether this source is opened.
+	 */
+	public boolean isOpened();
+	
+	
+	/**
+	 * Reads the next frame of this source, in the BGR color space, into the
+	 * specified {@link Mat} buffer.
+	 * 
+	 * @param buffer	The buffer to store the next frame to.
+	 * 
+	 * @return	{@code true} if the next frame was read; otherwise, returns
+	 * 			{@code false} if this source has no more frames or failed to
+	 * 			deliver one.
+	 */
+	public boolean read(Mat buffer);
+	
+	
+	/**
+	 * Returns the time the frame last read was captured at, in nanoseconds
+	 * since the epoch. A live source returns the wall clock time of reading
+	 * the frame; a recorded source returns the time derived from its own
+	 * recording, so the time of each frame is the same on every replay.
+	 * 
+	 * @return	the capture time of the last read frame in nanoseconds.
+	 * 
+	 * @see project.recognition.VirtualClock
+	 */
+	public long getFrameTime();
+	
+	
+	/**
+	 * Closes this source and releases any of its resources.
+	 */
+	public void release();
+	
+	
+	/**
+	 * Returns the native frame rate of this source.
+	 * 
+	 * @return	the native frames-per-second, or zero if it is unknown.
+	 */
+	public double getFrameRate();
+	
+	
+	/**
+	 * Returns the total number of frames of this source.
+	 * 
+	 * @return	the number of frames, or {@code -1} if the source is live or the
+	 * 			number is unknown.
+	 */
+	public long getFrameCount();
+	
+	
+	/**
+	 * Returns {@code true} if this source is live and delivers its frames at
+	 * its own pace, dropping any frame the detection has no time for;
+	 * otherwise, returns {@code false} if every frame of this source is to be
+	 * detected.
+	 * 
+	 * @return	whether this source is live.
+	 */
+	public boolean isLive();
+	
+	
+}
@@ -0,0 +1,49 @@
+/**
+ * 
+ */
+package project.recognition.source;
+
+import java.io.File;
+
+import project.recognition.session.SessionRecorder;
+
+/**
+ * Provides the factory of the {@link FrameSource}s for the paths given on the
+ * command line of the tools, e.g. to benchmark the gestures on a recording.
+ * 
+ * @author Chris Hartley
+ */
+public final class FrameSources {
+	
+	
+	/**
+	 * This class only provides static methods.
+	 */
+	private FrameSources() { }
+	
+	
+	/**
+	 * Returns the frame source for the specified path; an integer selects the
+	 * camera with that index, a directory selects its numbered images, a file
+	 * ending in {@link SessionRecorder#FILE_EXTENSION} selects the recorded
+	 * session, and any other file is opened as a video file.
+	 * 
+	 * @param path	The camera index, or the path of the recording.
+	 * 
+	 * @return	the (unopened) {@link FrameSource} for the path.
+	 */
+	public static FrameSource forPath(String path) {
+		if (path.matches("\\d+"))
+			return new CameraFrameSource(Integer.parseInt(path));
+		
+		File file = new File(path);
+		if (file.isDirectory())
+			return new ImageDirectoryFrameSource(file);
+		
+		if (path.toLowerCase().endsWith(SessionRecorder.FILE_EXTENSION))
+			return new SessionFrameSource(file);
+		
+		return new VideoFileFrameSource(path);
+	}
+	
+}
@@ -0,0 +1,245 @@
+/**
+ * 
+ */
+package project.recognition.source;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the {@link FrameSource} of a directory of numbered images, such
+ * as {@code frame_0001.png}, {@code frame_0002.png}, and so on. The images are
+ * read in the order of the last number in their file names, falling back to
+ * the file names themselves, so numbers without leading zeros are ordered
+ * correctly as well.
+ * <p>Every image is detected, in order, as fast as the detection allows; the
+ * source ends with the last image. Since a directory of images has no native
+ * frame rate of its own, the frame rate is specified when constructing the
+ * source.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see org.opencv.highgui.Highgui#imread(String)
+ */
+public class ImageDirectoryFrameSource implements FrameSource {
+	
+	
+	/**
+	 * The default frame rate of the image sequence.
+	 */
+	public static final double DEFAULT_FRAME_RATE = 30d;
+	
+	
+	/**
+	 * The file name extensions of the images read from the directory.
+	 */
+	private static final String[] imageExtensions = {
+		".png", ".jpg", ".jpeg", ".bmp", ".tif", ".tiff", ".pgm", ".ppm"
+	};
+	
+	
+	/**
+	 * The pattern matching the last number in a file name.
+	 */
+	private static final Pattern lastNumber = Pattern.compile("(\\d+)\\D*$");
+	
+	
+	// Private member fields.
+	private final File directory;
+	private final double frameRate;
+	
+	// Private member data.
+	private File[] images = null;
+	private int nextImage = 0;
+	private long frameTime = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this source for the images of the
+	 * specified directory at the {@link #DEFAULT_FRAME_RATE}.
+	 * 
+	 * @param directory	The directory of numbered images.
+	 */
+	public ImageDirectoryFrameSource(File directory) {
+		this(directory, DEFAULT_FRAME_RATE);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this source for the images of the
+	 * specified directory at the specified frame rate.
+	 * 
+	 * @param directory	The directory of numbered images.
+	 * @param frameRate	The frame rate the images were captured at.
+	 * 
+	 * @throws IllegalArgumentException if the frame rate is not greater than
+	 * 			zero.
+	 */
+	public ImageDirectoryFrameSource(File directory, double frameRate)
+			throws IllegalArgumentException
+	{
+		if (directory == null)
+			throw new NullPointerException("ImageDirectoryFrameSource(null)");
+		
+		if (!(frameRate > 0d))
+			throw new IllegalArgumentException("ImageDirectoryFrameSource("
+					+ directory + ", " + frameRate + ") frame rate must be "
+					+ "greater than zero.");
+		
+		this.directory = directory;
+		this.frameRate = frameRate;
+	}
+	
+	
+	@Override
+	public synchronized boolean open() {
+		if (images == null) {
+			File[] files = directory.listFiles(new FileFilter() {
+				
+				@Override
+				public boolean accept(File file) {
+					if (!file.isFile())
+						return false;
+					
+					String name = file.getName().toLowerCase();
+					for (String ext : imageExtensions) {
+						if (name.endsWith(ext))
+							return true;
+					}
+					return false;
+				}
+				
+			});
+			
+			if (files == null) {
+				Log.error("Unable to list the images of " + directory);
+				return false;
+			}
+			
+			Arrays.sort(files, new Comparator<File>() {
+				
+				@Override
+				public int compare(File f1, File f2) {
+					long n1 = getNumber(f1), n2 = getNumber(f2);
+					if (n1 != n2)
+						return n1 < n2 ? -1 : 1;
+					return f1.getName().compareTo(f2.getName());
+				}
+				
+			});
+			images = files;
+		}
+		
+		nextImage = 0;
+		return true;
+	}
+	
+	
+	@Override
+	public synchronized boolean isOpened() {
+		return images != null;
+	}
+	
+	
+	@Override
+	public synchronized boolean read(Mat buffer) {
+		while (images != null && nextImage < images.length) {
+			File file = images[nextImage++];
+			Mat img = Highgui.imread(file.getAbsolutePath());
+			
+			try {
+				if (!img.empty()) {
+					img.copyTo(buffer);
+					frameTime = (long)((nextImage - 1) * 1e9 / frameRate);
+					return true;
+				}
+				Log.warning("Unable to read the image " + file + ", skipped.");
+			}
+			finally {
+				img.release();
+			}
+		}
+		return false;
+	}
+	
+	
+	@Override
+	public synchronized long getFrameTime() {
+		return frameTime;
+	}
+	
+	
+	@Override
+	public synchronized void release() {
+		images = null;
+		nextImage = 0;
+	}
+	
+	
+	@Override
+	public double getFrameRate() {
+		return frameRate;
+	}
+	
+	
+	@Override
+	public synchronized long getFrameCount() {
+		return images != null ? images.length : -1l;
+	}
+	
+	
+	@Override
+	public boolean isLive() {
+		return false;
+	}
+	
+	
+	/**
+	 * Returns the directory of the images of this source.
+	 * 
+	 * @return	the directory of numbered images.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	
+	
+	/**
+	 * Returns the last number in the name of the specified file.
+	 * 
+	 * @param file	The file to get the number of.
+	 * 
+	 * @return	the last number in the file name, or {@link Long#MAX_VALUE} if
+	 * 			the name has no number, so such files are ordered last.
+	 */
+	private static final long getNumber(File file) {
+		Matcher m = lastNumber.matcher(file.getName());
+		if (!m.find())
+			return Long.MAX_VALUE;
+		
+		try {
+			return Long.parseLong(m.group(1));
+		}
+		catch (NumberFormatException nfe) {
+			return Long.MAX_VALUE;
+		}
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[directory=" + directory + ","
+				+ "fps=" + frameRate + ","
+				+ "frames=" + getFrameCount() + "]";
+	}
+	
+}
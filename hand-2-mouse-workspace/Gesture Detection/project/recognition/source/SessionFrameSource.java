@@ -0,0 +1,147 @@
+/**
+ * 
+ */
+package project.recognition.source;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.opencv.core.Mat;
+
+import project.recognition.session.SessionReader;
+import project.util.logger.Log;
+
+/**
+ * Provides the {@link FrameSource} of a session recorded by the
+ * {@link project.recognition.session.SessionRecorder}. Every recorded frame is
+ * detected, in order, as fast as the detection allows. The time of each frame
+ * is the wall clock time it was originally captured at, derived from the
+ * start time of the recording and the recorded capture time stamps, so the
+ * replay reproduces the timing of the live session exactly.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.session.SessionReader
+ */
+public class SessionFrameSource implements FrameSource {
+	
+	
+	// Private member fields.
+	private final File file;
+	
+	// Private member data.
+	private SessionReader reader = null;
+	private int nextFrame = 0;
+	private long frameTime = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this source for the specified session
+	 * container.
+	 * 
+	 * @param file	The recorded session container.
+	 */
+	public SessionFrameSource(File file) {
+		if (file == null)
+			throw new NullPointerException("SessionFrameSource(null)");
+		
+		this.file = file;
+	}
+	
+	
+	@Override
+	public synchronized boolean open() {
+		if (reader == null) {
+			try {
+				reader = new SessionReader(file);
+			}
+			catch (IOException ioe) {
+				Log.error("Unable to open the session " + file + ": " + ioe);
+				return false;
+			}
+		}
+		
+		nextFrame = 0;
+		return true;
+	}
+	
+	
+	@Override
+	public synchronized boolean isOpened() {
+		return reader != null;
+	}
+	
+	
+	@Override
+	public synchronized boolean read(Mat buffer) {
+		if (reader == null || nextFrame >= reader.getFrameCount())
+			return false;
+		
+		try {
+			reader.read(nextFrame, buffer);
+		}
+		catch (IOException ioe) {
+			Log.error("Unable to read frame " + nextFrame + " of " + file
+					+ ": " + ioe);
+			return false;
+		}
+		
+		frameTime = reader.getStartTime() * 1000000l
+				+ (reader.getTimestamp(nextFrame) - reader.getTimestamp(0));
+		nextFrame++;
+		return true;
+	}
+	
+	
+	@Override
+	public synchronized long getFrameTime() {
+		return frameTime;
+	}
+	
+	
+	@Override
+	public synchronized void release() {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (IOException ignore) { }
+			reader = null;
+		}
+	}
+	
+	
+	@Override
+	public synchronized double getFrameRate() {
+		return reader != null ? reader.getFrameRate() : 0d;
+	}
+	
+	
+	@Override
+	public synchronized long getFrameCount() {
+		return reader != null ? reader.getFrameCount() : -1l;
+	}
+	
+	
+	@Override
+	public boolean isLive() {
+		return false;
+	}
+	
+	
+	/**
+	 * Returns the session container of this source.
+	 * 
+	 * @return	the file of the recorded session.
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file=" + file + ","
+				+ "frames=" + getFrameCount() + "]";
+	}
+	
+}
@@ -0,0 +1,135 @@
+/**
+ * 
+ */
+package project.recognition.source;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+import org.opencv.highgui.VideoCapture;
+
+/**
+ * Provides the {@link FrameSource} of a recorded video file, read through the
+ * {@link VideoCapture} of OpenCV. Every frame of the file is detected, in
+ * order, as fast as the detection allows; the source ends with the last frame
+ * of the file.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see org.opencv.highgui.VideoCapture#VideoCapture(String)
+ */
+public class VideoFileFrameSource implements FrameSource {
+	
+	
+	// Private member fields.
+	private final String filename;
+	
+	// Private member data.
+	private VideoCapture video = null;
+	private long framesRead = 0l;
+	private long frameTime = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this source for the specified video
+	 * file.
+	 * 
+	 * @param filename	The path of the video file.
+	 */
+	public VideoFileFrameSource(String filename) {
+		if (filename == null)
+			throw new NullPointerException("VideoFileFrameSource(null)");
+		
+		this.filename = filename;
+	}
+	
+	
+	@Override
+	public synchronized boolean open() {
+		if (video == null)
+			video = new VideoCapture(filename);
+		
+		if (!video.isOpened())
+			video.open(filename);
+		
+		framesRead = 0l;
+		return video.isOpened();
+	}
+	
+	
+	@Override
+	public synchronized boolean isOpened() {
+		return video != null && video.isOpened();
+	}
+	
+	
+	/**
+	 * Reads the next frame of the video file. The time of the frame is derived
+	 * from its position in the file and the native frame rate.
+	 * 
+	 * @see project.recognition.source.FrameSource#read(Mat)
+	 */
+	@Override
+	public boolean read(Mat buffer) {
+		VideoCapture video = this.video;
+		if (video == null || !video.read(buffer) || buffer.empty())
+			return false;
+		
+		double fps = getFrameRate();
+		frameTime = fps > 0d ? (long)(framesRead * 1e9 / fps) : framesRead;
+		framesRead++;
+		return true;
+	}
+	
+	
+	@Override
+	public long getFrameTime() {
+		return frameTime;
+	}
+	
+	
+	@Override
+	public synchronized void release() {
+		if (video != null)
+			video.release();
+	}
+	
+	
+	@Override
+	public synchronized double getFrameRate() {
+		return video != null ? video.get(Highgui.CV_CAP_PROP_FPS) : 0d;
+	}
+	
+	
+	@Override
+	public synchronized long getFrameCount() {
+		if (video == null)
+			return -1l;
+		
+		long count = (long)video.get(Highgui.CV_CAP_PROP_FRAME_COUNT);
+		return count > 0 ? count : -1l;
+	}
+	
+	
+	@Override
+	public boolean isLive() {
+		return false;
+	}
+	
+	
+	/**
+	 * Returns the path of the video file of this source.
+	 * 
+	 * @return	the path of the video file.
+	 */
+	public String getFilename() {
+		return filename;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file=" + filename + ","
+				+ "opened=" + isOpened() + "]";
+	}
+	
+}
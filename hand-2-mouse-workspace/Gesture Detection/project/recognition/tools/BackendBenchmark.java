@@ -0,0 +1,204 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.recognition.cascade.HaarCascade;
+import project.recognition.cascade.IntegralImages;
+import project.recognition.cascade.JavaCascadeDetector;
+import project.recognition.types.Detections;
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the benchmark of the Java cascade backend against the native
+ * OpenCV classifier on the same frames of a recorded clip. The grayscale
+ * frames are loaded into memory first and each frame is then detected by
+ * both backends with the same settings; the time of the Java backend includes
+ * computing the integral images, which is also reported on its own. The
+ * native detections are the reference; the recall of the Java backend is the
+ * fraction of them it also finds.
+ * <p>Usage:
+ * <pre>BackendBenchmark &lt;source&gt; &lt;classifier&gt; [frames]</pre>
+ * where the source is a video file, a directory of numbered images, or a
+ * recorded session, and the classifier is a file or resource path of the old
+ * Haar-like format. At most 300 frames are loaded, unless specified
+ * otherwise.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.cascade.JavaCascadeDetector
+ */
+public class BackendBenchmark implements ToolSupport.ClipMeasurement {
+	
+	
+	// Private member fields.
+	private final CascadeClassifier cc;
+	private final JavaCascadeDetector detector;
+	private final IntegralImages ii = new IntegralImages();
+	private final TimingStatistics nativeTimes =
+			new TimingStatistics("native");
+	private final TimingStatistics javaTimes = new TimingStatistics("Java");
+	private final TimingStatistics integralTimes =
+			new TimingStatistics("integral images");
+	
+	// Private member data.
+	private long nativeCount = 0l;
+	private long javaCount = 0l;
+	private long matched = 0l;
+	private int frames = 0;
+	
+	
+	/**
+	 * Constructor for a new instance of this benchmark of the specified
+	 * native classifier and Java detector of the same classifier file.
+	 * 
+	 * @param cc		The native classifier.
+	 * @param detector	The Java detector.
+	 */
+	public BackendBenchmark(CascadeClassifier cc,
+			JavaCascadeDetector detector)
+	{
+		this.cc = cc;
+		this.detector = detector;
+	}
+	
+	
+	/**
+	 * Detects each of the specified grayscale frames with both of the
+	 * backends.
+	 * 
+	 * @param grays	The grayscale frames to detect.
+	 */
+	@Override
+	public void run(List<Mat> grays) {
+		MatOfRect objects = new MatOfRect();
+		long start;
+		
+		try {
+			for (Mat gray : grays) {
+				start = System.nanoTime();
+				cc.detectMultiScale(gray, objects,
+						JavaCascadeDetector.DEFAULT_SCALE_FACTOR,
+						JavaCascadeDetector.DEFAULT_MIN_NEIGHBORS, 0,
+						new Size(), new Size());
+				nativeTimes.add(System.nanoTime() - start);
+				Rect[] reference = objects.toArray();
+				
+				start = System.nanoTime();
+				ii.compute(gray);
+				long computed = System.nanoTime();
+				Rect[] shapes = detector.detect(ii, null, new Size(),
+						new Size());
+				javaTimes.add(System.nanoTime() - start);
+				integralTimes.add(computed - start);
+				
+				nativeCount += reference.length;
+				javaCount += shapes.length;
+				matched += Detections.countMatches(reference, shapes,
+						Detections.DEFAULT_MIN_OVERLAP);
+				frames++;
+			}
+		}
+		finally {
+			objects.release();
+		}
+	}
+	
+	
+	/**
+	 * Returns the recall of the Java backend; the fraction of the native
+	 * detections it also finds.
+	 * 
+	 * @return	the recall between zero and one, or one if there were no
+	 * 			native detections.
+	 */
+	public double getRecall() {
+		return nativeCount > 0l ? matched / (double)nativeCount : 1d;
+	}
+	
+	
+	/**
+	 * Prints the detection time and the detections per frame of both of the
+	 * backends, and the speed-up and the recall of the Java backend.
+	 * 
+	 * @param out	The stream to print to.
+	 */
+	@Override
+	public void printReport(PrintStream out) {
+		out.println(frames + " frame(s), " + detector.getCascade());
+		out.println("backend\tms/frame\tdetection(s)/frame");
+		print(out, nativeTimes, nativeCount);
+		print(out, javaTimes, javaCount);
+		out.println("integral images "
+				+ ToolSupport.format(integralTimes.getAverage()) + " ms/frame");
+		double avg = javaTimes.getAverage();
+		out.println("speed-up " + (avg > 0d
+				? ToolSupport.format(nativeTimes.getAverage() / avg) : "-")
+				+ ", recall " + ToolSupport.format(getRecall()));
+	}
+	
+	
+	/**
+	 * Prints a single row of the report.
+	 * 
+	 * @param out	The stream to print to.
+	 * @param times	The timing statistics of the backend.
+	 * @param count	The number of detections of the backend.
+	 */
+	private final void print(PrintStream out, TimingStatistics times,
+			long count)
+	{
+		out.println(times.getName() + "\t"
+				+ ToolSupport.format(times.getAverage()) + "\t\t"
+				+ ToolSupport.format(frames > 0 ? count / (double)frames : 0d));
+	}
+	
+	
+	/**
+	 * Runs the benchmark on the command line.
+	 * 
+	 * @param args	The source, the classifier, and optionally the number of
+	 * 				frames.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: BackendBenchmark <source> <classifier> "
+					+ "[frames]");
+			System.exit(1);
+		}
+		
+		int limit = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+		
+		if (!ToolSupport.loadOpenCv())
+			System.exit(1);
+		
+		String path = ToolSupport.findClassifier(args[1]);
+		if (path == null)
+			System.exit(1);
+		
+		HaarCascade cascade = null;
+		try {
+			cascade = HaarCascade.load(path);
+		}
+		catch (IOException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(1);
+		}
+		
+		BackendBenchmark benchmark = new BackendBenchmark(
+				new CascadeClassifier(path), new JavaCascadeDetector(cascade));
+		if (!ToolSupport.measure(args[0], limit, false, benchmark))
+			System.exit(1);
+	}
+	
+}
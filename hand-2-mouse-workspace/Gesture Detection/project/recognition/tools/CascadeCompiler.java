@@ -0,0 +1,82 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import project.recognition.cascade.CompiledCascades;
+import project.recognition.cascade.HaarCascade;
+
+/**
+ * <p>Provides the compilation of cascade classifier XML files into their
+ * binary form ahead of time, e.g. to install the compiled forms along with
+ * the XML files. For each classifier, the time to parse its XML is
+ * compared with the time to load its compiled form.
+ * <p>Usage:
+ * <pre>CascadeCompiler &lt;classifier&gt; ...</pre>
+ * where each classifier is a file or resource path of the old Haar-like
+ * format. The compiled form is written next to the XML file, or to the
+ * temporary directory if that isn't writable.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.cascade.CompiledCascades
+ */
+public class CascadeCompiler {
+	
+	
+	/**
+	 * This class only provides static methods.
+	 */
+	private CascadeCompiler() { }
+	
+	
+	/**
+	 * Runs the compilation on the command line.
+	 * 
+	 * @param args	The classifiers to compile.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: CascadeCompiler <classifier> ...");
+			System.exit(1);
+		}
+		
+		int failed = 0;
+		for (String arg : args) {
+			String path = ToolSupport.findClassifier(arg);
+			if (path == null) {
+				failed++;
+				continue;
+			}
+			
+			try {
+				long start = System.nanoTime();
+				HaarCascade parsed = HaarCascade.load(path);
+				long parse = System.nanoTime() - start;
+				
+				File compiled = CompiledCascades.compile(path);
+				
+				start = System.nanoTime();
+				CompiledCascades.load(path);
+				long load = System.nanoTime() - start;
+				
+				System.out.println(parsed + "\tparse "
+						+ ToolSupport.format(parse / 1e6d) + " ms, load "
+						+ ToolSupport.format(load / 1e6d) + " ms\t"
+						+ new File(path).length() / 1024 + " KiB -> "
+						+ compiled.length() / 1024 + " KiB\t" + compiled);
+			}
+			catch (IOException ex) {
+				System.err.println(ex.getMessage());
+				failed++;
+			}
+		}
+		
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+}
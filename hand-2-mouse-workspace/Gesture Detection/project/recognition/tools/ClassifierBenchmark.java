@@ -0,0 +1,229 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.recognition.types.CascadeInfo;
+import project.recognition.types.Detections;
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the benchmark of pairs of cascade classifiers for the same
+ * gesture on a recorded clip, e.g. a Haar-like classifier against an LBP
+ * classifier trained for the same hand pose. The grayscale frames of the
+ * clip are loaded into memory first and each classifier then detects every
+ * frame. Of each pair, the first classifier is the reference; the recall of
+ * the second is the fraction of the reference detections it also finds.
+ * <p>Usage:
+ * <pre>ClassifierBenchmark &lt;source&gt; &lt;classifier&gt;[,&lt;candidate&gt;] ... [-frames n]</pre>
+ * where the source is a video file, a directory of numbered images, or a
+ * recorded session, and each classifier is a file or resource path. A
+ * classifier without a candidate is only timed. At most 300 frames are
+ * loaded, unless specified otherwise.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.CascadeInfo
+ */
+public class ClassifierBenchmark implements ToolSupport.ClipMeasurement {
+	
+	
+	// Private member fields.
+	private final CascadeInfo reference;
+	private final CascadeInfo candidate;
+	private final TimingStatistics referenceTimes;
+	private final TimingStatistics candidateTimes;
+	
+	// Private member data.
+	private long referenceCount = 0l;
+	private long candidateCount = 0l;
+	private long matched = 0l;
+	private int frames = 0;
+	
+	
+	/**
+	 * Constructor for a new instance of this benchmark of the specified pair
+	 * of classifier files.
+	 * 
+	 * @param reference	The description of the reference classifier.
+	 * @param candidate	The description of the candidate classifier, or
+	 * 					{@code null} to only time the reference.
+	 */
+	public ClassifierBenchmark(CascadeInfo reference, CascadeInfo candidate) {
+		this.reference = reference;
+		this.candidate = candidate;
+		this.referenceTimes = new TimingStatistics(reference.getPath());
+		this.candidateTimes = candidate != null
+				? new TimingStatistics(candidate.getPath()) : null;
+	}
+	
+	
+	/**
+	 * Detects each of the specified grayscale frames with both of the
+	 * classifiers.
+	 * 
+	 * @param grays	The grayscale frames to detect.
+	 */
+	@Override
+	public void run(List<Mat> grays) {
+		CascadeClassifier ref = new CascadeClassifier(reference.getPath());
+		CascadeClassifier cand = candidate != null
+				? new CascadeClassifier(candidate.getPath()) : null;
+		
+		for (Mat gray : grays) {
+			Rect[] refShapes = detect(ref, gray, referenceTimes);
+			referenceCount += refShapes.length;
+			
+			if (cand != null) {
+				Rect[] candShapes = detect(cand, gray, candidateTimes);
+				candidateCount += candShapes.length;
+				matched += Detections.countMatches(refShapes, candShapes,
+						Detections.DEFAULT_MIN_OVERLAP);
+			}
+			frames++;
+		}
+	}
+	
+	
+	/**
+	 * Detects the objects on the specified frame with the specified
+	 * classifier, at its default settings, and records the time it took.
+	 * 
+	 * @param cc	The classifier to detect with.
+	 * @param gray	The grayscale frame.
+	 * @param times	The timing statistics of the classifier.
+	 * 
+	 * @return	the detected objects.
+	 */
+	private static final Rect[] detect(CascadeClassifier cc, Mat gray,
+			TimingStatistics times)
+	{
+		MatOfRect objects = new MatOfRect();
+		try {
+			long start = System.nanoTime();
+			cc.detectMultiScale(gray, objects);
+			times.add(System.nanoTime() - start);
+			return objects.toArray();
+		}
+		finally {
+			objects.release();
+		}
+	}
+	
+	
+	/**
+	 * Returns the recall of the candidate classifier; the fraction of the
+	 * reference detections it also finds.
+	 * 
+	 * @return	the recall between zero and one, or one if there were no
+	 * 			reference detections.
+	 */
+	public double getRecall() {
+		return referenceCount > 0l ? matched / (double)referenceCount : 1d;
+	}
+	
+	
+	/**
+	 * Prints the number of frames, the feature type, the detection time and
+	 * the detections per frame of both classifiers, and the speed-up and the
+	 * recall of the candidate.
+	 * 
+	 * @param out	The stream to print to.
+	 */
+	@Override
+	public void printReport(PrintStream out) {
+		out.println(frames + " frame(s)");
+		print(out, reference, referenceTimes, referenceCount);
+		if (candidate == null)
+			return;
+		
+		print(out, candidate, candidateTimes, candidateCount);
+		double avg = candidateTimes.getAverage();
+		double ref = referenceTimes.getAverage();
+		out.println("\tspeed-up "
+				+ (avg > 0d ? ToolSupport.format(ref / avg) : "-")
+				+ ", recall " + ToolSupport.format(getRecall()));
+	}
+	
+	
+	/**
+	 * Prints a single row of the report.
+	 * 
+	 * @param out	The stream to print to.
+	 * @param info	The description of the classifier.
+	 * @param times	The timing statistics of the classifier.
+	 * @param count	The number of detections of the classifier.
+	 */
+	private final void print(PrintStream out, CascadeInfo info,
+			TimingStatistics times, long count)
+	{
+		out.println(info.getFeatureType() + "\t"
+				+ (int)info.getWindowSize().width + "x"
+				+ (int)info.getWindowSize().height + "\t"
+				+ ToolSupport.format(times.getAverage()) + " ms/frame\t"
+				+ ToolSupport.format(frames > 0 ? count / (double)frames : 0d)
+				+ " detection(s)/frame\t" + info.getPath());
+	}
+	
+	
+	/**
+	 * Returns the description of the classifier at the specified path.
+	 * 
+	 * @param path	The file or resource path of the classifier.
+	 * 
+	 * @return	the {@link CascadeInfo} of the classifier, or {@code null} if
+	 * 			it could not be found.
+	 */
+	private static final CascadeInfo findInfo(String path) {
+		String file = ToolSupport.findClassifier(path);
+		return file != null ? CascadeInfo.read(file) : null;
+	}
+	
+	
+	/**
+	 * Runs the benchmark on the command line.
+	 * 
+	 * @param args	The source, the classifiers or classifier pairs, and
+	 * 				optionally the number of frames.
+	 */
+	public static void main(String[] args) {
+		int limit = 300;
+		int count = args.length;
+		if (count > 2 && "-frames".equals(args[count - 2])) {
+			limit = Integer.parseInt(args[count - 1]);
+			count -= 2;
+		}
+		
+		if (count < 2) {
+			System.err.println("Usage: ClassifierBenchmark <source> "
+					+ "<classifier>[,<candidate>] ... [-frames n]");
+			System.exit(1);
+		}
+		
+		if (!ToolSupport.loadOpenCv())
+			System.exit(1);
+		
+		ClassifierBenchmark[] benchmarks = new ClassifierBenchmark[count - 1];
+		for (int i = 1; i < count; i++) {
+			String[] pair = args[i].split(",", 2);
+			CascadeInfo ref = findInfo(pair[0]);
+			CascadeInfo cand = pair.length > 1 ? findInfo(pair[1]) : null;
+			if (ref == null || (pair.length > 1 && cand == null))
+				System.exit(1);
+			
+			benchmarks[i - 1] = new ClassifierBenchmark(ref, cand);
+		}
+		
+		if (!ToolSupport.measure(args[0], limit, false, benchmarks))
+			System.exit(1);
+	}
+	
+}
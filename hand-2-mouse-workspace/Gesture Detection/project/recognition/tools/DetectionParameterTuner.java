@@ -0,0 +1,647 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.Config;
+import project.recognition.cascade.JavaCascadeDetector;
+import project.recognition.types.Detections;
+import project.recognition.types.HaarClassifierGesture;
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the tuning of the detection parameters of a
+ * {@link HaarClassifierGesture} on a recorded session. The grayscale frames
+ * of the session are loaded into memory first; the reference detections are
+ * either read from a file of labeled objects, or detected with the default
+ * parameters. Every combination of the candidate scale factors, minimum
+ * numbers of neighbors and object size bounds then detects all of the
+ * frames. The combinations are detected in parallel, each thread with its own
+ * copy of the classifier.
+ * <p>The agreement of a combination with the reference is the harmonic mean
+ * of its recall, the fraction of the reference detections it finds, and its
+ * precision, the fraction of its detections found in the reference. The
+ * combinations which no other combination beats at both the detection time
+ * and the agreement form the Pareto front; of those reaching the minimum
+ * agreement, the fastest is selected and written to the configuration of the
+ * gesture, from which the application applies it on start-up.
+ * <p>The object size bounds are either unbounded, or the range of the sizes
+ * of the reference detections widened by each of the size margins. Since the
+ * combinations are timed concurrently, their times compare with each other,
+ * but are higher than those of a single detection on an idle machine.
+ * <p>Usage:
+ * <pre>DetectionParameterTuner &lt;source&gt; &lt;gesture&gt;=&lt;classifier&gt;[=&lt;labels&gt;]... [-a min-agreement] [-f frames] [-c config]</pre>
+ * where the source is a video file, a directory of numbered images, or a
+ * recorded session, and each gesture is tuned in turn for its classifier, a
+ * file or resource path. The labels file lists one labeled object per line as
+ * {@code frame x y width height}, the frames numbered from zero, and lines
+ * starting with {@code #} are ignored. The minimum agreement defaults to
+ * 0.9, at most 300 frames are loaded and the configuration file defaults to
+ * that of the application.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.Config#applyDetectionParameters(HaarClassifierGesture)
+ */
+public class DetectionParameterTuner implements ToolSupport.ClipMeasurement {
+	
+	
+	/**
+	 * The default candidate scale factors, including the default of the
+	 * classifier.
+	 */
+	public static final double[] DEFAULT_SCALE_FACTORS =
+			{ 1.05d, 1.1d, 1.2d, 1.3d, 1.5d };
+	
+	
+	/**
+	 * The default candidate minimum numbers of neighbors, including the
+	 * default of the classifier.
+	 */
+	public static final int[] DEFAULT_MIN_NEIGHBORS = { 1, 2, 3, 4, 5 };
+	
+	
+	/**
+	 * The default margins the range of the reference object sizes is widened
+	 * by, relative to the smallest and the largest size.
+	 */
+	public static final double[] DEFAULT_SIZE_MARGINS = { 0.5d, 0.25d };
+	
+	
+	// Private member fields.
+	private final String name;
+	private final String classifierPath;
+	private final Rect[][] labels;
+	private final int parallelism;
+	private final List<Candidate> candidates = new ArrayList<Candidate>();
+	private final List<Candidate> front = new ArrayList<Candidate>();
+	
+	// Private member data.
+	private Rect[][] reference = new Rect[0][];
+	private long referenceCount = 0l;
+	private Candidate defaults = null;
+	
+	
+	/**
+	 * Constructor for a new instance of this tuner for the cascade classifier
+	 * of the specified file, detecting the combinations on the specified
+	 * number of threads.
+	 * 
+	 * @param name				The name of the gesture to tune.
+	 * @param classifierPath	The absolute path of the classifier XML file.
+	 * @param labels			The labeled objects of each frame, or
+	 * 							{@code null} to use the detections with the
+	 * 							default parameters as the reference.
+	 * @param parallelism		The number of combinations detected
+	 * 							concurrently.
+	 * 
+	 * @throws IllegalArgumentException if the parallelism is less than one.
+	 */
+	public DetectionParameterTuner(String name, String classifierPath,
+			Rect[][] labels, int parallelism) throws IllegalArgumentException
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("DetectionParameterTuner("
+					+ parallelism + ") parallelism must be at least one.");
+		
+		this.name = name;
+		this.classifierPath = classifierPath;
+		this.labels = labels;
+		this.parallelism = parallelism;
+	}
+	
+	
+	/**
+	 * Detects each of the specified grayscale frames with every combination
+	 * of the candidate parameters and finds the Pareto front of them.
+	 * 
+	 * @param grays	The grayscale frames to detect.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for the
+	 * 			detections.
+	 * @throws ExecutionException if a combination failed to detect.
+	 */
+	@Override
+	public void run(List<Mat> grays)
+			throws InterruptedException, ExecutionException
+	{
+		reference = new Rect[grays.size()][];
+		referenceCount = 0l;
+		if (labels == null) {
+			CascadeClassifier cc = new CascadeClassifier(classifierPath);
+			MatOfRect objects = new MatOfRect();
+			try {
+				for (int f = 0; f < reference.length; f++) {
+					cc.detectMultiScale(grays.get(f), objects,
+							JavaCascadeDetector.DEFAULT_SCALE_FACTOR,
+							JavaCascadeDetector.DEFAULT_MIN_NEIGHBORS, 0,
+							new Size(), new Size());
+					reference[f] = objects.toArray();
+				}
+			}
+			finally {
+				objects.release();
+			}
+		}
+		else {
+			for (int f = 0; f < reference.length; f++)
+				reference[f] = f < labels.length ? labels[f] : new Rect[0];
+		}
+		for (Rect[] shapes : reference)
+			referenceCount += shapes.length;
+		
+		createCandidates();
+		detectCandidates(grays);
+		findParetoFront();
+	}
+	
+	
+	/**
+	 * Creates the combinations of the candidate scale factors, minimum
+	 * numbers of neighbors and object size bounds.
+	 */
+	private final void createCandidates() {
+		List<Size[]> bounds = new ArrayList<Size[]>();
+		bounds.add(new Size[] { null, null });
+		
+		if (referenceCount > 0l) {
+			double minW = Double.MAX_VALUE, minH = Double.MAX_VALUE;
+			double maxW = 0d, maxH = 0d;
+			for (Rect[] shapes : reference) {
+				for (Rect r : shapes) {
+					minW = Math.min(minW, r.width);
+					minH = Math.min(minH, r.height);
+					maxW = Math.max(maxW, r.width);
+					maxH = Math.max(maxH, r.height);
+				}
+			}
+			for (double m : DEFAULT_SIZE_MARGINS) {
+				bounds.add(new Size[] {
+						new Size(Math.floor(minW * (1d - m)),
+								Math.floor(minH * (1d - m))),
+						new Size(Math.ceil(maxW * (1d + m)),
+								Math.ceil(maxH * (1d + m))) });
+			}
+		}
+		
+		candidates.clear();
+		for (double factor : DEFAULT_SCALE_FACTORS) {
+			for (int neighbors : DEFAULT_MIN_NEIGHBORS) {
+				for (Size[] b : bounds) {
+					Candidate c = new Candidate(factor, neighbors, b[0], b[1]);
+					candidates.add(c);
+					if (factor == JavaCascadeDetector.DEFAULT_SCALE_FACTOR
+							&& neighbors
+							== JavaCascadeDetector.DEFAULT_MIN_NEIGHBORS
+							&& b[0] == null)
+						defaults = c;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Detects the frames with each of the combinations, concurrently on a
+	 * pool of threads which share a pool of classifiers, one for each thread.
+	 * 
+	 * @param grays	The grayscale frames to detect.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for the
+	 * 			detections.
+	 * @throws ExecutionException if a combination failed to detect.
+	 */
+	private final void detectCandidates(List<Mat> grays)
+			throws InterruptedException, ExecutionException
+	{
+		BlockingQueue<CascadeClassifier> classifiers =
+				new LinkedBlockingQueue<CascadeClassifier>(parallelism);
+		for (int i = 0; i < parallelism; i++)
+			classifiers.add(new CascadeClassifier(classifierPath));
+		
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (Candidate c : candidates)
+			tasks.add(new CandidateTask(c, grays, classifiers));
+		
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			for (Future<Void> result : pool.invokeAll(tasks))
+				result.get();
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * Finds the combinations on the Pareto front; sorted by their detection
+	 * time, each combination more agreeing than all of the faster ones.
+	 */
+	private final void findParetoFront() {
+		List<Candidate> sorted = new ArrayList<Candidate>(candidates);
+		Collections.sort(sorted, new Comparator<Candidate>() {
+			
+			@Override
+			public int compare(Candidate a, Candidate b) {
+				int c = Double.compare(a.times.getAverage(),
+						b.times.getAverage());
+				return c != 0 ? c : Double.compare(getAgreement(b),
+						getAgreement(a));
+			}
+			
+		});
+		
+		front.clear();
+		double best = -1d;
+		for (Candidate c : sorted) {
+			double agreement = getAgreement(c);
+			if (agreement > best) {
+				front.add(c);
+				best = agreement;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the recall of the specified combination; the fraction of the
+	 * reference detections it finds.
+	 * 
+	 * @param c	The combination.
+	 * 
+	 * @return	the recall between zero and one, or one if there were no
+	 * 			reference detections.
+	 */
+	private final double getRecall(Candidate c) {
+		return referenceCount > 0l ? c.matched / (double)referenceCount : 1d;
+	}
+	
+	
+	/**
+	 * Returns the precision of the specified combination; the fraction of
+	 * its detections found in the reference.
+	 * 
+	 * @param c	The combination.
+	 * 
+	 * @return	the precision between zero and one, or one if it detected
+	 * 			nothing.
+	 */
+	private static final double getPrecision(Candidate c) {
+		return c.detected > 0l ? c.matched / (double)c.detected : 1d;
+	}
+	
+	
+	/**
+	 * Returns the agreement of the specified combination with the reference;
+	 * the harmonic mean of its recall and precision.
+	 * 
+	 * @param c	The combination.
+	 * 
+	 * @return	the agreement between zero and one, or one if neither the
+	 * 			reference nor the combination detected anything.
+	 */
+	private final double getAgreement(Candidate c) {
+		long total = referenceCount + c.detected;
+		return total > 0l ? 2d * c.matched / total : 1d;
+	}
+	
+	
+	/**
+	 * Returns the fastest combination on the Pareto front reaching the
+	 * specified agreement.
+	 * 
+	 * @param minAgreement	The minimum agreement.
+	 * 
+	 * @return	the selected combination, or {@code null} if none reaches the
+	 * 			agreement.
+	 */
+	private final Candidate select(double minAgreement) {
+		for (Candidate c : front) {
+			if (getAgreement(c) >= minAgreement)
+				return c;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns the name of the gesture this tuner tunes.
+	 * 
+	 * @return	the name of the gesture.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	
+	/**
+	 * Sets the parameters of the fastest combination reaching the specified
+	 * agreement on the specified gesture.
+	 * 
+	 * @param gesture		The gesture to set the detection parameters of.
+	 * @param minAgreement	The minimum agreement.
+	 * 
+	 * @return	{@code true} if a combination reaches the agreement;
+	 * 			otherwise, returns {@code false}.
+	 */
+	public boolean apply(HaarClassifierGesture gesture, double minAgreement) {
+		Candidate c = select(minAgreement);
+		if (c == null)
+			return false;
+		
+		gesture.setScaleFactor(c.scaleFactor);
+		gesture.setMinNeighbors(c.minNeighbors);
+		gesture.setMinObjectSize(c.minSize);
+		gesture.setMaxObjectSize(c.maxSize);
+		return true;
+	}
+	
+	
+	/**
+	 * Prints the detection time, the speed-up over the default parameters,
+	 * the recall, the precision and the agreement of each combination on the
+	 * Pareto front.
+	 * 
+	 * @param out	The stream to print to.
+	 */
+	@Override
+	public void printReport(PrintStream out) {
+		double ref = defaults != null ? defaults.times.getAverage() : 0d;
+		out.println(name + " (" + classifierPath + ")");
+		out.println(reference.length + " frame(s), " + referenceCount
+				+ (labels != null ? " labeled object(s), "
+						: " reference detection(s), ")
+				+ ToolSupport.format(ref)
+				+ " ms/frame with the default parameters");
+		out.println(front.size() + " of " + candidates.size()
+				+ " combination(s) on the Pareto front:");
+		out.println("scale\tneighbors\tmin\tmax\tms/frame\tspeed-up\t"
+				+ "recall\tprecision\tagreement");
+		for (Candidate c : front) {
+			double avg = c.times.getAverage();
+			out.println(ToolSupport.format(c.scaleFactor) + "\t"
+					+ c.minNeighbors + "\t\t" + format(c.minSize) + "\t"
+					+ format(c.maxSize) + "\t" + ToolSupport.format(avg)
+					+ "\t\t" + (avg > 0d ? ToolSupport.format(ref / avg) : "-")
+					+ "\t\t" + ToolSupport.format(getRecall(c)) + "\t"
+					+ ToolSupport.format(getPrecision(c)) + "\t\t"
+					+ ToolSupport.format(getAgreement(c)));
+		}
+		out.println();
+	}
+	
+	
+	/**
+	 * Returns the specified object size formatted as its width and height.
+	 * 
+	 * @param size	The object size, or {@code null} if unbounded.
+	 * 
+	 * @return	the formatted size.
+	 */
+	private static final String format(Size size) {
+		return size != null
+				? Math.round(size.width) + "x" + Math.round(size.height) : "-";
+	}
+	
+	
+	/**
+	 * Reads the labeled objects of the frames from the specified file, one
+	 * object per line as {@code frame x y width height}.
+	 * 
+	 * @param file	The labels file.
+	 * 
+	 * @return	the labeled objects of each frame, up to the last labeled
+	 * 			frame.
+	 * 
+	 * @throws IOException if the file could not be read or has an invalid
+	 * 			line.
+	 */
+	static Rect[][] readLabels(File file) throws IOException {
+		List<List<Rect>> frames = new ArrayList<List<Rect>>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				
+				String[] values = line.split("\\s+");
+				try {
+					if (values.length != 5)
+						throw new NumberFormatException();
+					
+					int f = Integer.parseInt(values[0]);
+					while (frames.size() <= f)
+						frames.add(new ArrayList<Rect>());
+					frames.get(f).add(new Rect(Integer.parseInt(values[1]),
+							Integer.parseInt(values[2]),
+							Integer.parseInt(values[3]),
+							Integer.parseInt(values[4])));
+				}
+				catch (NumberFormatException | IndexOutOfBoundsException e) {
+					throw new IOException(file + ":" + lineNumber
+							+ ": expected 'frame x y width height'");
+				}
+			}
+		}
+		
+		Rect[][] labels = new Rect[frames.size()][];
+		for (int f = 0; f < labels.length; f++)
+			labels[f] = frames.get(f).toArray(new Rect[frames.get(f).size()]);
+		return labels;
+	}
+	
+	
+	/**
+	 * Runs the tuning on the command line.
+	 * 
+	 * @param args	The source, the gestures with their classifiers and
+	 * 				labels, and optionally the minimum agreement, the number
+	 * 				of frames and the configuration file.
+	 */
+	public static void main(String[] args) {
+		double minAgreement = 0.9d;
+		int limit = 300;
+		String configPath = ToolSupport.configFileName;
+		List<String[]> gestures = new ArrayList<String[]>();
+		
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-a") && i + 1 < args.length)
+				minAgreement = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-f") && i + 1 < args.length)
+				limit = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-c") && i + 1 < args.length)
+				configPath = args[++i];
+			else if (args[i].indexOf('=') > 0)
+				gestures.add(args[i].split("=", 3));
+		}
+		
+		if (args.length < 2 || gestures.isEmpty()) {
+			System.err.println("Usage: DetectionParameterTuner <source> "
+					+ "<gesture>=<classifier>[=<labels>]... "
+					+ "[-a min-agreement] [-f frames] [-c config]");
+			System.exit(1);
+		}
+		
+		if (!ToolSupport.loadOpenCv())
+			System.exit(1);
+		
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<DetectionParameterTuner> tuners =
+				new ArrayList<DetectionParameterTuner>();
+		try {
+			for (String[] g : gestures) {
+				String path = ToolSupport.findClassifier(g[1]);
+				if (path == null)
+					continue;
+				
+				Rect[][] labels = g.length > 2
+						? readLabels(new File(g[2])) : null;
+				tuners.add(new DetectionParameterTuner(g[0], path, labels,
+						threads));
+			}
+		}
+		catch (IOException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(1);
+		}
+		
+		if (!ToolSupport.measure(args[0], limit, false,
+				tuners.toArray(new DetectionParameterTuner[tuners.size()])))
+			System.exit(1);
+		
+		Config config = new Config(configPath);
+		int tuned = 0;
+		for (DetectionParameterTuner tuner : tuners) {
+			HaarClassifierGesture gesture =
+					new HaarClassifierGesture(tuner.getName());
+			if (tuner.apply(gesture, minAgreement)) {
+				config.setDetectionParameters(gesture);
+				tuned++;
+				System.out.println(tuner.getName() + ": selected scale factor "
+						+ ToolSupport.format(gesture.getScaleFactor())
+						+ ", minimum neighbors " + gesture.getMinNeighbors()
+						+ ", sizes " + format(gesture.getMinObjectSize())
+						+ " to " + format(gesture.getMaxObjectSize()));
+			}
+			else {
+				System.out.println(tuner.getName() + ": no combination "
+						+ "reaches an agreement of "
+						+ ToolSupport.format(minAgreement) + ".");
+			}
+		}
+		
+		if (tuned > 0) {
+			if (config.save())
+				System.out.println("Wrote the detection parameters of "
+						+ tuned + " gesture(s) to " + configPath);
+			else
+				System.exit(1);
+		}
+	}
+	
+	
+	/**
+	 * Provides a combination of the candidate parameters and the results of
+	 * its detections.
+	 */
+	private static final class Candidate {
+		
+		private final double scaleFactor;
+		private final int minNeighbors;
+		private final Size minSize;
+		private final Size maxSize;
+		private final TimingStatistics times;
+		private long matched = 0l;
+		private long detected = 0l;
+		
+		private Candidate(double scaleFactor, int minNeighbors, Size minSize,
+				Size maxSize)
+		{
+			this.scaleFactor = scaleFactor;
+			this.minNeighbors = minNeighbors;
+			this.minSize = minSize;
+			this.maxSize = maxSize;
+			this.times = new TimingStatistics("scale " + scaleFactor
+					+ ", neighbors " + minNeighbors);
+		}
+		
+	}
+	
+	
+	/**
+	 * Provides the detection of all of the frames with a single combination,
+	 * with a classifier taken from the shared pool.
+	 */
+	private final class CandidateTask implements Callable<Void> {
+		
+		private final Candidate candidate;
+		private final List<Mat> grays;
+		private final BlockingQueue<CascadeClassifier> classifiers;
+		
+		private CandidateTask(Candidate candidate, List<Mat> grays,
+				BlockingQueue<CascadeClassifier> classifiers)
+		{
+			this.candidate = candidate;
+			this.grays = grays;
+			this.classifiers = classifiers;
+		}
+		
+		@Override
+		public Void call() throws InterruptedException {
+			Candidate c = candidate;
+			Size min = c.minSize != null ? c.minSize : new Size();
+			Size max = c.maxSize != null ? c.maxSize : new Size();
+			CascadeClassifier cc = classifiers.take();
+			MatOfRect objects = new MatOfRect();
+			long start;
+			
+			try {
+				for (int f = 0; f < grays.size(); f++) {
+					start = System.nanoTime();
+					cc.detectMultiScale(grays.get(f), objects, c.scaleFactor,
+							c.minNeighbors, 0, min, max);
+					c.times.add(System.nanoTime() - start);
+					
+					Rect[] shapes = objects.toArray();
+					c.detected += shapes.length;
+					c.matched += Detections.countMatches(reference[f], shapes,
+							Detections.DEFAULT_MIN_OVERLAP);
+				}
+			}
+			finally {
+				classifiers.put(cc);
+				objects.release();
+			}
+			return null;
+		}
+		
+	}
+	
+}
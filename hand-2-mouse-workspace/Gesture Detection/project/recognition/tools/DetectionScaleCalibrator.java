@@ -0,0 +1,241 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.recognition.FrameContext;
+import project.recognition.types.Detections;
+import project.recognition.types.HaarClassifierGesture;
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the calibration of the detection scale of a
+ * {@link HaarClassifierGesture} on a recorded clip. Every frame of the clip is
+ * detected at the full resolution, as the reference, and at each of the
+ * candidate scales; the recall of a scale is the fraction of the reference
+ * detections it still finds. The smallest scale whose recall is within the
+ * tolerance is the one to use. The frames are loaded into memory first.
+ * <p>Usage:
+ * <pre>DetectionScaleCalibrator &lt;source&gt; &lt;classifier&gt; [tolerance] [min-scale] [step] [frames]</pre>
+ * where the source is a video file, a directory of numbered images, or a
+ * recorded session, and the classifier is a file or resource path. The
+ * tolerance defaults to 0.05, the minimum scale to 0.25 and the step between
+ * the candidate scales to 0.05; the scale of one half is always included. At
+ * most 300 frames are loaded unless specified otherwise.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.HaarClassifierGesture#setDetectionScale(double)
+ */
+public class DetectionScaleCalibrator implements ToolSupport.ClipMeasurement {
+	
+	
+	// Private member fields.
+	private final HaarClassifierGesture gesture;
+	private final double[] scales;
+	private final long[] matched;
+	private final TimingStatistics[] times;
+	private final TimingStatistics referenceTime =
+			new TimingStatistics("scale 1.0");
+	
+	// Private member data.
+	private long referenceCount = 0l;
+	private long frames = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this calibration of the specified
+	 * classifier at the specified candidate scales.
+	 * 
+	 * @param cc		The cascade classifier to calibrate.
+	 * @param scales	The candidate detection scales, each greater than zero
+	 * 					and at most one.
+	 */
+	public DetectionScaleCalibrator(CascadeClassifier cc, double[] scales) {
+		this.gesture = new HaarClassifierGesture("calibration");
+		this.gesture.setClassifier(cc);
+		this.scales = scales.clone();
+		this.matched = new long[scales.length];
+		this.times = new TimingStatistics[scales.length];
+		for (int i = 0; i < scales.length; i++)
+			times[i] = new TimingStatistics("scale " + scales[i]);
+	}
+	
+	
+	/**
+	 * Detects each of the specified BGR frames at the full resolution and at
+	 * each of the candidate scales.
+	 * 
+	 * @param images	The BGR frames to detect.
+	 */
+	@Override
+	public void run(List<Mat> images) {
+		FrameContext context = new FrameContext();
+		long start;
+		
+		try {
+			for (Mat frame : images) {
+				context.reset(frame);
+				
+				gesture.setDetectionScale(1d);
+				start = System.nanoTime();
+				gesture.detect(context);
+				referenceTime.add(System.nanoTime() - start);
+				Rect[] reference = gesture.getDetections();
+				referenceCount += reference.length;
+				
+				for (int i = 0; i < scales.length; i++) {
+					gesture.setDetectionScale(scales[i]);
+					start = System.nanoTime();
+					gesture.detect(context);
+					times[i].add(System.nanoTime() - start);
+					matched[i] += Detections.countMatches(reference,
+							gesture.getDetections(),
+							Detections.DEFAULT_MIN_OVERLAP);
+				}
+				frames++;
+			}
+		}
+		finally {
+			context.release();
+		}
+	}
+	
+	
+	/**
+	 * Returns the recall of the candidate scale at the specified index; the
+	 * fraction of the reference detections found at that scale.
+	 * 
+	 * @param index	The index of the candidate scale.
+	 * 
+	 * @return	the recall between zero and one, or one if there were no
+	 * 			reference detections.
+	 */
+	public double getRecall(int index) {
+		return referenceCount > 0l
+				? matched[index] / (double)referenceCount : 1d;
+	}
+	
+	
+	/**
+	 * Returns the smallest candidate scale whose recall is within the
+	 * specified tolerance of the full resolution detection.
+	 * 
+	 * @param tolerance	The acceptable loss of recall, between zero and one.
+	 * 
+	 * @return	the smallest acceptable scale, or one if none is acceptable.
+	 */
+	public double getSmallestScale(double tolerance) {
+		double best = 1d;
+		for (int i = 0; i < scales.length; i++) {
+			if (scales[i] < best && getRecall(i) >= 1d - tolerance)
+				best = scales[i];
+		}
+		return best;
+	}
+	
+	
+	/**
+	 * Prints the recall and the detection time of each candidate scale.
+	 * 
+	 * @param out	The stream to print to.
+	 */
+	@Override
+	public void printReport(PrintStream out) {
+		out.println(frames + " frame(s), " + referenceCount
+				+ " reference detection(s) at "
+				+ ToolSupport.format(referenceTime.getAverage())
+				+ " ms/frame");
+		out.println("scale\trecall\tms/frame\tspeed-up");
+		double ref = referenceTime.getAverage();
+		for (int i = 0; i < scales.length; i++) {
+			double avg = times[i].getAverage();
+			out.println(ToolSupport.format(scales[i]) + "\t"
+					+ ToolSupport.format(getRecall(i)) + "\t"
+					+ ToolSupport.format(avg) + "\t\t"
+					+ (avg > 0d ? ToolSupport.format(ref / avg) : "-"));
+		}
+	}
+	
+	
+	/**
+	 * Returns the candidate scales from one step below one down to the
+	 * minimum scale, always including one half.
+	 * 
+	 * @param minScale	The smallest candidate scale.
+	 * @param step		The step between the candidate scales.
+	 * 
+	 * @return	the candidate scales in descending order.
+	 */
+	static double[] candidateScales(double minScale, double step) {
+		int n = (int)Math.floor((1d - minScale) / step + 1e-9);
+		double[] tmp = new double[n + 1];
+		int count = 0;
+		boolean hasHalf = false;
+		
+		for (int i = 1; i <= n; i++) {
+			double s = Math.round((1d - i * step) * 1e6) / 1e6;
+			if (s == 0.5d)
+				hasHalf = true;
+			if (s > 0d)
+				tmp[count++] = s;
+		}
+		if (!hasHalf && minScale <= 0.5d) {
+			int i = count;
+			while (i > 0 && tmp[i - 1] < 0.5d) {
+				tmp[i] = tmp[i - 1];
+				i--;
+			}
+			tmp[i] = 0.5d;
+			count++;
+		}
+		
+		double[] result = new double[count];
+		System.arraycopy(tmp, 0, result, 0, count);
+		return result;
+	}
+	
+	
+	/**
+	 * Runs the calibration on the command line.
+	 * 
+	 * @param args	The source, the classifier, and optionally the tolerance,
+	 * 				the minimum scale, the step and the number of frames.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: DetectionScaleCalibrator <source> "
+					+ "<classifier> [tolerance] [min-scale] [step] [frames]");
+			System.exit(1);
+		}
+		
+		double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.05d;
+		double minScale = args.length > 3 ? Double.parseDouble(args[3]) : 0.25d;
+		double step = args.length > 4 ? Double.parseDouble(args[4]) : 0.05d;
+		int limit = args.length > 5 ? Integer.parseInt(args[5]) : 300;
+		
+		if (!ToolSupport.loadOpenCv())
+			System.exit(1);
+		
+		CascadeClassifier cc = ToolSupport.loadClassifier(args[1]);
+		if (cc == null)
+			System.exit(1);
+		
+		DetectionScaleCalibrator calibrator = new DetectionScaleCalibrator(cc,
+				candidateScales(minScale, step));
+		if (!ToolSupport.measure(args[0], limit, true, calibrator))
+			System.exit(1);
+		
+		System.out.println("Smallest scale within a tolerance of "
+				+ ToolSupport.format(tolerance) + ": "
+				+ calibrator.getSmallestScale(tolerance));
+	}
+	
+}
@@ -0,0 +1,252 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.recognition.cascade.CascadeTruncator;
+import project.recognition.cascade.JavaCascadeDetector;
+import project.recognition.types.Detections;
+import project.recognition.types.TwoTierCascadeDetector;
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the selection of the number of stages of the pre-filter of a
+ * two-tier cascade detection on a recorded clip. The grayscale frames of the
+ * clip are loaded into memory first and detected by the whole cascade, the
+ * reference, and then by the two-tier detection with each number of
+ * pre-filter stages. The recall of a number of stages is the fraction of the
+ * reference detections it still finds; of those reaching the minimum recall,
+ * the fastest is selected.
+ * <p>Usage:
+ * <pre>PrefilterStageSelector &lt;source&gt; &lt;classifier&gt; [min-recall] [frames] [output]</pre>
+ * where the source is a video file, a directory of numbered images, or a
+ * recorded session, and the classifier is a file or resource path. The
+ * minimum recall defaults to 0.95 and at most 300 frames are loaded. When an
+ * output file is specified, the cascade truncated to the selected number of
+ * stages is written to it.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.TwoTierCascadeDetector
+ */
+public class PrefilterStageSelector implements ToolSupport.ClipMeasurement {
+	
+	
+	// Private member fields.
+	private final String classifierPath;
+	private final int maxStages;
+	private final TimingStatistics referenceTimes =
+			new TimingStatistics("whole cascade");
+	private final TimingStatistics[] times;
+	private final double[] searched;
+	private final long[] matched;
+	
+	// Private member data.
+	private long referenceCount = 0l;
+	private int frames = 0;
+	
+	
+	/**
+	 * Constructor for a new instance of this selector for the cascade
+	 * classifier of the specified file, trying from one up to the specified
+	 * number of pre-filter stages.
+	 * 
+	 * @param classifierPath	The absolute path of the classifier XML file.
+	 * @param maxStages			The largest number of pre-filter stages.
+	 */
+	public PrefilterStageSelector(String classifierPath, int maxStages) {
+		this.classifierPath = classifierPath;
+		this.maxStages = maxStages;
+		this.times = new TimingStatistics[maxStages];
+		this.searched = new double[maxStages];
+		this.matched = new long[maxStages];
+		for (int i = 0; i < maxStages; i++)
+			times[i] = new TimingStatistics((i + 1) + " stage(s)");
+	}
+	
+	
+	/**
+	 * Detects each of the specified grayscale frames with the whole cascade
+	 * and with each number of pre-filter stages.
+	 * 
+	 * @param grays	The grayscale frames to detect.
+	 * 
+	 * @throws IOException if the classifier file could not be truncated.
+	 */
+	@Override
+	public void run(List<Mat> grays) throws IOException {
+		CascadeClassifier cc = new CascadeClassifier(classifierPath);
+		Rect[][] reference = new Rect[grays.size()][];
+		MatOfRect objects = new MatOfRect();
+		long start;
+		
+		try {
+			for (int f = 0; f < reference.length; f++) {
+				start = System.nanoTime();
+				cc.detectMultiScale(grays.get(f), objects,
+						JavaCascadeDetector.DEFAULT_SCALE_FACTOR,
+						JavaCascadeDetector.DEFAULT_MIN_NEIGHBORS, 0,
+						new Size(), new Size());
+				referenceTimes.add(System.nanoTime() - start);
+				reference[f] = objects.toArray();
+				referenceCount += reference[f].length;
+			}
+		}
+		finally {
+			objects.release();
+		}
+		frames = reference.length;
+		
+		for (int i = 0; i < maxStages; i++) {
+			TwoTierCascadeDetector detector =
+					new TwoTierCascadeDetector(classifierPath, i + 1);
+			for (int f = 0; f < reference.length; f++) {
+				start = System.nanoTime();
+				Rect[] shapes = detector.detect(grays.get(f), new Size(),
+						new Size());
+				times[i].add(System.nanoTime() - start);
+				matched[i] += Detections.countMatches(reference[f], shapes,
+						Detections.DEFAULT_MIN_OVERLAP);
+			}
+			searched[i] = detector.getSearchedFraction();
+		}
+	}
+	
+	
+	/**
+	 * Returns the recall of the specified number of pre-filter stages; the
+	 * fraction of the reference detections still found with them.
+	 * 
+	 * @param stages	The number of pre-filter stages.
+	 * 
+	 * @return	the recall between zero and one, or one if there were no
+	 * 			reference detections.
+	 */
+	public double getRecall(int stages) {
+		return referenceCount > 0l
+				? matched[stages - 1] / (double)referenceCount : 1d;
+	}
+	
+	
+	/**
+	 * Returns the fastest number of pre-filter stages reaching the specified
+	 * recall.
+	 * 
+	 * @param minRecall	The minimum recall.
+	 * 
+	 * @return	the selected number of stages, or zero if none reaches the
+	 * 			recall or is faster than the whole cascade.
+	 */
+	public int select(double minRecall) {
+		int best = 0;
+		double bestTime = referenceTimes.getAverage();
+		for (int k = 1; k <= maxStages; k++) {
+			double avg = times[k - 1].getAverage();
+			if (getRecall(k) >= minRecall && avg < bestTime) {
+				best = k;
+				bestTime = avg;
+			}
+		}
+		return best;
+	}
+	
+	
+	/**
+	 * Prints the detection time, the speed-up, the searched fraction of the
+	 * frames and the recall of each number of pre-filter stages.
+	 * 
+	 * @param out	The stream to print to.
+	 */
+	@Override
+	public void printReport(PrintStream out) {
+		double ref = referenceTimes.getAverage();
+		out.println(frames + " frame(s), " + referenceCount
+				+ " reference detection(s), " + ToolSupport.format(ref)
+				+ " ms/frame with the whole cascade");
+		out.println("stages\tms/frame\tspeed-up\tsearched\trecall");
+		for (int k = 1; k <= maxStages; k++) {
+			double avg = times[k - 1].getAverage();
+			out.println(k + "\t" + ToolSupport.format(avg) + "\t\t"
+					+ (avg > 0d ? ToolSupport.format(ref / avg) : "-") + "\t\t"
+					+ ToolSupport.format(searched[k - 1]) + "\t\t"
+					+ ToolSupport.format(getRecall(k)));
+		}
+	}
+	
+	
+	/**
+	 * Runs the selection on the command line.
+	 * 
+	 * @param args	The source, the classifier, and optionally the minimum
+	 * 				recall, the number of frames and the output file.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: PrefilterStageSelector <source> "
+					+ "<classifier> [min-recall] [frames] [output]");
+			System.exit(1);
+		}
+		
+		double minRecall =
+				args.length > 2 ? Double.parseDouble(args[2]) : 0.95d;
+		int limit = args.length > 3 ? Integer.parseInt(args[3]) : 300;
+		File output = args.length > 4 ? new File(args[4]) : null;
+		
+		if (!ToolSupport.loadOpenCv())
+			System.exit(1);
+		
+		String path = ToolSupport.findClassifier(args[1]);
+		if (path == null)
+			System.exit(1);
+		
+		int stageCount = 0;
+		try {
+			stageCount = CascadeTruncator.getStageCount(path);
+		}
+		catch (IOException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(1);
+		}
+		if (stageCount < 2) {
+			System.err.println(path + " has too few stages to pre-filter.");
+			System.exit(1);
+		}
+		
+		PrefilterStageSelector selector =
+				new PrefilterStageSelector(path, stageCount - 1);
+		if (!ToolSupport.measure(args[0], limit, false, selector))
+			System.exit(1);
+		
+		try {
+			int stages = selector.select(minRecall);
+			if (stages == 0) {
+				System.out.println("No pre-filter reaches a recall of "
+						+ ToolSupport.format(minRecall)
+						+ " faster than the whole cascade.");
+				return;
+			}
+			
+			System.out.println("Selected " + stages + " stage(s)");
+			if (output != null) {
+				CascadeTruncator.truncate(path, stages, output);
+				System.out.println("Wrote " + output.getAbsolutePath());
+			}
+		}
+		catch (IOException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(1);
+		}
+	}
+	
+}
@@ -0,0 +1,216 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import project.recognition.LutSkinClassifier;
+import project.recognition.SkinRegionProposer;
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the benchmark of the {@link LutSkinClassifier} against the
+ * OpenCV path of the skin test, {@code cvtColor} to YCrCb followed by
+ * {@code inRange}, on the same BGR frames of a recorded clip. The frames are
+ * loaded into memory first and classified by both paths with the default
+ * skin bounds; one untimed pass warms up the just-in-time compiler before
+ * the timed passes. The time of the lookup table includes copying the pixels
+ * to and from the images, which is also reported without the copies. The
+ * masks of the OpenCV path are the reference; the mismatch is the fraction
+ * of pixels the lookup table classifies differently.
+ * <p>Usage:
+ * <pre>SkinClassifierBenchmark &lt;source&gt; [frames] [passes] [threads]</pre>
+ * where the source is a video file, a directory of numbered images, or a
+ * recorded session. At most 300 frames are loaded and classified in 5 timed
+ * passes, on as many threads as processors, unless specified otherwise.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.LutSkinClassifier
+ */
+public class SkinClassifierBenchmark implements ToolSupport.ClipMeasurement {
+	
+	
+	// Private member fields.
+	private final LutSkinClassifier classifier;
+	private final int passes;
+	private final Mat ycrcb = new Mat();
+	private final Mat reference = new Mat();
+	private final Mat mask = new Mat();
+	private final Mat diff = new Mat();
+	private final TimingStatistics opencvTimes =
+			new TimingStatistics("OpenCV");
+	private final TimingStatistics lutTimes =
+			new TimingStatistics("lookup table");
+	
+	// Private member data.
+	private long pixels = 0l;
+	private long mismatched = 0l;
+	private int frames = 0;
+	
+	
+	/**
+	 * Constructor for a new instance of this benchmark of the specified
+	 * classifier with the specified number of timed passes.
+	 * 
+	 * @param classifier	The lookup table classifier.
+	 * @param passes		The number of timed passes over the frames.
+	 */
+	public SkinClassifierBenchmark(LutSkinClassifier classifier, int passes) {
+		this.classifier = classifier;
+		this.passes = passes;
+	}
+	
+	
+	/**
+	 * Classifies each of the specified BGR frames with both of the paths,
+	 * once untimed and then once per timed pass.
+	 * 
+	 * @param images	The BGR frames to classify.
+	 */
+	@Override
+	public void run(List<Mat> images) {
+		for (Mat image : images)
+			classify(image);
+		
+		opencvTimes.reset();
+		lutTimes.reset();
+		classifier.getClassifyStatistics().reset();
+		pixels = mismatched = 0l;
+		frames = 0;
+		
+		for (int pass = 0; pass < passes; pass++) {
+			for (Mat image : images)
+				classify(image);
+		}
+	}
+	
+	
+	/**
+	 * Classifies a single frame with both of the paths and counts the pixels
+	 * they classify differently.
+	 * 
+	 * @param image	The BGR frame to classify.
+	 */
+	private final void classify(Mat image) {
+		long start = System.nanoTime();
+		Imgproc.cvtColor(image, ycrcb, Imgproc.COLOR_BGR2YCrCb);
+		Core.inRange(ycrcb, classifier.getSkinMin(), classifier.getSkinMax(),
+				reference);
+		opencvTimes.add(System.nanoTime() - start);
+		
+		start = System.nanoTime();
+		classifier.classify(image, mask);
+		lutTimes.add(System.nanoTime() - start);
+		
+		Core.absdiff(reference, mask, diff);
+		pixels += image.total();
+		mismatched += Core.countNonZero(diff);
+		frames++;
+	}
+	
+	
+	/**
+	 * Returns the fraction of the pixels the lookup table classifies
+	 * differently from the OpenCV path.
+	 * 
+	 * @return	the mismatch between zero and one.
+	 */
+	public double getMismatch() {
+		return pixels > 0l ? mismatched / (double)pixels : 0d;
+	}
+	
+	
+	/**
+	 * Prints the classification time per frame of both of the paths, the
+	 * time of building the lookup table, and the speed-up and the mismatch
+	 * of the lookup table.
+	 * 
+	 * @param out	The stream to print to.
+	 */
+	@Override
+	public void printReport(PrintStream out) {
+		out.println(frames + " frame(s), " + classifier);
+		out.println("path\t\tms/frame");
+		print(out, opencvTimes);
+		print(out, lutTimes);
+		out.println("without copies\t" + ToolSupport.format(
+				classifier.getClassifyStatistics().getAverage()));
+		out.println("table build " + ToolSupport.format(
+				classifier.getBuildStatistics().getAverage()) + " ms");
+		double avg = lutTimes.getAverage();
+		out.println("speed-up " + (avg > 0d
+				? ToolSupport.format(opencvTimes.getAverage() / avg) : "-")
+				+ ", mismatch " + ToolSupport.format(100d * getMismatch())
+				+ "%");
+	}
+	
+	
+	/**
+	 * Prints a single row of the report.
+	 * 
+	 * @param out	The stream to print to.
+	 * @param times	The timing statistics of the path.
+	 */
+	private static final void print(PrintStream out, TimingStatistics times) {
+		out.println(times.getName() + "\t" + (times.getName().length() < 8
+				? "\t" : "") + ToolSupport.format(times.getAverage()));
+	}
+	
+	
+	/**
+	 * Releases the native memory of the images of this benchmark.
+	 */
+	public void release() {
+		ycrcb.release();
+		reference.release();
+		mask.release();
+		diff.release();
+	}
+	
+	
+	/**
+	 * Runs the benchmark on the command line.
+	 * 
+	 * @param args	The source, and optionally the number of frames, of timed
+	 * 				passes and of threads.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: SkinClassifierBenchmark <source> "
+					+ "[frames] [passes] [threads]");
+			System.exit(1);
+		}
+		
+		int limit = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+		int passes = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int threads = args.length > 3 ? Integer.parseInt(args[3])
+				: Runtime.getRuntime().availableProcessors();
+		
+		if (!ToolSupport.loadOpenCv())
+			System.exit(1);
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		SkinClassifierBenchmark benchmark = new SkinClassifierBenchmark(
+				new LutSkinClassifier(SkinRegionProposer.DEFAULT_SKIN_MIN,
+						SkinRegionProposer.DEFAULT_SKIN_MAX, pool), passes);
+		boolean measured;
+		try {
+			measured = ToolSupport.measure(args[0], limit, true, benchmark);
+		}
+		finally {
+			benchmark.release();
+			pool.shutdown();
+		}
+		if (!measured)
+			System.exit(1);
+	}
+	
+}
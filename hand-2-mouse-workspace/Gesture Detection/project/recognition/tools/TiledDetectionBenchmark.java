@@ -0,0 +1,189 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import project.recognition.types.Detections;
+import project.recognition.types.TiledCascadeDetector;
+import project.util.TimingStatistics;
+
+/**
+ * <p>Provides the benchmark of the tiled, multi-threaded detection of a
+ * cascade classifier against the number of tiles. The grayscale frames of a
+ * recorded clip are loaded into memory first, so reading and decoding the
+ * clip isn't measured, and are then detected with each tile count; a single
+ * tile, the whole frame at once, is the reference. The recall of a tile
+ * count is the fraction of the reference detections it still finds, which
+ * shows whether the tile seams lose any objects.
+ * <p>Usage:
+ * <pre>TiledDetectionBenchmark &lt;source&gt; &lt;classifier&gt; [max-tiles] [overlap] [frames]</pre>
+ * where the source is a video file, a directory of numbered images, or a
+ * recorded session, and the classifier is a file or resource path. The tile
+ * counts run from one to the maximum, by default the number of available
+ * processors; the overlap of the tiles defaults to half of the smaller
+ * dimension of the frames and at most 300 frames are loaded.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.TiledCascadeDetector
+ */
+public class TiledDetectionBenchmark implements ToolSupport.ClipMeasurement {
+	
+	
+	// Private member fields.
+	private final TiledCascadeDetector detector;
+	private final int[] tileCounts;
+	private final int overlap;
+	private final long[] matched;
+	private final TimingStatistics[] times;
+	
+	// Private member data.
+	private long referenceCount = 0l;
+	private int frames = 0;
+	
+	
+	/**
+	 * Constructor for a new instance of this benchmark of the specified
+	 * detector with the specified tile counts and overlap.
+	 * 
+	 * @param detector		The tiled detector to benchmark.
+	 * @param tileCounts	The tile counts to compare with a single tile.
+	 * @param overlap		The size the tiles overlap by, or zero to use half
+	 * 						of the smaller dimension of the frames.
+	 */
+	public TiledDetectionBenchmark(TiledCascadeDetector detector,
+			int[] tileCounts, int overlap)
+	{
+		this.detector = detector;
+		this.tileCounts = tileCounts.clone();
+		this.overlap = overlap;
+		this.matched = new long[tileCounts.length];
+		this.times = new TimingStatistics[tileCounts.length];
+		for (int i = 0; i < tileCounts.length; i++)
+			times[i] = new TimingStatistics(tileCounts[i] + " tile(s)");
+	}
+	
+	
+	/**
+	 * Detects each of the specified grayscale frames with each of the tile
+	 * counts, a single tile being the reference.
+	 * 
+	 * @param grays	The grayscale frames to detect.
+	 */
+	@Override
+	public void run(List<Mat> grays) {
+		long start;
+		
+		for (Mat gray : grays) {
+			int window = overlap > 0 ? overlap
+					: Math.max(1, Math.min(gray.cols(), gray.rows()) / 2);
+			
+			Rect[] reference = null;
+			for (int i = 0; i < tileCounts.length; i++) {
+				start = System.nanoTime();
+				Rect[] shapes = detector.detect(gray, tileCounts[i], window);
+				times[i].add(System.nanoTime() - start);
+				
+				if (reference == null) {
+					reference = tileCounts[i] == 1 ? shapes
+							: detector.detect(gray, 1, window);
+					referenceCount += reference.length;
+				}
+				matched[i] += Detections.countMatches(reference, shapes,
+						Detections.DEFAULT_MIN_OVERLAP);
+			}
+			frames++;
+		}
+	}
+	
+	
+	/**
+	 * Returns the recall of the tile count at the specified index; the
+	 * fraction of the single tile detections found with that count.
+	 * 
+	 * @param index	The index of the tile count.
+	 * 
+	 * @return	the recall between zero and one, or one if there were no
+	 * 			reference detections.
+	 */
+	public double getRecall(int index) {
+		return referenceCount > 0l
+				? matched[index] / (double)referenceCount : 1d;
+	}
+	
+	
+	/**
+	 * Prints the detection time, the speed-up and the recall of each tile
+	 * count.
+	 * 
+	 * @param out	The stream to print to.
+	 */
+	@Override
+	public void printReport(PrintStream out) {
+		out.println(frames + " frame(s), " + referenceCount
+				+ " reference detection(s), " + detector.getParallelism()
+				+ " thread(s)");
+		out.println("tiles\tms/frame\tspeed-up\trecall");
+		double ref = times[0].getAverage();
+		for (int i = 0; i < tileCounts.length; i++) {
+			double avg = times[i].getAverage();
+			out.println(tileCounts[i] + "\t" + ToolSupport.format(avg) + "\t\t"
+					+ (avg > 0d ? ToolSupport.format(ref / avg) : "-") + "\t\t"
+					+ ToolSupport.format(getRecall(i)));
+		}
+	}
+	
+	
+	/**
+	 * Runs the benchmark on the command line.
+	 * 
+	 * @param args	The source, the classifier, and optionally the maximum
+	 * 				number of tiles, the largest window and the number of
+	 * 				frames.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: TiledDetectionBenchmark <source> "
+					+ "<classifier> [max-tiles] [overlap] [frames]");
+			System.exit(1);
+		}
+		
+		int threads = Runtime.getRuntime().availableProcessors();
+		int maxTiles = args.length > 2 ? Integer.parseInt(args[2]) : threads;
+		int overlap = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+		int limit = args.length > 4 ? Integer.parseInt(args[4]) : 300;
+		
+		if (!ToolSupport.loadOpenCv())
+			System.exit(1);
+		
+		String path = ToolSupport.findClassifier(args[1]);
+		if (path == null)
+			System.exit(1);
+		
+		int[] tileCounts = new int[Math.max(1, maxTiles)];
+		for (int i = 0; i < tileCounts.length; i++)
+			tileCounts[i] = i + 1;
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		TiledCascadeDetector detector = new TiledCascadeDetector(path, pool);
+		boolean measured;
+		try {
+			measured = ToolSupport.measure(args[0], limit, false,
+					new TiledDetectionBenchmark(detector, tileCounts, overlap));
+		}
+		finally {
+			detector.release();
+			pool.shutdown();
+		}
+		if (!measured)
+			System.exit(1);
+	}
+	
+}
@@ -0,0 +1,277 @@
+/**
+ * 
+ */
+package project.recognition.tools;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.Config;
+import project.recognition.FrameContext;
+import project.recognition.source.FrameSource;
+import project.recognition.source.FrameSources;
+import project.recognition.types.HaarClassifierGesture;
+
+/**
+ * Provides the common setup of the command line tools; loading the OpenCV
+ * native library, the cascade classifiers, and the frame sources.
+ * 
+ * @author Chris Hartley
+ */
+final class ToolSupport {
+	
+	
+	/**
+	 * The configuration file holding the path of the OpenCV native library.
+	 */
+	static final String configFileName = "./config.xml";
+	
+	
+	/**
+	 * This class only provides static methods.
+	 */
+	private ToolSupport() { }
+	
+	
+	/**
+	 * Loads the OpenCV native library, either from the
+	 * {@code java.library.path} or from the path in the configuration file of
+	 * the application.
+	 * 
+	 * @return	{@code true} if the library was loaded; otherwise, returns
+	 * 			{@code false}.
+	 */
+	static boolean loadOpenCv() {
+		try {
+			System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+			return true;
+		}
+		catch (UnsatisfiedLinkError ignore) { }
+		
+		Config config = new Config(configFileName);
+		String path = config.getOpenCVlibPath();
+		if (path != null) {
+			try {
+				System.load(path);
+				return true;
+			}
+			catch (UnsatisfiedLinkError usle) {
+				System.err.println("Unable to load '" + path + "': "
+						+ usle.getMessage());
+			}
+		}
+		
+		System.err.println("Unable to load the OpenCV native library '"
+				+ Core.NATIVE_LIBRARY_NAME + "'; add it to the "
+				+ "java.library.path or run the application's configuration "
+				+ "first.");
+		return false;
+	}
+	
+	
+	/**
+	 * Loads the cascade classifier at the specified path; either a file, or a
+	 * resource such as {@code /classifiers/fist.xml}.
+	 * 
+	 * @param path	The file or resource path of the classifier.
+	 * 
+	 * @return	the loaded {@link CascadeClassifier}, or {@code null} if it
+	 * 			could not be loaded.
+	 */
+	static CascadeClassifier loadClassifier(String path) {
+		String file = findClassifier(path);
+		CascadeClassifier cc = file != null
+				? new CascadeClassifier(file) : null;
+		
+		if (cc == null || cc.empty()) {
+			System.err.println("Unable to load the classifier " + path);
+			return null;
+		}
+		return cc;
+	}
+	
+	
+	/**
+	 * Returns the absolute path of the file of the cascade classifier at the
+	 * specified path; either a file, or a resource such as
+	 * {@code /classifiers/fist.xml}.
+	 * 
+	 * @param path	The file or resource path of the classifier.
+	 * 
+	 * @return	the absolute path of the classifier file, or {@code null} if it
+	 * 			could not be found.
+	 */
+	static String findClassifier(String path) {
+		File file = new File(path);
+		String found = file.isFile() ? file.getAbsolutePath()
+				: HaarClassifierGesture.findClassifier(path);
+		
+		if (found == null)
+			System.err.println("Unable to find the classifier " + path);
+		return found;
+	}
+	
+	
+	/**
+	 * Opens the frame source for the specified path.
+	 * 
+	 * @param path	The camera index, or the path of the recording.
+	 * 
+	 * @return	the opened {@link FrameSource}, or {@code null} if it could not
+	 * 			be opened.
+	 * 
+	 * @see project.recognition.source.FrameSources#forPath(String)
+	 */
+	static FrameSource openSource(String path) {
+		FrameSource source = FrameSources.forPath(path);
+		if (!source.open()) {
+			System.err.println("Unable to open " + source);
+			return null;
+		}
+		return source;
+	}
+	
+	
+	/**
+	 * Loads up to the specified number of frames of the recorded clip at the
+	 * specified path into memory, so that reading and decoding the clip isn't
+	 * measured.
+	 * 
+	 * @param path	The path of the recorded clip.
+	 * @param limit	The maximum number of frames to load.
+	 * @param color	Whether to load the BGR images of the frames, rather than
+	 * 				their grayscale images.
+	 * 
+	 * @return	the images of the frames, or {@code null} if the clip could
+	 * 			not be opened.
+	 * 
+	 * @see #release(List)
+	 */
+	static List<Mat> loadClip(String path, int limit, boolean color) {
+		FrameSource source = openSource(path);
+		if (source == null)
+			return null;
+		
+		List<Mat> images = new ArrayList<Mat>();
+		FrameContext context = new FrameContext();
+		Mat frame = new Mat();
+		
+		try {
+			while (images.size() < limit && source.read(frame)) {
+				context.reset(frame);
+				images.add(color ? context.getBGR().clone()
+						: context.getGray().clone());
+			}
+		}
+		finally {
+			context.release();
+			frame.release();
+			source.release();
+		}
+		return images;
+	}
+	
+	
+	/**
+	 * Releases the images of the frames of a clip loaded into memory.
+	 * 
+	 * @param images	The images of the frames.
+	 * 
+	 * @see #loadClip(String, int, boolean)
+	 */
+	static void release(List<Mat> images) {
+		for (Mat image : images)
+			image.release();
+	}
+	
+	
+	/**
+	 * Loads up to the specified number of frames of the recorded clip at the
+	 * specified path into memory, runs each of the specified measurements on
+	 * them and prints its report, and then releases the frames again. The
+	 * failure of a measurement is printed and ends the remaining ones.
+	 * 
+	 * @param path			The path of the recorded clip.
+	 * @param limit			The maximum number of frames to load.
+	 * @param color			Whether to measure the BGR images of the frames,
+	 * 						rather than their grayscale images.
+	 * @param measurements	The measurements to run.
+	 * 
+	 * @return	{@code true} if all of the measurements were run; otherwise,
+	 * 			returns {@code false}.
+	 */
+	static boolean measure(String path, int limit, boolean color,
+			ClipMeasurement... measurements)
+	{
+		List<Mat> images = loadClip(path, limit, color);
+		if (images == null)
+			return false;
+		
+		try {
+			for (ClipMeasurement measurement : measurements) {
+				measurement.run(images);
+				measurement.printReport(System.out);
+			}
+			return true;
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (Exception ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
+		finally {
+			release(images);
+		}
+	}
+	
+	
+	/**
+	 * Returns the specified value formatted with two decimals, as printed in
+	 * the reports of the tools.
+	 * 
+	 * @param value	The value to format.
+	 * 
+	 * @return	the formatted value.
+	 */
+	static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+	
+	
+	/**
+	 * Provides a measurement of a command line tool over the frames of a
+	 * recorded clip loaded into memory.
+	 * 
+	 * @see ToolSupport#measure(String, int, boolean, ClipMeasurement...)
+	 */
+	interface ClipMeasurement {
+		
+		/**
+		 * Runs the measurement over the specified frames.
+		 * 
+		 * @param images	The images of the frames.
+		 * 
+		 * @throws Exception if the measurement failed.
+		 */
+		void run(List<Mat> images) throws Exception;
+		
+		/**
+		 * Prints the report of the measurement.
+		 * 
+		 * @param out	The stream to print to.
+		 */
+		void printReport(PrintStream out);
+		
+	}
+	
+}
@@ -0,0 +1,51 @@
+/**
+ * 
+ */
+package project.recognition.types;
+
+/**
+ * The type of the features a cascade classifier evaluates. Haar-like features
+ * are the slowest to evaluate; the integer local binary patterns (LBP) of
+ * the newer cascade format are several times faster.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.CascadeInfo
+ */
+public enum CascadeFeatureType {
+	
+	HAAR("Haar"),
+	LBP("LBP"),
+	HOG("HOG"),
+	UNKNOWN("unknown");
+	
+	private final String name;
+	
+	private CascadeFeatureType(String name) {
+		this.name = name;
+	}
+	
+	
+	/**
+	 * Returns the feature type with the specified name, as written in the
+	 * {@code featureType} element of a cascade file.
+	 * 
+	 * @param name	The name of the feature type.
+	 * 
+	 * @return	the feature type, or {@link #UNKNOWN} if not recognized.
+	 */
+	public static CascadeFeatureType forName(String name) {
+		for (CascadeFeatureType type : values()) {
+			if (type.name.equalsIgnoreCase(name))
+				return type;
+		}
+		return UNKNOWN;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
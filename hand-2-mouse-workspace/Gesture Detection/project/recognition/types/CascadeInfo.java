@@ -0,0 +1,194 @@
+/**
+ * 
+ */
+package project.recognition.types;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.opencv.core.Size;
+
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the description of a cascade classifier file read from its
+ * header; the type of its features and its window size, the size of the
+ * smallest object it detects. Neither is exposed by the OpenCV classifier
+ * itself.
+ * <p>Both of the file formats are recognized; the old format, converted from
+ * the Haar training, is always of Haar-like features, while the new format
+ * written by the cascade training names its feature type, e.g. LBP.
+ * {@link org.opencv.objdetect.CascadeClassifier} loads either format.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.CascadeFeatureType
+ */
+public class CascadeInfo {
+	
+	
+	/**
+	 * The window size assumed when it can't be read from the file.
+	 */
+	public static final Size DEFAULT_WINDOW_SIZE = new Size(24, 24);
+	
+	
+	/**
+	 * The number of characters of the file searched for the header.
+	 */
+	private static final int headerLength = 4096;
+	
+	
+	/**
+	 * The patterns of the header elements of both of the file formats.
+	 */
+	private static final Pattern legacyPattern =
+			Pattern.compile("opencv-haar-classifier");
+	private static final Pattern legacySizePattern =
+			Pattern.compile("<size>\\s*(\\d+)\\s+(\\d+)\\s*</size>");
+	private static final Pattern featureTypePattern =
+			Pattern.compile("<featureType>\\s*(\\w+)\\s*</featureType>");
+	private static final Pattern widthPattern =
+			Pattern.compile("<width>\\s*(\\d+)\\s*</width>");
+	private static final Pattern heightPattern =
+			Pattern.compile("<height>\\s*(\\d+)\\s*</height>");
+	
+	// Private member fields.
+	private final String path;
+	private final CascadeFeatureType featureType;
+	private final Size windowSize;
+	private final boolean legacy;
+	
+	
+	/**
+	 * Constructor for a new instance of this description.
+	 * 
+	 * @param path			The path of the classifier file.
+	 * @param featureType	The type of the features of the classifier.
+	 * @param windowSize	The window size of the classifier.
+	 * @param legacy		Whether the file is of the old format.
+	 */
+	private CascadeInfo(String path, CascadeFeatureType featureType,
+			Size windowSize, boolean legacy)
+	{
+		this.path = path;
+		this.featureType = featureType;
+		this.windowSize = windowSize;
+		this.legacy = legacy;
+	}
+	
+	
+	/**
+	 * Reads the description of the cascade classifier file at the specified
+	 * path.
+	 * 
+	 * @param path	The path of the classifier XML file.
+	 * 
+	 * @return	the description of the classifier; of an unknown feature type
+	 * 			and the default window size if the file could not be read.
+	 */
+	public static CascadeInfo read(String path) {
+		char[] head = new char[headerLength];
+		int length = 0;
+		FileReader in = null;
+		try {
+			in = new FileReader(path);
+			int n;
+			while (length < head.length
+					&& (n = in.read(head, length, head.length - length)) > 0)
+				length += n;
+		}
+		catch (IOException ioe) {
+			Log.error("Unable to read the cascade header of " + path);
+		}
+		finally {
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException ignore) { }
+		}
+		return parse(path, new String(head, 0, length));
+	}
+	
+	
+	/**
+	 * Parses the description from the header of a cascade classifier file.
+	 * 
+	 * @param path		The path of the classifier file.
+	 * @param header	The beginning of the file.
+	 * 
+	 * @return	the description of the classifier.
+	 */
+	static CascadeInfo parse(String path, String header) {
+		if (legacyPattern.matcher(header).find()) {
+			Matcher m = legacySizePattern.matcher(header);
+			Size size = m.find() ? new Size(Integer.parseInt(m.group(1)),
+					Integer.parseInt(m.group(2))) : DEFAULT_WINDOW_SIZE;
+			return new CascadeInfo(path, CascadeFeatureType.HAAR, size, true);
+		}
+		
+		Matcher type = featureTypePattern.matcher(header);
+		Matcher width = widthPattern.matcher(header);
+		Matcher height = heightPattern.matcher(header);
+		Size size = width.find() && height.find()
+				? new Size(Integer.parseInt(width.group(1)),
+						Integer.parseInt(height.group(1)))
+				: DEFAULT_WINDOW_SIZE;
+		return new CascadeInfo(path, type.find()
+				? CascadeFeatureType.forName(type.group(1))
+				: CascadeFeatureType.UNKNOWN, size, false);
+	}
+	
+	
+	/**
+	 * Returns the path of the classifier file.
+	 * 
+	 * @return	the path of the classifier file.
+	 */
+	public String getPath() {
+		return path;
+	}
+	
+	
+	/**
+	 * Returns the type of the features the classifier evaluates.
+	 * 
+	 * @return	the {@link CascadeFeatureType} of the classifier.
+	 */
+	public CascadeFeatureType getFeatureType() {
+		return featureType;
+	}
+	
+	
+	/**
+	 * Returns the window size of the classifier, the size of the smallest
+	 * object it detects.
+	 * 
+	 * @return	the window size of the classifier.
+	 */
+	public Size getWindowSize() {
+		return windowSize.clone();
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the file is of the old format converted from
+	 * the Haar training; otherwise, returns {@code false}.
+	 * 
+	 * @return	whether the file is of the old format.
+	 */
+	public boolean isLegacyFormat() {
+		return legacy;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[path=" + path + ",features="
+				+ featureType + ",window=" + (int)windowSize.width + "x"
+				+ (int)windowSize.height + "]";
+	}
+	
+}
@@ -0,0 +1,344 @@
+/**
+ * 
+ */
+package project.recognition.types;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the cache of the loaded cascade classifiers, keyed by the hash
+ * of the normalized content of their files, so that a model registered under
+ * several names, or copied to files differing only in their whitespace, is
+ * loaded into native memory once and shared by all of the gestures using it.
+ * The content is normalized by collapsing every run of whitespace into a
+ * single space and trimming it, so line endings and a trailing new line don't
+ * matter.
+ * <p>Each {@link #acquire(String)} of a classifier must be paired with a
+ * {@link #release(CascadeClassifier)} of it; a classifier is dropped from the
+ * cache once no gesture holds it anymore. The native memory of a dropped
+ * classifier is freed by its finalizer, as the OpenCV Java API provides no way
+ * to free it directly.
+ * <p>A shared classifier may be used by gestures detecting concurrently, while
+ * a native classifier must not detect on more than one thread at a time. So
+ * each detection checks out an instance of the classifier through
+ * {@link #checkOut(CascadeClassifier)}, and checks it in again once done;
+ * this is the shared classifier itself while no other thread uses it, or
+ * else an idle copy of it, which is only loaded once the classifier is
+ * actually used by more threads at a time than it has instances.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.HaarClassifierGesture#setClassifier(String)
+ */
+public class ClassifierCache {
+	
+	
+	/**
+	 * The cache shared by all of the gestures.
+	 */
+	private static final ClassifierCache defaultCache = new ClassifierCache();
+	
+	
+	/**
+	 * A cached classifier with its number of holders.
+	 */
+	private static final class Entry {
+		
+		private final String key;
+		private final String path;
+		private final CascadeClassifier classifier;
+		private final long fileSize;
+		private final Deque<CascadeClassifier> idle =
+				new ArrayDeque<CascadeClassifier>();
+		private int references = 0;
+		private int copies = 0;
+		
+		private Entry(String key, String path, CascadeClassifier classifier,
+				long fileSize)
+		{
+			this.key = key;
+			this.path = path;
+			this.classifier = classifier;
+			this.fileSize = fileSize;
+			idle.push(classifier);
+		}
+		
+	}
+	
+	
+	// Private member fields.
+	private final Map<String,Entry> entries = new HashMap<String,Entry>();
+	private final Map<CascadeClassifier,Entry> byClassifier =
+			new IdentityHashMap<CascadeClassifier,Entry>();
+	private final Map<CascadeClassifier,Entry> lent =
+			new IdentityHashMap<CascadeClassifier,Entry>();
+	
+	// Private member data.
+	private long hits = 0l;
+	private long misses = 0l;
+	
+	
+	/**
+	 * Returns the cache shared by all of the gestures.
+	 * 
+	 * @return	the default {@link ClassifierCache}.
+	 */
+	public static ClassifierCache getDefault() {
+		return defaultCache;
+	}
+	
+	
+	/**
+	 * Returns the classifier of the file at the specified path, loading it
+	 * only if no classifier of the same normalized content is cached yet, and
+	 * adds a reference to it.
+	 * 
+	 * @param path	The path of the classifier XML file.
+	 * 
+	 * @return	the shared classifier.
+	 * 
+	 * @throws IOException if the file could not be read, or the classifier
+	 * 			could not be loaded from it.
+	 */
+	public CascadeClassifier acquire(String path) throws IOException {
+		File file = new File(path);
+		byte[] content = Files.readAllBytes(file.toPath());
+		String key = hash(content);
+		
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				Log.debug("Sharing the classifier " + entry.path + " for "
+						+ path + " (" + this + ")");
+			}
+			else {
+				CascadeClassifier cc =
+						new CascadeClassifier(file.getAbsolutePath());
+				if (cc.empty())
+					throw new IOException("Unable to load the classifier "
+							+ path);
+				
+				misses++;
+				entry = new Entry(key, file.getAbsolutePath(), cc,
+						content.length);
+				entries.put(key, entry);
+				byClassifier.put(cc, entry);
+			}
+			entry.references++;
+			return entry.classifier;
+		}
+	}
+	
+	
+	/**
+	 * Removes a reference to the specified classifier, dropping it from the
+	 * cache once it has no references left.
+	 * 
+	 * @param classifier	The classifier returned by {@link #acquire(String)}.
+	 * 
+	 * @return	{@code true} if the classifier was cached; otherwise,
+	 * 			{@code false}.
+	 */
+	public synchronized boolean release(CascadeClassifier classifier) {
+		Entry entry = byClassifier.get(classifier);
+		if (entry == null)
+			return false;
+		
+		if (--entry.references == 0) {
+			entries.remove(entry.key);
+			byClassifier.remove(classifier);
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Checks out an instance of the specified cached classifier for the
+	 * exclusive use of the calling thread; the classifier itself if no other
+	 * thread has it checked out, or else an idle copy of it, loading another
+	 * copy if none is idle. Each check out must be paired with a
+	 * {@link #checkIn(CascadeClassifier)} of the returned instance.
+	 * 
+	 * @param classifier	The classifier returned by {@link #acquire(String)}.
+	 * 
+	 * @return	the instance of the classifier to detect with.
+	 * 
+	 * @throws IOException if a copy of the classifier could not be loaded.
+	 * @throws IllegalArgumentException if the classifier isn't cached.
+	 */
+	public CascadeClassifier checkOut(CascadeClassifier classifier)
+			throws IOException, IllegalArgumentException
+	{
+		Entry entry;
+		synchronized (this) {
+			entry = byClassifier.get(classifier);
+			if (entry == null)
+				throw new IllegalArgumentException("checkOut(" + classifier
+						+ ") requires a cached classifier.");
+			
+			CascadeClassifier instance = entry.idle.poll();
+			if (instance != null) {
+				lent.put(instance, entry);
+				return instance;
+			}
+		}
+		
+		CascadeClassifier copy = new CascadeClassifier(entry.path);
+		if (copy.empty())
+			throw new IOException("Unable to load a copy of the classifier "
+					+ entry.path);
+		
+		synchronized (this) {
+			entry.copies++;
+			lent.put(copy, entry);
+		}
+		return copy;
+	}
+	
+	
+	/**
+	 * Checks in an instance of a classifier returned by
+	 * {@link #checkOut(CascadeClassifier)}, so that other threads may use it.
+	 * The instances of a classifier dropped from the cache meanwhile are
+	 * dropped as well.
+	 * 
+	 * @param instance	The checked out instance of the classifier.
+	 */
+	public synchronized void checkIn(CascadeClassifier instance) {
+		Entry entry = lent.remove(instance);
+		if (entry != null && entries.get(entry.key) == entry)
+			entry.idle.push(instance);
+	}
+	
+	
+	/**
+	 * Returns the hex encoded SHA-256 hash of the normalized content of a
+	 * classifier file.
+	 * 
+	 * @param content	The content of the classifier file.
+	 * 
+	 * @return	the hash of the normalized content.
+	 */
+	public static String hash(byte[] content) {
+		String text = new String(content, StandardCharsets.ISO_8859_1);
+		String normalized = text.trim().replaceAll("\\s+", " ");
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] digest = md.digest(
+					normalized.getBytes(StandardCharsets.ISO_8859_1));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+				sb.append(String.format("%02x", b & 0xff));
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of acquisitions served by an already loaded
+	 * classifier.
+	 * 
+	 * @return	the number of cache hits.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+	
+	
+	/**
+	 * Returns the number of acquisitions which loaded a classifier.
+	 * 
+	 * @return	the number of cache misses.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+	
+	
+	/**
+	 * Returns the number of copies currently loaded of the cached classifiers
+	 * for their concurrent use.
+	 * 
+	 * @return	the number of loaded copies.
+	 */
+	public synchronized int getCopyCount() {
+		int count = 0;
+		for (Entry entry : entries.values())
+			count += entry.copies;
+		return count;
+	}
+	
+	
+	/**
+	 * Returns the number of classifiers currently cached.
+	 * 
+	 * @return	the number of cached classifiers.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	
+	/**
+	 * Returns the number of references currently held to the cached
+	 * classifier.
+	 * 
+	 * @param classifier	The classifier.
+	 * 
+	 * @return	the number of references, or zero if it isn't cached.
+	 */
+	public synchronized int getReferenceCount(CascadeClassifier classifier) {
+		Entry entry = byClassifier.get(classifier);
+		return entry != null ? entry.references : 0;
+	}
+	
+	
+	/**
+	 * Returns the total size of the files of the classifiers currently not
+	 * loaded again because they are shared, i.e. the size of each cached
+	 * classifier's file for each reference beyond its first. The size of its
+	 * file serves as the estimate of the native memory of a classifier.
+	 * 
+	 * @return	the estimated number of bytes of native memory saved.
+	 */
+	public synchronized long getSavedBytes() {
+		long saved = 0l;
+		for (Entry entry : entries.values())
+			saved += entry.fileSize * (entry.references - 1);
+		return saved;
+	}
+	
+	
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+		sb.append("[classifiers=").append(entries.size())
+				.append(",hits=").append(hits)
+				.append(",misses=").append(misses)
+				.append(",saved=").append(getSavedBytes() / 1024)
+				.append("KiB,copies=").append(getCopyCount());
+		for (Entry entry : entries.values())
+			sb.append(',').append(entry.path).append('x')
+					.append(entry.references);
+		return sb.append(']').toString();
+	}
+	
+}
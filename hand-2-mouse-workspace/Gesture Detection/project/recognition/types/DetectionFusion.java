@@ -0,0 +1,261 @@
+/**
+ * 
+ */
+package project.recognition.types;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Rect;
+
+import project.recognition.AbstractGesture;
+import project.recognition.event.FusedGestureEvent;
+
+/**
+ * <p>Provides the fusion of the detections of several
+ * {@link HaarClassifierGesture}s on the same frame, e.g. of the cascades of
+ * a fist and of a palm which often fire on the same hand. The detections of
+ * all of the fused gestures are clustered; two detections join the same
+ * cluster when they overlap by at least the minimum overlap, or one lies
+ * within the other. Each cluster then fires a single
+ * {@link FusedGestureEvent}, on behalf of the gesture which detected it with
+ * the highest confidence, instead of one event per detection.
+ * <p>The overlapping detections are found through a uniform grid whose cells
+ * are as large as the largest detection; the centers of two overlapping
+ * detections then lie in the same or in adjacent cells, so each detection is
+ * only compared with the detections of its neighborhood.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see HaarClassifierGesture#setFused(boolean)
+ */
+public class DetectionFusion {
+	
+	
+	/**
+	 * The default minimum intersection over union of two detections of the
+	 * same object.
+	 */
+	public static final double DEFAULT_MIN_OVERLAP = 0.3d;
+	
+	
+	// Private member data.
+	private double minOverlap = DEFAULT_MIN_OVERLAP;
+	private FusedGestureEvent[] fused = new FusedGestureEvent[0];
+	private long detectionCount = 0l;
+	private long eventCount = 0l;
+	
+	
+	/**
+	 * Fuses the detections of the fused gestures among the specified gestures
+	 * on the last frame and notifies the listeners of the gesture with the
+	 * highest confidence of each fused object.
+	 * 
+	 * @param gestures	The gestures detected on the frame; those which aren't
+	 * 					fused {@link HaarClassifierGesture}s are ignored.
+	 * 
+	 * @return	the events of the fused objects.
+	 */
+	public synchronized FusedGestureEvent[] fuse(AbstractGesture[] gestures) {
+		List<Rect> shapes = new ArrayList<Rect>();
+		List<Double> weights = new ArrayList<Double>();
+		List<HaarClassifierGesture> owners =
+				new ArrayList<HaarClassifierGesture>();
+		for (AbstractGesture g : gestures) {
+			if (!(g instanceof HaarClassifierGesture)
+					|| !((HaarClassifierGesture)g).isFused())
+				continue;
+			
+			HaarClassifierGesture hc = (HaarClassifierGesture)g;
+			Rect[] rects = hc.getDetections();
+			double[] c = hc.getConfidences();
+			for (int i = 0; i < rects.length; i++) {
+				shapes.add(rects[i]);
+				weights.add(i < c.length ? c[i] : 0d);
+				owners.add(hc);
+			}
+		}
+		
+		int[] parent = cluster(shapes);
+		int[] best = new int[parent.length];
+		int[] count = new int[parent.length];
+		List<Integer> roots = new ArrayList<Integer>();
+		for (int i = 0; i < parent.length; i++) {
+			int r = Detections.root(parent, i);
+			if (count[r]++ == 0) {
+				roots.add(r);
+				best[r] = i;
+			}
+			else if (weights.get(i) > weights.get(best[r]))
+				best[r] = i;
+		}
+		
+		FusedGestureEvent[] events = new FusedGestureEvent[roots.size()];
+		for (int k = 0; k < events.length; k++) {
+			int r = roots.get(k);
+			int b = best[r];
+			Rect shape = shapes.get(b);
+			HaarClassifierGesture owner = owners.get(b);
+			events[k] = new FusedGestureEvent(owner, 0,
+					owner.getClock().currentTimeMillis(),
+					new Rectangle(shape.x, shape.y, shape.width, shape.height),
+					weights.get(b), count[r]);
+			owner.fireFusedDetection(events[k]);
+		}
+		
+		detectionCount += shapes.size();
+		eventCount += events.length;
+		fused = events;
+		return events.clone();
+	}
+	
+	
+	/**
+	 * Returns the disjoint set forest of the clusters of the specified
+	 * detections, finding the overlapping detections through a uniform grid
+	 * of cells as large as the largest detection.
+	 * 
+	 * @param shapes	The detections to cluster.
+	 * 
+	 * @return	the parents of the detections in the forest.
+	 */
+	private final int[] cluster(List<Rect> shapes) {
+		int[] parent = new int[shapes.size()];
+		int cell = 1;
+		for (int i = 0; i < parent.length; i++) {
+			Rect r = shapes.get(i);
+			cell = Math.max(cell, Math.max(r.width, r.height));
+			parent[i] = i;
+		}
+		
+		Map<Long, List<Integer>> grid = new HashMap<Long, List<Integer>>();
+		for (int i = 0; i < parent.length; i++) {
+			Rect a = shapes.get(i);
+			int gx = (int)Math.floor((a.x + a.width / 2d) / cell);
+			int gy = (int)Math.floor((a.y + a.height / 2d) / cell);
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					List<Integer> neighbors = grid.get(key(gx + dx, gy + dy));
+					if (neighbors == null)
+						continue;
+					
+					for (int j : neighbors) {
+						if (isSameObject(a, shapes.get(j)))
+							parent[Detections.root(parent, j)] =
+									Detections.root(parent, i);
+					}
+				}
+			}
+			
+			Long k = key(gx, gy);
+			List<Integer> members = grid.get(k);
+			if (members == null)
+				grid.put(k, members = new ArrayList<Integer>());
+			members.add(i);
+		}
+		return parent;
+	}
+	
+	
+	/**
+	 * Returns the key of the grid cell at the specified column and row.
+	 * 
+	 * @param gx	The column of the cell.
+	 * @param gy	The row of the cell.
+	 * 
+	 * @return	the key of the cell.
+	 */
+	private static final Long key(int gx, int gy) {
+		return ((long)gx << 32) | (gy & 0xffffffffl);
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the two detections overlap by at least the
+	 * minimum overlap, or one lies within the other; otherwise, returns
+	 * {@code false}.
+	 * 
+	 * @param a	The first detection.
+	 * @param b	The second detection.
+	 * 
+	 * @return	whether the detections are of the same object.
+	 */
+	private final boolean isSameObject(Rect a, Rect b) {
+		return Detections.overlap(a, b) >= minOverlap
+				|| Detections.contains(a, b) || Detections.contains(b, a);
+	}
+	
+	
+	/**
+	 * Returns the events of the objects fused on the last frame.
+	 * 
+	 * @return	the events of the fused objects.
+	 */
+	public synchronized FusedGestureEvent[] getFusedEvents() {
+		return fused.clone();
+	}
+	
+	
+	/**
+	 * Returns the minimum intersection over union of two detections of the
+	 * same object.
+	 * 
+	 * @return	the minimum overlap.
+	 */
+	public synchronized double getMinOverlap() {
+		return minOverlap;
+	}
+	
+	
+	/**
+	 * Sets the minimum intersection over union of two detections of the same
+	 * object; detections lying within another are always of the same object.
+	 * 
+	 * @param overlap	The minimum overlap, greater than zero and at most one.
+	 * 
+	 * @throws IllegalArgumentException if the overlap is not greater than
+	 * 			zero or is greater than one.
+	 */
+	public synchronized void setMinOverlap(double overlap)
+			throws IllegalArgumentException
+	{
+		if (!(overlap > 0d && overlap <= 1d))
+			throw new IllegalArgumentException("setMinOverlap(" + overlap
+					+ ") must be greater than zero and at most one.");
+		
+		minOverlap = overlap;
+	}
+	
+	
+	/**
+	 * Returns the total number of detections of the fused gestures.
+	 * 
+	 * @return	the number of fused detections.
+	 */
+	public synchronized long getDetectionCount() {
+		return detectionCount;
+	}
+	
+	
+	/**
+	 * Returns the total number of events fired for the fused objects; at
+	 * most one per object and frame.
+	 * 
+	 * @return	the number of fired events.
+	 */
+	public synchronized long getEventCount() {
+		return eventCount;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[minOverlap=" + getMinOverlap()
+				+ ",detections=" + getDetectionCount() + ",events="
+				+ getEventCount() + "]";
+	}
+	
+}
@@ -0,0 +1,320 @@
+/**
+ * 
+ */
+package project.recognition.types;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.opencv.core.Rect;
+
+/**
+ * Provides the static helpers for comparing the rectangles of detected
+ * objects, e.g. to measure how many of a reference set of detections are
+ * still found with cheaper detection settings, or to merge the duplicates of
+ * the same object detected on overlapping parts of a frame.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see org.opencv.core.Rect
+ */
+public final class Detections {
+	
+	
+	/**
+	 * The default minimum intersection over union for two detections to be
+	 * considered the same object.
+	 */
+	public static final double DEFAULT_MIN_OVERLAP = 0.5d;
+	
+	
+	/**
+	 * This class only provides static methods.
+	 */
+	private Detections() { }
+	
+	
+	/**
+	 * Returns the intersection over union (IoU) of the two rectangles.
+	 * 
+	 * @param a	The first rectangle.
+	 * @param b	The second rectangle.
+	 * 
+	 * @return	the area of the intersection divided by the area of the union,
+	 * 			between zero and one.
+	 */
+	public static double overlap(Rect a, Rect b) {
+		int x0 = Math.max(a.x, b.x);
+		int y0 = Math.max(a.y, b.y);
+		int x1 = Math.min(a.x + a.width, b.x + b.width);
+		int y1 = Math.min(a.y + a.height, b.y + b.height);
+		if (x1 <= x0 || y1 <= y0)
+			return 0d;
+		
+		double inter = (double)(x1 - x0) * (y1 - y0);
+		double union = (double)a.width * a.height
+				+ (double)b.width * b.height - inter;
+		return union > 0d ? inter / union : 0d;
+	}
+	
+	
+	/**
+	 * Returns the number of the reference detections which are matched by one
+	 * of the candidate detections with at least the specified overlap. Each
+	 * candidate matches at most one reference detection, the one it overlaps
+	 * the most among those not yet matched.
+	 * 
+	 * @param reference		The reference detections.
+	 * @param candidates	The candidate detections.
+	 * @param minOverlap	The minimum intersection over union of a match.
+	 * 
+	 * @return	the number of matched reference detections.
+	 */
+	public static int countMatches(Rect[] reference, Rect[] candidates,
+			double minOverlap)
+	{
+		boolean[] matched = new boolean[reference.length];
+		int count = 0;
+		
+		for (Rect c : candidates) {
+			int best = -1;
+			double bestOverlap = minOverlap;
+			for (int i = 0; i < reference.length; i++) {
+				if (matched[i])
+					continue;
+				
+				double o = overlap(reference[i], c);
+				if (o >= bestOverlap) {
+					best = i;
+					bestOverlap = o;
+				}
+			}
+			
+			if (best >= 0) {
+				matched[best] = true;
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Returns the detections left after non-maximum suppression; a detection
+	 * is dropped when it overlaps a kept detection by more than the specified
+	 * overlap, or lies within it. The classifier doesn't report a confidence
+	 * for its detections, so the larger detections are kept first.
+	 * 
+	 * @param shapes		The detections to suppress the duplicates of.
+	 * @param maxOverlap	The maximum intersection over union of two kept
+	 * 						detections.
+	 * 
+	 * @return	the kept detections, largest first.
+	 */
+	public static Rect[] suppress(Rect[] shapes, double maxOverlap) {
+		Rect[] sorted = shapes.clone();
+		Arrays.sort(sorted, new Comparator<Rect>() {
+			
+			@Override
+			public int compare(Rect a, Rect b) {
+				return Double.compare((double)b.width * b.height,
+						(double)a.width * a.height);
+			}
+			
+		});
+		
+		Rect[] kept = new Rect[sorted.length];
+		int count = 0;
+		for (Rect r : sorted) {
+			boolean duplicate = false;
+			for (int i = 0; i < count && !duplicate; i++) {
+				duplicate = overlap(kept[i], r) > maxOverlap
+						|| contains(kept[i], r);
+			}
+			if (!duplicate)
+				kept[count++] = r;
+		}
+		return Arrays.copyOf(kept, count);
+	}
+	
+	
+	/**
+	 * Returns the detections grouped the way OpenCV groups the candidate
+	 * windows of a cascade; the candidates are partitioned into classes of
+	 * similar rectangles, each class is averaged into a single detection and
+	 * the classes of no more than the specified number of candidates are
+	 * dropped, as are the small classes lying within a stronger one.
+	 * 
+	 * @param shapes		The candidate windows.
+	 * @param minNeighbors	The number of candidates a class needs more than
+	 * 						to be kept.
+	 * @param eps			The relative difference of the sides of two
+	 * 						similar rectangles.
+	 * 
+	 * @return	the grouped detections.
+	 */
+	public static Rect[] group(Rect[] shapes, int minNeighbors, double eps) {
+		if (minNeighbors <= 0 || shapes.length == 0)
+			return shapes.clone();
+		
+		int[] parent = new int[shapes.length];
+		for (int i = 0; i < parent.length; i++)
+			parent[i] = i;
+		for (int i = 0; i < shapes.length; i++) {
+			for (int j = i + 1; j < shapes.length; j++) {
+				if (similar(shapes[i], shapes[j], eps))
+					parent[root(parent, j)] = root(parent, i);
+			}
+		}
+		
+		int[] label = new int[shapes.length];
+		int classes = 0;
+		int[] classOf = new int[shapes.length];
+		Arrays.fill(classOf, -1);
+		for (int i = 0; i < shapes.length; i++) {
+			int r = root(parent, i);
+			if (classOf[r] < 0)
+				classOf[r] = classes++;
+			label[i] = classOf[r];
+		}
+		
+		double[][] sums = new double[classes][4];
+		int[] counts = new int[classes];
+		for (int i = 0; i < shapes.length; i++) {
+			double[] s = sums[label[i]];
+			s[0] += shapes[i].x;
+			s[1] += shapes[i].y;
+			s[2] += shapes[i].width;
+			s[3] += shapes[i].height;
+			counts[label[i]]++;
+		}
+		Rect[] averages = new Rect[classes];
+		for (int c = 0; c < classes; c++) {
+			double[] s = sums[c];
+			averages[c] = new Rect((int)Math.round(s[0] / counts[c]),
+					(int)Math.round(s[1] / counts[c]),
+					(int)Math.round(s[2] / counts[c]),
+					(int)Math.round(s[3] / counts[c]));
+		}
+		
+		Rect[] kept = new Rect[classes];
+		int count = 0;
+		for (int i = 0; i < classes; i++) {
+			int n1 = counts[i];
+			if (n1 <= minNeighbors)
+				continue;
+			
+			Rect r1 = averages[i];
+			boolean inner = false;
+			for (int j = 0; j < classes && !inner; j++) {
+				int n2 = counts[j];
+				if (j == i || n2 <= minNeighbors)
+					continue;
+				
+				Rect r2 = averages[j];
+				int dx = (int)Math.round(r2.width * eps);
+				int dy = (int)Math.round(r2.height * eps);
+				inner = r1.x >= r2.x - dx && r1.y >= r2.y - dy
+						&& r1.x + r1.width <= r2.x + r2.width + dx
+						&& r1.y + r1.height <= r2.y + r2.height + dy
+						&& (n2 > Math.max(3, n1) || n1 < 3);
+			}
+			if (!inner)
+				kept[count++] = r1;
+		}
+		return Arrays.copyOf(kept, count);
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the sides of the two rectangles differ by no
+	 * more than the specified fraction of their average smaller side;
+	 * otherwise, returns {@code false}.
+	 * 
+	 * @param a		The first rectangle.
+	 * @param b		The second rectangle.
+	 * @param eps	The relative difference of the sides.
+	 * 
+	 * @return	whether the rectangles are similar.
+	 */
+	private static boolean similar(Rect a, Rect b, double eps) {
+		double delta = eps * (Math.min(a.width, b.width)
+				+ Math.min(a.height, b.height)) * 0.5d;
+		return Math.abs(a.x - b.x) <= delta
+				&& Math.abs(a.y - b.y) <= delta
+				&& Math.abs(a.x + a.width - b.x - b.width) <= delta
+				&& Math.abs(a.y + a.height - b.y - b.height) <= delta;
+	}
+	
+	
+	/**
+	 * Returns the root of the specified element of a disjoint set forest,
+	 * halving the path to it.
+	 * 
+	 * @param parent	The parents of the elements.
+	 * @param i			The element.
+	 * 
+	 * @return	the root of the element.
+	 */
+	static int root(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+	
+	
+	/**
+	 * Merges the overlapping boxes into their union until none of the
+	 * remaining boxes overlap, e.g. the padded regions around candidate
+	 * objects which are to be searched more closely.
+	 * 
+	 * @param boxes	The boxes to merge; the list is merged in place.
+	 * 
+	 * @return	the merged boxes.
+	 */
+	public static Rect[] merge(List<Rect> boxes) {
+		boolean merged = true;
+		while (merged && boxes.size() > 1) {
+			merged = false;
+			for (int i = 0; i < boxes.size() && !merged; i++) {
+				for (int j = i + 1; j < boxes.size(); j++) {
+					Rect a = boxes.get(i);
+					Rect b = boxes.get(j);
+					if (a.x < b.x + b.width && b.x < a.x + a.width
+							&& a.y < b.y + b.height && b.y < a.y + a.height)
+					{
+						int x0 = Math.min(a.x, b.x);
+						int y0 = Math.min(a.y, b.y);
+						int x1 = Math.max(a.x + a.width, b.x + b.width);
+						int y1 = Math.max(a.y + a.height, b.y + b.height);
+						boxes.set(i, new Rect(x0, y0, x1 - x0, y1 - y0));
+						boxes.remove(j);
+						merged = true;
+						break;
+					}
+				}
+			}
+		}
+		return boxes.toArray(new Rect[boxes.size()]);
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the second rectangle lies completely within the
+	 * first; otherwise, returns {@code false}.
+	 * 
+	 * @param outer	The outer rectangle.
+	 * @param inner	The inner rectangle.
+	 * 
+	 * @return	whether the outer rectangle contains the inner rectangle.
+	 */
+	static boolean contains(Rect outer, Rect inner) {
+		return inner.x >= outer.x && inner.y >= outer.y
+				&& inner.x + inner.width <= outer.x + outer.width
+				&& inner.y + inner.height <= outer.y + outer.height;
+	}
+	
+}
@@ -4,23 +4,106 @@
 package project.recognition.types;
 
 import java.awt.Color;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfInt;
 import org.opencv.core.MatOfRect;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import org.opencv.core.Size;
 import org.opencv.objdetect.CascadeClassifier;
 
 import project.recognition.AbstractGesture;
+import project.recognition.FrameContext;
+import project.recognition.cascade.CascadeBackend;
+import project.recognition.cascade.CascadeTruncator;
+import project.recognition.cascade.CompiledCascades;
+import project.recognition.cascade.JavaCascadeDetector;
+import project.recognition.event.FusedGestureEvent;
+import project.util.TimingStatistics;
 import project.util.logger.Log;
 
 /**
- * Provides an implementation of the {@link AbstractGesture} using Haar-like 
+ * <p>Provides an implementation of the {@link AbstractGesture} using Haar-like 
  * cascading classifiers for the detection method.
+ * <p>In region-of-interest (ROI) tracking mode, once an object was detected,
+ * the following frames are only searched within a window around the last
+ * detection. The window is expanded by a fraction of the object's size plus
+ * the distance the object recently moved per frame, and is shifted in the
+ * direction of that motion. A full frame scan is still done every
+ * {@link #getFullScanInterval()} frames, to pick up any other objects, and
+ * right away whenever the window search misses. The cost of each kind of
+ * search is recorded separately.
+ * <p>The classifier may also run on a downscaled copy of the grayscale frame,
+ * set through {@link #setDetectionScale(double)}, skipping the small scales
+ * where a hand can't physically appear. The downscaled copy is shared by all
+ * gestures using the same scale on the frame, and the detected objects are
+ * mapped back to the full resolution before any event is fired.
+ * <p>With skin gating, set through {@link #setSkinGating(boolean)}, the full
+ * frame scans are replaced by scans of only the regions proposed from the
+ * skin blobs of the frame, see {@link FrameContext#getSkinProposals()}; a
+ * frame without any skin blob doesn't run the classifier at all. The number
+ * of proposed regions and of pixels passed to the classifier are counted.
+ * <p>The classifier may be of either Haar-like or LBP features, in the old or
+ * the new cascade file format; when set from its file, the feature type and
+ * window size are read from it, see {@link #getCascadeInfo()}.
+ * <p>A classifier set from its file is shared, through the
+ * {@link ClassifierCache}, with the other gestures using the same model; each
+ * native detection checks out an instance of it, so the gestures sharing it
+ * still detect concurrently.
+ * <p>Large frames may be split into overlapping tiles, set through
+ * {@link #setTileCount(int)}, which are detected concurrently by a
+ * {@link TiledCascadeDetector}. This requires the classifier to be set from
+ * its file, so that the concurrent tiles can check out copies of it from the
+ * {@link ClassifierCache}.
+ * <p>With adaptive sizing, set through {@link #setAdaptiveSize(boolean)}, the
+ * sizes of the recently tracked objects are kept and the classifier only
+ * searches the scales within the size tolerance of their median, rather than
+ * every scale from its window size up to the whole frame. Each consecutive
+ * frame without a detection widens the bounds by another tolerance, until
+ * they are dropped and all of the scales are searched again.
+ * <p>With scale bands, set through {@link #setScaleBands(int)}, the range of
+ * searched object sizes is split into geometric bands and each frame only
+ * searches the next band in turn, plus the band the tracked object was last
+ * seen in; so the whole range is still covered every so many frames, at a
+ * fraction of the cost per frame.
+ * <p>The classifier is evaluated by OpenCV, or with the Java backend, set
+ * through {@link #setBackend(CascadeBackend)}, by a {@link JavaCascadeDetector}
+ * on the integral images of the frame shared by all of the gestures. The Java
+ * backend requires a classifier file of the old Haar-like format and doesn't
+ * tile; for any other classifier the native backend is used instead.
+ * <p>With a pre-filter, set through {@link #setPrefilterStages(int)}, the full
+ * frame scans of the native backend first run the classifier truncated to
+ * its first stages, and the whole classifier then only searches around the
+ * windows which survived them, see {@link TwoTierCascadeDetector}.
+ * <p>The scale factor and the minimum number of neighbors the classifier is
+ * run with, and the bounds of the object size it searches, may be tuned for
+ * the gesture, see {@link project.recognition.tools.DetectionParameterTuner};
+ * the size bounds limit the adaptive bounds as well.
+ * <p>A fused gesture, set through {@link #setFused(boolean)}, doesn't fire an
+ * event for each of its detections; instead, the {@link DetectionFusion} of
+ * the recognizer clusters the detections of all of the fused gestures on the
+ * frame and fires one event per object, on behalf of the gesture detecting it
+ * with the highest confidence. The native backend measures the confidence of
+ * each detection as the weight of the last stage of the classifier. Since
+ * the native classifier then also returns the windows rejected by one of its
+ * last stages, only the windows which passed all of the stages are kept, so a
+ * fused gesture detects the same objects as an unfused one; this requires the
+ * classifier to be set from its file, to read its number of stages.
  * 
  * @author Chris Hartley
  * @author Adin Miller
@@ -36,8 +119,109 @@ public class HaarClassifierGesture extends AbstractGesture {
 	private static final long serialVersionUID = 6269084053345285341L;
 
 	
+	/**
+	 * The default number of frames between full frame scans in ROI tracking
+	 * mode.
+	 */
+	public static final int DEFAULT_FULL_SCAN_INTERVAL = 10;
+	
+	
+	/**
+	 * The default expansion of the ROI search window on each side, relative
+	 * to the size of the last detection.
+	 */
+	public static final double DEFAULT_ROI_EXPANSION = 0.5d;
+	
+	
+	/**
+	 * The number of frames of recent motion the ROI search window is expanded
+	 * by on each side.
+	 */
+	private static final double motionFactor = 2d;
+	
+	
+	/**
+	 * The default relative tolerance of the object size bounds around the
+	 * median of the recently detected sizes.
+	 */
+	public static final double DEFAULT_SIZE_TOLERANCE = 0.4d;
+	
+	
+	/**
+	 * The number of recently detected object sizes the size bounds are
+	 * derived from.
+	 */
+	private static final int sizeHistoryLength = 8;
+	
+	
+	/**
+	 * The relative overlap of adjacent scale bands, one step of the default
+	 * scale factor of the classifier.
+	 */
+	private static final double bandOverlap = 1.1d;
+	
+	
+	// Private member fields.
+	private final TimingStatistics fullScanTimes =
+			new TimingStatistics("full frame scan");
+	private final TimingStatistics roiScanTimes =
+			new TimingStatistics("ROI scan");
+	private final TimingStatistics proposalScanTimes =
+			new TimingStatistics("proposal scan");
+	
 	// Private member data.
-	private CascadeClassifier cc = null;
+	private volatile CascadeClassifier cc = null;
+	private volatile boolean cachedClassifier = false;
+	private volatile Rect[] detected = new Rect[0];
+	private volatile double[] confidences = new double[0];
+	private final Map<Rect, Double> levelWeights =
+			new IdentityHashMap<Rect, Double>();
+	private volatile boolean fused = false;
+	private volatile boolean roiTracking = false;
+	private volatile int fullScanInterval = DEFAULT_FULL_SCAN_INTERVAL;
+	private volatile double roiExpansion = DEFAULT_ROI_EXPANSION;
+	private volatile double detectionScale = 1d;
+	private volatile boolean skinGating = false;
+	private volatile long proposalCount = 0l;
+	private volatile long scannedPixels = 0l;
+	private volatile int tileCount = 1;
+	private volatile int maxWindowSize = 0;
+	private String classifierPath = null;
+	private TiledCascadeDetector tiled = null;
+	private boolean tiledUnavailable = false;
+	private volatile CascadeInfo info = null;
+	private volatile CascadeBackend backend = CascadeBackend.NATIVE;
+	private JavaCascadeDetector javaDetector = null;
+	private boolean javaUnavailable = false;
+	private FrameContext current = null;
+	private volatile int prefilterStages = 0;
+	private TwoTierCascadeDetector twoTier = null;
+	private boolean twoTierUnavailable = false;
+	private int stageCount = 0;
+	private boolean stageCountUnavailable = false;
+	private volatile boolean adaptiveSize = false;
+	private volatile double sizeTolerance = DEFAULT_SIZE_TOLERANCE;
+	private final int[] recentWidths = new int[sizeHistoryLength];
+	private final int[] recentHeights = new int[sizeHistoryLength];
+	private int recentCount = 0;
+	private int recentIndex = 0;
+	private int consecutiveMisses = 0;
+	private Size minSize = null;
+	private Size maxSize = null;
+	private volatile double scaleFactor =
+			JavaCascadeDetector.DEFAULT_SCALE_FACTOR;
+	private volatile int minNeighbors =
+			JavaCascadeDetector.DEFAULT_MIN_NEIGHBORS;
+	private volatile Size minObjectSize = null;
+	private volatile Size maxObjectSize = null;
+	private volatile int scaleBands = 1;
+	private int bandIndex = 0;
+	private Size[] searchMin = new Size[] { null };
+	private Size[] searchMax = new Size[] { null };
+	private Rect tracked = null;
+	private double velocityX = 0d;
+	private double velocityY = 0d;
+	private int framesSinceFullScan = 0;
 	private Scalar sColor;
 	private Color color;
 	
@@ -91,98 +275,1558 @@ public class HaarClassifierGesture extends AbstractGesture {
 	 */
 	@Override
 	public void detect(Mat matrix) {
+		FrameContext frame = new FrameContext(matrix);
+		try {
+			detect(frame);
+		}
+		finally {
+			frame.release();
+		}
+	}
+	
+	
+	/* (non-Javadoc)
+	 * @see project.recognition.AbstractGesture#detect(project.recognition.FrameContext)
+	 */
+	@Override
+	public void detect(FrameContext frame) {
 		if (cc == null)
 			return;
 		
-		Mat grayImg = new Mat();
-		MatOfRect objects = new MatOfRect();
-		Point pt1 = new Point(0, 0);
-		Point pt2 = new Point(0, 0);
+		current = frame;
+		levelWeights.clear();
 		Point center = new Point(0, 0);
-		Scalar color = null;//TOO_SMALL_OF_AREA_BOX_COLOR;
+		double scale = detectionScale;
+		Mat gray = frame.getScaledGray(scale);
+		Mat img = frame.getImage();
+		Rect[] shapes = null;
+		long start;
+		
+		updateSizeBounds();
+		updateScaleBands(img.cols(), img.rows(), scale);
+		if (roiTracking && tracked != null
+				&& framesSinceFullScan < fullScanInterval)
+		{
+			Rect roi = getSearchWindow(img.cols(), img.rows());
+			if (roi != null) {
+				start = System.nanoTime();
+				shapes = detectIn(gray, roi, scale);
+				roiScanTimes.add(System.nanoTime() - start);
+				framesSinceFullScan++;
+				
+				if (shapes.length == 0)
+					shapes = null;
+			}
+		}
 		
-		Imgproc.cvtColor(matrix, grayImg, Imgproc.COLOR_RGB2GRAY);
-		cc.detectMultiScale(grayImg, objects);
+		if (shapes == null && skinGating) {
+			start = System.nanoTime();
+			shapes = detectInProposals(gray, frame.getSkinProposals(), scale);
+			proposalScanTimes.add(System.nanoTime() - start);
+			framesSinceFullScan = 0;
+		}
+		else if (shapes == null) {
+			start = System.nanoTime();
+			shapes = detectIn(gray, null, scale);
+			fullScanTimes.add(System.nanoTime() - start);
+			framesSinceFullScan = 0;
+		}
+		updateTracking(shapes);
+		updateSizeHistory();
 		
-		Rect[] shapes = objects.toArray();
+		double[] weights = new double[shapes.length];
 		for (int i = 0; i < shapes.length; i++) {
-			pt1 = shapes[i].tl();
-			pt2 = shapes[i].br();
-			
-			color = getHighLightScalar();
-			Core.rectangle(matrix, pt1, pt2, color, 2);
-			
-			center.x = pt1.x + (pt2.x - pt1.x) / 2.0;
-			center.y = pt1.y + (pt2.y - pt1.y) / 2.0; 
+			Double w = levelWeights.get(shapes[i]);
+			weights[i] = w != null ? w : 0d;
+		}
+		levelWeights.clear();
 		
-			Core.circle(matrix, center, 5, convertColorToScalar(Color.YELLOW));
+		for (int i = 0; i < shapes.length && !fused; i++) {
+			center.x = shapes[i].x + shapes[i].width / 2.0;
+			center.y = shapes[i].y + shapes[i].height / 2.0; 
+			
 			fireGestureDetected(0, (int)center.x, (int)center.y);
 		}
+		confidences = weights;
+		detected = shapes;
+		current = null;
 		// TODO: this.notifyGestureListeners(shapes);
 	}
 	
 	
-	public void setHighLightColor(Color color) {
-		this.color = color;
-		this.sColor = convertColorToScalar(color);
+	/**
+	 * Runs the classifier on each of the specified proposed regions of the,
+	 * possibly downscaled, grayscale image. The proposed regions don't
+	 * overlap, so the detected objects are simply collected.
+	 * 
+	 * @param gray		The grayscale image of the frame, downscaled by the
+	 * 					scale.
+	 * @param regions	The proposed regions, in full resolution coordinates.
+	 * @param scale		The factor the grayscale image was downscaled by.
+	 * 
+	 * @return	the detected objects in full resolution coordinates.
+	 */
+	private final Rect[] detectInProposals(Mat gray, Rect[] regions,
+			double scale)
+	{
+		proposalCount += regions.length;
+		if (regions.length == 0)
+			return new Rect[0];
+		
+		List<Rect> shapes = new ArrayList<Rect>();
+		for (Rect region : regions)
+			shapes.addAll(Arrays.asList(detectIn(gray, region, scale)));
+		return shapes.toArray(new Rect[shapes.size()]);
 	}
 	
-	public Color getHighLightColor() {
-		return color;
+	
+	/**
+	 * Runs the classifier on the specified region of the, possibly
+	 * downscaled, grayscale image, or on the whole image, and maps the
+	 * detected objects back to the full resolution coordinates of the frame.
+	 * 
+	 * @param gray	The grayscale image of the frame, downscaled by the scale.
+	 * @param roi	The region to search, in full resolution coordinates, or
+	 * 				{@code null} for the whole image.
+	 * @param scale	The factor the grayscale image was downscaled by.
+	 * 
+	 * @return	the detected objects in full resolution coordinates.
+	 */
+	private final Rect[] detectIn(Mat gray, Rect roi, double scale) {
+		MatOfRect objects = new MatOfRect();
+		Rect window = null;
+		Mat img = gray;
+		
+		if (scale > 1d)
+			scale = 1d;
+		
+		if (roi != null) {
+			int x0 = (int)Math.floor(roi.x * scale);
+			int y0 = (int)Math.floor(roi.y * scale);
+			int x1 = (int)Math.min(gray.cols(),
+					Math.ceil((roi.x + roi.width) * scale));
+			int y1 = (int)Math.min(gray.rows(),
+					Math.ceil((roi.y + roi.height) * scale));
+			if (x1 <= x0 || y1 <= y0)
+				return new Rect[0];
+			
+			window = new Rect(x0, y0, x1 - x0, y1 - y0);
+			img = gray.submat(window);
+		}
+		
+		try {
+			Rect[] shapes;
+			Size[] mins = searchMin;
+			Size[] maxs = searchMax;
+			scannedPixels += img.total();
+			if (mins.length == 1)
+				shapes = detectSizes(img, gray, window, mins[0], maxs[0], scale,
+						objects);
+			else {
+				List<Rect> all = new ArrayList<Rect>();
+				for (int i = 0; i < mins.length; i++)
+					all.addAll(Arrays.asList(detectSizes(img, gray, window,
+							mins[i], maxs[i], scale, objects)));
+				shapes = Detections.suppress(all.toArray(new Rect[all.size()]),
+						Detections.DEFAULT_MIN_OVERLAP);
+			}
+			
+			int dx = window != null ? window.x : 0;
+			int dy = window != null ? window.y : 0;
+			for (Rect r : shapes) {
+				r.x = (int)Math.round((r.x + dx) / scale);
+				r.y = (int)Math.round((r.y + dy) / scale);
+				r.width = (int)Math.round(r.width / scale);
+				r.height = (int)Math.round(r.height / scale);
+			}
+			return shapes;
+		}
+		finally {
+			objects.release();
+			if (window != null)
+				img.release();
+		}
 	}
 	
-	public final Scalar getHighLightScalar() {
-		return sColor;
+	
+	/**
+	 * Runs the classifier on the specified image for the objects within the
+	 * specified sizes, either at once or tiled, or with the Java backend on the
+	 * integral images of the grayscale image.
+	 * 
+	 * @param img		The image to search, a region of the grayscale image.
+	 * @param gray		The grayscale image of the frame, downscaled by the
+	 * 					scale.
+	 * @param window	The region of the grayscale image to search, or
+	 * 					{@code null} for the whole image.
+	 * @param min		The smallest object size in full resolution pixels, or
+	 * 					{@code null} if unbounded.
+	 * @param max		The largest object size in full resolution pixels, or
+	 * 					{@code null} if unbounded.
+	 * @param scale		The factor the grayscale image was downscaled by.
+	 * @param objects	The matrix to collect the detected objects into.
+	 * 
+	 * @return	the detected objects in the coordinates of the image.
+	 */
+	private final Rect[] detectSizes(Mat img, Mat gray, Rect window, Size min,
+			Size max, double scale, MatOfRect objects)
+	{
+		Size scaledMin = scaleSize(min, scale);
+		Size scaledMax = scaleSize(max, scale);
+		
+		FrameContext frame = current;
+		JavaCascadeDetector jd = backend == CascadeBackend.JAVA
+				? getJavaDetector() : null;
+		if (jd != null && frame != null)
+			return jd.detect(frame.getIntegralImages(scale), window, scaledMin,
+					scaledMax, scaleFactor, minNeighbors);
+		
+		int stages = prefilterStages;
+		TwoTierCascadeDetector tt = stages > 0 && window == null
+				? getTwoTierDetector(stages) : null;
+		if (tt != null)
+			return tt.detect(img, scaledMin, scaledMax, scaleFactor,
+					minNeighbors);
+		
+		int tiles = tileCount;
+		TiledCascadeDetector td = tiles > 1 ? getTiledDetector() : null;
+		if (td != null) {
+			int overlap = maxWindowSize > 0
+					? (int)Math.round(maxWindowSize * scale)
+					: Math.min(gray.cols(), gray.rows()) / 2;
+			return td.detect(img, tiles, scaledMin, scaledMax,
+					Math.max(1, overlap), scaleFactor, minNeighbors);
+		}
+		
+		CascadeClassifier classifier = cc;
+		if (classifier == null)
+			return new Rect[0];
+		
+		if (fused)
+			return detectWeighted(classifier, img, scaledMin, scaledMax,
+					objects);
+		
+		runClassifier(classifier, img, scaledMin, scaledMax, objects, null,
+				null);
+		return objects.toArray();
 	}
 	
 	
 	/**
+	 * Runs the native classifier on the specified image, also returning the
+	 * reject levels and the level weights of the detected objects; the weight
+	 * of each object is kept as its confidence until the end of the frame.
+	 * The objects rejected by one of the last stages, which the classifier
+	 * returns along with the accepted ones, are dropped. If the number of
+	 * stages of the classifier is unknown, the objects are detected without
+	 * their weights instead.
 	 * 
-	 * @param cc	The Haar-like cascading classifier to use.
+	 * @param classifier	The cascade classifier to detect with.
+	 * @param img			The image to search.
+	 * @param min			The smallest object size in pixels of the image.
+	 * @param max			The largest object size in pixels of the image.
+	 * @param objects		The matrix to collect the detected objects into.
+	 * 
+	 * @return	the detected objects in the coordinates of the image.
 	 */
-	public void setClassifier(CascadeClassifier cc) {
-		this.cc = cc;
+	private final Rect[] detectWeighted(CascadeClassifier classifier, Mat img,
+			Size min, Size max, MatOfRect objects)
+	{
+		int stages = getStageCount();
+		if (stages <= 0) {
+			runClassifier(classifier, img, min, max, objects, null, null);
+			return objects.toArray();
+		}
+		
+		MatOfInt levels = new MatOfInt();
+		MatOfDouble weights = new MatOfDouble();
+		try {
+			runClassifier(classifier, img, min, max, objects, levels, weights);
+			
+			Rect[] shapes = objects.toArray();
+			int[] l = levels.toArray();
+			double[] w = weights.toArray();
+			List<Rect> accepted = new ArrayList<Rect>(shapes.length);
+			for (int i = 0; i < shapes.length; i++) {
+				if (i >= l.length || l[i] < stages)
+					continue;
+				
+				accepted.add(shapes[i]);
+				levelWeights.put(shapes[i], i < w.length ? w[i] : 0d);
+			}
+			return accepted.toArray(new Rect[accepted.size()]);
+		}
+		finally {
+			levels.release();
+			weights.release();
+		}
 	}
 	
 	
 	/**
+	 * Runs the native classifier on the specified image. A classifier shared
+	 * through the {@link ClassifierCache} is checked out of it, so that the
+	 * gestures sharing it detect concurrently, each with its own instance;
+	 * any other classifier is locked for the detection instead.
 	 * 
-	 * @param ccFileName	The Haar-like cascading classifier XML file to use.
+	 * @param classifier	The cascade classifier to detect with.
+	 * @param img			The image to search.
+	 * @param min			The smallest object size in pixels of the image.
+	 * @param max			The largest object size in pixels of the image.
+	 * @param objects		The matrix to collect the detected objects into.
+	 * @param levels		The matrix to collect the reject levels into, or
+	 * 						{@code null} to only detect the objects.
+	 * @param weights		The matrix to collect the level weights into, or
+	 * 						{@code null} to only detect the objects.
 	 */
-	public void setClassifier(String ccFileName) {
-		setClassifier( loadClassifier(ccFileName) );
+	private final void runClassifier(CascadeClassifier classifier, Mat img,
+			Size min, Size max, MatOfRect objects, MatOfInt levels,
+			MatOfDouble weights)
+	{
+		CascadeClassifier instance = null;
+		if (cachedClassifier) {
+			try {
+				instance = ClassifierCache.getDefault().checkOut(classifier);
+			}
+			catch (IllegalArgumentException ignore) {
+				// The classifier was replaced by one that isn't shared.
+			}
+			catch (IOException ex) {
+				Log.error("Unable to copy the classifier: " + ex.getMessage());
+			}
+		}
+		
+		if (instance == null) {
+			synchronized (classifier) {
+				detectMultiScale(classifier, img, min, max, objects, levels,
+						weights);
+			}
+			return;
+		}
+		
+		try {
+			detectMultiScale(instance, img, min, max, objects, levels,
+					weights);
+		}
+		finally {
+			ClassifierCache.getDefault().checkIn(instance);
+		}
 	}
 	
 	
 	/**
+	 * Runs the specified instance of the native classifier on the specified
+	 * image, with the detection parameters of this gesture.
 	 * 
-	 * @return
+	 * @param instance	The cascade classifier to detect with.
+	 * @param img		The image to search.
+	 * @param min		The smallest object size in pixels of the image.
+	 * @param max		The largest object size in pixels of the image.
+	 * @param objects	The matrix to collect the detected objects into.
+	 * @param levels	The matrix to collect the reject levels into, or
+	 * 					{@code null} to only detect the objects.
+	 * @param weights	The matrix to collect the level weights into, or
+	 * 					{@code null} to only detect the objects.
 	 */
-	public CascadeClassifier getClassifier() {
-		return cc;
+	private final void detectMultiScale(CascadeClassifier instance, Mat img,
+			Size min, Size max, MatOfRect objects, MatOfInt levels,
+			MatOfDouble weights)
+	{
+		if (levels != null && weights != null)
+			instance.detectMultiScale(img, objects, levels, weights,
+					scaleFactor, minNeighbors, 0, min, max, true);
+		else
+			instance.detectMultiScale(img, objects, scaleFactor, minNeighbors,
+					0, min, max);
 	}
 	
 	
 	/**
+	 * Selects the object sizes searched on the current frame. Without scale
+	 * bands, these are the adaptive size bounds, if any. Otherwise, the range
+	 * from the smallest to the largest object size is split into geometric
+	 * bands; the next band in turn is searched, plus the band the tracked
+	 * object was last seen in. Adjacent bands overlap by one scale step, so
+	 * objects on a band boundary aren't missed.
 	 * 
-	 * @param cPath the relative or absolute path to the cascade classifier; the
-	 *              file should be a XML file.
-	 * @return
+	 * @param cols	The width of the frame.
+	 * @param rows	The height of the frame.
+	 * @param scale	The factor the grayscale image is downscaled by.
 	 */
-	public static final CascadeClassifier loadClassifier(String cPath) {
-		try {
-			File f = new File( HaarClassifierGesture.class.getResource(cPath).toURI() );
-			if (f != null && f.canRead())
-				return new CascadeClassifier(f.getAbsolutePath());
+	private final void updateScaleBands(int cols, int rows, double scale) {
+		int bands = scaleBands;
+		CascadeInfo ci = info;
+		Size windowSize = ci != null ? ci.getWindowSize()
+				: CascadeInfo.DEFAULT_WINDOW_SIZE;
+		double aspect = windowSize.height / windowSize.width;
+		double lo = minSize != null ? minSize.width
+				: windowSize.width / Math.min(1d, scale);
+		double hi = maxSize != null ? maxSize.width
+				: Math.min(cols, rows / aspect);
+		
+		if (bands <= 1 || hi <= lo) {
+			searchMin = new Size[] { minSize };
+			searchMax = new Size[] { maxSize };
+			return;
+		}
+		
+		double ratio = Math.pow(hi / lo, 1d / bands);
+		int current = bandIndex = (bandIndex + 1) % bands;
+		int seen = -1;
+		if (tracked != null && tracked.width > 0) {
+			seen = (int)Math.floor(Math.log(tracked.width / lo)
+					/ Math.log(ratio));
+			seen = Math.max(0, Math.min(bands - 1, seen));
+		}
+		
+		int count = seen >= 0 && seen != current ? 2 : 1;
+		Size[] mins = new Size[count];
+		Size[] maxs = new Size[count];
+		for (int i = 0; i < count; i++) {
+			int band = i == 0 ? current : seen;
+			double w0 = lo * Math.pow(ratio, band) / bandOverlap;
+			double w1 = lo * Math.pow(ratio, band + 1) * bandOverlap;
+			mins[i] = new Size(Math.floor(w0), Math.floor(w0 * aspect));
+			maxs[i] = new Size(Math.ceil(w1), Math.ceil(w1 * aspect));
+		}
+		searchMin = mins;
+		searchMax = maxs;
+	}
+	
+	
+	/**
+	 * Returns the specified object size, in full resolution pixels, scaled to
+	 * the downscaled grayscale image.
+	 * 
+	 * @param size	The object size, or {@code null} if unbounded.
+	 * @param scale	The factor the grayscale image was downscaled by.
+	 * 
+	 * @return	the scaled size, or an empty size if unbounded.
+	 */
+	private static final Size scaleSize(Size size, double scale) {
+		if (size == null)
+			return new Size();
+		return new Size(Math.round(size.width * scale),
+				Math.round(size.height * scale));
+	}
+	
+	
+	/**
+	 * Derives the bounds of the object size searched on the current frame
+	 * from the median of the recently detected sizes; the bounds are widened
+	 * by another tolerance for each consecutive frame without a detection,
+	 * and are dropped once the lower bound would reach zero. Either way, the
+	 * bounds are limited to the object size bounds of the gesture.
+	 */
+	private final void updateSizeBounds() {
+		double tolerance = sizeTolerance * (1 + consecutiveMisses);
+		if (!adaptiveSize || recentCount == 0 || tolerance >= 1d) {
+			recentCount = 0;
+			consecutiveMisses = 0;
+			minSize = minObjectSize;
+			maxSize = maxObjectSize;
+			return;
+		}
+		
+		double w = median(recentWidths, recentCount);
+		double h = median(recentHeights, recentCount);
+		minSize = limit(new Size(Math.floor(w * (1d - tolerance)),
+				Math.floor(h * (1d - tolerance))), minObjectSize, true);
+		maxSize = limit(new Size(Math.ceil(w * (1d + tolerance)),
+				Math.ceil(h * (1d + tolerance))), maxObjectSize, false);
+	}
+	
+	
+	/**
+	 * Returns the specified size limited by the specified bound.
+	 * 
+	 * @param size	The size to limit.
+	 * @param bound	The bound, or {@code null} if unbounded.
+	 * @param lower	Whether the bound is a lower bound, rather than an upper
+	 * 				bound.
+	 * 
+	 * @return	the limited size.
+	 */
+	private static final Size limit(Size size, Size bound, boolean lower) {
+		if (bound == null)
+			return size;
+		if (lower)
+			return new Size(Math.max(size.width, bound.width),
+					Math.max(size.height, bound.height));
+		return new Size(Math.min(size.width, bound.width),
+				Math.min(size.height, bound.height));
+	}
+	
+	
+	/**
+	 * Adds the size of the tracked object to the recently detected sizes, or
+	 * counts the miss when nothing was detected on the current frame.
+	 */
+	private final void updateSizeHistory() {
+		if (!adaptiveSize)
+			return;
+		
+		if (tracked == null) {
+			consecutiveMisses++;
+			return;
+		}
+		
+		consecutiveMisses = 0;
+		recentWidths[recentIndex] = tracked.width;
+		recentHeights[recentIndex] = tracked.height;
+		recentIndex = (recentIndex + 1) % sizeHistoryLength;
+		if (recentCount < sizeHistoryLength)
+			recentCount++;
+	}
+	
+	
+	/**
+	 * Returns the median of the first values of the specified array.
+	 * 
+	 * @param values	The values.
+	 * @param count		The number of values to take the median of.
+	 * 
+	 * @return	the median of the values.
+	 */
+	private static final double median(int[] values, int count) {
+		int[] sorted = Arrays.copyOf(values, count);
+		Arrays.sort(sorted);
+		return count % 2 == 1 ? sorted[count / 2]
+				: (sorted[count / 2 - 1] + sorted[count / 2]) / 2d;
+	}
+	
+	
+	/**
+	 * Returns the tiled detector of the classifier of this gesture, creating
+	 * it on first use. If the copies of the classifier can't be loaded, the
+	 * failure is logged once and each scan is detected at once instead.
+	 * 
+	 * @return	the {@link TiledCascadeDetector} of this gesture, or
+	 * 			{@code null} if the classifier wasn't set from its file or
+	 * 			can't be loaded.
+	 */
+	private synchronized final TiledCascadeDetector getTiledDetector() {
+		if (tiled == null && !tiledUnavailable && classifierPath != null) {
+			try {
+				tiled = new TiledCascadeDetector(classifierPath);
+			}
+			catch (IllegalArgumentException ex) {
+				Log.error("Unable to tile the detection, detecting each scan "
+						+ "at once: " + ex.getMessage());
+				tiledUnavailable = true;
+			}
+		}
+		return tiled;
+	}
+	
+	
+	/**
+	 * Returns the Java detector of the classifier of this gesture, loading the
+	 * compiled form of the classifier file on first use, see
+	 * {@link CompiledCascades}. If the file can't be parsed, e.g. it is of
+	 * the new cascade format, the failure is logged once and the native
+	 * backend is used instead.
+	 * 
+	 * @return	the {@link JavaCascadeDetector} of this gesture, or
+	 * 			{@code null} if the classifier can't be evaluated in Java.
+	 */
+	private synchronized final JavaCascadeDetector getJavaDetector() {
+		if (javaDetector == null && !javaUnavailable
+				&& classifierPath != null)
+		{
+			try {
+				javaDetector = new JavaCascadeDetector(
+						CompiledCascades.load(classifierPath));
+			}
+			catch (IOException ex) {
+				Log.error("Unable to evaluate the classifier in Java, using "
+						+ "the native backend: " + ex.getMessage());
+				javaUnavailable = true;
+			}
+		}
+		return javaDetector;
+	}
+	
+	
+	/**
+	 * Returns the number of stages of the classifier of this gesture, reading
+	 * it from the classifier file on first use. If the file can't be read,
+	 * the failure is logged once.
+	 * 
+	 * @return	the number of stages, or zero if the classifier wasn't set
+	 * 			from its file or its stages can't be read.
+	 */
+	private synchronized final int getStageCount() {
+		if (stageCount == 0 && !stageCountUnavailable && classifierPath != null)
+		{
+			try {
+				stageCount = CascadeTruncator.getStageCount(classifierPath);
+			}
+			catch (IOException ex) {
+				Log.error("Unable to read the stages of the classifier, "
+						+ "detecting without confidences: " + ex.getMessage());
+				stageCountUnavailable = true;
+			}
+		}
+		return stageCount;
+	}
+	
+	
+	/**
+	 * Returns the two-tier detector of the classifier of this gesture with the
+	 * specified number of pre-filter stages, creating it on first use. If the
+	 * classifier can't be truncated, the failure is logged once and the full
+	 * frame is scanned by the whole classifier instead.
+	 * 
+	 * @param stages	The number of stages of the pre-filter.
+	 * 
+	 * @return	the {@link TwoTierCascadeDetector} of this gesture, or
+	 * 			{@code null} if the classifier wasn't set from its file or
+	 * 			can't be truncated.
+	 */
+	private synchronized final TwoTierCascadeDetector getTwoTierDetector(
+			int stages)
+	{
+		if (twoTier != null && twoTier.getStages() != stages) {
+			twoTier = null;
+			twoTierUnavailable = false;
+		}
+		
+		if (twoTier == null && !twoTierUnavailable && classifierPath != null) {
+			try {
+				twoTier = new TwoTierCascadeDetector(classifierPath, stages);
+			}
+			catch (IOException | IllegalArgumentException ex) {
+				Log.error("Unable to pre-filter the classifier with " + stages
+						+ " stage(s): " + ex.getMessage());
+				twoTierUnavailable = true;
+			}
+		}
+		return twoTier;
+	}
+	
+	
+	/**
+	 * Updates the tracked object with the specified detections; the detection
+	 * closest to the previously tracked object is followed, or the largest one
+	 * when nothing was tracked. The recent motion is smoothed over the frames.
+	 * 
+	 * @param shapes	The objects detected on the current frame.
+	 */
+	private final void updateTracking(Rect[] shapes) {
+		if (shapes.length == 0) {
+			tracked = null;
+			velocityX = velocityY = 0d;
+			return;
+		}
+		
+		Rect best = shapes[0];
+		double bestScore = Double.MAX_VALUE;
+		double cx = tracked != null ? tracked.x + tracked.width / 2d : 0d;
+		double cy = tracked != null ? tracked.y + tracked.height / 2d : 0d;
+		for (Rect r : shapes) {
+			double score;
+			if (tracked != null) {
+				double dx = r.x + r.width / 2d - cx;
+				double dy = r.y + r.height / 2d - cy;
+				score = dx * dx + dy * dy;
+			}
 			else
-				Log.error("Unable to read the resource: " + cPath);
+				score = -(double)r.width * r.height;
+			
+			if (score < bestScore) {
+				bestScore = score;
+				best = r;
+			}
 		}
-		catch (NullPointerException npe) {
-			Log.error("Could not locate resource: [classifier] " + cPath);
-			Log.error(" -- Current resource path: " + HaarClassifierGesture.class.getName());
+		
+		if (tracked != null) {
+			velocityX = (velocityX + best.x + best.width / 2d - cx) / 2d;
+			velocityY = (velocityY + best.y + best.height / 2d - cy) / 2d;
 		}
-		catch (Exception ex) {
-			Log.error("Unable to load resource: [classifier] " + cPath);
+		tracked = best;
+	}
+	
+	
+	/**
+	 * Returns the ROI search window around the tracked object, shifted by its
+	 * recent motion and expanded by its size and the recent motion, clipped to
+	 * the frame.
+	 * 
+	 * @param cols	The width of the frame.
+	 * @param rows	The height of the frame.
+	 * 
+	 * @return	the search window, or {@code null} if it is outside the frame.
+	 */
+	private final Rect getSearchWindow(int cols, int rows) {
+		double size = Math.max(tracked.width, tracked.height) * roiExpansion;
+		double mx = size + motionFactor * Math.abs(velocityX);
+		double my = size + motionFactor * Math.abs(velocityY);
+		
+		int x0 = (int)Math.max(0d, Math.floor(tracked.x + velocityX - mx));
+		int y0 = (int)Math.max(0d, Math.floor(tracked.y + velocityY - my));
+		int x1 = (int)Math.min(cols, Math.ceil(tracked.x + tracked.width
+				+ velocityX + mx));
+		int y1 = (int)Math.min(rows, Math.ceil(tracked.y + tracked.height
+				+ velocityY + my));
+		
+		if (x1 <= x0 || y1 <= y0)
+			return null;
+		return new Rect(x0, y0, x1 - x0, y1 - y0);
+	}
+	
+	
+	/* (non-Javadoc)
+	 * @see project.recognition.AbstractGesture#paintDetection(org.opencv.core.Mat)
+	 */
+	@Override
+	public void paintDetection(Mat matrix) {
+		Rect[] shapes = detected;
+		Point pt1, pt2;
+		Point center = new Point(0, 0);
+		Scalar color = getHighLightScalar();
+		
+		for (int i = 0; i < shapes.length; i++) {
+			pt1 = shapes[i].tl();
+			pt2 = shapes[i].br();
+			
+			Core.rectangle(matrix, pt1, pt2, color, 2);
+			
+			center.x = pt1.x + (pt2.x - pt1.x) / 2.0;
+			center.y = pt1.y + (pt2.y - pt1.y) / 2.0; 
+		
+			Core.circle(matrix, center, 5, convertColorToScalar(Color.YELLOW));
+		}
+	}
+	
+	
+	/**
+	 * Returns {@code true} if this gesture searches only a window around its
+	 * last detection, rather than the full frame, on most frames; otherwise,
+	 * returns {@code false}.
+	 * 
+	 * @return	whether the ROI tracking mode is enabled.
+	 */
+	public boolean isRoiTracking() {
+		return roiTracking;
+	}
+	
+	
+	/**
+	 * Sets whether this gesture searches only a window around its last
+	 * detection, rather than the full frame, on most frames.
+	 * 
+	 * @param roiTracking	{@code true} to enable the ROI tracking mode.
+	 */
+	public void setRoiTracking(boolean roiTracking) {
+		this.roiTracking = roiTracking;
+	}
+	
+	
+	/**
+	 * Returns the number of frames between full frame scans in ROI tracking
+	 * mode.
+	 * 
+	 * @return	the full frame scan interval.
+	 */
+	public int getFullScanInterval() {
+		return fullScanInterval;
+	}
+	
+	
+	/**
+	 * Sets the number of frames between full frame scans in ROI tracking mode.
+	 * 
+	 * @param frames	The full frame scan interval.
+	 * 
+	 * @throws IllegalArgumentException if the interval is less than one.
+	 */
+	public void setFullScanInterval(int frames) throws IllegalArgumentException {
+		if (frames < 1)
+			throw new IllegalArgumentException("setFullScanInterval(" + frames
+					+ ") must be at least one.");
+		
+		fullScanInterval = frames;
+	}
+	
+	
+	/**
+	 * Returns the expansion of the ROI search window on each side, relative
+	 * to the size of the last detection.
+	 * 
+	 * @return	the ROI expansion.
+	 */
+	public double getRoiExpansion() {
+		return roiExpansion;
+	}
+	
+	
+	/**
+	 * Sets the expansion of the ROI search window on each side, relative to
+	 * the size of the last detection.
+	 * 
+	 * @param expansion	The ROI expansion.
+	 * 
+	 * @throws IllegalArgumentException if the expansion is negative.
+	 */
+	public void setRoiExpansion(double expansion)
+			throws IllegalArgumentException
+	{
+		if (!(expansion >= 0d))
+			throw new IllegalArgumentException("setRoiExpansion(" + expansion
+					+ ") must not be negative.");
+		
+		roiExpansion = expansion;
+	}
+	
+	
+	/**
+	 * Returns the factor, between zero and one, the grayscale frame is
+	 * downscaled by before running the classifier.
+	 * 
+	 * @return	the detection scale.
+	 */
+	public double getDetectionScale() {
+		return detectionScale;
+	}
+	
+	
+	/**
+	 * Sets the factor the grayscale frame is downscaled by before running the
+	 * classifier; a factor of one runs on the full resolution. A factor of
+	 * exactly one half uses the Gaussian pyramid, any other factor area
+	 * interpolation.
+	 * 
+	 * @param scale	The detection scale, greater than zero and at most one.
+	 * 
+	 * @throws IllegalArgumentException if the scale is not greater than zero
+	 * 			or is greater than one.
+	 * 
+	 * @see project.recognition.FrameContext#getScaledGray(double)
+	 */
+	public void setDetectionScale(double scale) throws IllegalArgumentException {
+		if (!(scale > 0d && scale <= 1d))
+			throw new IllegalArgumentException("setDetectionScale(" + scale
+					+ ") must be greater than zero and at most one.");
+		
+		detectionScale = scale;
+	}
+	
+	
+	/**
+	 * Returns a copy of the objects detected on the last frame, in full
+	 * resolution coordinates of the frame.
+	 * 
+	 * @return	the objects detected on the last frame.
+	 */
+	public Rect[] getDetections() {
+		Rect[] shapes = detected;
+		Rect[] copy = new Rect[shapes.length];
+		for (int i = 0; i < shapes.length; i++)
+			copy[i] = shapes[i].clone();
+		return copy;
+	}
+	
+	
+	/**
+	 * Returns the timing statistics of the full frame scans.
+	 * 
+	 * @return	the {@link TimingStatistics} of the full frame scans.
+	 */
+	public final TimingStatistics getFullScanStatistics() {
+		return fullScanTimes;
+	}
+	
+	
+	/**
+	 * Returns the timing statistics of the ROI window scans.
+	 * 
+	 * @return	the {@link TimingStatistics} of the ROI window scans.
+	 */
+	public final TimingStatistics getRoiScanStatistics() {
+		return roiScanTimes;
+	}
+	
+	
+	/**
+	 * Returns the number of overlapping tiles each scan is split into and
+	 * detected concurrently; a value of one detects each scan at once.
+	 * 
+	 * @return	the number of tiles.
+	 */
+	public int getTileCount() {
+		return tileCount;
+	}
+	
+	
+	/**
+	 * Sets the number of overlapping tiles each scan is split into and
+	 * detected concurrently, on the pool shared by all of the tiled
+	 * detections. Tiling only takes effect when the classifier was set from
+	 * its file.
+	 * 
+	 * @param tiles	The number of tiles; one detects each scan at once.
+	 * 
+	 * @throws IllegalArgumentException if the number of tiles is less than
+	 * 			one.
+	 * 
+	 * @see #setClassifier(String)
+	 */
+	public void setTileCount(int tiles) throws IllegalArgumentException {
+		if (tiles < 1)
+			throw new IllegalArgumentException("setTileCount(" + tiles
+					+ ") must be at least one.");
+		
+		tileCount = tiles;
+	}
+	
+	
+	/**
+	 * Returns the size, in pixels of the full resolution frame, of the largest
+	 * object detected within a single tile when tiling; the tiles overlap by
+	 * this size, and the larger objects are searched on the whole frame. A
+	 * size of zero uses half of the smaller dimension of the frame.
+	 * 
+	 * @return	the largest window size of the tiles.
+	 */
+	public int getMaxWindowSize() {
+		return maxWindowSize;
+	}
+	
+	
+	/**
+	 * Sets the size, in pixels of the full resolution frame, of the largest
+	 * object detected within a single tile when tiling; the tiles overlap by
+	 * this size. It doesn't bound the detected objects, see
+	 * {@link #setMaxObjectSize(Size)}.
+	 * 
+	 * @param size	The largest window size, or zero to use half of the
+	 * 				smaller dimension of the frame.
+	 * 
+	 * @throws IllegalArgumentException if the size is negative.
+	 */
+	public void setMaxWindowSize(int size) throws IllegalArgumentException {
+		if (size < 0)
+			throw new IllegalArgumentException("setMaxWindowSize(" + size
+					+ ") must not be negative.");
+		
+		maxWindowSize = size;
+	}
+	
+	
+	/**
+	 * Returns the number of bands the range of searched object sizes is split
+	 * into, of which one is searched per frame in turn; a value of one
+	 * searches the whole range on every frame.
+	 * 
+	 * @return	the number of scale bands.
+	 */
+	public int getScaleBands() {
+		return scaleBands;
+	}
+	
+	
+	/**
+	 * Sets the number of bands the range of searched object sizes is split
+	 * into. Each frame searches the next band in turn, plus the band the
+	 * tracked object was last seen in; so the cost per frame drops to about
+	 * one band while the whole range is covered within that many frames.
+	 * 
+	 * @param bands	The number of scale bands; one disables the banding.
+	 * 
+	 * @throws IllegalArgumentException if the number of bands is less than
+	 * 			one.
+	 */
+	public void setScaleBands(int bands) throws IllegalArgumentException {
+		if (bands < 1)
+			throw new IllegalArgumentException("setScaleBands(" + bands
+					+ ") must be at least one.");
+		
+		scaleBands = bands;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the searched object sizes are bounded around
+	 * the recently detected sizes; otherwise, returns {@code false}.
+	 * 
+	 * @return	whether the adaptive sizing is enabled.
+	 */
+	public boolean isAdaptiveSize() {
+		return adaptiveSize;
+	}
+	
+	
+	/**
+	 * Sets whether the searched object sizes are bounded around the recently
+	 * detected sizes. Disabling it forgets the recently detected sizes.
+	 * 
+	 * @param adaptiveSize	{@code true} to enable the adaptive sizing.
+	 */
+	public void setAdaptiveSize(boolean adaptiveSize) {
+		this.adaptiveSize = adaptiveSize;
+	}
+	
+	
+	/**
+	 * Returns the relative tolerance of the object size bounds around the
+	 * median of the recently detected sizes.
+	 * 
+	 * @return	the size tolerance.
+	 */
+	public double getSizeTolerance() {
+		return sizeTolerance;
+	}
+	
+	
+	/**
+	 * Sets the relative tolerance of the object size bounds around the median
+	 * of the recently detected sizes; e.g. 0.4 searches from 60% to 140% of
+	 * the median size.
+	 * 
+	 * @param tolerance	The size tolerance, greater than zero and less than
+	 * 					one.
+	 * 
+	 * @throws IllegalArgumentException if the tolerance is not greater than
+	 * 			zero or is not less than one.
+	 */
+	public void setSizeTolerance(double tolerance)
+			throws IllegalArgumentException
+	{
+		if (!(tolerance > 0d && tolerance < 1d))
+			throw new IllegalArgumentException("setSizeTolerance(" + tolerance
+					+ ") must be greater than zero and less than one.");
+		
+		sizeTolerance = tolerance;
+	}
+	
+	
+	/**
+	 * Returns the number of first stages of the classifier the full frame
+	 * scans are pre-filtered with; zero disables the pre-filter.
+	 * 
+	 * @return	the number of pre-filter stages.
+	 */
+	public int getPrefilterStages() {
+		return prefilterStages;
+	}
+	
+	
+	/**
+	 * Sets the number of first stages of the classifier the full frame scans
+	 * are pre-filtered with; the whole classifier then only searches around
+	 * the windows which survived them. The pre-filter only takes effect with
+	 * the native backend, when the classifier was set from its file.
+	 * 
+	 * @param stages	The number of pre-filter stages, or zero to disable the
+	 * 					pre-filter.
+	 * 
+	 * @throws IllegalArgumentException if the number of stages is negative.
+	 * 
+	 * @see project.recognition.tools.PrefilterStageSelector
+	 */
+	public void setPrefilterStages(int stages) throws IllegalArgumentException {
+		if (stages < 0)
+			throw new IllegalArgumentException("setPrefilterStages(" + stages
+					+ ") must not be negative.");
+		
+		prefilterStages = stages;
+	}
+	
+	
+	/**
+	 * Returns the factor the search window of the classifier grows by from
+	 * one scale to the next.
+	 * 
+	 * @return	the scale factor, greater than one.
+	 */
+	public double getScaleFactor() {
+		return scaleFactor;
+	}
+	
+	
+	/**
+	 * Sets the factor the search window of the classifier grows by from one
+	 * scale to the next; a larger factor searches fewer scales, faster, but
+	 * may miss the objects between them. The scale factor takes effect with
+	 * the native and the Java backends and the tiled detection, but not for
+	 * the pre-filtered detection.
+	 * 
+	 * @param factor	The scale factor, greater than one.
+	 * 
+	 * @throws IllegalArgumentException if the scale factor is not greater
+	 * 			than one.
+	 */
+	public void setScaleFactor(double factor) throws IllegalArgumentException {
+		if (!(factor > 1d))
+			throw new IllegalArgumentException("setScaleFactor(" + factor
+					+ ") must be greater than one.");
+		
+		scaleFactor = factor;
+	}
+	
+	
+	/**
+	 * Returns the number of neighboring candidate windows an object needs
+	 * more than to be detected.
+	 * 
+	 * @return	the minimum number of neighbors.
+	 */
+	public int getMinNeighbors() {
+		return minNeighbors;
+	}
+	
+	
+	/**
+	 * Sets the number of neighboring candidate windows an object needs more
+	 * than to be detected; a larger number rejects more false detections, but
+	 * also more of the weakly detected objects. Like the scale factor, it
+	 * doesn't take effect for the pre-filtered detection.
+	 * 
+	 * @param neighbors	The minimum number of neighbors, zero to keep every
+	 * 					candidate window.
+	 * 
+	 * @throws IllegalArgumentException if the number of neighbors is
+	 * 			negative.
+	 */
+	public void setMinNeighbors(int neighbors) throws IllegalArgumentException {
+		if (neighbors < 0)
+			throw new IllegalArgumentException("setMinNeighbors(" + neighbors
+					+ ") must not be negative.");
+		
+		minNeighbors = neighbors;
+	}
+	
+	
+	/**
+	 * Returns the smallest object size searched, in full resolution pixels.
+	 * 
+	 * @return	the smallest object size, or {@code null} if unbounded.
+	 */
+	public Size getMinObjectSize() {
+		Size size = minObjectSize;
+		return size != null ? size.clone() : null;
+	}
+	
+	
+	/**
+	 * Sets the smallest object size searched, in full resolution pixels.
+	 * 
+	 * @param size	The smallest object size, or {@code null} to search down
+	 * 				to the window size of the classifier.
+	 * 
+	 * @throws IllegalArgumentException if the size is negative.
+	 */
+	public void setMinObjectSize(Size size) throws IllegalArgumentException {
+		if (size != null && (size.width < 0d || size.height < 0d))
+			throw new IllegalArgumentException("setMinObjectSize(" + size
+					+ ") must not be negative.");
+		
+		minObjectSize = size != null ? size.clone() : null;
+	}
+	
+	
+	/**
+	 * Returns the largest object size searched, in full resolution pixels.
+	 * 
+	 * @return	the largest object size, or {@code null} if unbounded.
+	 */
+	public Size getMaxObjectSize() {
+		Size size = maxObjectSize;
+		return size != null ? size.clone() : null;
+	}
+	
+	
+	/**
+	 * Sets the largest object size searched, in full resolution pixels.
+	 * 
+	 * @param size	The largest object size, or {@code null} to search up to
+	 * 				the size of the frame.
+	 * 
+	 * @throws IllegalArgumentException if the size is negative.
+	 */
+	public void setMaxObjectSize(Size size) throws IllegalArgumentException {
+		if (size != null && (size.width < 0d || size.height < 0d))
+			throw new IllegalArgumentException("setMaxObjectSize(" + size
+					+ ") must not be negative.");
+		
+		maxObjectSize = size != null ? size.clone() : null;
+	}
+	
+	
+	/**
+	 * Returns the implementation the classifier is evaluated with.
+	 * 
+	 * @return	the {@link CascadeBackend} of this gesture.
+	 */
+	public CascadeBackend getBackend() {
+		return backend;
+	}
+	
+	
+	/**
+	 * Sets the implementation the classifier is evaluated with. The Java
+	 * backend only takes effect for a classifier file of the old Haar-like
+	 * format; it ignores the tile count.
+	 * 
+	 * @param backend	The {@link CascadeBackend} to use.
+	 * 
+	 * @throws NullPointerException if the backend is {@code null}.
+	 */
+	public void setBackend(CascadeBackend backend) throws NullPointerException {
+		if (backend == null)
+			throw new NullPointerException("setBackend(null)");
+		
+		this.backend = backend;
+	}
+	
+	
+	/**
+	 * Returns the timing statistics of the scans of the proposed skin regions.
+	 * 
+	 * @return	the {@link TimingStatistics} of the proposed region scans.
+	 */
+	public final TimingStatistics getProposalScanStatistics() {
+		return proposalScanTimes;
+	}
+	
+	
+	/**
+	 * Returns the confidences of the objects detected on the last frame, in
+	 * the order of {@link #getDetections()}. The confidences are only measured
+	 * by the native backend of a fused gesture with a classifier set from its
+	 * file; otherwise, they are zero.
+	 * 
+	 * @return	the confidences of the detected objects.
+	 */
+	public double[] getConfidences() {
+		return confidences.clone();
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the detections of this gesture are fused with
+	 * those of the other fused gestures rather than each firing its own
+	 * event; otherwise, returns {@code false}.
+	 * 
+	 * @return	whether this gesture is fused.
+	 */
+	public boolean isFused() {
+		return fused;
+	}
+	
+	
+	/**
+	 * Sets whether the detections of this gesture are fused with those of the
+	 * other fused gestures, taking effect on the next frame. A fused gesture
+	 * only notifies its listeners of the objects it detects with a higher
+	 * confidence than any other fused gesture, once per object and frame.
+	 * 
+	 * @param fused	{@code true} to fuse the detections of this gesture.
+	 * 
+	 * @see DetectionFusion
+	 */
+	public void setFused(boolean fused) {
+		this.fused = fused;
+	}
+	
+	
+	/**
+	 * Notifies the listeners of this gesture of the specified object fused
+	 * from the detections of the fused gestures.
+	 * 
+	 * @param ge	The {@link FusedGestureEvent} of the fused object.
+	 */
+	final void fireFusedDetection(FusedGestureEvent ge) {
+		fireGestureDetected(ge);
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the full frame scans are replaced by scans of
+	 * only the regions proposed from the skin blobs of the frame; otherwise,
+	 * returns {@code false}.
+	 * 
+	 * @return	whether the skin gating is enabled.
+	 */
+	public boolean isSkinGating() {
+		return skinGating;
+	}
+	
+	
+	/**
+	 * Sets whether the full frame scans are replaced by scans of only the
+	 * regions proposed from the skin blobs of the frame.
+	 * 
+	 * @param skinGating	{@code true} to enable the skin gating.
+	 */
+	public void setSkinGating(boolean skinGating) {
+		this.skinGating = skinGating;
+	}
+	
+	
+	/**
+	 * Returns the total number of proposed skin regions this gesture has
+	 * scanned.
+	 * 
+	 * @return	the number of scanned proposed regions.
+	 */
+	public long getProposalCount() {
+		return proposalCount;
+	}
+	
+	
+	/**
+	 * Returns the total number of pixels, of the possibly downscaled grayscale
+	 * frames, this gesture has passed to its classifier, over all of the full
+	 * frame, ROI and proposed region scans. The pixels of a scan are counted
+	 * once, however many scale bands it searches.
+	 * 
+	 * @return	the number of scanned pixels.
+	 */
+	public long getScannedPixelCount() {
+		return scannedPixels;
+	}
+	
+	
+	public void setHighLightColor(Color color) {
+		this.color = color;
+		this.sColor = convertColorToScalar(color);
+	}
+	
+	public Color getHighLightColor() {
+		return color;
+	}
+	
+	public final Scalar getHighLightScalar() {
+		return sColor;
+	}
+	
+	
+	/**
+	 * 
+	 * @param cc	The Haar-like cascading classifier to use.
+	 */
+	public void setClassifier(CascadeClassifier cc) {
+		setClassifier(cc, null, false);
+	}
+	
+	
+	/**
+	 * Sets the classifier from the specified resource. The classifier is
+	 * shared, through the {@link ClassifierCache}, with the other gestures
+	 * using a classifier file of the same content.
+	 * 
+	 * @param ccFileName	The Haar-like cascading classifier XML file to use.
+	 */
+	public void setClassifier(String ccFileName) {
+		setSharedClassifier(findClassifier(ccFileName));
+	}
+	
+	
+	/**
+	 * Sets the classifier from the specified file, rather than from a
+	 * resource. The classifier is shared, through the
+	 * {@link ClassifierCache}, with the other gestures using a classifier file
+	 * of the same content.
+	 * 
+	 * @param file	The cascade classifier XML file to use.
+	 */
+	public void setClassifier(File file) {
+		String path = file.canRead() ? file.getAbsolutePath() : null;
+		if (path == null)
+			Log.error("Unable to read the classifier file: " + file);
+		setSharedClassifier(path);
+	}
+	
+	
+	/**
+	 * Sets the classifier of the file at the specified path, acquired from
+	 * the default {@link ClassifierCache}.
+	 * 
+	 * @param path	The absolute path of the classifier file, or {@code null}
+	 * 				to clear the classifier.
+	 */
+	private final void setSharedClassifier(String path) {
+		CascadeClassifier shared = null;
+		if (path != null) {
+			try {
+				shared = ClassifierCache.getDefault().acquire(path);
+			}
+			catch (IOException ex) {
+				Log.error("Unable to load the classifier: " + ex.getMessage());
+			}
+		}
+		setClassifier(shared, shared != null ? path : null, shared != null);
+	}
+	
+	
+	/**
+	 * Sets the classifier and the path of the file it was loaded from, which
+	 * the other detectors of the gesture, e.g. the tiled detection, use.
+	 * 
+	 * @param cc		The Haar-like cascading classifier to use.
+	 * @param path		The absolute path of the classifier file, or
+	 * 					{@code null} if unknown.
+	 * @param cached	Whether the classifier was acquired from the default
+	 * 					{@link ClassifierCache}.
+	 */
+	private synchronized final void setClassifier(CascadeClassifier cc,
+			String path, boolean cached)
+	{
+		if (cachedClassifier && this.cc != null)
+			ClassifierCache.getDefault().release(this.cc);
+		cachedClassifier = cached;
+		if (tiled != null)
+			tiled.release();
+		tiled = null;
+		tiledUnavailable = false;
+		javaDetector = null;
+		javaUnavailable = false;
+		twoTier = null;
+		twoTierUnavailable = false;
+		stageCount = 0;
+		stageCountUnavailable = false;
+		classifierPath = path;
+		info = path != null ? CascadeInfo.read(path) : null;
+		this.cc = cc;
+	}
+	
+	
+	/**
+	 * Releases the classifier of this gesture, back to the
+	 * {@link ClassifierCache} if it was shared, along with the classifier of
+	 * the tiled detection. The gesture no longer detects
+	 * until a classifier is set again.
+	 * 
+	 * @see project.recognition.AbstractGesture#release()
+	 */
+	@Override
+	public void release() {
+		setClassifier(null, null, false);
+	}
+	
+	
+	/**
+	 * Returns the description of the classifier file; its feature type and
+	 * window size.
+	 * 
+	 * @return	the {@link CascadeInfo} of the classifier, or {@code null} if
+	 * 			the classifier wasn't set from its file.
+	 */
+	public CascadeInfo getCascadeInfo() {
+		return info;
+	}
+	
+	
+	/**
+	 * Returns the type of the features the classifier evaluates.
+	 * 
+	 * @return	the {@link CascadeFeatureType} of the classifier, which is
+	 * 			unknown if the classifier wasn't set from its file.
+	 */
+	public CascadeFeatureType getFeatureType() {
+		CascadeInfo ci = info;
+		return ci != null ? ci.getFeatureType() : CascadeFeatureType.UNKNOWN;
+	}
+	
+	
+	/**
+	 * 
+	 * @return
+	 */
+	public CascadeClassifier getClassifier() {
+		return cc;
+	}
+	
+	
+	/**
+	 * 
+	 * @param cPath the relative or absolute path to the cascade classifier; the
+	 *              file should be a XML file.
+	 * @return
+	 */
+	public static final CascadeClassifier loadClassifier(String cPath) {
+		String path = findClassifier(cPath);
+		return path != null ? new CascadeClassifier(path) : null;
+	}
+	
+	
+	/**
+	 * Returns the absolute path of the file of the cascade classifier
+	 * resource. The native classifier can only be loaded from a file, so a
+	 * resource packaged in a jar is extracted to the cache directory of
+	 * {@link CompiledCascades} first.
+	 * 
+	 * @param cPath the relative or absolute path to the cascade classifier; the
+	 *              file should be a XML file.
+	 * @return	the absolute path of the classifier file, or {@code null} if the
+	 * 			resource could not be read.
+	 */
+	public static final String findClassifier(String cPath) {
+		URL url = HaarClassifierGesture.class.getResource(cPath);
+		if (url != null && !"file".equals(url.getProtocol()))
+			return extractClassifier(url, cPath);
+		
+		try {
+			File f = new File( url.toURI() );
+			if (f != null && f.canRead())
+				return f.getAbsolutePath();
+			else
+				Log.error("Unable to read the resource: " + cPath);
+		}
+		catch (NullPointerException npe) {
+			Log.error("Could not locate resource: [classifier] " + cPath);
+			Log.error(" -- Current resource path: " + HaarClassifierGesture.class.getName());
+		}
+		catch (Exception ex) {
+			Log.error("Unable to load resource: [classifier] " + cPath);
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Extracts the specified classifier resource to a file in the cache
+	 * directory of {@link CompiledCascades}. The file is kept from one run to
+	 * the next and only rewritten when the resource changed, so that the
+	 * compiled form cached next to it stays valid.
+	 * 
+	 * @param url	The URL of the classifier resource.
+	 * @param cPath	The path of the classifier resource.
+	 * 
+	 * @return	the absolute path of the extracted file, or {@code null} if the
+	 * 			resource could not be extracted.
+	 */
+	private static synchronized final String extractClassifier(URL url,
+			String cPath)
+	{
+		File dir = CompiledCascades.getCacheDirectory();
+		File file = new File(dir, Integer.toHexString(url.toString().hashCode())
+				+ "-" + new File(url.getPath()).getName());
+		try {
+			byte[] content;
+			try (InputStream in = url.openStream()) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				for (int n; (n = in.read(buffer)) > 0; )
+					out.write(buffer, 0, n);
+				content = out.toByteArray();
+			}
+			
+			if (!file.isFile() || file.length() != content.length
+					|| !Arrays.equals(content,
+							Files.readAllBytes(file.toPath())))
+			{
+				if (!dir.isDirectory() && !dir.mkdirs())
+					throw new IOException("Unable to create " + dir);
+				Files.write(file.toPath(), content);
+			}
+			return file.getAbsolutePath();
+		}
+		catch (IOException ex) {
+			Log.error("Unable to extract resource: [classifier] " + cPath
+					+ ": " + ex.getMessage());
 		}
 		return null;
 	}
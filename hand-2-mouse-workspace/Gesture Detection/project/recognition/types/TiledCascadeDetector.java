@@ -0,0 +1,339 @@
+/**
+ * 
+ */
+package project.recognition.types;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.recognition.cascade.JavaCascadeDetector;
+import project.util.logger.Log;
+
+/**
+ * <p>Provides the tiled, multi-threaded detection of a cascade classifier on
+ * large frames. The image is split into a grid of tiles, each extended on its
+ * right and bottom by the overlap, so that every object up to that size lies
+ * completely within at least one tile. The tiles are detected concurrently on
+ * a fork-join pool, and the duplicates found on both sides of a tile seam are
+ * merged with non-maximum suppression.
+ * <p>A cascade classifier must not be used by more than one thread at a time,
+ * so a tile task checks out an instance of the classifier from the
+ * {@link ClassifierCache} for as long as it detects; the copies of the
+ * classifier are shared with all of the other users of the same classifier
+ * file. The detectors created without a fork-join pool all share a single
+ * pool, with one thread per available processor, so several tiled gestures
+ * don't use more threads than there are processors.
+ * <p>The tiles only search the objects up to the size of the overlap; the
+ * larger objects, which may not fit in any tile, are searched on the whole
+ * image at only the scales above the overlap, which are few and cheap. So
+ * the objects are only bounded by the sizes the caller asks for.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.types.Detections#suppress(Rect[], double)
+ */
+public class TiledCascadeDetector {
+	
+	
+	/**
+	 * The maximum overlap of two detections on either side of a tile seam
+	 * which are still considered different objects.
+	 */
+	public static final double DEFAULT_SEAM_OVERLAP = 0.3d;
+	
+	
+	/**
+	 * The pool shared by the detectors created without a pool.
+	 */
+	private static final ForkJoinPool sharedPool = new ForkJoinPool();
+	
+	
+	// Private member fields.
+	private final String classifierPath;
+	private final ForkJoinPool pool;
+	private final ClassifierCache cache = ClassifierCache.getDefault();
+	private final CascadeClassifier classifier;
+	
+	
+	/**
+	 * Constructor for a new instance of this detector with the cascade
+	 * classifier of the specified file, detecting on the pool shared by all
+	 * such detectors, with one thread per available processor.
+	 * 
+	 * @param classifierPath	The absolute path of the classifier XML file.
+	 * 
+	 * @throws IllegalArgumentException if the classifier could not be loaded.
+	 */
+	public TiledCascadeDetector(String classifierPath)
+			throws IllegalArgumentException
+	{
+		this(classifierPath, sharedPool);
+	}
+	
+	
+	/**
+	 * Constructor for a new instance of this detector with the cascade
+	 * classifier of the specified file, detecting on the specified pool.
+	 * 
+	 * @param classifierPath	The absolute path of the classifier XML file.
+	 * @param pool				The pool detecting the tiles concurrently.
+	 * 
+	 * @throws IllegalArgumentException if the classifier could not be loaded.
+	 */
+	public TiledCascadeDetector(String classifierPath, ForkJoinPool pool)
+			throws IllegalArgumentException
+	{
+		this.classifierPath = classifierPath;
+		this.pool = pool;
+		try {
+			this.classifier = cache.acquire(classifierPath);
+		}
+		catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+	
+	
+	/**
+	 * Detects the objects of any size on the specified grayscale image split
+	 * into the specified number of tiles, with the default scale factor and
+	 * minimum number of neighbors.
+	 * 
+	 * @param gray		The grayscale image to detect on.
+	 * @param tiles		The number of tiles; one detects the whole image at
+	 * 					once.
+	 * @param overlap	The size, in pixels of the image, the tiles overlap by.
+	 * 
+	 * @return	the detected objects in the coordinates of the image.
+	 * 
+	 * @throws IllegalArgumentException if the number of tiles or the overlap
+	 * 			is less than one.
+	 */
+	public Rect[] detect(Mat gray, int tiles, int overlap)
+			throws IllegalArgumentException
+	{
+		return detect(gray, tiles, new Size(), new Size(), overlap,
+				JavaCascadeDetector.DEFAULT_SCALE_FACTOR,
+				JavaCascadeDetector.DEFAULT_MIN_NEIGHBORS);
+	}
+	
+	
+	/**
+	 * Detects the objects within the specified sizes on the specified
+	 * grayscale image split into the specified number of tiles, with the
+	 * specified scale factor and minimum number of neighbors. The objects
+	 * larger than the overlap are searched on the whole image.
+	 * 
+	 * @param gray			The grayscale image to detect on.
+	 * @param tiles			The number of tiles; one detects the whole image
+	 * 						at once.
+	 * @param minSize		The smallest object size, in pixels of the image;
+	 * 						an empty size detects down to the classifier's
+	 * 						window.
+	 * @param maxSize		The largest object size, in pixels of the image;
+	 * 						an empty size detects up to the whole image.
+	 * @param overlap		The size, in pixels of the image, the tiles
+	 * 						overlap by.
+	 * @param scaleFactor	The factor the window size grows by per scale.
+	 * @param minNeighbors	The minimum number of neighbors of a detection.
+	 * 
+	 * @return	the detected objects in the coordinates of the image.
+	 * 
+	 * @throws IllegalArgumentException if the number of tiles or the overlap
+	 * 			is less than one.
+	 */
+	public Rect[] detect(Mat gray, int tiles, Size minSize, Size maxSize,
+			int overlap, double scaleFactor, int minNeighbors)
+			throws IllegalArgumentException
+	{
+		if (tiles < 1 || overlap < 1)
+			throw new IllegalArgumentException("detect(" + tiles + ","
+					+ overlap + ") must be at least one.");
+		
+		Rect[] grid = getTiles(gray.cols(), gray.rows(), tiles, overlap);
+		List<Callable<Rect[]>> tasks = new ArrayList<Callable<Rect[]>>();
+		if (grid.length == 1)
+			tasks.add(new TileTask(gray, grid[0], minSize, maxSize,
+					scaleFactor, minNeighbors));
+		else {
+			boolean bounded = maxSize.width > 0 && maxSize.height > 0;
+			Size tileMax = new Size(
+					bounded ? Math.min(maxSize.width, overlap) : overlap,
+					bounded ? Math.min(maxSize.height, overlap) : overlap);
+			for (Rect tile : grid)
+				tasks.add(new TileTask(gray, tile, minSize, tileMax,
+						scaleFactor, minNeighbors));
+			
+			// The objects which may not fit in any tile
+			if (!bounded || maxSize.width > overlap
+					|| maxSize.height > overlap)
+				tasks.add(new TileTask(gray,
+						new Rect(0, 0, gray.cols(), gray.rows()),
+						new Size(Math.max(minSize.width, overlap),
+								Math.max(minSize.height, overlap)),
+						maxSize, scaleFactor, minNeighbors));
+		}
+		
+		List<Rect> shapes = new ArrayList<Rect>();
+		try {
+			for (Future<Rect[]> result : pool.invokeAll(tasks)) {
+				for (Rect r : result.get())
+					shapes.add(r);
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return new Rect[0];
+		}
+		catch (ExecutionException ee) {
+			Log.error("Exception caught detecting the tiles with "
+					+ classifierPath + ": " + ee.getCause());
+		}
+		
+		Rect[] merged = shapes.toArray(new Rect[shapes.size()]);
+		return grid.length > 1
+				? Detections.suppress(merged, DEFAULT_SEAM_OVERLAP) : merged;
+	}
+	
+	
+	/**
+	 * Returns the grid of tiles for an image of the specified size. The
+	 * number of tiles is split into the columns and rows whose tiles are
+	 * closest to square, each tile extended on its right and bottom by the
+	 * overlap and clipped to the image.
+	 * 
+	 * @param cols		The width of the image.
+	 * @param rows		The height of the image.
+	 * @param tiles		The number of tiles.
+	 * @param overlap	The size the tiles overlap by.
+	 * 
+	 * @return	the tiles in the coordinates of the image.
+	 */
+	static Rect[] getTiles(int cols, int rows, int tiles, int overlap) {
+		int gridCols = 1;
+		double best = Double.MAX_VALUE;
+		for (int c = 1; c <= tiles; c++) {
+			if (tiles % c != 0)
+				continue;
+			
+			double aspect = Math.abs(Math.log(
+					(cols / (double)c) / (rows / (double)(tiles / c))));
+			if (aspect < best) {
+				best = aspect;
+				gridCols = c;
+			}
+		}
+		int gridRows = tiles / gridCols;
+		
+		Rect[] grid = new Rect[tiles];
+		for (int j = 0; j < gridRows; j++) {
+			int y0 = j * rows / gridRows;
+			int y1 = Math.min(rows, (j + 1) * rows / gridRows + overlap);
+			for (int i = 0; i < gridCols; i++) {
+				int x0 = i * cols / gridCols;
+				int x1 = Math.min(cols, (i + 1) * cols / gridCols + overlap);
+				grid[j * gridCols + i] = new Rect(x0, y0, x1 - x0, y1 - y0);
+			}
+		}
+		return grid;
+	}
+	
+	
+	/**
+	 * Returns the number of tiles this detector detects concurrently.
+	 * 
+	 * @return	the parallelism level of the detection.
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+	
+	
+	/**
+	 * Returns the path of the classifier file of this detector.
+	 * 
+	 * @return	the absolute path of the classifier XML file.
+	 */
+	public String getClassifierPath() {
+		return classifierPath;
+	}
+	
+	
+	/**
+	 * Releases the classifier of this detector back to the
+	 * {@link ClassifierCache}; it must not be used afterwards. The fork-join
+	 * pool is left running, as it may be shared.
+	 */
+	public void release() {
+		cache.release(classifier);
+	}
+	
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[classifier=" + classifierPath
+				+ ",parallelism=" + getParallelism() + "]";
+	}
+	
+	
+	/**
+	 * Provides the detection of a single tile with an instance of the
+	 * classifier checked out from the cache.
+	 */
+	private final class TileTask implements Callable<Rect[]> {
+		
+		private final Mat gray;
+		private final Rect tile;
+		private final Size minSize;
+		private final Size maxSize;
+		private final double scaleFactor;
+		private final int minNeighbors;
+		
+		private TileTask(Mat gray, Rect tile, Size minSize, Size maxSize,
+				double scaleFactor, int minNeighbors)
+		{
+			this.gray = gray;
+			this.tile = tile;
+			this.minSize = minSize;
+			this.maxSize = maxSize;
+			this.scaleFactor = scaleFactor;
+			this.minNeighbors = minNeighbors;
+		}
+		
+		@Override
+		public Rect[] call() throws IOException {
+			CascadeClassifier cc = cache.checkOut(classifier);
+			MatOfRect objects = new MatOfRect();
+			Mat img = gray.submat(tile);
+			try {
+				cc.detectMultiScale(img, objects, scaleFactor, minNeighbors, 0,
+						minSize, maxSize);
+				
+				Rect[] shapes = objects.toArray();
+				for (Rect r : shapes) {
+					r.x += tile.x;
+					r.y += tile.y;
+				}
+				return shapes;
+			}
+			finally {
+				cache.checkIn(cc);
+				objects.release();
+				img.release();
+			}
+		}
+		
+	}
+	
+}
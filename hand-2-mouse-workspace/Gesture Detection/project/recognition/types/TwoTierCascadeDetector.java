@@ -0,0 +1,259 @@
+/**
+ * 
+ */
+package project.recognition.types;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+import project.recognition.cascade.CascadeTruncator;
+import project.recognition.cascade.JavaCascadeDetector;
+
+/**
+ * <p>Provides the two-tier detection of a cascade classifier. The cascade
+ * truncated to its first stages runs over the whole image as a cheap
+ * pre-filter; each window surviving those stages is a candidate, without
+ * grouping. The candidates are padded and merged into regions, and only
+ * those regions are searched by the whole cascade.
+ * <p>The fewer stages the pre-filter keeps, the cheaper it is, but the more
+ * candidates survive it for the whole cascade to search; the number of
+ * stages is best selected on a recorded clip with the
+ * {@code PrefilterStageSelector} tool, which also measures how many of the
+ * objects of the whole cascade are still found.
+ * 
+ * @author Chris Hartley
+ * 
+ * @see project.recognition.cascade.CascadeTruncator
+ */
+public class TwoTierCascadeDetector {
+	
+	
+	/**
+	 * The default padding of the candidate windows on each side, relative to
+	 * their size, so that the neighbors of an object are searched as well.
+	 */
+	public static final double DEFAULT_PADDING = 0.25d;
+	
+	
+	// Private member fields.
+	private final CascadeClassifier prefilter;
+	private final CascadeClassifier full;
+	private final int stages;
+	
+	// Private member data.
+	private volatile double padding = DEFAULT_PADDING;
+	private long candidates = 0l;
+	private long regions = 0l;
+	private long regionPixels = 0l;
+	private long imagePixels = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of this detector with the cascade
+	 * classifier of the specified file, pre-filtering with its specified
+	 * number of first stages.
+	 * 
+	 * @param classifierPath	The absolute path of the classifier XML file.
+	 * @param stages			The number of stages of the pre-filter.
+	 * 
+	 * @throws IOException if the classifier file could not be truncated.
+	 * @throws IllegalArgumentException if the number of stages is less than
+	 * 			one, or either classifier could not be loaded.
+	 */
+	public TwoTierCascadeDetector(String classifierPath, int stages)
+			throws IOException, IllegalArgumentException
+	{
+		File truncated =
+				CascadeTruncator.truncateToTemp(classifierPath, stages);
+		try {
+			this.prefilter = new CascadeClassifier(truncated.getAbsolutePath());
+		}
+		finally {
+			truncated.delete();
+		}
+		this.full = new CascadeClassifier(classifierPath);
+		this.stages = stages;
+		
+		if (prefilter.empty() || full.empty())
+			throw new IllegalArgumentException("Unable to load the "
+					+ "classifier " + classifierPath);
+	}
+	
+	
+	/**
+	 * Detects the objects, within the specified sizes, on the specified
+	 * grayscale image, with the default scale factor and minimum number of
+	 * neighbors.
+	 * 
+	 * @param gray		The grayscale image to detect on.
+	 * @param minSize	The smallest object size; an empty size detects down to
+	 * 					the classifier's window.
+	 * @param maxSize	The largest object size; an empty size is unbounded.
+	 * 
+	 * @return	the detected objects in the coordinates of the image.
+	 */
+	public Rect[] detect(Mat gray, Size minSize, Size maxSize) {
+		return detect(gray, minSize, maxSize,
+				JavaCascadeDetector.DEFAULT_SCALE_FACTOR,
+				JavaCascadeDetector.DEFAULT_MIN_NEIGHBORS);
+	}
+	
+	
+	/**
+	 * Detects the objects, within the specified sizes, on the specified
+	 * grayscale image, with the specified scale factor and minimum number of
+	 * neighbors. The pre-filter scans with the same scale factor, but keeps
+	 * every surviving window ungrouped. A cascade classifier must not be used
+	 * by more than one thread at a time, so neither must this detector.
+	 * 
+	 * @param gray			The grayscale image to detect on.
+	 * @param minSize		The smallest object size; an empty size detects
+	 * 						down to the classifier's window.
+	 * @param maxSize		The largest object size; an empty size is
+	 * 						unbounded.
+	 * @param scaleFactor	The factor the window size grows by per scale.
+	 * @param minNeighbors	The minimum number of neighbors of a detection.
+	 * 
+	 * @return	the detected objects in the coordinates of the image.
+	 */
+	public Rect[] detect(Mat gray, Size minSize, Size maxSize,
+			double scaleFactor, int minNeighbors)
+	{
+		int cols = gray.cols();
+		int rows = gray.rows();
+		MatOfRect objects = new MatOfRect();
+		
+		try {
+			prefilter.detectMultiScale(gray, objects, scaleFactor, 0, 0,
+					minSize, maxSize);
+			Rect[] windows = objects.toArray();
+			
+			double pad = padding;
+			List<Rect> boxes = new ArrayList<Rect>(windows.length);
+			for (Rect r : windows) {
+				int p = (int)Math.ceil(Math.max(r.width, r.height) * pad);
+				int x0 = Math.max(0, r.x - p);
+				int y0 = Math.max(0, r.y - p);
+				int x1 = Math.min(cols, r.x + r.width + p);
+				int y1 = Math.min(rows, r.y + r.height + p);
+				boxes.add(new Rect(x0, y0, x1 - x0, y1 - y0));
+			}
+			Rect[] merged = Detections.merge(boxes);
+			
+			List<Rect> shapes = new ArrayList<Rect>();
+			long pixels = 0l;
+			for (Rect region : merged) {
+				pixels += (long)region.width * region.height;
+				Mat sub = gray.submat(region);
+				try {
+					full.detectMultiScale(sub, objects, scaleFactor,
+							minNeighbors, 0, minSize, maxSize);
+				}
+				finally {
+					sub.release();
+				}
+				for (Rect r : objects.toArray()) {
+					r.x += region.x;
+					r.y += region.y;
+					shapes.add(r);
+				}
+			}
+			
+			synchronized (this) {
+				candidates += windows.length;
+				regions += merged.length;
+				regionPixels += pixels;
+				imagePixels += (long)cols * rows;
+			}
+			return shapes.toArray(new Rect[shapes.size()]);
+		}
+		finally {
+			objects.release();
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of stages of the pre-filter.
+	 * 
+	 * @return	the number of stages of the truncated cascade.
+	 */
+	public int getStages() {
+		return stages;
+	}
+	
+	
+	/**
+	 * Returns the padding of the candidate windows on each side, relative to
+	 * their size.
+	 * 
+	 * @return	the padding of the candidate windows.
+	 */
+	public double getPadding() {
+		return padding;
+	}
+	
+	
+	/**
+	 * Sets the padding of the candidate windows on each side, relative to
+	 * their size.
+	 * 
+	 * @param padding	The padding of the candidate windows.
+	 * 
+	 * @throws IllegalArgumentException if the padding is negative.
+	 */
+	public void setPadding(double padding) throws IllegalArgumentException {
+		if (!(padding >= 0d))
+			throw new IllegalArgumentException("setPadding(" + padding
+					+ ") must not be negative.");
+		
+		this.padding = padding;
+	}
+	
+	
+	/**
+	 * Returns the total number of windows which survived the pre-filter.
+	 * 
+	 * @return	the number of candidate windows.
+	 */
+	public synchronized long getCandidateCount() {
+		return candidates;
+	}
+	
+	
+	/**
+	 * Returns the total number of regions searched by the whole cascade.
+	 * 
+	 * @return	the number of searched regions.
+	 */
+	public synchronized long getRegionCount() {
+		return regions;
+	}
+	
+	
+	/**
+	 * Returns the fraction of the image pixels searched by the whole cascade,
+	 * over all of the detected images.
+	 * 
+	 * @return	the searched fraction between zero and one.
+	 */
+	public synchronized double getSearchedFraction() {
+		return imagePixels > 0l ? regionPixels / (double)imagePixels : 0d;
+	}
+	
+	
+	@Override
+	public synchronized String toString() {
+		return getClass().getSimpleName() + "[stages=" + stages
+				+ ",candidates=" + candidates + ",regions=" + regions + "]";
+	}
+	
+}
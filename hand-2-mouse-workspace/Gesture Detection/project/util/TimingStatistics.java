@@ -0,0 +1,146 @@
+/**
+ * 
+ */
+package project.util;
+
+/**
+ * Provides the running statistics of a repeatedly timed operation, such as
+ * the detection of a gesture on each frame. The durations are recorded in
+ * nanoseconds, e.g. measured with {@link System#nanoTime()}, and reported in
+ * milliseconds. This class is thread safe.
+ * 
+ * @author Chris Hartley
+ */
+public class TimingStatistics {
+	
+	
+	// Private member fields.
+	private final String name;
+	
+	// Private member data.
+	private long count = 0l;
+	private long total = 0l;
+	private long last = 0l;
+	private long min = Long.MAX_VALUE;
+	private long max = 0l;
+	
+	
+	/**
+	 * Constructor for a new instance of these statistics with the specified
+	 * name of the timed operation.
+	 * 
+	 * @param name	The name of the timed operation.
+	 */
+	public TimingStatistics(String name) {
+		this.name = name;
+	}
+	
+	
+	/**
+	 * Records the specified duration of the timed operation.
+	 * 
+	 * @param nanos	The duration in nanoseconds.
+	 */
+	public synchronized void add(long nanos) {
+		count++;
+		total += nanos;
+		last = nanos;
+		if (nanos < min)
+			min = nanos;
+		if (nanos > max)
+			max = nanos;
+	}
+	
+	
+	/**
+	 * Clears all of the recorded durations.
+	 */
+	public synchronized void reset() {
+		count = 0l;
+		total = 0l;
+		last = 0l;
+		min = Long.MAX_VALUE;
+		max = 0l;
+	}
+	
+	
+	/**
+	 * Returns the name of the timed operation.
+	 * 
+	 * @return	the name of these statistics.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	
+	/**
+	 * Returns the number of recorded durations.
+	 * 
+	 * @return	the number of times the operation was timed.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+	
+	
+	/**
+	 * Returns the sum of all of the recorded durations in milliseconds.
+	 * 
+	 * @return	the total time in milliseconds.
+	 */
+	public synchronized double getTotal() {
+		return total / 1e6;
+	}
+	
+	
+	/**
+	 * Returns the average of the recorded durations in milliseconds.
+	 * 
+	 * @return	the average time in milliseconds, or zero if none were recorded.
+	 */
+	public synchronized double getAverage() {
+		return count > 0l ? total / 1e6 / count : 0d;
+	}
+	
+	
+	/**
+	 * Returns the most recently recorded duration in milliseconds.
+	 * 
+	 * @return	the last time in milliseconds.
+	 */
+	public synchronized double getLast() {
+		return last / 1e6;
+	}
+	
+	
+	/**
+	 * Returns the shortest recorded duration in milliseconds.
+	 * 
+	 * @return	the minimum time in milliseconds, or zero if none were recorded.
+	 */
+	public synchronized double getMin() {
+		return count > 0l ? min / 1e6 : 0d;
+	}
+	
+	
+	/**
+	 * Returns the longest recorded duration in milliseconds.
+	 * 
+	 * @return	the maximum time in milliseconds.
+	 */
+	public synchronized double getMax() {
+		return max / 1e6;
+	}
+	
+	
+	@Override
+	public synchronized String toString() {
+		return getClass().getSimpleName() + "[name='" + name + "',"
+				+ "count=" + count + ","
+				+ "avg=" + getAverage() + "ms,"
+				+ "min=" + getMin() + "ms,"
+				+ "max=" + getMax() + "ms]";
+	}
+	
+}